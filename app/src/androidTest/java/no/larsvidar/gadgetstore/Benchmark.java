@@ -0,0 +1,171 @@
+package no.larsvidar.gadgetstore;
+
+import android.os.Bundle;
+import android.os.Debug;
+import android.os.SystemClock;
+import android.support.test.InstrumentationRegistry;
+import android.util.Log;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Small timing harness for the instrumented benchmarks.
+ * Each operation is warmed up, timed one call at a time, and then run again with allocation counting on,
+ * so counting does not slow down the timed calls.
+ * Results are written to logcat and to the instrumentation status, so they show up in the am instrument output.
+ *
+ * Catalog sizes are read from the catalogSizes instrumentation argument, for example:
+ * ./gradlew connectedAndroidTest -Pandroid.testInstrumentationRunnerArguments.catalogSizes=1000,100000,1000000
+ */
+public final class Benchmark {
+
+    /**
+     * One call of the operation being measured.
+     */
+    public interface Operation {
+        /**
+         * @param iteration number of the call, counting on through warm up, timing and allocation passes
+         */
+        void run(int iteration);
+    }
+
+    //Instrumentation argument holding comma separated catalog sizes.
+    public static final String ARGUMENT_CATALOG_SIZES = "catalogSizes";
+    private static final String DEFAULT_CATALOG_SIZES = "1000";
+
+    private static final String LOG_TAG = "GadgetStoreBenchmark";
+    private static final int WARMUP_ITERATIONS = 50;
+
+    //Constructor
+    private Benchmark() {
+    }
+
+    /**
+     * @return catalog sizes to run the benchmarks at
+     */
+    public static int[] catalogSizes() {
+        String argument = InstrumentationRegistry.getArguments().getString(ARGUMENT_CATALOG_SIZES, DEFAULT_CATALOG_SIZES);
+        String[] parts = argument.split(",");
+        int[] sizes = new int[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            sizes[i] = Integer.parseInt(parts[i].trim());
+        }
+        return sizes;
+    }
+
+    /**
+     * Measures an operation and reports the result.
+     * @param name of the benchmark
+     * @param iterations number of timed calls. The same number of calls is made again while counting allocations.
+     * @param operation to measure
+     * @return the result
+     */
+    public static Result measure(String name, int iterations, Operation operation) {
+        //Warm up
+        int warmupIterations = Math.min(WARMUP_ITERATIONS, iterations);
+        for (int i = 0; i < warmupIterations; i++) {
+            operation.run(i);
+        }
+
+        //Time every call
+        long[] durations = new long[iterations];
+        long start = SystemClock.elapsedRealtimeNanos();
+        for (int i = 0; i < iterations; i++) {
+            long callStart = SystemClock.elapsedRealtimeNanos();
+            operation.run(warmupIterations + i);
+            durations[i] = SystemClock.elapsedRealtimeNanos() - callStart;
+        }
+        long totalNanos = SystemClock.elapsedRealtimeNanos() - start;
+
+        //Count allocations in a separate pass
+        Debug.startAllocCounting();
+        Debug.resetThreadAllocCount();
+        Debug.resetThreadAllocSize();
+        for (int i = 0; i < iterations; i++) {
+            operation.run(warmupIterations + iterations + i);
+        }
+        long allocCount = Debug.getThreadAllocCount();
+        long allocBytes = Debug.getThreadAllocSize();
+        Debug.stopAllocCounting();
+
+        Arrays.sort(durations);
+        Result result = new Result(name, iterations, totalNanos,
+                percentile(durations, 50), percentile(durations, 90), percentile(durations, 99),
+                allocCount, allocBytes);
+        result.report();
+        return result;
+    }
+
+    /**
+     * Writes a line to logcat and the instrumentation status, for measurements that are not timings.
+     * @param line to report
+     */
+    public static void report(String line) {
+        Log.i(LOG_TAG, line);
+
+        Bundle status = new Bundle();
+        status.putString("stream", line + "\n");
+        InstrumentationRegistry.getInstrumentation().sendStatus(0, status);
+    }
+
+    /**
+     * @param sortedDurations in nanoseconds
+     * @param percent wanted
+     * @return duration at the percentile
+     */
+    private static long percentile(long[] sortedDurations, int percent) {
+        int index = (int) Math.ceil(sortedDurations.length * percent / 100.0) - 1;
+        return sortedDurations[Math.max(0, Math.min(index, sortedDurations.length - 1))];
+    }
+
+    /**
+     * Outcome of one benchmark.
+     */
+    public static final class Result {
+        public final String mName;
+        public final int mIterations;
+        public final long mTotalNanos;
+        public final long mP50Nanos;
+        public final long mP90Nanos;
+        public final long mP99Nanos;
+        public final long mAllocCount;
+        public final long mAllocBytes;
+
+        //Constructor
+        Result(String name, int iterations, long totalNanos, long p50Nanos, long p90Nanos, long p99Nanos,
+               long allocCount, long allocBytes) {
+            mName = name;
+            mIterations = iterations;
+            mTotalNanos = totalNanos;
+            mP50Nanos = p50Nanos;
+            mP90Nanos = p90Nanos;
+            mP99Nanos = p99Nanos;
+            mAllocCount = allocCount;
+            mAllocBytes = allocBytes;
+        }
+
+        public double getOpsPerSecond() {
+            return mIterations * 1e9 / mTotalNanos;
+        }
+
+        public double getAllocationsPerOp() {
+            return (double) mAllocCount / mIterations;
+        }
+
+        public double getBytesPerOp() {
+            return (double) mAllocBytes / mIterations;
+        }
+
+        /**
+         * Writes the result to logcat and the instrumentation status.
+         */
+        void report() {
+            String line = String.format(Locale.US,
+                    "%s: %.0f ops/s, p50 %.1f us, p90 %.1f us, p99 %.1f us, %.1f allocs/op, %.0f bytes/op",
+                    mName, getOpsPerSecond(), mP50Nanos / 1e3, mP90Nanos / 1e3, mP99Nanos / 1e3,
+                    getAllocationsPerOp(), getBytesPerOp());
+            report(line);
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package no.larsvidar.gadgetstore;
+
+import android.app.Instrumentation;
+import android.content.Context;
+import android.os.SystemClock;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.filters.LargeTest;
+import android.support.test.runner.AndroidJUnit4;
+import android.test.mock.MockContentResolver;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import no.larsvidar.gadgetstore.data.BenchmarkCatalog;
+import no.larsvidar.gadgetstore.data.InventoryPager;
+import no.larsvidar.gadgetstore.data.StoreContract;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Benchmark for the time from a cold start of the provider until the first row of the list can be shown,
+ * with and without a snapshot of the first page, at each catalog size from the catalogSizes argument.
+ * Every run starts a new provider on the catalog file, as the app does when it starts.
+ */
+@LargeTest
+@RunWith(AndroidJUnit4.class)
+public class StartupBenchmark {
+
+    private static final int WARMUP_ITERATIONS = 5;
+    private static final int ITERATIONS = 20;
+    private static final long LOAD_TIMEOUT_MILLIS = 10000;
+
+    private static final String CATALOG_NAME = "startup";
+
+    private Instrumentation mInstrumentation;
+    private Context mContext;
+    private File mSnapshotFile;
+
+    @Before
+    public void setUp() {
+        mInstrumentation = InstrumentationRegistry.getInstrumentation();
+        mContext = InstrumentationRegistry.getTargetContext();
+        mSnapshotFile = new File(mContext.getCacheDir(), "benchmark_startup.snapshot");
+    }
+
+    @Test
+    public void timeToFirstRow() throws InterruptedException {
+        for (int size : Benchmark.catalogSizes()) {
+            BenchmarkCatalog catalog = new BenchmarkCatalog(mContext, CATALOG_NAME);
+            catalog.fill(size);
+            catalog.getProvider().shutdown();
+
+            //Without a snapshot the first row waits for the database to open and the first page query.
+            measure(String.format(Locale.US, "first row, catalog %d, no snapshot", size), null);
+
+            //The warm up runs save the snapshot that the timed runs show.
+            mSnapshotFile.delete();
+            measure(String.format(Locale.US, "first row, catalog %d, snapshot", size), mSnapshotFile);
+        }
+    }
+
+    /**
+     * Starts a provider and a pager again and again, and reports the time until the first row is there.
+     * @param name of the benchmark
+     * @param snapshotFile for the pager, or null for none
+     */
+    private void measure(String name, File snapshotFile) throws InterruptedException {
+        long[] durations = new long[ITERATIONS];
+        for (int i = 0; i < WARMUP_ITERATIONS + ITERATIONS; i++) {
+            long duration = timeToFirstRow(snapshotFile);
+            if (i >= WARMUP_ITERATIONS) {
+                durations[i - WARMUP_ITERATIONS] = duration;
+            }
+        }
+        Arrays.sort(durations);
+        Benchmark.report(String.format(Locale.US, "%s: p50 %.1f ms, p90 %.1f ms, max %.1f ms", name,
+                durations[ITERATIONS / 2] / 1e6, durations[ITERATIONS * 9 / 10] / 1e6, durations[ITERATIONS - 1] / 1e6));
+    }
+
+    /**
+     * @param snapshotFile for the pager, or null for none
+     * @return nanoseconds from starting the provider until the pager has the first row
+     */
+    private long timeToFirstRow(final File snapshotFile) throws InterruptedException {
+        final long start = SystemClock.elapsedRealtimeNanos();
+        final BenchmarkCatalog catalog = new BenchmarkCatalog(mContext, CATALOG_NAME);
+        final MockContentResolver resolver = new MockContentResolver(mContext);
+        resolver.addProvider(StoreContract.CONTENT_AUTHORITY, catalog.getProvider());
+
+        final FirstRowListener listener = new FirstRowListener();
+        mInstrumentation.runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                listener.mPager = new InventoryPager(resolver, listener);
+                if (snapshotFile != null) {
+                    listener.mPager.setSnapshotFile(snapshotFile);
+                }
+                listener.mPager.start();
+            }
+        });
+        assertTrue("First row did not load", listener.mLoaded.await(LOAD_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+        long duration = listener.mLoadedAt - start;
+
+        //Without a snapshot to show, the first row came from the first page, which can then be saved.
+        final boolean save = snapshotFile != null && !snapshotFile.exists();
+        mInstrumentation.runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                if (save) {
+                    listener.mPager.saveSnapshot();
+                }
+                listener.mPager.close();
+            }
+        });
+        catalog.getProvider().shutdown();
+        return duration;
+    }
+
+    /**
+     * Notes the time the first row of the pager can be shown. Called on the main thread.
+     */
+    private static class FirstRowListener implements InventoryPager.Listener {
+
+        private final CountDownLatch mLoaded = new CountDownLatch(1);
+        private InventoryPager mPager;
+        private volatile long mLoadedAt;
+
+        @Override
+        public void onPagesChanged() {
+            onChanged(0, 0, null);
+        }
+
+        @Override
+        public void onChanged(int position, int count, Object payload) {
+            if (mLoaded.getCount() != 0 && mPager.getCount() > 0 && mPager.getItem(0) != null) {
+                mLoadedAt = SystemClock.elapsedRealtimeNanos();
+                mLoaded.countDown();
+            }
+        }
+
+        @Override
+        public void onInserted(int position, int count) {
+        }
+
+        @Override
+        public void onRemoved(int position, int count) {
+        }
+
+        @Override
+        public void onMoved(int fromPosition, int toPosition) {
+        }
+    }
+}
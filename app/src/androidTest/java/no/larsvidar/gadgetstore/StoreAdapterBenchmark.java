@@ -0,0 +1,113 @@
+package no.larsvidar.gadgetstore;
+
+import android.app.Instrumentation;
+import android.content.Context;
+import android.os.SystemClock;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.filters.LargeTest;
+import android.support.test.runner.AndroidJUnit4;
+import android.test.mock.MockContentResolver;
+import android.view.ContextThemeWrapper;
+import android.widget.FrameLayout;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import no.larsvidar.gadgetstore.data.BenchmarkCatalog;
+import no.larsvidar.gadgetstore.data.InventoryPager;
+import no.larsvidar.gadgetstore.data.StoreContract;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Benchmark for binding product rows in StoreAdapter, reading products from a loaded pager page.
+ */
+@LargeTest
+@RunWith(AndroidJUnit4.class)
+public class StoreAdapterBenchmark {
+
+    private static final int ITERATIONS = 5000;
+    private static final long LOAD_TIMEOUT_MILLIS = 10000;
+
+    //Binding only reads loaded pages, so the catalog size does not matter here.
+    private static final int CATALOG_SIZE = InventoryPager.PAGE_SIZE * 4;
+
+    private Instrumentation mInstrumentation;
+    private StoreAdapter mAdapter;
+    private InventoryPager mPager;
+    private StoreAdapter.ProductViewHolder mHolder;
+
+    @Before
+    public void setUp() {
+        mInstrumentation = InstrumentationRegistry.getInstrumentation();
+        Context context = new ContextThemeWrapper(InstrumentationRegistry.getTargetContext(), R.style.AppTheme);
+
+        //Serve the pager from a benchmark catalog instead of the app database.
+        BenchmarkCatalog catalog = new BenchmarkCatalog(context, "adapter");
+        catalog.fill(CATALOG_SIZE);
+        final MockContentResolver resolver = new MockContentResolver(context);
+        resolver.addProvider(StoreContract.CONTENT_AUTHORITY, catalog.getProvider());
+
+        mAdapter = new StoreAdapter(context, null);
+        final FrameLayout parent = new FrameLayout(context);
+        mInstrumentation.runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                mPager = new InventoryPager(resolver, mAdapter);
+                mAdapter.setPager(mPager);
+                mPager.start();
+                mHolder = mAdapter.onCreateViewHolder(parent, 0);
+            }
+        });
+        waitForFirstPage();
+    }
+
+    @After
+    public void tearDown() {
+        mInstrumentation.runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                mPager.close();
+            }
+        });
+    }
+
+    @Test
+    public void bindRow() {
+        final Benchmark.Operation bind = new Benchmark.Operation() {
+            @Override
+            public void run(int iteration) {
+                mAdapter.onBindViewHolder(mHolder, iteration % InventoryPager.PAGE_SIZE);
+            }
+        };
+
+        //Views belong to the main thread, so bind there.
+        mInstrumentation.runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                Benchmark.measure("bind row", ITERATIONS, bind);
+            }
+        });
+    }
+
+    /**
+     * Waits until every product on the first page is loaded.
+     */
+    private void waitForFirstPage() {
+        final boolean[] loaded = new boolean[1];
+        long deadline = SystemClock.uptimeMillis() + LOAD_TIMEOUT_MILLIS;
+        while (!loaded[0] && SystemClock.uptimeMillis() < deadline) {
+            mInstrumentation.runOnMainSync(new Runnable() {
+                @Override
+                public void run() {
+                    loaded[0] = mPager.getCount() >= InventoryPager.PAGE_SIZE
+                            && mPager.getItem(InventoryPager.PAGE_SIZE - 1) != null;
+                }
+            });
+            SystemClock.sleep(10);
+        }
+        assertTrue("First page did not load", loaded[0]);
+    }
+}
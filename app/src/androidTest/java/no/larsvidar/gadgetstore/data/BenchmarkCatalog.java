@@ -0,0 +1,127 @@
+package no.larsvidar.gadgetstore.data;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.pm.ProviderInfo;
+import android.database.Cursor;
+import android.test.RenamingDelegatingContext;
+
+import java.io.File;
+
+import no.larsvidar.gadgetstore.data.StoreContract.InventoryEntry;
+
+/**
+ * A StoreProvider on its own database file, filled with generated products.
+ * Benchmarks never touch the products of the installed app.
+ */
+public final class BenchmarkCatalog {
+
+    //Prefix for the database files of benchmark providers.
+    private static final String FILE_PREFIX = "benchmark_";
+
+    //Number of products written in each bulk insert while filling the catalog.
+    private static final int FILL_CHUNK_SIZE = 5000;
+
+    private final Context mContext;
+    private final StoreProvider mProvider;
+    private int mSize = -1;
+    private long mFirstId;
+
+    /**
+     * Constructor
+     * @param context of the app under test
+     * @param name of the catalog. Each name has its own database file.
+     */
+    public BenchmarkCatalog(Context context, String name) {
+        mContext = new RenamingDelegatingContext(context, FILE_PREFIX + name + "_");
+        mProvider = new StoreProvider();
+
+        //Newer platforms check the authority of calls made through a ContentResolver.
+        ProviderInfo info = new ProviderInfo();
+        info.authority = StoreContract.CONTENT_AUTHORITY;
+        mProvider.attachInfo(mContext, info);
+    }
+
+    public StoreProvider getProvider() {
+        return mProvider;
+    }
+
+    /**
+     * Makes sure the catalog holds exactly the given number of generated products.
+     * @param size number of products
+     */
+    public void fill(int size) {
+        if (size == mSize) {
+            return;
+        }
+        mProvider.delete(InventoryEntry.CONTENT_URI, null, null);
+
+        //Deleting only marks the products. Purging them here keeps the background purge out of the measurements.
+        mProvider.call(StoreContract.METHOD_PURGE_PRODUCTS, null, null);
+
+        ContentValues[] chunk = new ContentValues[Math.min(size, FILL_CHUNK_SIZE)];
+        for (int first = 0; first < size; first += chunk.length) {
+            int count = Math.min(chunk.length, size - first);
+            ContentValues[] values = count == chunk.length ? chunk : new ContentValues[count];
+            for (int i = 0; i < count; i++) {
+                values[i] = product(first + i);
+            }
+            mProvider.bulkInsert(InventoryEntry.CONTENT_URI, values);
+        }
+        mSize = size;
+
+        //Ids keep counting after a delete, so read where this fill started.
+        Cursor cursor = mProvider.query(InventoryEntry.CONTENT_URI,
+                new String[]{"MIN(" + InventoryEntry._ID + ")"}, null, null, null);
+        try {
+            mFirstId = cursor.moveToFirst() ? cursor.getLong(0) : 0;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Opens the catalog database beside the provider, for benchmarks that change the schema.
+     * @return a new helper, to be closed by the caller
+     */
+    public StoreDbHelper openHelper() {
+        return new StoreDbHelper(mContext);
+    }
+
+    /**
+     * @return the database file of the catalog
+     */
+    public File getDatabaseFile() {
+        return mContext.getDatabasePath(StoreDbHelper.DATABASE_NAME);
+    }
+
+    /**
+     * @return size in bytes of the database file and its write-ahead log
+     */
+    public long getDatabaseSize() {
+        File database = getDatabaseFile();
+        return database.length() + new File(database.getPath() + "-wal").length();
+    }
+
+    /**
+     * @param number of a product, from 0 to size - 1
+     * @return _ID of the product
+     */
+    public long idOf(int number) {
+        return mFirstId + number;
+    }
+
+    /**
+     * @param number of the product
+     * @return values for a generated product
+     */
+    public static ContentValues product(int number) {
+        ContentValues values = new ContentValues();
+        values.put(InventoryEntry.COLUMN_PRODUCT_NAME, "Gadget " + number);
+        values.put(InventoryEntry.COLUMN_PRODUCT_PRICE, 10 + number % 990);
+        values.put(InventoryEntry.COLUMN_PRODUCT_QUANTITY, number % 50);
+        values.put(InventoryEntry.COLUMN_SUPPLIER_NAME, "Supplier " + number % 100);
+        values.put(InventoryEntry.COLUMN_SUPPLIER_NUMBER, "555-" + (1000 + number % 100));
+        return values;
+    }
+}
@@ -0,0 +1,99 @@
+package no.larsvidar.gadgetstore.data;
+
+import android.content.ContentUris;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Bundle;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.filters.LargeTest;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Locale;
+
+import no.larsvidar.gadgetstore.Benchmark;
+import no.larsvidar.gadgetstore.data.StoreContract.InventoryEntry;
+
+/**
+ * Benchmark for single product queries with the product cache on and off, at each catalog size
+ * from the catalogSizes argument. Most lookups go to a small set of products, as when the user goes back and forth
+ * between the list and the same few products, and every tenth call sells one of them.
+ */
+@LargeTest
+@RunWith(AndroidJUnit4.class)
+public class CacheBenchmark {
+
+    private static final int ITERATIONS = 5000;
+
+    //Nine of ten lookups go to this many products. The rest spread over the whole catalog.
+    private static final int HOT_PRODUCTS = 100;
+    private static final int ID_STRIDE = 7919;
+    private static final int SELL_INTERVAL = 10;
+
+    private BenchmarkCatalog mCatalog;
+
+    @After
+    public void tearDown() {
+        if (mCatalog != null) {
+            mCatalog.getProvider().setCacheEnabled(true);
+        }
+    }
+
+    @Test
+    public void lookupsWithAndWithoutCache() {
+        mCatalog = new BenchmarkCatalog(InstrumentationRegistry.getTargetContext(), "cache");
+        for (int size : Benchmark.catalogSizes()) {
+            mCatalog.fill(size);
+            measure(size, false);
+            measure(size, true);
+        }
+    }
+
+    /**
+     * Measures the lookups, and reports the hit rate when the cache is on.
+     * @param catalogSize number of products in the catalog
+     * @param cacheEnabled whether the provider answers from its cache
+     */
+    private void measure(final int catalogSize, boolean cacheEnabled) {
+        final StoreProvider provider = mCatalog.getProvider();
+        provider.setCacheEnabled(cacheEnabled);
+        Bundle before = provider.call(StoreContract.METHOD_CACHE_STATS, null, null);
+
+        String name = String.format(Locale.US, "lookup, cache %s [%d]", cacheEnabled ? "on" : "off", catalogSize);
+        Benchmark.measure(name, ITERATIONS, new Benchmark.Operation() {
+            @Override
+            public void run(int iteration) {
+                Uri uri = ContentUris.withAppendedId(InventoryEntry.CONTENT_URI, mCatalog.idOf(productNumber(iteration, catalogSize)));
+                if (iteration % SELL_INTERVAL == 0) {
+                    provider.update(Uri.withAppendedPath(uri, StoreContract.PATH_SELL), null, null, null);
+                }
+                Cursor cursor = provider.query(uri, InventoryItem.PROJECTION, null, null, null);
+                cursor.moveToFirst();
+                cursor.close();
+            }
+        });
+
+        if (cacheEnabled) {
+            Bundle after = provider.call(StoreContract.METHOD_CACHE_STATS, null, null);
+            long hits = after.getLong(StoreContract.EXTRA_CACHE_HITS) - before.getLong(StoreContract.EXTRA_CACHE_HITS);
+            long misses = after.getLong(StoreContract.EXTRA_CACHE_MISSES) - before.getLong(StoreContract.EXTRA_CACHE_MISSES);
+            Benchmark.report(String.format(Locale.US, "%s: hit rate %.1f %%, %d evictions", name,
+                    100.0 * hits / Math.max(1, hits + misses), after.getLong(StoreContract.EXTRA_CACHE_EVICTIONS)));
+        }
+    }
+
+    /**
+     * @param iteration number of the call
+     * @param catalogSize number of products in the catalog
+     * @return number of the product looked up by the call
+     */
+    private static int productNumber(int iteration, int catalogSize) {
+        if (iteration % 10 != 0) {
+            return iteration % Math.min(HOT_PRODUCTS, catalogSize);
+        }
+        return (int) ((long) iteration * ID_STRIDE % catalogSize);
+    }
+}
@@ -0,0 +1,135 @@
+package no.larsvidar.gadgetstore.data;
+
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.filters.LargeTest;
+import android.support.test.runner.AndroidJUnit4;
+import android.test.mock.MockContentResolver;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import no.larsvidar.gadgetstore.data.StoreContract.InventoryEntry;
+import no.larsvidar.gadgetstore.data.StoreContract.SalesEntry;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Fires many sales of the same product at once through ContentResolver.call, and checks that every sale
+ * is counted exactly once and the stock never goes below 0.
+ */
+@LargeTest
+@RunWith(AndroidJUnit4.class)
+public class ConcurrentSellTest {
+
+    private static final int CATALOG_SIZE = 100;
+    private static final int STOCK = 2000;
+    private static final int THREADS = 8;
+
+    //Twice the stock, so half of the sales have to be turned down.
+    private static final int SALES = STOCK * 2;
+
+    private BenchmarkCatalog mCatalog;
+    private MockContentResolver mResolver;
+
+    @Before
+    public void setUp() {
+        mCatalog = new BenchmarkCatalog(InstrumentationRegistry.getTargetContext(), "concurrent_sell");
+        mCatalog.fill(CATALOG_SIZE);
+        mResolver = new MockContentResolver(InstrumentationRegistry.getTargetContext());
+        mResolver.addProvider(StoreContract.CONTENT_AUTHORITY, mCatalog.getProvider());
+    }
+
+    @Test
+    public void parallelSalesLoseNoUpdates() throws Exception {
+        final long id = mCatalog.idOf(0);
+        ContentValues quantity = new ContentValues();
+        quantity.put(InventoryEntry.COLUMN_PRODUCT_QUANTITY, STOCK);
+        mResolver.update(ContentUris.withAppendedId(InventoryEntry.CONTENT_URI, id), quantity, null, null);
+        int salesBefore = countSales(id);
+
+        //Each sale returns the quantity left, or -1 when it is turned down.
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        List<Future<Long>> sales = new ArrayList<>(SALES);
+        try {
+            for (int i = 0; i < SALES; i++) {
+                sales.add(executor.submit(new Callable<Long>() {
+                    @Override
+                    public Long call() {
+                        return mResolver.call(InventoryEntry.CONTENT_URI, StoreContract.METHOD_SELL, String.valueOf(id), null)
+                                .getLong(StoreContract.EXTRA_QUANTITY);
+                    }
+                }));
+            }
+
+            //A lost update would hand out the same quantity left twice.
+            boolean[] seen = new boolean[STOCK];
+            int sold = 0;
+            for (Future<Long> sale : sales) {
+                long left = sale.get();
+                assertTrue("Quantity went below 0: " + left, left >= -1);
+                if (left >= 0) {
+                    assertTrue("Quantity out of range: " + left, left < STOCK);
+                    assertTrue("Quantity handed out twice: " + left, !seen[(int) left]);
+                    seen[(int) left] = true;
+                    sold++;
+                }
+            }
+            assertEquals(STOCK, sold);
+        } finally {
+            executor.shutdown();
+        }
+
+        assertEquals(0, readQuantity(id));
+        assertEquals(STOCK, countSales(id) - salesBefore);
+
+        //Folding the sales in keeps the same quantity.
+        mResolver.call(StoreContract.BASE_CONTENT_URI, StoreContract.METHOD_COMPACT_SALES, null, null);
+        assertEquals(0, readQuantity(id));
+    }
+
+    @Test
+    public void sellWithoutProductIdIsRefused() {
+        for (String arg : new String[]{null, "", "gadget", "-1"}) {
+            try {
+                mResolver.call(InventoryEntry.CONTENT_URI, StoreContract.METHOD_SELL, arg, null);
+                fail("Sold product " + arg);
+            } catch (IllegalArgumentException expected) {
+                //The argument must be the _ID of a product.
+            }
+        }
+    }
+
+    private int readQuantity(long id) {
+        Cursor cursor = mResolver.query(ContentUris.withAppendedId(InventoryEntry.CONTENT_URI, id),
+                InventoryItem.PROJECTION, null, null, null);
+        try {
+            cursor.moveToFirst();
+            return InventoryItem.fromCursor(cursor).getQuantity();
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private int countSales(long id) {
+        Cursor cursor = mResolver.query(SalesEntry.CONTENT_URI, new String[]{SalesEntry._ID},
+                SalesEntry.COLUMN_PRODUCT_ID + " = " + id, null, null);
+        try {
+            return cursor.getCount();
+        } finally {
+            cursor.close();
+        }
+    }
+}
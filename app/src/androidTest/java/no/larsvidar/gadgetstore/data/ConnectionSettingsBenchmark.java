@@ -0,0 +1,130 @@
+package no.larsvidar.gadgetstore.data;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.os.SystemClock;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.filters.LargeTest;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import no.larsvidar.gadgetstore.Benchmark;
+import no.larsvidar.gadgetstore.data.StoreContract.InventoryEntry;
+
+/**
+ * Benchmark for reading a page of products while another thread keeps writing, at each catalog size
+ * from the catalogSizes argument. Runs once with the settings the app had before write-ahead logging,
+ * and once through StoreDbHelper with the current ones.
+ */
+@LargeTest
+@RunWith(AndroidJUnit4.class)
+public class ConnectionSettingsBenchmark {
+
+    private static final int ITERATIONS = 500;
+    private static final int ID_STRIDE = 7919;
+
+    //Updates in each write transaction.
+    private static final int WRITES_PER_TRANSACTION = 10;
+
+    private static final String SQL_PAGE = "SELECT " + InventoryEntry._ID + ", " + InventoryEntry.COLUMN_PRODUCT_NAME + ", "
+            + InventoryEntry.COLUMN_PRODUCT_PRICE + " FROM " + InventoryEntry.TABLE_NAME + " WHERE " + InventoryEntry._ID
+            + " > ? ORDER BY " + InventoryEntry._ID + " LIMIT " + InventoryPager.PAGE_SIZE;
+    private static final String SQL_UPDATE = "UPDATE " + InventoryEntry.PRODUCTS_TABLE_NAME + " SET "
+            + InventoryEntry.COLUMN_PRODUCT_QUANTITY + " = ? WHERE " + InventoryEntry._ID + " = ?";
+
+    private BenchmarkCatalog mCatalog;
+    private int mCatalogSize;
+
+    @Test
+    public void readsDuringWrites() throws InterruptedException {
+        for (int size : Benchmark.catalogSizes()) {
+            //A provider can not be used after it is shut down, so each size fills through a new one.
+            mCatalog = new BenchmarkCatalog(InstrumentationRegistry.getTargetContext(), "connection");
+            mCatalogSize = size;
+            mCatalog.fill(size);
+            mCatalog.getProvider().shutdown();
+
+            //Before: one connection in rollback journal mode, fully synced, with the default page cache.
+            SQLiteDatabase database = SQLiteDatabase.openDatabase(mCatalog.getDatabaseFile().getPath(), null,
+                    SQLiteDatabase.OPEN_READWRITE);
+            try {
+                database.execSQL("PRAGMA synchronous = FULL");
+                measure(database, "old settings");
+            } finally {
+                database.close();
+            }
+
+            StoreDbHelper helper = mCatalog.openHelper();
+            try {
+                measure(helper.getWritableDatabase(), "current settings");
+            } finally {
+                helper.close();
+            }
+        }
+    }
+
+    /**
+     * Measures page reads on this thread while a second thread writes.
+     * @param database to read and write
+     * @param variant added to the benchmark name
+     */
+    private void measure(final SQLiteDatabase database, String variant) throws InterruptedException {
+        final AtomicBoolean writing = new AtomicBoolean(true);
+        final AtomicInteger transactions = new AtomicInteger();
+        Thread writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                SQLiteStatement update = database.compileStatement(SQL_UPDATE);
+                for (int i = 0; writing.get(); ) {
+                    database.beginTransaction();
+                    try {
+                        for (int j = 0; j < WRITES_PER_TRANSACTION; j++, i++) {
+                            update.bindLong(1, i % 50);
+                            update.bindLong(2, mCatalog.idOf(productNumber(i)));
+                            update.executeUpdateDelete();
+                        }
+                        database.setTransactionSuccessful();
+                    } finally {
+                        database.endTransaction();
+                    }
+                    transactions.incrementAndGet();
+                }
+                update.close();
+            }
+        }, "benchmark writer");
+        writer.start();
+        long start = SystemClock.elapsedRealtimeNanos();
+
+        try {
+            final String[] args = new String[1];
+            String name = "page read while writing, " + variant + " [" + mCatalogSize + "]";
+            Benchmark.measure(name, ITERATIONS, new Benchmark.Operation() {
+                @Override
+                public void run(int iteration) {
+                    args[0] = Long.toString(mCatalog.idOf(productNumber(iteration)) - 1);
+                    Cursor cursor = database.rawQuery(SQL_PAGE, args);
+                    while (cursor.moveToNext()) {
+                        cursor.getLong(0);
+                    }
+                    cursor.close();
+                }
+            });
+            Benchmark.report(String.format(Locale.US, "%s: %.0f write transactions/s alongside", name,
+                    transactions.get() * 1e9 / (SystemClock.elapsedRealtimeNanos() - start)));
+        } finally {
+            writing.set(false);
+            writer.join();
+        }
+    }
+
+    private int productNumber(int iteration) {
+        return (int) ((long) iteration * ID_STRIDE % mCatalogSize);
+    }
+}
@@ -0,0 +1,99 @@
+package no.larsvidar.gadgetstore.data;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.os.SystemClock;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.filters.LargeTest;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Locale;
+
+import no.larsvidar.gadgetstore.Benchmark;
+import no.larsvidar.gadgetstore.data.StoreContract.InventoryEntry;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Benchmark for importing products with bulkInsert, in rows per second, at 10k, 50k and 100k rows.
+ * One insert call per row is measured at the smallest size to compare with.
+ */
+@LargeTest
+@RunWith(AndroidJUnit4.class)
+public class ImportBenchmark {
+
+    private static final int[] ROW_COUNTS = {10000, 50000, 100000};
+
+    //Rows in each bulkInsert, as ProductImporter writes them.
+    private static final int CHUNK_SIZE = 5000;
+
+    private StoreProvider mProvider;
+
+    @Before
+    public void setUp() {
+        mProvider = new BenchmarkCatalog(InstrumentationRegistry.getTargetContext(), "import").getProvider();
+    }
+
+    @Test
+    public void bulkInsert() {
+        for (int rows : ROW_COUNTS) {
+            clear();
+            ContentValues[] chunk = new ContentValues[CHUNK_SIZE];
+            long nanos = 0;
+            for (int first = 0; first < rows; first += CHUNK_SIZE) {
+                int count = Math.min(CHUNK_SIZE, rows - first);
+                ContentValues[] values = count == CHUNK_SIZE ? chunk : new ContentValues[count];
+                for (int i = 0; i < count; i++) {
+                    values[i] = BenchmarkCatalog.product(first + i);
+                }
+                long start = SystemClock.elapsedRealtimeNanos();
+                mProvider.bulkInsert(InventoryEntry.CONTENT_URI, values);
+                nanos += SystemClock.elapsedRealtimeNanos() - start;
+            }
+            assertEquals(rows, count());
+            report("bulk insert", rows, nanos);
+        }
+    }
+
+    @Test
+    public void insertEachRow() {
+        int rows = ROW_COUNTS[0];
+        clear();
+        long nanos = 0;
+        for (int i = 0; i < rows; i++) {
+            ContentValues values = BenchmarkCatalog.product(i);
+            long start = SystemClock.elapsedRealtimeNanos();
+            mProvider.insert(InventoryEntry.CONTENT_URI, values);
+            nanos += SystemClock.elapsedRealtimeNanos() - start;
+        }
+        assertEquals(rows, count());
+        report("insert each row", rows, nanos);
+    }
+
+    /**
+     * Deletes every product and purges the rows, so each run starts on an empty table.
+     */
+    private void clear() {
+        mProvider.delete(InventoryEntry.CONTENT_URI, null, null);
+        mProvider.call(StoreContract.METHOD_PURGE_PRODUCTS, null, null);
+    }
+
+    private int count() {
+        Cursor cursor = mProvider.query(InventoryEntry.CONTENT_URI, new String[]{"COUNT(*)"}, null, null, null);
+        try {
+            cursor.moveToFirst();
+            return cursor.getInt(0);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private static void report(String name, int rows, long nanos) {
+        Benchmark.report(String.format(Locale.US, "%s [%d rows]: %.0f rows/s, %.0f ms",
+                name, rows, rows * 1e9 / nanos, nanos / 1e6));
+    }
+}
@@ -0,0 +1,137 @@
+package no.larsvidar.gadgetstore.data;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.net.Uri;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.filters.LargeTest;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import no.larsvidar.gadgetstore.Benchmark;
+import no.larsvidar.gadgetstore.data.StoreContract.InventoryEntry;
+
+/**
+ * Benchmark for the sorted and filtered list on 100k products, with the inventory indexes and with them dropped.
+ * The indexes are made again afterwards, from the SQL they were made with.
+ */
+@LargeTest
+@RunWith(AndroidJUnit4.class)
+public class IndexBenchmark {
+
+    private static final int CATALOG_SIZE = 100000;
+    private static final int ITERATIONS = 200;
+    private static final int ID_STRIDE = 7919;
+
+    //Indexes serving the sorted and filtered list.
+    private static final String[] INDEXES = {
+            "products_product_name_nocase_index",
+            "products_product_price_index",
+            "products_product_quantity_index"};
+
+    private BenchmarkCatalog mCatalog;
+    private StoreProvider mProvider;
+
+    @Before
+    public void setUp() {
+        mCatalog = new BenchmarkCatalog(InstrumentationRegistry.getTargetContext(), "index");
+        mCatalog.fill(CATALOG_SIZE);
+        mProvider = mCatalog.getProvider();
+
+        //The quantity filter only uses its index once every sale is folded in.
+        mProvider.call(StoreContract.METHOD_COMPACT_SALES, null, null);
+    }
+
+    @Test
+    public void listWithAndWithoutIndexes() {
+        measure("with indexes");
+
+        StoreDbHelper helper = mCatalog.openHelper();
+        try {
+            SQLiteDatabase database = helper.getWritableDatabase();
+            List<String> indexSql = new ArrayList<>();
+            for (String index : INDEXES) {
+                Cursor cursor = database.rawQuery("SELECT sql FROM sqlite_master WHERE type = 'index' AND name = ?",
+                        new String[]{index});
+                try {
+                    if (cursor.moveToFirst()) {
+                        indexSql.add(cursor.getString(0));
+                        database.execSQL("DROP INDEX " + index);
+                    }
+                } finally {
+                    cursor.close();
+                }
+            }
+
+            try {
+                measure("without indexes");
+            } finally {
+                for (String sql : indexSql) {
+                    database.execSQL(sql);
+                }
+            }
+        } finally {
+            helper.close();
+        }
+    }
+
+    /**
+     * Measures a page of each list order, and the low stock filter.
+     * @param variant added to the benchmark names
+     */
+    private void measure(String variant) {
+        final Uri byName = sortedUri(InventoryEntry.SORT_NAME);
+        Benchmark.measure("page by name, " + variant + " [" + CATALOG_SIZE + "]", ITERATIONS, new Benchmark.Operation() {
+            @Override
+            public void run(int iteration) {
+                readPage(InventoryEntry.buildPageUri(byName, "Gadget " + productNumber(iteration), 0,
+                        InventoryPager.PAGE_SIZE));
+            }
+        });
+
+        final Uri byPrice = sortedUri(InventoryEntry.SORT_PRICE);
+        Benchmark.measure("page by price, " + variant + " [" + CATALOG_SIZE + "]", ITERATIONS, new Benchmark.Operation() {
+            @Override
+            public void run(int iteration) {
+                //Generated prices run from 10 to 999.
+                readPage(InventoryEntry.buildPageUri(byPrice, String.valueOf(10 + productNumber(iteration) % 990), 0,
+                        InventoryPager.PAGE_SIZE));
+            }
+        });
+
+        final Uri lowStock = InventoryEntry.CONTENT_URI.buildUpon()
+                .appendQueryParameter(InventoryEntry.QUERY_PARAMETER_MAX_QUANTITY, "0")
+                .build();
+        Benchmark.measure("out of stock page, " + variant + " [" + CATALOG_SIZE + "]", ITERATIONS, new Benchmark.Operation() {
+            @Override
+            public void run(int iteration) {
+                readPage(InventoryEntry.buildPageUri(lowStock, mCatalog.idOf(productNumber(iteration)),
+                        InventoryPager.PAGE_SIZE));
+            }
+        });
+    }
+
+    private static Uri sortedUri(String sort) {
+        return InventoryEntry.CONTENT_URI.buildUpon()
+                .appendQueryParameter(InventoryEntry.QUERY_PARAMETER_SORT, sort)
+                .build();
+    }
+
+    private static int productNumber(int iteration) {
+        return (int) ((long) iteration * ID_STRIDE % CATALOG_SIZE);
+    }
+
+    private void readPage(Uri uri) {
+        Cursor cursor = mProvider.query(uri, InventoryItem.PROJECTION, null, null, null);
+        while (cursor.moveToNext()) {
+            InventoryItem.fromCursor(cursor);
+        }
+        cursor.close();
+    }
+}
@@ -0,0 +1,94 @@
+package no.larsvidar.gadgetstore.data;
+
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.os.ParcelFileDescriptor;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+
+import no.larsvidar.gadgetstore.data.StoreContract.InventoryEntry;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Reads exports of a generated catalog through StoreProvider.openFile.
+ */
+@RunWith(AndroidJUnit4.class)
+public class InventoryExporterTest {
+
+    //More than one export page, and not a whole number of pages.
+    private static final int CATALOG_SIZE = 2500;
+
+    private BenchmarkCatalog mCatalog;
+
+    @Before
+    public void setUp() {
+        mCatalog = new BenchmarkCatalog(InstrumentationRegistry.getTargetContext(), "export");
+        mCatalog.fill(CATALOG_SIZE);
+
+        //Only the first product has a reorder threshold.
+        ContentValues values = new ContentValues();
+        values.put(InventoryEntry.COLUMN_REORDER_THRESHOLD, 0);
+        mCatalog.getProvider().update(InventoryEntry.CONTENT_URI, values, null, null);
+        values.put(InventoryEntry.COLUMN_REORDER_THRESHOLD, 3);
+        mCatalog.getProvider().update(ContentUris.withAppendedId(InventoryEntry.CONTENT_URI, mCatalog.idOf(0)),
+                values, null, null);
+    }
+
+    @Test
+    public void exportsCsv() throws IOException {
+        ParcelFileDescriptor pipe = mCatalog.getProvider().openFile(InventoryEntry.EXPORT_URI, "r");
+        BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new ParcelFileDescriptor.AutoCloseInputStream(pipe), "UTF-8"));
+        try {
+            assertEquals("_id,product_name,product_price,product_quantity,supplier_name,supplier_number,reorder_threshold",
+                    reader.readLine());
+            assertEquals(mCatalog.idOf(0) + ",Gadget 0,10,0,Supplier 0,555-1000,3", reader.readLine());
+
+            int rows = 1;
+            while (reader.readLine() != null) {
+                rows++;
+            }
+            assertEquals(CATALOG_SIZE, rows);
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test
+    public void exportsBinary() throws IOException {
+        ParcelFileDescriptor pipe = mCatalog.getProvider().openFile(
+                InventoryEntry.buildExportUri(InventoryEntry.FORMAT_BINARY), "r");
+        DataInputStream input = new DataInputStream(new BufferedInputStream(
+                new ParcelFileDescriptor.AutoCloseInputStream(pipe)));
+        try {
+            assertEquals(InventoryEntry.BINARY_EXPORT_MAGIC, input.readInt());
+            assertEquals(InventoryEntry.BINARY_EXPORT_VERSION, input.readInt());
+
+            int rows = 0;
+            while (input.readByte() == 1) {
+                assertEquals(mCatalog.idOf(rows), input.readLong());
+                assertEquals("Gadget " + rows, input.readUTF());
+                input.readInt();
+                input.readInt();
+                input.readUTF();
+                input.readUTF();
+                assertEquals(rows == 0 ? 3 : 0, input.readInt());
+                rows++;
+            }
+            assertEquals(CATALOG_SIZE, rows);
+        } finally {
+            input.close();
+        }
+    }
+}
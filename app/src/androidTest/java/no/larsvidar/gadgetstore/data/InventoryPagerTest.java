@@ -0,0 +1,182 @@
+package no.larsvidar.gadgetstore.data;
+
+import android.app.Instrumentation;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.net.Uri;
+import android.os.SystemClock;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.test.mock.MockContentResolver;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import no.larsvidar.gadgetstore.data.StoreContract.InventoryEntry;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that products moving into a page that is already full are shown, and push no other product out of the list,
+ * in sorted lists and in filtered lists in _ID order.
+ */
+@RunWith(AndroidJUnit4.class)
+public class InventoryPagerTest {
+
+    private static final int CATALOG_SIZE = 500;
+
+    //Time for changed pages to be reloaded.
+    private static final long SETTLE_MILLIS = 1000;
+    private static final long LOAD_TIMEOUT_MILLIS = 10000;
+
+    private Instrumentation mInstrumentation;
+    private BenchmarkCatalog mCatalog;
+    private StoreProvider mProvider;
+    private MockContentResolver mResolver;
+    private InventoryPager mPager;
+
+    @Before
+    public void setUp() {
+        mInstrumentation = InstrumentationRegistry.getInstrumentation();
+        mCatalog = new BenchmarkCatalog(InstrumentationRegistry.getTargetContext(), "pager");
+        mCatalog.fill(CATALOG_SIZE);
+        mProvider = mCatalog.getProvider();
+        mResolver = new MockContentResolver(InstrumentationRegistry.getTargetContext());
+        mResolver.addProvider(StoreContract.CONTENT_AUTHORITY, mProvider);
+
+        mInstrumentation.runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                mPager = new InventoryPager(mResolver, new IgnoringListener());
+                mPager.start();
+            }
+        });
+    }
+
+    @After
+    public void tearDown() {
+        mInstrumentation.runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                mPager.close();
+            }
+        });
+        //The product added by a test would change the catalog of the next one.
+        mCatalog.fill(0);
+    }
+
+    @Test
+    public void insertIntoMiddlePageOfSortedList() {
+        setListUri(InventoryEntry.CONTENT_URI.buildUpon()
+                .appendQueryParameter(InventoryEntry.QUERY_PARAMETER_SORT, InventoryEntry.SORT_NAME)
+                .build());
+        assertEquals(CATALOG_SIZE, readAll(CATALOG_SIZE).size());
+
+        //Bring a page from the middle into memory, then add a product that sorts into it.
+        readAll(CATALOG_SIZE / 2);
+        ContentValues values = BenchmarkCatalog.product(CATALOG_SIZE);
+        values.put(InventoryEntry.COLUMN_PRODUCT_NAME, "Gadget 2500");
+        mProvider.insert(InventoryEntry.CONTENT_URI, values);
+        SystemClock.sleep(SETTLE_MILLIS);
+
+        assertEquals(CATALOG_SIZE + 1, readAll(CATALOG_SIZE + 1).size());
+    }
+
+    @Test
+    public void editIntoMiddlePageOfFilteredList() {
+        //Products with n % 50 up to 24 items, in _ID order.
+        setListUri(InventoryEntry.CONTENT_URI.buildUpon()
+                .appendQueryParameter(InventoryEntry.QUERY_PARAMETER_MAX_QUANTITY, "24")
+                .build());
+        int matching = CATALOG_SIZE / 2;
+        assertEquals(matching, readAll(matching).size());
+
+        //Product 125 has 25 items. With none left it joins the second page.
+        ContentValues values = new ContentValues();
+        values.put(InventoryEntry.COLUMN_PRODUCT_QUANTITY, 0);
+        mProvider.update(ContentUris.withAppendedId(InventoryEntry.CONTENT_URI, mCatalog.idOf(125)), values, null, null);
+        SystemClock.sleep(SETTLE_MILLIS);
+
+        assertEquals(matching + 1, readAll(matching + 1).size());
+    }
+
+    private void setListUri(final Uri listUri) {
+        mInstrumentation.runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                mPager.setListUri(listUri);
+            }
+        });
+    }
+
+    /**
+     * Reads the list from the start, one row at a time as a list being scrolled does, waiting for pages to load.
+     * @param end position to stop before
+     * @return _IDs of the products read
+     */
+    private Set<Long> readAll(final int end) {
+        final List<Long> ids = new ArrayList<>();
+        final int[] position = {0};
+        long deadline = SystemClock.uptimeMillis() + LOAD_TIMEOUT_MILLIS;
+        while (position[0] < end) {
+            final int before = position[0];
+            mInstrumentation.runOnMainSync(new Runnable() {
+                @Override
+                public void run() {
+                    while (position[0] < end && position[0] < mPager.getCount()) {
+                        InventoryItem item = mPager.getItem(position[0]);
+                        if (item == null) {
+                            break;
+                        }
+                        ids.add(item.getId());
+                        position[0]++;
+                    }
+                }
+            });
+            if (position[0] == before) {
+                assertTrue("Row " + before + " did not load", SystemClock.uptimeMillis() < deadline);
+                SystemClock.sleep(1);
+            } else {
+                deadline = SystemClock.uptimeMillis() + LOAD_TIMEOUT_MILLIS;
+            }
+        }
+
+        Set<Long> uniqueIds = new HashSet<>(ids);
+        assertEquals("Products shown twice", ids.size(), uniqueIds.size());
+        return uniqueIds;
+    }
+
+    /**
+     * The test reads the pager directly, so changes need no handling.
+     */
+    private static class IgnoringListener implements InventoryPager.Listener {
+
+        @Override
+        public void onPagesChanged() {
+        }
+
+        @Override
+        public void onInserted(int position, int count) {
+        }
+
+        @Override
+        public void onRemoved(int position, int count) {
+        }
+
+        @Override
+        public void onMoved(int fromPosition, int toPosition) {
+        }
+
+        @Override
+        public void onChanged(int position, int count, Object payload) {
+        }
+    }
+}
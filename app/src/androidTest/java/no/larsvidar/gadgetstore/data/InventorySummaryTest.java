@@ -0,0 +1,126 @@
+package no.larsvidar.gadgetstore.data;
+
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import no.larsvidar.gadgetstore.data.StoreContract.InventoryEntry;
+import no.larsvidar.gadgetstore.data.StoreContract.SummaryEntry;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that the trigger-maintained totals match totals computed from the products.
+ */
+@RunWith(AndroidJUnit4.class)
+public class InventorySummaryTest {
+
+    private static final int CATALOG_SIZE = 500;
+
+    private static final String[] TOTALS = {
+            SummaryEntry.COLUMN_PRODUCT_COUNT,
+            SummaryEntry.COLUMN_TOTAL_QUANTITY,
+            SummaryEntry.COLUMN_TOTAL_VALUE,
+            SummaryEntry.COLUMN_OUT_OF_STOCK_COUNT};
+
+    private static final String[] AGGREGATES = {
+            "COUNT(*)",
+            "IFNULL(SUM(" + InventoryEntry.COLUMN_PRODUCT_QUANTITY + "), 0)",
+            "IFNULL(SUM(" + InventoryEntry.COLUMN_PRODUCT_PRICE + " * " + InventoryEntry.COLUMN_PRODUCT_QUANTITY + "), 0)",
+            "IFNULL(SUM(" + InventoryEntry.COLUMN_PRODUCT_QUANTITY + " = 0), 0)"};
+
+    private BenchmarkCatalog mCatalog;
+    private StoreProvider mProvider;
+
+    @Before
+    public void setUp() {
+        mCatalog = new BenchmarkCatalog(InstrumentationRegistry.getTargetContext(), "summary");
+        mCatalog.fill(CATALOG_SIZE);
+        mProvider = mCatalog.getProvider();
+    }
+
+    @Test
+    public void totalsFollowChanges() {
+        assertTotals();
+
+        //Sell, change price and supplier, and delete.
+        mProvider.update(InventoryEntry.buildSellUri(mCatalog.idOf(1)), null, null, null);
+        ContentValues values = new ContentValues();
+        values.put(InventoryEntry.COLUMN_PRODUCT_PRICE, 999);
+        values.put(InventoryEntry.COLUMN_SUPPLIER_NAME, "New supplier");
+        mProvider.update(ContentUris.withAppendedId(InventoryEntry.CONTENT_URI, mCatalog.idOf(2)), values, null, null);
+        mProvider.delete(ContentUris.withAppendedId(InventoryEntry.CONTENT_URI, mCatalog.idOf(3)), null, null);
+        assertTotals();
+
+        //Delete every product of one supplier.
+        mProvider.delete(InventoryEntry.CONTENT_URI, InventoryEntry.COLUMN_SUPPLIER_NAME + " = ?", new String[]{"Supplier 5"});
+        assertTotals();
+        assertEquals(0, count(SummaryEntry.SUPPLIERS_URI, InventoryEntry.COLUMN_SUPPLIER_NAME + " = 'Supplier 5'"));
+    }
+
+    /**
+     * Folds in the sales, and compares the summary tables with totals computed from the products.
+     */
+    private void assertTotals() {
+        //Sales reach the totals once they are folded in.
+        mProvider.call(StoreContract.METHOD_COMPACT_SALES, null, null);
+
+        assertRowEquals(query(InventoryEntry.CONTENT_URI, AGGREGATES, null, null), query(SummaryEntry.CONTENT_URI, TOTALS, null, null));
+
+        String[] supplierAggregates = new String[AGGREGATES.length + 1];
+        String[] supplierTotals = new String[TOTALS.length + 1];
+        supplierAggregates[0] = supplierTotals[0] = InventoryEntry.COLUMN_SUPPLIER_ID;
+        System.arraycopy(AGGREGATES, 0, supplierAggregates, 1, AGGREGATES.length);
+        System.arraycopy(TOTALS, 0, supplierTotals, 1, TOTALS.length);
+
+        //The selection carries the GROUP BY, since the provider has no parameter for it.
+        Cursor expected = query(InventoryEntry.CONTENT_URI, supplierAggregates,
+                "1 GROUP BY " + InventoryEntry.COLUMN_SUPPLIER_ID, InventoryEntry.COLUMN_SUPPLIER_ID);
+        Cursor actual = query(SummaryEntry.SUPPLIERS_URI, supplierTotals, null, InventoryEntry.COLUMN_SUPPLIER_ID);
+        try {
+            assertEquals(expected.getCount(), actual.getCount());
+            while (expected.moveToNext() && actual.moveToNext()) {
+                for (int i = 0; i < supplierTotals.length; i++) {
+                    assertEquals(expected.getString(i), actual.getString(i));
+                }
+            }
+        } finally {
+            expected.close();
+            actual.close();
+        }
+    }
+
+    private void assertRowEquals(Cursor expected, Cursor actual) {
+        try {
+            assertTrue(expected.moveToFirst());
+            assertTrue(actual.moveToFirst());
+            for (int i = 0; i < expected.getColumnCount(); i++) {
+                assertEquals(expected.getLong(i), actual.getLong(i));
+            }
+        } finally {
+            expected.close();
+            actual.close();
+        }
+    }
+
+    private Cursor query(Uri uri, String[] projection, String selection, String sortOrder) {
+        return mProvider.query(uri, projection, selection, null, sortOrder);
+    }
+
+    private int count(Uri uri, String selection) {
+        Cursor cursor = query(uri, null, selection, null);
+        try {
+            return cursor.getCount();
+        } finally {
+            cursor.close();
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package no.larsvidar.gadgetstore.data;
+
+import android.app.Instrumentation;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.os.SystemClock;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.filters.LargeTest;
+import android.support.test.runner.AndroidJUnit4;
+import android.test.mock.MockContentResolver;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Locale;
+
+import no.larsvidar.gadgetstore.Benchmark;
+import no.larsvidar.gadgetstore.data.StoreContract.InventoryEntry;
+import no.larsvidar.gadgetstore.data.StoreContract.StatsEntry;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Sells 1,000 times from products on the first page of an open list, and counts the list queries
+ * the provider answered meanwhile through its metrics. Changes are gathered up before pages are reloaded,
+ * so the burst must only cost a few queries.
+ */
+@LargeTest
+@RunWith(AndroidJUnit4.class)
+public class ListQueryCountTest {
+
+    private static final int CATALOG_SIZE = 1000;
+    private static final int SALES = 1000;
+
+    //Pages are reloaded at most this often while changes keep coming, as in InventoryPager.
+    private static final long CHANGE_DELAY_MILLIS = 100;
+
+    //Time for the last reloads after the burst.
+    private static final long SETTLE_MILLIS = 1000;
+    private static final long LOAD_TIMEOUT_MILLIS = 10000;
+
+    private Instrumentation mInstrumentation;
+    private BenchmarkCatalog mCatalog;
+    private StoreProvider mProvider;
+    private InventoryPager mPager;
+
+    @Before
+    public void setUp() {
+        mInstrumentation = InstrumentationRegistry.getInstrumentation();
+        mCatalog = new BenchmarkCatalog(InstrumentationRegistry.getTargetContext(), "query_count");
+        mCatalog.fill(CATALOG_SIZE);
+        mProvider = mCatalog.getProvider();
+        final MockContentResolver resolver = new MockContentResolver(InstrumentationRegistry.getTargetContext());
+        resolver.addProvider(StoreContract.CONTENT_AUTHORITY, mProvider);
+
+        mInstrumentation.runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                mPager = new InventoryPager(resolver, new IgnoringListener());
+                mPager.start();
+            }
+        });
+        waitForFirstPage();
+    }
+
+    @After
+    public void tearDown() {
+        mInstrumentation.runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                mPager.close();
+            }
+        });
+    }
+
+    @Test
+    public void salesBurstCostsFewListQueries() {
+        //Stock up the first page, so none of the sales runs out.
+        ContentValues quantity = new ContentValues();
+        quantity.put(InventoryEntry.COLUMN_PRODUCT_QUANTITY, SALES);
+        for (int i = 0; i < InventoryPager.PAGE_SIZE; i++) {
+            mProvider.update(ContentUris.withAppendedId(InventoryEntry.CONTENT_URI, mCatalog.idOf(i)), quantity, null, null);
+        }
+        SystemClock.sleep(SETTLE_MILLIS);
+        long queriesBefore = countListQueries();
+
+        long start = SystemClock.uptimeMillis();
+        for (int i = 0; i < SALES; i++) {
+            long id = mCatalog.idOf(i % InventoryPager.PAGE_SIZE);
+            assertTrue(mProvider.call(StoreContract.METHOD_SELL, String.valueOf(id), null)
+                    .getLong(StoreContract.EXTRA_QUANTITY) >= 0);
+        }
+        long burstMillis = SystemClock.uptimeMillis() - start;
+        SystemClock.sleep(SETTLE_MILLIS);
+
+        long queries = countListQueries() - queriesBefore;
+        Benchmark.report(String.format(Locale.US, "sales burst [%d sales in %d ms]: %d list queries",
+                SALES, burstMillis, queries));
+
+        //One reload per delay while the burst lasts, the last one after it, and a few for whole list refreshes.
+        long limit = burstMillis / CHANGE_DELAY_MILLIS + 5;
+        assertTrue(queries + " list queries for " + SALES + " sales, expected at most " + limit, queries <= limit);
+        assertTrue("The list was not reloaded", queries > 0);
+    }
+
+    /**
+     * @return number of product list queries the provider has answered
+     */
+    private long countListQueries() {
+        Cursor cursor = mProvider.query(StatsEntry.CONTENT_URI, null, null, null, null);
+        try {
+            int operation = cursor.getColumnIndexOrThrow(StatsEntry.COLUMN_OPERATION);
+            int match = cursor.getColumnIndexOrThrow(StatsEntry.COLUMN_MATCH_CODE);
+            int count = cursor.getColumnIndexOrThrow(StatsEntry.COLUMN_COUNT);
+            while (cursor.moveToNext()) {
+                if ("query".equals(cursor.getString(operation)) && cursor.getInt(match) == StoreProvider.INVENTORY) {
+                    return cursor.getLong(count);
+                }
+            }
+            return 0;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Waits until every product on the first page is loaded.
+     */
+    private void waitForFirstPage() {
+        final boolean[] loaded = new boolean[1];
+        long deadline = SystemClock.uptimeMillis() + LOAD_TIMEOUT_MILLIS;
+        while (!loaded[0] && SystemClock.uptimeMillis() < deadline) {
+            mInstrumentation.runOnMainSync(new Runnable() {
+                @Override
+                public void run() {
+                    loaded[0] = mPager.getCount() >= InventoryPager.PAGE_SIZE
+                            && mPager.getItem(InventoryPager.PAGE_SIZE - 1) != null;
+                }
+            });
+            SystemClock.sleep(10);
+        }
+        assertTrue("First page did not load", loaded[0]);
+    }
+
+    /**
+     * The test counts queries, so changes to the list need no handling.
+     */
+    private static class IgnoringListener implements InventoryPager.Listener {
+
+        @Override
+        public void onPagesChanged() {
+        }
+
+        @Override
+        public void onInserted(int position, int count) {
+        }
+
+        @Override
+        public void onRemoved(int position, int count) {
+        }
+
+        @Override
+        public void onMoved(int fromPosition, int toPosition) {
+        }
+
+        @Override
+        public void onChanged(int position, int count, Object payload) {
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package no.larsvidar.gadgetstore.data;
+
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import no.larsvidar.gadgetstore.data.StoreContract.InventoryEntry;
+import no.larsvidar.gadgetstore.data.StoreContract.LowStockEntry;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks that the trigger-maintained low stock table follows products across their reorder threshold.
+ */
+@RunWith(AndroidJUnit4.class)
+public class LowStockTest {
+
+    private static final int CATALOG_SIZE = 100;
+
+    private BenchmarkCatalog mCatalog;
+    private StoreProvider mProvider;
+
+    @Before
+    public void setUp() {
+        mCatalog = new BenchmarkCatalog(InstrumentationRegistry.getTargetContext(), "low_stock");
+        mCatalog.fill(CATALOG_SIZE);
+        mProvider = mCatalog.getProvider();
+
+        //Earlier tests may have left thresholds behind.
+        ContentValues values = new ContentValues();
+        values.put(InventoryEntry.COLUMN_REORDER_THRESHOLD, 0);
+        mProvider.update(InventoryEntry.CONTENT_URI, values, null, null);
+    }
+
+    @Test
+    public void productsWithoutThresholdAreNeverLow() {
+        //Generated quantities run from 0 to 49, so some products are out of stock.
+        assertEquals(0, count(null));
+    }
+
+    @Test
+    public void salesAndRestocksMoveProductsInAndOut() {
+        //Product 10 has 10 items.
+        long id = mCatalog.idOf(10);
+        setThreshold(id, 8);
+        assertFalse(isLow(id));
+
+        mProvider.update(InventoryEntry.buildSellUri(id), sellValues(3), null, null);
+        assertTrue(isLow(id));
+
+        //Selling more keeps the one row.
+        mProvider.update(InventoryEntry.buildSellUri(id), sellValues(1), null, null);
+        assertTrue(isLow(id));
+        assertEquals(1, count(null));
+
+        ContentValues restock = new ContentValues();
+        restock.put(InventoryEntry.COLUMN_PRODUCT_QUANTITY, 20);
+        mProvider.update(ContentUris.withAppendedId(InventoryEntry.CONTENT_URI, id), restock, null, null);
+        assertFalse(isLow(id));
+    }
+
+    @Test
+    public void thresholdChangesAndDeletesAreFollowed() {
+        //Every product with fewer than 5 items.
+        ContentValues values = new ContentValues();
+        values.put(InventoryEntry.COLUMN_REORDER_THRESHOLD, 5);
+        mProvider.update(InventoryEntry.CONTENT_URI, values, null, null);
+        assertEquals(CATALOG_SIZE / 50 * 5, count(null));
+
+        mProvider.delete(ContentUris.withAppendedId(InventoryEntry.CONTENT_URI, mCatalog.idOf(1)), null, null);
+        assertEquals(CATALOG_SIZE / 50 * 5 - 1, count(null));
+    }
+
+    @Test
+    public void newProductBelowThresholdIsLow() {
+        ContentValues values = BenchmarkCatalog.product(0);
+        values.put(InventoryEntry.COLUMN_REORDER_THRESHOLD, 3);
+        Uri uri = mProvider.insert(InventoryEntry.CONTENT_URI, values);
+        assertTrue(isLow(ContentUris.parseId(uri)));
+        mProvider.delete(uri, null, null);
+    }
+
+    @Test
+    public void listFilterShowsTheLowStockProducts() {
+        //Products 3 and 20 are below their own thresholds, product 30 is not.
+        setThreshold(mCatalog.idOf(3), 4);
+        setThreshold(mCatalog.idOf(20), 25);
+        setThreshold(mCatalog.idOf(30), 10);
+
+        Cursor cursor = queryLowStockList();
+        try {
+            assertEquals(2, cursor.getCount());
+            cursor.moveToFirst();
+            assertEquals(mCatalog.idOf(3), cursor.getLong(0));
+            cursor.moveToNext();
+            assertEquals(mCatalog.idOf(20), cursor.getLong(0));
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @Test
+    public void listFilterFollowsSalesOnceFoldedIn() {
+        //Product 10 has 10 items.
+        long id = mCatalog.idOf(10);
+        setThreshold(id, 8);
+        mProvider.update(InventoryEntry.buildSellUri(id), sellValues(3), null, null);
+        mProvider.call(StoreContract.METHOD_COMPACT_SALES, null, null);
+
+        Cursor cursor = queryLowStockList();
+        try {
+            assertEquals(1, cursor.getCount());
+            cursor.moveToFirst();
+            assertEquals(id, cursor.getLong(0));
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @Test
+    public void onlyTheAlertedFlagCanBeWritten() {
+        long id = mCatalog.idOf(2);
+        setThreshold(id, 10);
+
+        ContentValues alerted = new ContentValues();
+        alerted.put(LowStockEntry.COLUMN_ALERTED, 1);
+        assertEquals(1, mProvider.update(LowStockEntry.CONTENT_URI, alerted,
+                LowStockEntry.COLUMN_PRODUCT_ID + " = " + id, null));
+        assertEquals(0, count(LowStockEntry.COLUMN_ALERTED + " = 0"));
+
+        ContentValues productId = new ContentValues();
+        productId.put(LowStockEntry.COLUMN_PRODUCT_ID, 0);
+        try {
+            mProvider.update(LowStockEntry.CONTENT_URI, productId, null, null);
+            fail("Wrote a low stock row");
+        } catch (IllegalArgumentException expected) {
+            //Rows follow the products.
+        }
+    }
+
+    private void setThreshold(long id, int threshold) {
+        ContentValues values = new ContentValues();
+        values.put(InventoryEntry.COLUMN_REORDER_THRESHOLD, threshold);
+        mProvider.update(ContentUris.withAppendedId(InventoryEntry.CONTENT_URI, id), values, null, null);
+    }
+
+    private static ContentValues sellValues(int quantity) {
+        ContentValues values = new ContentValues();
+        values.put(InventoryEntry.SELL_QUANTITY, quantity);
+        return values;
+    }
+
+    private boolean isLow(long id) {
+        //Sales reach the low stock list once they are folded in.
+        mProvider.call(StoreContract.METHOD_COMPACT_SALES, null, null);
+        return count(LowStockEntry.COLUMN_PRODUCT_ID + " = " + id) == 1;
+    }
+
+    /**
+     * @return _IDs of the products in the low stock list filter, in _ID order
+     */
+    private Cursor queryLowStockList() {
+        Uri lowStock = InventoryEntry.CONTENT_URI.buildUpon()
+                .appendQueryParameter(InventoryEntry.QUERY_PARAMETER_LOW_STOCK, String.valueOf(true))
+                .build();
+        return mProvider.query(lowStock, new String[]{InventoryEntry._ID}, null, null, InventoryEntry._ID);
+    }
+
+    private int count(String selection) {
+        Cursor cursor = mProvider.query(LowStockEntry.CONTENT_URI, null, selection, null, null);
+        try {
+            return cursor.getCount();
+        } finally {
+            cursor.close();
+        }
+    }
+}
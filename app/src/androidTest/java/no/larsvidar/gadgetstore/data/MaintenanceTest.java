@@ -0,0 +1,76 @@
+package no.larsvidar.gadgetstore.data;
+
+import android.database.Cursor;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import no.larsvidar.gadgetstore.data.StoreContract.InventoryEntry;
+import no.larsvidar.gadgetstore.data.StoreContract.StatsEntry;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that a maintenance run leaves no free pages behind and logs what it did.
+ */
+@RunWith(AndroidJUnit4.class)
+public class MaintenanceTest {
+
+    private static final int CATALOG_SIZE = 2000;
+
+    private static final String[] LOG_PROJECTION = {
+            StatsEntry.COLUMN_FILE_SIZE_BEFORE,
+            StatsEntry.COLUMN_FILE_SIZE_AFTER,
+            StatsEntry.COLUMN_FREE_PAGES_AFTER,
+            StatsEntry.COLUMN_FULL_VACUUM};
+
+    private BenchmarkCatalog mCatalog;
+    private StoreProvider mProvider;
+
+    @Before
+    public void setUp() {
+        mCatalog = new BenchmarkCatalog(InstrumentationRegistry.getTargetContext(), "maintenance");
+        mCatalog.fill(CATALOG_SIZE);
+        mProvider = mCatalog.getProvider();
+    }
+
+    @Test
+    public void runShrinksTheFileAndIsLogged() {
+        mProvider.delete(InventoryEntry.CONTENT_URI, null, null);
+        mProvider.call(StoreContract.METHOD_PURGE_PRODUCTS, null, null);
+        long reclaimed = mProvider.call(StoreContract.METHOD_RUN_MAINTENANCE, null, null)
+                .getLong(StoreContract.EXTRA_RECLAIMED_BYTES);
+
+        Cursor cursor = mProvider.query(StatsEntry.MAINTENANCE_URI, LOG_PROJECTION, null, null, null);
+        try {
+            //Newest first.
+            assertTrue(cursor.moveToFirst());
+            assertEquals(reclaimed, cursor.getLong(0) - cursor.getLong(1));
+            assertEquals(0, cursor.getLong(2));
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @Test
+    public void onlyTheFirstRunRebuildsTheFile() {
+        //Benchmark databases made before incremental auto vacuum are rebuilt once. New ones never are.
+        mProvider.call(StoreContract.METHOD_RUN_MAINTENANCE, null, null);
+        mProvider.call(StoreContract.METHOD_RUN_MAINTENANCE, null, null);
+        assertEquals(0, readLatest(3));
+    }
+
+    private long readLatest(int column) {
+        Cursor cursor = mProvider.query(StatsEntry.MAINTENANCE_URI, LOG_PROJECTION, null, null, null);
+        try {
+            cursor.moveToFirst();
+            return cursor.getLong(column);
+        } finally {
+            cursor.close();
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package no.larsvidar.gadgetstore.data;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.test.RenamingDelegatingContext;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+
+import no.larsvidar.gadgetstore.data.StoreContract.InventoryEntry;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Builds a database at every old version, with products added while it was at version 1,
+ * and checks that each migration step brings it to the next version with the products intact.
+ */
+@RunWith(AndroidJUnit4.class)
+public class MigrationTest {
+
+    private static final int PRODUCT_COUNT = 20;
+
+    private static final String[] PRODUCT_COLUMNS = {
+            InventoryEntry.COLUMN_PRODUCT_NAME,
+            InventoryEntry.COLUMN_PRODUCT_PRICE,
+            InventoryEntry.COLUMN_PRODUCT_QUANTITY,
+            InventoryEntry.COLUMN_SUPPLIER_NAME,
+            InventoryEntry.COLUMN_SUPPLIER_NUMBER};
+
+    //Version that added the search table.
+    private static final int SEARCH_VERSION = 3;
+
+    private Context mContext;
+
+    @Before
+    public void setUp() {
+        mContext = new RenamingDelegatingContext(InstrumentationRegistry.getTargetContext(), "migration_");
+    }
+
+    @Test
+    public void eachVersionUpgradesToTheNext() {
+        for (int version = 1; version < StoreDbHelper.DATABASE_VERSION; version++) {
+            SQLiteDatabase database = createDatabase(version);
+            try {
+                database.beginTransaction();
+                try {
+                    StoreDbHelper.migrate(database, version, version + 1);
+                    database.setVersion(version + 1);
+                    database.setTransactionSuccessful();
+                } finally {
+                    database.endTransaction();
+                }
+                checkDatabase(database, version + 1);
+            } finally {
+                database.close();
+            }
+        }
+    }
+
+    @Test
+    public void helperUpgradesEveryVersion() {
+        for (int version = 1; version < StoreDbHelper.DATABASE_VERSION; version++) {
+            createDatabase(version).close();
+
+            //Upgrades the way the app does when it is updated.
+            StoreDbHelper helper = new StoreDbHelper(mContext);
+            try {
+                SQLiteDatabase database = helper.getWritableDatabase();
+                assertEquals(StoreDbHelper.DATABASE_VERSION, database.getVersion());
+                checkDatabase(database, StoreDbHelper.DATABASE_VERSION);
+            } finally {
+                helper.close();
+            }
+        }
+    }
+
+    /**
+     * Makes a new database file at a version, holding products added at version 1.
+     * @param version of the database
+     * @return the open database
+     */
+    private SQLiteDatabase createDatabase(int version) {
+        mContext.deleteDatabase(StoreDbHelper.DATABASE_NAME);
+        File file = mContext.getDatabasePath(StoreDbHelper.DATABASE_NAME);
+        file.getParentFile().mkdirs();
+        SQLiteDatabase database = SQLiteDatabase.openOrCreateDatabase(file, null);
+        database.setForeignKeyConstraintsEnabled(true);
+
+        database.beginTransaction();
+        try {
+            database.execSQL(StoreDbHelper.SQL_CREATE_VERSION_1);
+            for (int i = 0; i < PRODUCT_COUNT; i++) {
+                database.insertOrThrow(InventoryEntry.TABLE_NAME, null, BenchmarkCatalog.product(i));
+            }
+            StoreDbHelper.migrate(database, 1, version);
+            database.setVersion(version);
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+        }
+        return database;
+    }
+
+    /**
+     * Checks that the file is sound and every product reads back as it was added.
+     * @param database to check
+     * @param version the database is at
+     */
+    private static void checkDatabase(SQLiteDatabase database, int version) {
+        String at = "Version " + version + ": ";
+        assertEquals(at + "integrity check", "ok", DatabaseUtils.stringForQuery(database, "PRAGMA integrity_check", null));
+        Cursor foreignKeys = database.rawQuery("PRAGMA foreign_key_check", null);
+        try {
+            assertEquals(at + "foreign keys", 0, foreignKeys.getCount());
+        } finally {
+            foreignKeys.close();
+        }
+
+        Cursor cursor = database.query(InventoryEntry.TABLE_NAME, PRODUCT_COLUMNS, null, null, null, null,
+                InventoryEntry._ID);
+        try {
+            assertEquals(at + "product count", PRODUCT_COUNT, cursor.getCount());
+            for (int i = 0; cursor.moveToNext(); i++) {
+                ContentValues expected = BenchmarkCatalog.product(i);
+                for (int column = 0; column < PRODUCT_COLUMNS.length; column++) {
+                    assertEquals(at + PRODUCT_COLUMNS[column], expected.getAsString(PRODUCT_COLUMNS[column]),
+                            cursor.getString(column));
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+
+        if (version >= SEARCH_VERSION) {
+            assertEquals(at + "search", PRODUCT_COUNT, DatabaseUtils.longForQuery(database, "SELECT COUNT(*) FROM "
+                    + InventoryEntry.FTS_TABLE_NAME + " WHERE " + InventoryEntry.FTS_TABLE_NAME + " MATCH 'gadget'", null));
+        }
+    }
+}
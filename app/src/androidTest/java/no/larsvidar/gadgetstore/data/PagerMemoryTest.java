@@ -0,0 +1,160 @@
+package no.larsvidar.gadgetstore.data;
+
+import android.app.Instrumentation;
+import android.os.Debug;
+import android.os.SystemClock;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.filters.LargeTest;
+import android.support.test.runner.AndroidJUnit4;
+import android.test.mock.MockContentResolver;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Locale;
+
+import no.larsvidar.gadgetstore.Benchmark;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Scrolls an InventoryPager through 200k products and checks that the heap stays flat,
+ * since only MAX_PAGES_IN_MEMORY pages are kept however far the list is scrolled.
+ */
+@LargeTest
+@RunWith(AndroidJUnit4.class)
+public class PagerMemoryTest {
+
+    private static final int CATALOG_SIZE = 200000;
+
+    //Heap is sampled every this many rows, after the first sample is taken as the baseline.
+    private static final int SAMPLE_INTERVAL = 20000;
+
+    //Growth allowed over the baseline, for the per page positions the pager keeps and for noise.
+    private static final long MAX_GROWTH_BYTES = 2 * 1024 * 1024;
+
+    private static final long LOAD_TIMEOUT_MILLIS = 10000;
+
+    private Instrumentation mInstrumentation;
+    private InventoryPager mPager;
+
+    @Before
+    public void setUp() {
+        mInstrumentation = InstrumentationRegistry.getInstrumentation();
+        BenchmarkCatalog catalog = new BenchmarkCatalog(InstrumentationRegistry.getTargetContext(), "scroll");
+        catalog.fill(CATALOG_SIZE);
+        final MockContentResolver resolver = new MockContentResolver(InstrumentationRegistry.getTargetContext());
+        resolver.addProvider(StoreContract.CONTENT_AUTHORITY, catalog.getProvider());
+
+        mInstrumentation.runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                mPager = new InventoryPager(resolver, new IgnoringListener());
+                mPager.start();
+            }
+        });
+    }
+
+    @After
+    public void tearDown() {
+        mInstrumentation.runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                mPager.close();
+            }
+        });
+    }
+
+    @Test
+    public void heapStaysFlatWhileScrolling() {
+        long baseline = -1;
+        long peak = 0;
+        int position = 0;
+        while (position < CATALOG_SIZE) {
+            position = scroll(position, Math.min(position + SAMPLE_INTERVAL, CATALOG_SIZE));
+            long used = usedHeap();
+            if (baseline < 0) {
+                baseline = used;
+            }
+            peak = Math.max(peak, used);
+            Benchmark.report(String.format(Locale.US, "scroll [%d rows]: heap %d KiB, native heap %d KiB",
+                    position, used / 1024, Debug.getNativeHeapAllocatedSize() / 1024));
+        }
+
+        assertEquals(CATALOG_SIZE, position);
+        Benchmark.report(String.format(Locale.US, "scroll [%d rows]: heap baseline %d KiB, peak %d KiB",
+                CATALOG_SIZE, baseline / 1024, peak / 1024));
+        assertTrue("Heap grew by " + (peak - baseline) + " bytes", peak - baseline < MAX_GROWTH_BYTES);
+    }
+
+    /**
+     * Reads every row up to a position, one at a time as a list being scrolled does, waiting for pages to load.
+     * @param start first position to read
+     * @param end position to stop before
+     * @return the position reached
+     */
+    private int scroll(int start, final int end) {
+        final int[] position = {start};
+        long deadline = SystemClock.uptimeMillis() + LOAD_TIMEOUT_MILLIS;
+        while (position[0] < end) {
+            final int before = position[0];
+            mInstrumentation.runOnMainSync(new Runnable() {
+                @Override
+                public void run() {
+                    while (position[0] < end && position[0] < mPager.getCount()
+                            && mPager.getItem(position[0]) != null) {
+                        position[0]++;
+                    }
+                }
+            });
+            if (position[0] == before) {
+                assertTrue("Row " + before + " did not load", SystemClock.uptimeMillis() < deadline);
+                SystemClock.sleep(1);
+            } else {
+                deadline = SystemClock.uptimeMillis() + LOAD_TIMEOUT_MILLIS;
+            }
+        }
+        return position[0];
+    }
+
+    /**
+     * @return bytes in use on the Java heap after a garbage collection
+     */
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            runtime.gc();
+            runtime.runFinalization();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * The test reads the pager directly, so changes need no handling.
+     */
+    private static class IgnoringListener implements InventoryPager.Listener {
+
+        @Override
+        public void onPagesChanged() {
+        }
+
+        @Override
+        public void onInserted(int position, int count) {
+        }
+
+        @Override
+        public void onRemoved(int position, int count) {
+        }
+
+        @Override
+        public void onMoved(int fromPosition, int toPosition) {
+        }
+
+        @Override
+        public void onChanged(int position, int count, Object payload) {
+        }
+    }
+}
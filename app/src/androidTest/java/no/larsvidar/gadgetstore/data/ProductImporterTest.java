@@ -0,0 +1,200 @@
+package no.larsvidar.gadgetstore.data;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.os.ParcelFileDescriptor;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.test.mock.MockContentResolver;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+import no.larsvidar.gadgetstore.data.StoreContract.InventoryEntry;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Imports generated CSV and JSON files into a separate catalog.
+ * The number of CSV rows can be raised with the importRows instrumentation argument, for example to 1000000.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ProductImporterTest {
+
+    private static final String ARGUMENT_IMPORT_ROWS = "importRows";
+    private static final String DEFAULT_IMPORT_ROWS = "20000";
+
+    private Context mContext;
+    private BenchmarkCatalog mCatalog;
+    private ProductImporter mImporter;
+    private File mFile;
+
+    @Before
+    public void setUp() {
+        mContext = InstrumentationRegistry.getTargetContext();
+        mCatalog = new BenchmarkCatalog(mContext, "import");
+        mCatalog.fill(0);
+
+        MockContentResolver resolver = new MockContentResolver(mContext);
+        resolver.addProvider(StoreContract.CONTENT_AUTHORITY, mCatalog.getProvider());
+        mImporter = new ProductImporter(mContext, resolver);
+        mFile = new File(mContext.getCacheDir(), "import_test.csv");
+    }
+
+    @After
+    public void tearDown() {
+        mFile.delete();
+    }
+
+    @Test
+    public void importsGeneratedCsv() throws IOException {
+        int rows = Integer.parseInt(InstrumentationRegistry.getArguments().getString(ARGUMENT_IMPORT_ROWS, DEFAULT_IMPORT_ROWS));
+        writeCsv(rows);
+
+        ProductImporter.Result result = mImporter.importProducts(new FileInputStream(mFile), 0, null);
+
+        assertEquals(rows, result.mRecordsRead);
+        assertEquals(rows, result.mImportedRows);
+        assertEquals(0, result.mSkippedRows);
+        assertEquals(rows, countProducts());
+    }
+
+    @Test
+    public void resumesAfterCheckpoint() throws IOException {
+        int rows = ProductImporter.CHUNK_SIZE * 3 + 10;
+        writeCsv(rows);
+
+        //Stop after the first chunk, as if the import had failed.
+        final long[] checkpoint = new long[1];
+        try {
+            mImporter.importProducts(new FileInputStream(mFile), 0, new ProductImporter.ProgressListener() {
+                @Override
+                public void onChunkImported(long recordsRead, long bytesRead, long importedRows, long skippedRows) {
+                    checkpoint[0] = recordsRead;
+                    throw new IllegalStateException("Stopped");
+                }
+            });
+        } catch (IllegalStateException expected) {
+            //Continue below
+        }
+        assertEquals(ProductImporter.CHUNK_SIZE, checkpoint[0]);
+
+        //Continue from the checkpoint.
+        ProductImporter.Result result = mImporter.importProducts(new FileInputStream(mFile), checkpoint[0], null);
+
+        assertEquals(rows - ProductImporter.CHUNK_SIZE, result.mImportedRows);
+        assertEquals(rows, countProducts());
+    }
+
+    @Test
+    public void skipsInvalidRecords() throws IOException {
+        String csv = "product_name,product_price,product_quantity,supplier_name,supplier_number\n"
+                + "\"Cable, long\",10,5,Supplier,555-1000\n"
+                + "Broken,-1,5,Supplier,555-1000\n"
+                + "Nameless,ten,5,Supplier,555-1000\n"
+                + ",10,5,Supplier,555-1000\n"
+                + "\"Say \"\"hi\"\"\",20,1,Supplier,555-1000\r\n";
+
+        ProductImporter.Result result = mImporter.importProducts(new ByteArrayInputStream(csv.getBytes("UTF-8")), 0, null);
+
+        assertEquals(5, result.mRecordsRead);
+        assertEquals(2, result.mImportedRows);
+        assertEquals(3, result.mSkippedRows);
+        assertEquals(2, countProducts());
+    }
+
+    @Test
+    public void importsJson() throws IOException {
+        String json = "[{\"product_name\": \"Phone\", \"product_price\": 300, \"product_quantity\": 2,"
+                + " \"supplier_name\": \"Supplier\", \"supplier_number\": \"555-1000\", \"color\": \"black\"},"
+                + " {\"product_name\": \"Case\", \"product_price\": \"15\", \"product_quantity\": 8,"
+                + " \"supplier_name\": \"Supplier\", \"supplier_number\": \"555-1000\"},"
+                + " {\"product_name\": \"Charger\", \"product_price\": 9.5, \"product_quantity\": 1,"
+                + " \"supplier_name\": \"Supplier\", \"supplier_number\": \"555-1000\"}]";
+
+        ProductImporter.Result result = mImporter.importProducts(new ByteArrayInputStream(json.getBytes("UTF-8")), 0, null);
+
+        assertEquals(3, result.mRecordsRead);
+        assertEquals(2, result.mImportedRows);
+        assertEquals(1, result.mSkippedRows);
+    }
+
+    @Test
+    public void reimportedExportKeepsReorderThresholds() throws IOException {
+        StoreProvider provider = mCatalog.getProvider();
+        ContentValues values = BenchmarkCatalog.product(0);
+        values.put(InventoryEntry.COLUMN_REORDER_THRESHOLD, 7);
+        provider.insert(InventoryEntry.CONTENT_URI, values);
+
+        //Read the whole export before the products it comes from are deleted.
+        InputStream export = new ParcelFileDescriptor.AutoCloseInputStream(provider.openFile(InventoryEntry.EXPORT_URI, "r"));
+        ByteArrayOutputStream csv = new ByteArrayOutputStream();
+        try {
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = export.read(buffer)) != -1) {
+                csv.write(buffer, 0, read);
+            }
+        } finally {
+            export.close();
+        }
+        provider.delete(InventoryEntry.CONTENT_URI, null, null);
+
+        ProductImporter.Result result = mImporter.importProducts(new ByteArrayInputStream(csv.toByteArray()), 0, null);
+
+        assertEquals(1, result.mImportedRows);
+        Cursor cursor = provider.query(InventoryEntry.CONTENT_URI, new String[]{InventoryEntry.COLUMN_REORDER_THRESHOLD},
+                null, null, null);
+        try {
+            cursor.moveToFirst();
+            assertEquals(7, cursor.getInt(0));
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Writes a CSV file with generated products.
+     * @param rows number of products
+     */
+    private void writeCsv(int rows) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(mFile), "UTF-8"));
+        try {
+            writer.write("product_name,product_price,product_quantity,supplier_name,supplier_number\n");
+            for (int i = 0; i < rows; i++) {
+                writer.write("Gadget " + i + "," + (10 + i % 990) + "," + (i % 50) + ",Supplier " + (i % 100)
+                        + ",555-" + (1000 + i % 100) + "\n");
+            }
+        } finally {
+            writer.close();
+        }
+    }
+
+    /**
+     * @return number of products in the catalog
+     */
+    private long countProducts() {
+        Cursor cursor = mCatalog.getProvider().query(InventoryEntry.CONTENT_URI, new String[]{"COUNT(*)"},
+                null, null, null);
+        try {
+            cursor.moveToFirst();
+            return cursor.getLong(0);
+        } finally {
+            cursor.close();
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package no.larsvidar.gadgetstore.data;
+
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import no.larsvidar.gadgetstore.data.StoreContract.InventoryEntry;
+import no.larsvidar.gadgetstore.data.StoreContract.PurgeEntry;
+import no.larsvidar.gadgetstore.data.StoreContract.SummaryEntry;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks that deleting every product hides them at once, and that purging removes them without touching new ones.
+ */
+@RunWith(AndroidJUnit4.class)
+public class PurgeTest {
+
+    private static final int CATALOG_SIZE = 1200;
+
+    private BenchmarkCatalog mCatalog;
+    private StoreProvider mProvider;
+
+    @Before
+    public void setUp() {
+        mCatalog = new BenchmarkCatalog(InstrumentationRegistry.getTargetContext(), "purge");
+        mCatalog.fill(CATALOG_SIZE);
+        mProvider = mCatalog.getProvider();
+        mProvider.call(StoreContract.METHOD_COMPACT_SALES, null, null);
+    }
+
+    @Test
+    public void deletedProductsAreGoneAtOnce() {
+        assertEquals(CATALOG_SIZE, mProvider.delete(InventoryEntry.CONTENT_URI, null, null));
+        assertEquals(0, count(InventoryEntry.CONTENT_URI));
+        assertEquals(0, productCount());
+
+        //Deleted products can no longer be changed.
+        long id = mCatalog.idOf(10);
+        ContentValues quantity = new ContentValues();
+        quantity.put(InventoryEntry.COLUMN_PRODUCT_QUANTITY, 5);
+        assertEquals(0, mProvider.update(ContentUris.withAppendedId(InventoryEntry.CONTENT_URI, id), quantity, null, null));
+        assertEquals(0, mProvider.update(InventoryEntry.CONTENT_URI, quantity, null, null));
+        assertEquals(0, mProvider.delete(ContentUris.withAppendedId(InventoryEntry.CONTENT_URI, id), null, null));
+        assertEquals(0, productCount());
+    }
+
+    @Test
+    public void productsAddedAfterADeleteAreKept() {
+        mProvider.delete(InventoryEntry.CONTENT_URI, null, null);
+        Uri uri = mProvider.insert(InventoryEntry.CONTENT_URI, BenchmarkCatalog.product(0));
+        assertEquals(1, count(InventoryEntry.CONTENT_URI));
+        assertEquals(1, productCount());
+
+        mProvider.call(StoreContract.METHOD_PURGE_PRODUCTS, null, null);
+        assertEquals(1, count(uri));
+
+        //Deleting the new product keeps the totals right, as it was never counted as deleted.
+        assertEquals(1, mProvider.delete(uri, null, null));
+        assertEquals(0, productCount());
+    }
+
+    @Test
+    public void purgeReportsItsProgress() {
+        mProvider.delete(InventoryEntry.CONTENT_URI, null, null);
+
+        //The background purge may already have removed some, but never more than were deleted.
+        mProvider.call(StoreContract.METHOD_PURGE_PRODUCTS, null, null);
+        Cursor cursor = mProvider.query(PurgeEntry.CONTENT_URI,
+                new String[]{PurgeEntry.COLUMN_ROWS_TOTAL, PurgeEntry.COLUMN_ROWS_PURGED}, null, null, null);
+        try {
+            cursor.moveToFirst();
+            assertEquals(CATALOG_SIZE, cursor.getInt(0));
+            assertEquals(CATALOG_SIZE, cursor.getInt(1));
+        } finally {
+            cursor.close();
+        }
+        assertEquals(0, mProvider.call(StoreContract.METHOD_PURGE_PRODUCTS, null, null)
+                .getInt(StoreContract.EXTRA_PURGED_PRODUCTS));
+    }
+
+    private int count(Uri uri) {
+        Cursor cursor = mProvider.query(uri, null, null, null, null);
+        try {
+            return cursor.getCount();
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private int productCount() {
+        Cursor cursor = mProvider.query(SummaryEntry.CONTENT_URI, new String[]{SummaryEntry.COLUMN_PRODUCT_COUNT},
+                null, null, null);
+        try {
+            cursor.moveToFirst();
+            return cursor.getInt(0);
+        } finally {
+            cursor.close();
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package no.larsvidar.gadgetstore.data;
+
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Bundle;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import no.larsvidar.gadgetstore.data.StoreContract.InventoryEntry;
+import no.larsvidar.gadgetstore.data.StoreContract.SalesEntry;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks that sales go through the ledger, and that folding them in never changes the quantities read.
+ */
+@RunWith(AndroidJUnit4.class)
+public class SalesLedgerTest {
+
+    private static final int CATALOG_SIZE = 100;
+
+    private BenchmarkCatalog mCatalog;
+    private StoreProvider mProvider;
+
+    @Before
+    public void setUp() {
+        mCatalog = new BenchmarkCatalog(InstrumentationRegistry.getTargetContext(), "sales");
+        mCatalog.fill(CATALOG_SIZE);
+        mProvider = mCatalog.getProvider();
+        compact();
+    }
+
+    @Test
+    public void salesAreTakenOffBeforeTheyAreFoldedIn() {
+        //Product 10 has 10 items. The quantity reads the same whether or not the sale is folded in yet.
+        long id = mCatalog.idOf(10);
+        assertEquals(7, sell(id, 3));
+        assertEquals(7, readQuantity(id, InventoryEntry.COLUMN_PRODUCT_QUANTITY));
+
+        compact();
+        assertEquals(7, readQuantity(id, InventoryEntry.COLUMN_PRODUCT_QUANTITY));
+        assertEquals(7, readQuantity(id, InventoryEntry.COLUMN_COMPACTED_QUANTITY));
+    }
+
+    @Test
+    public void pendingSalesCanNotOversell() {
+        long id = mCatalog.idOf(5);
+        assertEquals(0, sell(id, 5));
+        assertEquals(-1, sell(id, 1));
+        compact();
+        assertEquals(0, readQuantity(id, InventoryEntry.COLUMN_COMPACTED_QUANTITY));
+    }
+
+    @Test
+    public void setQuantityWinsOverPendingSales() {
+        long id = mCatalog.idOf(20);
+        sell(id, 4);
+
+        //Compiled path for quantity only, and the general update path.
+        ContentValues quantity = new ContentValues();
+        quantity.put(InventoryEntry.COLUMN_PRODUCT_QUANTITY, 40);
+        Uri uri = ContentUris.withAppendedId(InventoryEntry.CONTENT_URI, id);
+        mProvider.update(uri, quantity, null, null);
+        assertEquals(40, readQuantity(id, InventoryEntry.COLUMN_PRODUCT_QUANTITY));
+        compact();
+        assertEquals(40, readQuantity(id, InventoryEntry.COLUMN_PRODUCT_QUANTITY));
+
+        sell(id, 4);
+        quantity.put(InventoryEntry.COLUMN_PRODUCT_PRICE, 100);
+        mProvider.update(uri, quantity, null, null);
+        assertEquals(40, readQuantity(id, InventoryEntry.COLUMN_PRODUCT_QUANTITY));
+        compact();
+        assertEquals(40, readQuantity(id, InventoryEntry.COLUMN_PRODUCT_QUANTITY));
+    }
+
+    @Test
+    public void quantityFilterSeesPendingSales() {
+        //Product 49 has 49 items, the most any product has.
+        long id = mCatalog.idOf(49);
+        sell(id, 45);
+        Uri uri = InventoryEntry.CONTENT_URI.buildUpon()
+                .appendQueryParameter(InventoryEntry.QUERY_PARAMETER_MAX_QUANTITY, "4")
+                .appendQueryParameter(InventoryEntry.QUERY_PARAMETER_SORT, InventoryEntry.SORT_QUANTITY)
+                .build();
+        int pending = count(uri, InventoryEntry._ID + " = " + id);
+        compact();
+        assertEquals(1, pending);
+        assertEquals(1, count(uri, InventoryEntry._ID + " = " + id));
+    }
+
+    @Test
+    public void salesAreKeptAsHistory() {
+        long id = mCatalog.idOf(30);
+        sell(id, 1);
+        sell(id, 2);
+        compact();
+        mProvider.delete(ContentUris.withAppendedId(InventoryEntry.CONTENT_URI, id), null, null);
+
+        Cursor cursor = mProvider.query(SalesEntry.CONTENT_URI, new String[]{SalesEntry.COLUMN_QUANTITY},
+                SalesEntry.COLUMN_PRODUCT_ID + " = " + id, null, null);
+        try {
+            //Newest first.
+            assertEquals(2, cursor.getCount());
+            cursor.moveToFirst();
+            assertEquals(2, cursor.getInt(0));
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * @return quantity left, or -1 if there was not enough in stock
+     */
+    private long sell(long id, int quantity) {
+        Bundle extras = new Bundle();
+        extras.putInt(StoreContract.EXTRA_QUANTITY, quantity);
+        return mProvider.call(StoreContract.METHOD_SELL, String.valueOf(id), extras).getLong(StoreContract.EXTRA_QUANTITY);
+    }
+
+    private int compact() {
+        return mProvider.call(StoreContract.METHOD_COMPACT_SALES, null, null).getInt(StoreContract.EXTRA_COMPACTED_SALES);
+    }
+
+    private int readQuantity(long id, String column) {
+        Cursor cursor = mProvider.query(InventoryEntry.CONTENT_URI, new String[]{column},
+                InventoryEntry._ID + " = " + id, null, null);
+        try {
+            cursor.moveToFirst();
+            return cursor.getInt(0);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private int count(Uri uri, String selection) {
+        Cursor cursor = mProvider.query(uri, null, selection, null, null);
+        try {
+            return cursor.getCount();
+        } finally {
+            cursor.close();
+        }
+    }
+}
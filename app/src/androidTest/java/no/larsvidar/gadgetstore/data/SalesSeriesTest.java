@@ -0,0 +1,132 @@
+package no.larsvidar.gadgetstore.data;
+
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Bundle;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import no.larsvidar.gadgetstore.data.StoreContract.InventoryEntry;
+import no.larsvidar.gadgetstore.data.StoreContract.SalesEntry;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks that the rollup tables add up to the sales in the ledger.
+ */
+@RunWith(AndroidJUnit4.class)
+public class SalesSeriesTest {
+
+    private static final int CATALOG_SIZE = 200;
+
+    private static final String[] SERIES_PROJECTION = {
+            SalesEntry.COLUMN_BUCKET_START,
+            SalesEntry.COLUMN_QUANTITY,
+            SalesEntry.COLUMN_SALE_COUNT};
+
+    private BenchmarkCatalog mCatalog;
+    private StoreProvider mProvider;
+
+    @Before
+    public void setUp() {
+        mCatalog = new BenchmarkCatalog(InstrumentationRegistry.getTargetContext(), "series");
+        mCatalog.fill(CATALOG_SIZE);
+        mProvider = mCatalog.getProvider();
+        mProvider.call(StoreContract.METHOD_COMPACT_SALES, null, null);
+    }
+
+    @Test
+    public void productSeriesCountSales() {
+        //Product 40 has 40 items. Products get new _IDs on every fill, so earlier runs do not add to its series.
+        long id = mCatalog.idOf(40);
+        long start = System.currentTimeMillis();
+        sell(id, 3);
+        sell(id, 4);
+        mProvider.call(StoreContract.METHOD_COMPACT_SALES, null, null);
+
+        for (String bucket : new String[]{SalesEntry.BUCKET_HOUR, SalesEntry.BUCKET_DAY, SalesEntry.BUCKET_WEEK}) {
+            long[] totals = totals(SalesEntry.buildProductSeriesUri(id, bucket));
+            assertEquals(7, totals[0]);
+            assertEquals(2, totals[1]);
+        }
+
+        //Every bucket starts before the sales in it.
+        Cursor cursor = mProvider.query(SalesEntry.buildProductSeriesUri(id, SalesEntry.BUCKET_WEEK),
+                SERIES_PROJECTION, null, null, null);
+        try {
+            while (cursor.moveToNext()) {
+                assertTrue(cursor.getLong(0) <= start);
+            }
+        } finally {
+            cursor.close();
+        }
+
+        //A span that ends before the sales is empty.
+        Uri before = SalesEntry.buildProductSeriesUri(id, SalesEntry.BUCKET_HOUR).buildUpon()
+                .appendQueryParameter(SalesEntry.QUERY_PARAMETER_TO, String.valueOf(start - 60 * 60 * 1000))
+                .build();
+        assertEquals(0, totals(before)[1]);
+    }
+
+    @Test
+    public void supplierSeriesAddUpItsProducts() {
+        //Products 1 and 101 share "Supplier 1".
+        sell(mCatalog.idOf(1), 1);
+        sell(mCatalog.idOf(101), 2);
+        mProvider.call(StoreContract.METHOD_COMPACT_SALES, null, null);
+
+        long[] totals = totals(SalesEntry.buildSupplierSeriesUri(supplierId(mCatalog.idOf(1)), SalesEntry.BUCKET_DAY));
+        assertEquals(3, totals[0]);
+        assertEquals(2, totals[1]);
+    }
+
+    @Test
+    public void unknownBucketIsRefused() {
+        try {
+            mProvider.query(SalesEntry.buildProductSeriesUri(mCatalog.idOf(0), "month"), null, null, null, null);
+            fail("Read a series in months");
+        } catch (IllegalArgumentException expected) {
+            //Only hours, days and weeks are rolled up.
+        }
+    }
+
+    private void sell(long id, int quantity) {
+        Bundle extras = new Bundle();
+        extras.putInt(StoreContract.EXTRA_QUANTITY, quantity);
+        mProvider.call(StoreContract.METHOD_SELL, String.valueOf(id), extras);
+    }
+
+    /**
+     * @return quantity and number of sales, summed over the whole series
+     */
+    private long[] totals(Uri seriesUri) {
+        long[] totals = new long[2];
+        Cursor cursor = mProvider.query(seriesUri, SERIES_PROJECTION, null, null, null);
+        try {
+            while (cursor.moveToNext()) {
+                totals[0] += cursor.getLong(1);
+                totals[1] += cursor.getLong(2);
+            }
+        } finally {
+            cursor.close();
+        }
+        return totals;
+    }
+
+    private long supplierId(long productId) {
+        Cursor cursor = mProvider.query(InventoryEntry.CONTENT_URI, new String[]{InventoryEntry.COLUMN_SUPPLIER_ID},
+                InventoryEntry._ID + " = " + productId, null, null);
+        try {
+            cursor.moveToFirst();
+            return cursor.getLong(0);
+        } finally {
+            cursor.close();
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package no.larsvidar.gadgetstore.data;
+
+import android.database.Cursor;
+import android.net.Uri;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.filters.LargeTest;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import no.larsvidar.gadgetstore.Benchmark;
+import no.larsvidar.gadgetstore.data.StoreContract.InventoryEntry;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that a first page of prefix search results, as the list asks for while the user types,
+ * comes back in under 20 ms from a seeded search table.
+ */
+@LargeTest
+@RunWith(AndroidJUnit4.class)
+public class SearchLatencyTest {
+
+    private static final int CATALOG_SIZE = 10000;
+    private static final int ITERATIONS = 200;
+    private static final long LIMIT_NANOS = 20000000;
+
+    //What the search box holds as the user types, from a prefix every product matches to a single product.
+    private static final String[] QUERIES = {"ga", "gad", "gadget 4", "gadget 42", "gadget 421", "su", "supplier 7"};
+
+    private StoreProvider mProvider;
+
+    @Before
+    public void setUp() {
+        BenchmarkCatalog catalog = new BenchmarkCatalog(InstrumentationRegistry.getTargetContext(), "search");
+        catalog.fill(CATALOG_SIZE);
+        mProvider = catalog.getProvider();
+    }
+
+    @Test
+    public void prefixSearchIsFast() {
+        for (final String query : QUERIES) {
+            final Uri pageUri = InventoryEntry.buildPageUri(InventoryEntry.buildSearchUri(query), 0, InventoryPager.PAGE_SIZE);
+            Benchmark.Result result = Benchmark.measure("search \"" + query + "\" [" + CATALOG_SIZE + "]", ITERATIONS,
+                    new Benchmark.Operation() {
+                        @Override
+                        public void run(int iteration) {
+                            Cursor cursor = mProvider.query(pageUri, InventoryItem.PROJECTION, null, null, null);
+                            assertTrue(cursor.getCount() > 0);
+                            while (cursor.moveToNext()) {
+                                InventoryItem.fromCursor(cursor);
+                            }
+                            cursor.close();
+                        }
+                    });
+            assertTrue("Search for \"" + query + "\" took " + result.mP90Nanos / 1e6 + " ms",
+                    result.mP90Nanos < LIMIT_NANOS);
+        }
+    }
+}
@@ -0,0 +1,405 @@
+package no.larsvidar.gadgetstore.data;
+
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.filters.LargeTest;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import no.larsvidar.gadgetstore.Benchmark;
+import no.larsvidar.gadgetstore.data.StoreContract.InventoryEntry;
+import no.larsvidar.gadgetstore.data.StoreContract.SalesEntry;
+import no.larsvidar.gadgetstore.data.StoreContract.SupplierEntry;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Benchmarks for StoreProvider query, insert, update and delete, and for product validation,
+ * run at each catalog size from the catalogSizes instrumentation argument.
+ */
+@LargeTest
+@RunWith(Parameterized.class)
+public class StoreProviderBenchmark {
+
+    private static final int ITERATIONS = 1000;
+
+    //Step between products used by consecutive calls, so calls spread over the whole catalog.
+    private static final int ID_STRIDE = 7919;
+
+    //Catalog shared by all runs, so it is only filled again when the size changes.
+    private static BenchmarkCatalog sCatalog;
+
+    private final int mCatalogSize;
+    private StoreProvider mProvider;
+
+    @Parameterized.Parameters(name = "catalog {0}")
+    public static List<Object[]> catalogSizes() {
+        List<Object[]> parameters = new ArrayList<>();
+        for (int size : Benchmark.catalogSizes()) {
+            parameters.add(new Object[]{size});
+        }
+        return parameters;
+    }
+
+    //Constructor
+    public StoreProviderBenchmark(int catalogSize) {
+        mCatalogSize = catalogSize;
+    }
+
+    @Before
+    public void fillCatalog() {
+        if (sCatalog == null) {
+            sCatalog = new BenchmarkCatalog(InstrumentationRegistry.getTargetContext(), "provider");
+        }
+        sCatalog.fill(mCatalogSize);
+        mProvider = sCatalog.getProvider();
+    }
+
+    /***** Queries *****/
+
+    @Test
+    public void queryItem() {
+        Benchmark.measure(name("query item"), ITERATIONS, new Benchmark.Operation() {
+            @Override
+            public void run(int iteration) {
+                Cursor cursor = mProvider.query(itemUri(iteration), InventoryItem.PROJECTION, null, null, null);
+                cursor.moveToFirst();
+                cursor.close();
+            }
+        });
+    }
+
+    @Test
+    public void queryPage() {
+        Benchmark.measure(name("query page"), ITERATIONS, new Benchmark.Operation() {
+            @Override
+            public void run(int iteration) {
+                long afterId = sCatalog.idOf(productNumber(iteration)) - 1;
+                Cursor cursor = mProvider.query(InventoryEntry.buildPageUri(InventoryEntry.CONTENT_URI, afterId,
+                        InventoryPager.PAGE_SIZE), InventoryItem.PROJECTION, null, null, null);
+                while (cursor.moveToNext()) {
+                    InventoryItem.fromCursor(cursor);
+                }
+                cursor.close();
+            }
+        });
+    }
+
+    @Test
+    public void querySortedPage() {
+        final Uri sortedUri = InventoryEntry.CONTENT_URI.buildUpon()
+                .appendQueryParameter(InventoryEntry.QUERY_PARAMETER_SORT, InventoryEntry.SORT_PRICE)
+                .appendQueryParameter(InventoryEntry.QUERY_PARAMETER_MAX_QUANTITY, "5")
+                .build();
+        Benchmark.measure(name("query sorted page"), ITERATIONS, new Benchmark.Operation() {
+            @Override
+            public void run(int iteration) {
+                //Generated prices run from 10 to 999.
+                String afterPrice = String.valueOf(10 + productNumber(iteration) % 990);
+                Cursor cursor = mProvider.query(InventoryEntry.buildPageUri(sortedUri, afterPrice, 0,
+                        InventoryPager.PAGE_SIZE), InventoryItem.PROJECTION, null, null, null);
+                while (cursor.moveToNext()) {
+                    InventoryItem.fromCursor(cursor);
+                }
+                cursor.close();
+            }
+        });
+    }
+
+    @Test
+    public void querySearch() {
+        Benchmark.measure(name("query search"), ITERATIONS, new Benchmark.Operation() {
+            @Override
+            public void run(int iteration) {
+                Uri searchUri = InventoryEntry.buildSearchUri("gadget " + productNumber(iteration));
+                Cursor cursor = mProvider.query(InventoryEntry.buildPageUri(searchUri, 0, InventoryPager.PAGE_SIZE),
+                        InventoryItem.PROJECTION, null, null, null);
+                while (cursor.moveToNext()) {
+                    InventoryItem.fromCursor(cursor);
+                }
+                cursor.close();
+            }
+        });
+    }
+
+    @Test
+    public void queryFullList() {
+        //Counting every row is slow on large catalogs, so make fewer calls there.
+        int iterations = Math.max(5, Math.min(ITERATIONS, 100000 / mCatalogSize));
+        Benchmark.measure(name("query full list"), iterations, new Benchmark.Operation() {
+            @Override
+            public void run(int iteration) {
+                Cursor cursor = mProvider.query(InventoryEntry.CONTENT_URI, InventoryItem.PROJECTION, null, null, null);
+                assertEquals(mCatalogSize, cursor.getCount());
+                cursor.close();
+            }
+        });
+    }
+
+    @Test
+    public void querySupplierFilter() {
+        //Filtering on the supplier name, as callers did before suppliers had their own table.
+        Benchmark.measure(name("query supplier filter"), ITERATIONS, new Benchmark.Operation() {
+            @Override
+            public void run(int iteration) {
+                Cursor cursor = mProvider.query(InventoryEntry.buildPageUri(InventoryEntry.CONTENT_URI, 0,
+                        InventoryPager.PAGE_SIZE), InventoryItem.PROJECTION, InventoryEntry.COLUMN_SUPPLIER_NAME + " = ?",
+                        new String[]{"Supplier " + productNumber(iteration) % 100}, null);
+                while (cursor.moveToNext()) {
+                    InventoryItem.fromCursor(cursor);
+                }
+                cursor.close();
+            }
+        });
+    }
+
+    @Test
+    public void querySupplierProducts() {
+        final long[] supplierIds = supplierIds();
+        Benchmark.measure(name("query supplier products"), ITERATIONS, new Benchmark.Operation() {
+            @Override
+            public void run(int iteration) {
+                Uri productsUri = SupplierEntry.buildProductsUri(supplierIds[iteration % supplierIds.length]);
+                Cursor cursor = mProvider.query(InventoryEntry.buildPageUri(productsUri, 0, InventoryPager.PAGE_SIZE),
+                        InventoryItem.PROJECTION, null, null, null);
+                while (cursor.moveToNext()) {
+                    InventoryItem.fromCursor(cursor);
+                }
+                cursor.close();
+            }
+        });
+    }
+
+    @Test
+    public void querySalesSeries() {
+        //Series read the rollups, which only hold sales that have been rolled up.
+        mProvider.call(StoreContract.METHOD_COMPACT_SALES, null, null);
+        final long[] supplierIds = supplierIds();
+        Benchmark.measure(name("query product sales series"), ITERATIONS, new Benchmark.Operation() {
+            @Override
+            public void run(int iteration) {
+                readAll(mProvider.query(SalesEntry.buildProductSeriesUri(sCatalog.idOf(productNumber(iteration)),
+                        SalesEntry.BUCKET_DAY), null, null, null, null));
+            }
+        });
+        Benchmark.measure(name("query supplier sales series"), ITERATIONS, new Benchmark.Operation() {
+            @Override
+            public void run(int iteration) {
+                readAll(mProvider.query(SalesEntry.buildSupplierSeriesUri(supplierIds[iteration % supplierIds.length],
+                        SalesEntry.BUCKET_WEEK), null, null, null, null));
+            }
+        });
+    }
+
+    @Test
+    public void databaseSize() {
+        long bytes = sCatalog.getDatabaseSize();
+        Benchmark.report(String.format(Locale.US, "%s: %d bytes, %.1f bytes/product",
+                name("database size"), bytes, (double) bytes / mCatalogSize));
+    }
+
+    /***** Writes *****/
+
+    @Test
+    public void insert() {
+        final ContentValues[] products = products(ITERATIONS * 2 + 100);
+        try {
+            Benchmark.measure(name("insert"), ITERATIONS, new Benchmark.Operation() {
+                @Override
+                public void run(int iteration) {
+                    assertTrue(mProvider.insert(InventoryEntry.CONTENT_URI, products[iteration]) != null);
+                }
+            });
+        } finally {
+            deleteAddedProducts();
+        }
+    }
+
+    @Test
+    public void updateQuantity() {
+        final ContentValues values = new ContentValues();
+        Benchmark.measure(name("update quantity"), ITERATIONS, new Benchmark.Operation() {
+            @Override
+            public void run(int iteration) {
+                values.put(InventoryEntry.COLUMN_PRODUCT_QUANTITY, iteration % 50);
+                mProvider.update(itemUri(iteration), values, null, null);
+            }
+        });
+    }
+
+    @Test
+    public void updateProduct() {
+        //Write every product back with its own values, so the catalog stays the same.
+        final ContentValues[] products = new ContentValues[ITERATIONS * 2 + 100];
+        for (int i = 0; i < products.length; i++) {
+            products[i] = BenchmarkCatalog.product(productNumber(i));
+        }
+        Benchmark.measure(name("update product"), ITERATIONS, new Benchmark.Operation() {
+            @Override
+            public void run(int iteration) {
+                mProvider.update(itemUri(iteration), products[iteration], null, null);
+            }
+        });
+    }
+
+    @Test
+    public void sell() {
+        Benchmark.measure(name("sell"), ITERATIONS, new Benchmark.Operation() {
+            @Override
+            public void run(int iteration) {
+                mProvider.update(Uri.withAppendedPath(itemUri(iteration), StoreContract.PATH_SELL), null, null, null);
+            }
+        });
+    }
+
+    @Test
+    public void delete() {
+        //Add the products to delete first, so the catalog keeps its size.
+        ContentValues[] products = products(ITERATIONS * 2 + 100);
+        final long[] ids = new long[products.length];
+        for (int i = 0; i < products.length; i++) {
+            ids[i] = ContentUris.parseId(mProvider.insert(InventoryEntry.CONTENT_URI, products[i]));
+        }
+
+        try {
+            Benchmark.measure(name("delete"), ITERATIONS, new Benchmark.Operation() {
+                @Override
+                public void run(int iteration) {
+                    assertEquals(1, mProvider.delete(ContentUris.withAppendedId(InventoryEntry.CONTENT_URI, ids[iteration]),
+                            null, null));
+                }
+            });
+        } finally {
+            deleteAddedProducts();
+        }
+    }
+
+    /***** Validation *****/
+
+    @Test
+    public void validateProduct() {
+        final ProductValidator validator = new ProductValidator(InstrumentationRegistry.getTargetContext());
+        final ContentValues[] products = products(ITERATIONS * 2 + 100);
+        Benchmark.measure(name("validate product"), ITERATIONS, new Benchmark.Operation() {
+            @Override
+            public void run(int iteration) {
+                validator.validateProduct(products[iteration]);
+            }
+        });
+    }
+
+    @Test
+    public void validateProductText() {
+        //EditActivity sends numbers typed by the user, which older callers may pass as text.
+        final ProductValidator validator = new ProductValidator(InstrumentationRegistry.getTargetContext());
+        final ContentValues[] products = products(ITERATIONS * 2 + 100);
+        for (ContentValues product : products) {
+            product.put(InventoryEntry.COLUMN_PRODUCT_PRICE, product.getAsString(InventoryEntry.COLUMN_PRODUCT_PRICE));
+            product.put(InventoryEntry.COLUMN_PRODUCT_QUANTITY, product.getAsString(InventoryEntry.COLUMN_PRODUCT_QUANTITY));
+        }
+        Benchmark.measure(name("validate product text"), ITERATIONS, new Benchmark.Operation() {
+            @Override
+            public void run(int iteration) {
+                validator.validateProduct(products[iteration]);
+            }
+        });
+    }
+
+    @Test
+    public void validateUpdate() {
+        final ProductValidator validator = new ProductValidator(InstrumentationRegistry.getTargetContext());
+        final ContentValues values = new ContentValues();
+        values.put(InventoryEntry.COLUMN_PRODUCT_QUANTITY, 10);
+        values.put(InventoryEntry.COLUMN_PRODUCT_PRICE, 100);
+        Benchmark.measure(name("validate update"), ITERATIONS, new Benchmark.Operation() {
+            @Override
+            public void run(int iteration) {
+                validator.validateUpdate(values);
+            }
+        });
+    }
+
+    /***** Helpers *****/
+
+    /**
+     * @param benchmark name of the operation
+     * @return benchmark name including the catalog size
+     */
+    private String name(String benchmark) {
+        return benchmark + " [" + mCatalogSize + "]";
+    }
+
+    /**
+     * @param iteration number of the call
+     * @return number of the product used by the call
+     */
+    private int productNumber(int iteration) {
+        return (int) ((long) iteration * ID_STRIDE % mCatalogSize);
+    }
+
+    /**
+     * @param iteration number of the call
+     * @return URI of the product used by the call
+     */
+    private Uri itemUri(int iteration) {
+        return ContentUris.withAppendedId(InventoryEntry.CONTENT_URI, sCatalog.idOf(productNumber(iteration)));
+    }
+
+    /**
+     * @param count number of products
+     * @return values for generated products that are not in the catalog
+     */
+    private ContentValues[] products(int count) {
+        ContentValues[] products = new ContentValues[count];
+        for (int i = 0; i < count; i++) {
+            products[i] = BenchmarkCatalog.product(mCatalogSize + i);
+        }
+        return products;
+    }
+
+    /**
+     * Reads every row of a cursor, and closes it.
+     * @param cursor to read
+     */
+    private static void readAll(Cursor cursor) {
+        while (cursor.moveToNext()) {
+            cursor.getLong(0);
+        }
+        cursor.close();
+    }
+
+    /**
+     * @return _ID of every supplier in the catalog
+     */
+    private long[] supplierIds() {
+        Cursor cursor = mProvider.query(SupplierEntry.CONTENT_URI, new String[]{SupplierEntry._ID}, null, null, null);
+        try {
+            long[] ids = new long[cursor.getCount()];
+            for (int i = 0; cursor.moveToNext(); i++) {
+                ids[i] = cursor.getLong(0);
+            }
+            return ids;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Deletes products added after the catalog was filled.
+     */
+    private void deleteAddedProducts() {
+        mProvider.delete(InventoryEntry.CONTENT_URI, InventoryEntry._ID + " > ?",
+                new String[]{String.valueOf(sCatalog.idOf(mCatalogSize - 1))});
+    }
+}
@@ -0,0 +1,141 @@
+package no.larsvidar.gadgetstore.data;
+
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.net.Uri;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import no.larsvidar.gadgetstore.data.StoreContract.InventoryEntry;
+import no.larsvidar.gadgetstore.data.StoreContract.SupplierEntry;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks the suppliers table, and the migration that moved suppliers out of the products.
+ */
+@RunWith(AndroidJUnit4.class)
+public class SuppliersTest {
+
+    private static final int CATALOG_SIZE = 500;
+
+    private BenchmarkCatalog mCatalog;
+    private StoreProvider mProvider;
+
+    @Before
+    public void setUp() {
+        mCatalog = new BenchmarkCatalog(InstrumentationRegistry.getTargetContext(), "suppliers");
+        mCatalog.fill(CATALOG_SIZE);
+        mProvider = mCatalog.getProvider();
+    }
+
+    @Test
+    public void migrationStoresEachSupplierOnce() {
+        SQLiteDatabase database = SQLiteDatabase.create(null);
+        try {
+            database.execSQL("CREATE TABLE inventory (_id INTEGER PRIMARY KEY AUTOINCREMENT, product_name TEXT NOT NULL, "
+                    + "product_price INTEGER NOT NULL, product_quantity INTEGER NOT NULL DEFAULT 0, "
+                    + "supplier_name TEXT NOT NULL, supplier_number TEXT NOT NULL);");
+            StoreDbHelper.migrate(database, 1, 4);
+            database.execSQL("INSERT INTO inventory (product_name, product_price, product_quantity, supplier_name, supplier_number) "
+                    + "VALUES ('Phone', 300, 2, 'Acme', '555-1000'), ('Case', 15, 0, 'Acme', '555-1000'), "
+                    + "('Cable', 5, 9, 'Acme', '555-2000'), ('Charger', 20, 1, 'Best', '555-3000');");
+
+            StoreDbHelper.migrate(database, 4, 5);
+
+            assertEquals(3, DatabaseUtils.queryNumEntries(database, SupplierEntry.TABLE_NAME));
+            assertEquals(4, DatabaseUtils.queryNumEntries(database, InventoryEntry.TABLE_NAME));
+            assertEquals("Acme", DatabaseUtils.stringForQuery(database, "SELECT supplier_name FROM inventory WHERE _id = 2", null));
+            assertEquals(3, DatabaseUtils.longForQuery(database,
+                    "SELECT COUNT(*) FROM inventory_fts WHERE inventory_fts MATCH 'acme'", null));
+        } finally {
+            database.close();
+        }
+    }
+
+    @Test
+    public void renameReachesProductsAndSearch() {
+        //Suppliers outlive the products of earlier runs, so the new name must not be taken yet.
+        long supplierId = supplierIdOf(0);
+        String name = "Renamed " + supplierId;
+        ContentValues values = new ContentValues();
+        values.put(SupplierEntry.COLUMN_SUPPLIER_NAME, name);
+        assertEquals(1, mProvider.update(ContentUris.withAppendedId(SupplierEntry.CONTENT_URI, supplierId), values, null, null));
+
+        //Every hundredth product has supplier 0.
+        int products = CATALOG_SIZE / 100;
+        assertEquals(products, count(SupplierEntry.buildProductsUri(supplierId)));
+        assertEquals(products, count(InventoryEntry.buildSearchUri("renamed")));
+        assertEquals(name, supplierNameOf(mCatalog.idOf(100)));
+    }
+
+    @Test
+    public void productUpdateMovesOnlyThatProduct() {
+        ContentValues values = new ContentValues();
+        values.put(InventoryEntry.COLUMN_SUPPLIER_NAME, "Moved");
+        mProvider.update(ContentUris.withAppendedId(InventoryEntry.CONTENT_URI, mCatalog.idOf(1)), values, null, null);
+
+        assertEquals("Moved", supplierNameOf(mCatalog.idOf(1)));
+        assertEquals("Supplier 1", supplierNameOf(mCatalog.idOf(101)));
+    }
+
+    @Test
+    public void supplierWithProductsIsKept() {
+        try {
+            mProvider.delete(ContentUris.withAppendedId(SupplierEntry.CONTENT_URI, supplierIdOf(2)), null, null);
+            fail("Deleted a supplier with products");
+        } catch (IllegalArgumentException expected) {
+            //The products still point to it.
+        }
+
+        //A supplier without products can go.
+        ContentValues values = new ContentValues();
+        values.put(SupplierEntry.COLUMN_SUPPLIER_NAME, "Unused");
+        values.put(SupplierEntry.COLUMN_SUPPLIER_NUMBER, "555-0000");
+        Uri supplierUri = mProvider.insert(SupplierEntry.CONTENT_URI, values);
+        assertEquals(1, mProvider.delete(supplierUri, null, null));
+    }
+
+    /**
+     * @param number of a product
+     * @return _ID of the supplier of the product
+     */
+    private long supplierIdOf(int number) {
+        Cursor cursor = mProvider.query(ContentUris.withAppendedId(InventoryEntry.CONTENT_URI, mCatalog.idOf(number)),
+                new String[]{InventoryEntry.COLUMN_SUPPLIER_ID}, null, null, null);
+        try {
+            cursor.moveToFirst();
+            return cursor.getLong(0);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private String supplierNameOf(long id) {
+        Cursor cursor = mProvider.query(ContentUris.withAppendedId(InventoryEntry.CONTENT_URI, id),
+                InventoryItem.PROJECTION, null, null, null);
+        try {
+            cursor.moveToFirst();
+            return InventoryItem.fromCursor(cursor).getSupplierName();
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private int count(Uri uri) {
+        Cursor cursor = mProvider.query(uri, null, null, null, null);
+        try {
+            return cursor.getCount();
+        } finally {
+            cursor.close();
+        }
+    }
+}
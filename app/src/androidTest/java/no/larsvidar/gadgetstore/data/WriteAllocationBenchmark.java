@@ -0,0 +1,129 @@
+package no.larsvidar.gadgetstore.data;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.filters.LargeTest;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Locale;
+
+import no.larsvidar.gadgetstore.Benchmark;
+import no.larsvidar.gadgetstore.R;
+import no.larsvidar.gadgetstore.data.StoreContract.InventoryEntry;
+
+/**
+ * Benchmark for the allocations of provider writes, the way they were made before ProductValidator and
+ * StoreStatements, and the way they are made now. Validation is measured on its own, and so is a quantity update.
+ */
+@LargeTest
+@RunWith(AndroidJUnit4.class)
+public class WriteAllocationBenchmark {
+
+    private static final int CATALOG_SIZE = 1000;
+    private static final int ITERATIONS = 2000;
+
+    private Context mContext;
+    private BenchmarkCatalog mCatalog;
+    private StoreDbHelper mHelper;
+
+    @Before
+    public void setUp() {
+        mContext = InstrumentationRegistry.getTargetContext();
+        mCatalog = new BenchmarkCatalog(mContext, "write_allocation");
+        mCatalog.fill(CATALOG_SIZE);
+        mHelper = mCatalog.openHelper();
+    }
+
+    @After
+    public void tearDown() {
+        mHelper.close();
+    }
+
+    @Test
+    public void validation() {
+        final ContentValues[] products = new ContentValues[CATALOG_SIZE];
+        for (int i = 0; i < products.length; i++) {
+            products[i] = BenchmarkCatalog.product(i);
+        }
+
+        Benchmark.Result before = Benchmark.measure("validate product, as text", ITERATIONS, new Benchmark.Operation() {
+            @Override
+            public void run(int iteration) {
+                validateAsText(products[iteration % products.length]);
+            }
+        });
+
+        final ProductValidator validator = new ProductValidator(mContext);
+        Benchmark.Result after = Benchmark.measure("validate product, typed", ITERATIONS, new Benchmark.Operation() {
+            @Override
+            public void run(int iteration) {
+                validator.validateProduct(products[iteration % products.length]);
+            }
+        });
+        compare("validate product", before, after);
+    }
+
+    @Test
+    public void quantityUpdate() {
+        final SQLiteDatabase database = mHelper.getWritableDatabase();
+
+        final ContentValues values = new ContentValues();
+        Benchmark.Result before = Benchmark.measure("update quantity, ContentValues", ITERATIONS, new Benchmark.Operation() {
+            @Override
+            public void run(int iteration) {
+                values.put(InventoryEntry.COLUMN_PRODUCT_QUANTITY, iteration % 50);
+                database.update(InventoryEntry.PRODUCTS_TABLE_NAME, values, InventoryEntry._ID + "=?",
+                        new String[]{String.valueOf(mCatalog.idOf(iteration % CATALOG_SIZE))});
+            }
+        });
+
+        final StoreStatements statements = new StoreStatements(database);
+        Benchmark.Result after = Benchmark.measure("update quantity, compiled", ITERATIONS, new Benchmark.Operation() {
+            @Override
+            public void run(int iteration) {
+                statements.updateQuantity(mCatalog.idOf(iteration % CATALOG_SIZE), iteration % 50);
+            }
+        });
+        compare("update quantity", before, after);
+    }
+
+    /**
+     * Validates a product as the provider did before ProductValidator, reading every number as text.
+     * @param values for the product
+     */
+    private void validateAsText(ContentValues values) {
+        String productName = values.getAsString(InventoryEntry.COLUMN_PRODUCT_NAME);
+        if (productName == null || productName.isEmpty()) {
+            throw new IllegalArgumentException(mContext.getString(R.string.validate_error_product_name_null));
+        }
+        String productPrice = values.getAsString(InventoryEntry.COLUMN_PRODUCT_PRICE);
+        if (productPrice == null || productPrice.isEmpty() || Integer.parseInt(productPrice) < 0) {
+            throw new IllegalArgumentException(mContext.getString(R.string.validate_error_product_price_negative));
+        }
+        String productQuantity = values.getAsString(InventoryEntry.COLUMN_PRODUCT_QUANTITY);
+        if (productQuantity == null || productQuantity.isEmpty() || Integer.parseInt(productQuantity) < 0) {
+            throw new IllegalArgumentException(mContext.getString(R.string.validate_error_product_quantity_negative));
+        }
+        String supplierName = values.getAsString(InventoryEntry.COLUMN_SUPPLIER_NAME);
+        if (supplierName == null || supplierName.isEmpty()) {
+            throw new IllegalArgumentException(mContext.getString(R.string.validate_error_supplier_name_null));
+        }
+        String supplierNumber = values.getAsString(InventoryEntry.COLUMN_SUPPLIER_NUMBER);
+        if (supplierNumber == null || supplierNumber.isEmpty()) {
+            throw new IllegalArgumentException(mContext.getString(R.string.validate_error_supplier_number_null));
+        }
+    }
+
+    private static void compare(String name, Benchmark.Result before, Benchmark.Result after) {
+        Benchmark.report(String.format(Locale.US, "%s: %.1f allocations/op before, %.1f after, %.0f B/op before, %.0f after",
+                name, before.getAllocationsPerOp(), after.getAllocationsPerOp(),
+                before.getBytesPerOp(), after.getBytesPerOp()));
+    }
+}
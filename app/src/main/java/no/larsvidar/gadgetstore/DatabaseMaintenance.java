@@ -0,0 +1,72 @@
+package no.larsvidar.gadgetstore;
+
+import android.annotation.TargetApi;
+import android.app.job.JobInfo;
+import android.app.job.JobScheduler;
+import android.content.ComponentName;
+import android.content.Context;
+import android.os.AsyncTask;
+import android.os.Build;
+
+import no.larsvidar.gadgetstore.data.StoreContract;
+
+/**
+ * Schedules the database maintenance, which vacuums and analyzes the database once a day while the device
+ * is idle and charging. The runs are logged in StatsEntry.MAINTENANCE_URI.
+ * There is no idle state to wait for before Lollipop, so older devices only get the incremental vacuum
+ * done after purging deleted products.
+ */
+public final class DatabaseMaintenance {
+
+    //Job
+    private static final int JOB_ID = 2;
+    private static final long INTERVAL_MILLIS = 24 * 60 * 60 * 1000;
+
+    //Empty constructor
+    private DatabaseMaintenance() {
+    }
+
+    /**
+     * Schedules the daily maintenance job in the background, unless it is already scheduled.
+     * Asking the JobScheduler goes through another process, so it is kept off the main thread while the app starts.
+     * @param context any context
+     */
+    public static void schedule(Context context) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            final Context appContext = context.getApplicationContext();
+            AsyncTask.THREAD_POOL_EXECUTOR.execute(new Runnable() {
+                @Override
+                public void run() {
+                    scheduleJob(appContext);
+                }
+            });
+        }
+    }
+
+    @TargetApi(Build.VERSION_CODES.LOLLIPOP)
+    private static void scheduleJob(Context context) {
+        JobScheduler jobScheduler = (JobScheduler) context.getSystemService(Context.JOB_SCHEDULER_SERVICE);
+
+        //Scheduling again would start the interval over, and the job might never get to run.
+        for (JobInfo pending : jobScheduler.getAllPendingJobs()) {
+            if (pending.getId() == JOB_ID) {
+                return;
+            }
+        }
+
+        JobInfo job = new JobInfo.Builder(JOB_ID, new ComponentName(context, MaintenanceJobService.class))
+                .setRequiresCharging(true)
+                .setRequiresDeviceIdle(true)
+                .setPeriodic(INTERVAL_MILLIS)
+                .build();
+        jobScheduler.schedule(job);
+    }
+
+    /**
+     * Runs the maintenance in the provider. Runs on a background thread, and may take a while on a large database.
+     * @param context any context
+     */
+    static void run(Context context) {
+        context.getContentResolver().call(StoreContract.BASE_CONTENT_URI, StoreContract.METHOD_RUN_MAINTENANCE, null, null);
+    }
+}
@@ -25,6 +25,7 @@ import android.widget.EditText;
 import android.widget.Toast;
 
 import no.larsvidar.gadgetstore.data.StoreContract.InventoryEntry;
+import no.larsvidar.gadgetstore.data.StoreWriter;
 
 /**
  * Create new product, or update existing product
@@ -40,6 +41,7 @@ public class EditActivity extends AppCompatActivity implements LoaderManager.Loa
     private EditText mProductNameEditText;
     private EditText mProductPriceEditText;
     private EditText mProductQuantityEditText;
+    private EditText mReorderThresholdEditText;
     private EditText mSupplierNameEditText;
     private EditText mSupplierNumberEditText;
 
@@ -49,6 +51,9 @@ public class EditActivity extends AppCompatActivity implements LoaderManager.Loa
     //Variable to keep track of Quantity
     private int mQuantity = 0;
 
+    //Variable to keep track of a save that has not finished yet.
+    private boolean mIsSaving = false;
+
     //OnTouchListener listening for any user interaction on a view.
     private View.OnTouchListener mTouchListener = new View.OnTouchListener() {
         @Override
@@ -84,6 +89,7 @@ public class EditActivity extends AppCompatActivity implements LoaderManager.Loa
         mProductNameEditText = findViewById(R.id.edit_product_name);
         mProductPriceEditText = findViewById(R.id.edit_product_price);
         mProductQuantityEditText = findViewById(R.id.edit_product_quantity);
+        mReorderThresholdEditText = findViewById(R.id.edit_reorder_threshold);
         mSupplierNameEditText = findViewById(R.id.edit_supplier_name);
         mSupplierNumberEditText = findViewById(R.id.edit_supplier_number);
 
@@ -94,6 +100,7 @@ public class EditActivity extends AppCompatActivity implements LoaderManager.Loa
         mProductNameEditText.setOnTouchListener(mTouchListener);
         mProductPriceEditText.setOnTouchListener(mTouchListener);
         mProductQuantityEditText.setOnTouchListener(mTouchListener);
+        mReorderThresholdEditText.setOnTouchListener(mTouchListener);
         mSupplierNameEditText.setOnTouchListener(mTouchListener);
         mSupplierNumberEditText.setOnTouchListener(mTouchListener);
 
@@ -137,13 +144,20 @@ public class EditActivity extends AppCompatActivity implements LoaderManager.Loa
     }
 
     /**
-     * Method for saving new or updated product to database
+     * Method for saving new or updated product to database.
+     * The save runs in the background, and the activity closes when it has succeeded.
      */
     private void saveProduct() {
+        //Ignore the save button while a save is running.
+        if (mIsSaving) {
+            return;
+        }
+
         //Read data from input fields
         String productNameString = mProductNameEditText.getText().toString().trim();
         String productPriceString = mProductPriceEditText.getText().toString().trim();
         String productQuantityString = mProductQuantityEditText.getText().toString().trim();
+        String reorderThresholdString = mReorderThresholdEditText.getText().toString().trim();
         String supplierNameString = mSupplierNameEditText.getText().toString().trim();
         String supplierNumberString = mSupplierNumberEditText.getText().toString().trim();
 
@@ -154,7 +168,8 @@ public class EditActivity extends AppCompatActivity implements LoaderManager.Loa
                 && TextUtils.isEmpty(productQuantityString)
                 && TextUtils.isEmpty(supplierNameString)
                 && TextUtils.isEmpty(supplierNumberString)) {
-            //Return early since all fields are empty.
+            //Close early since all fields are empty.
+            finish();
             return;
         }
 
@@ -163,35 +178,71 @@ public class EditActivity extends AppCompatActivity implements LoaderManager.Loa
         values.put(InventoryEntry.COLUMN_PRODUCT_NAME, productNameString);
         values.put(InventoryEntry.COLUMN_PRODUCT_PRICE, Integer.parseInt(productPriceString));
         values.put(InventoryEntry.COLUMN_PRODUCT_QUANTITY, Integer.parseInt(productQuantityString));
+        //No reorder point means no low stock alerts.
+        values.put(InventoryEntry.COLUMN_REORDER_THRESHOLD,
+                TextUtils.isEmpty(reorderThresholdString) ? 0 : Integer.parseInt(reorderThresholdString));
         values.put(InventoryEntry.COLUMN_SUPPLIER_NAME, supplierNameString);
         values.put(InventoryEntry.COLUMN_SUPPLIER_NUMBER, supplierNumberString);
 
         //Check if this is a new product, or updating an existing product.
+        mIsSaving = true;
+        StoreWriter writer = StoreWriter.getInstance(this);
         if (mCurrentInventoryUri == null) {
             //Add new product
-            Uri newUri = getContentResolver().insert(InventoryEntry.CONTENT_URI, values);
-
-            //Show toast
-            if (newUri == null) {
-                //If newUri is null, something went wrong with the save.
-                makeToast(getString(R.string.add_product_fail));
-            } else {
-                //Otherwise the save was successful.
-                makeToast(getString(R.string.add_product_success));
-            }
+            writer.insert(InventoryEntry.CONTENT_URI, values, new StoreWriter.Callback<Uri>() {
+                @Override
+                public void onComplete(Uri newUri) {
+                    //Show toast
+                    if (newUri == null) {
+                        //If newUri is null, something went wrong with the save.
+                        makeToast(getString(R.string.add_product_fail));
+                    } else {
+                        //Otherwise the save was successful.
+                        makeToast(getString(R.string.add_product_success));
+                    }
+                    finish();
+                }
+
+                @Override
+                public void onError(RuntimeException error) {
+                    onSaveError(error);
+                }
+            });
 
         } else {
             //Update existing product
-            int updatedRows = getContentResolver().update(mCurrentInventoryUri, values, null, null);
-
-            //Show toast
-            if (updatedRows == 0) {
-                //If no rows where affected, something went wrong with the update.
-                makeToast(getString(R.string.edit_product_fail));
-            } else {
-                //Otherwise the save was successful.
-                makeToast(getString(R.string.edit_product_success));
-            }
+            writer.update(mCurrentInventoryUri, values, new StoreWriter.Callback<Integer>() {
+                @Override
+                public void onComplete(Integer updatedRows) {
+                    //Show toast
+                    if (updatedRows == 0) {
+                        //If no rows where affected, something went wrong with the update.
+                        makeToast(getString(R.string.edit_product_fail));
+                    } else {
+                        //Otherwise the save was successful.
+                        makeToast(getString(R.string.edit_product_success));
+                    }
+                    finish();
+                }
+
+                @Override
+                public void onError(RuntimeException error) {
+                    onSaveError(error);
+                }
+            });
+        }
+    }
+
+    /**
+     * Shows why a save was refused, and lets the user keep editing.
+     * @param error from the provider
+     */
+    private void onSaveError(RuntimeException error) {
+        mIsSaving = false;
+        if (error instanceof NumberFormatException) {
+            makeToast(getString(R.string.edit_invalid_number));
+        } else {
+            makeToast(error.getMessage());
         }
     }
 
@@ -244,17 +295,12 @@ public class EditActivity extends AppCompatActivity implements LoaderManager.Loa
             //Save option clicked
             case R.id.edit_menu_save:
                 try {
-                    //Save product to database
+                    //Save product to database. The activity exits when the save is done.
                     saveProduct();
-                    //Exit activity
-                    finish();
-                    return true;
                 } catch (NumberFormatException nfe){
-                    makeToast("Please enter a valid number");
-                } catch (IllegalArgumentException iae) {
-                    makeToast(iae.getMessage());
+                    makeToast(getString(R.string.edit_invalid_number));
                 }
-                break;
+                return true;
             case R.id.edit_menu_delete:
                 //Show delete confirmation dialog
                 showDeleteConfirmationDialog();
@@ -360,17 +406,25 @@ public class EditActivity extends AppCompatActivity implements LoaderManager.Loa
     private void deleteProduct() {
         //Check if there is an existing product
         if (mCurrentInventoryUri != null) {
-            //Delete the product
-            int deletedRows = getContentResolver().delete(mCurrentInventoryUri, null, null);
-
-            //Show toast
-            if (deletedRows == 0) {
-                //If no rows were deleted, there was a problem.
-                makeToast(getString(R.string.dialog_delete_product_confirmation_fail));
-            } else {
-                //Otherwise the deletion was successful.
-                makeToast(getString(R.string.dialog_delete_product_confirmation_success));
-            }
+            //Delete the product in the background
+            StoreWriter.getInstance(this).delete(mCurrentInventoryUri, new StoreWriter.Callback<Integer>() {
+                @Override
+                public void onComplete(Integer deletedRows) {
+                    //Show toast
+                    if (deletedRows == 0) {
+                        //If no rows were deleted, there was a problem.
+                        makeToast(getString(R.string.dialog_delete_product_confirmation_fail));
+                    } else {
+                        //Otherwise the deletion was successful.
+                        makeToast(getString(R.string.dialog_delete_product_confirmation_success));
+                    }
+                }
+
+                @Override
+                public void onError(RuntimeException error) {
+                    makeToast(getString(R.string.dialog_delete_product_confirmation_fail));
+                }
+            });
         }
         //Close activity
         finish();
@@ -401,6 +455,7 @@ public class EditActivity extends AppCompatActivity implements LoaderManager.Loa
                 InventoryEntry.COLUMN_PRODUCT_NAME,
                 InventoryEntry.COLUMN_PRODUCT_PRICE,
                 InventoryEntry.COLUMN_PRODUCT_QUANTITY,
+                InventoryEntry.COLUMN_REORDER_THRESHOLD,
                 InventoryEntry.COLUMN_SUPPLIER_NAME,
                 InventoryEntry.COLUMN_SUPPLIER_NUMBER };
 
@@ -426,6 +481,7 @@ public class EditActivity extends AppCompatActivity implements LoaderManager.Loa
             int productNameColumnIndex = data.getColumnIndex(InventoryEntry.COLUMN_PRODUCT_NAME);
             int productPriceColumnIndex = data.getColumnIndex(InventoryEntry.COLUMN_PRODUCT_PRICE);
             int productQuantityColumnIndex = data.getColumnIndex(InventoryEntry.COLUMN_PRODUCT_QUANTITY);
+            int reorderThresholdColumnIndex = data.getColumnIndex(InventoryEntry.COLUMN_REORDER_THRESHOLD);
             int supplierNameColumnIndex = data.getColumnIndex(InventoryEntry.COLUMN_SUPPLIER_NAME);
             int supplierNumberColumnIndex = data.getColumnIndex(InventoryEntry.COLUMN_SUPPLIER_NUMBER);
 
@@ -433,6 +489,7 @@ public class EditActivity extends AppCompatActivity implements LoaderManager.Loa
             String productName = data.getString(productNameColumnIndex);
             int productPrice = data.getInt(productPriceColumnIndex);
             mQuantity = data.getInt(productQuantityColumnIndex);
+            int reorderThreshold = data.getInt(reorderThresholdColumnIndex);
             String supplierName = data.getString(supplierNameColumnIndex);
             String supplierNumber = data.getString(supplierNumberColumnIndex);
 
@@ -440,6 +497,7 @@ public class EditActivity extends AppCompatActivity implements LoaderManager.Loa
             mProductNameEditText.setText(productName);
             mProductPriceEditText.setText(Integer.toString(productPrice));
             mProductQuantityEditText.setText(Integer.toString(mQuantity));
+            mReorderThresholdEditText.setText(reorderThreshold == 0 ? "" : Integer.toString(reorderThreshold));
             mSupplierNameEditText.setText(supplierName);
             mSupplierNumberEditText.setText(supplierNumber);
         }
@@ -455,6 +513,7 @@ public class EditActivity extends AppCompatActivity implements LoaderManager.Loa
         mProductNameEditText.setText("");
         mProductPriceEditText.setText("");
         mProductQuantityEditText.setText("");
+        mReorderThresholdEditText.setText("");
         mSupplierNameEditText.setText("");
         mSupplierNumberEditText.setText("");
 
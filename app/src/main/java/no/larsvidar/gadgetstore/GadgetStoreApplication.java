@@ -0,0 +1,35 @@
+package no.larsvidar.gadgetstore;
+
+import android.app.Application;
+import android.os.StrictMode;
+
+/**
+ * Application class for GadgetStore app
+ */
+public class GadgetStoreApplication extends Application {
+
+    /**
+     * OnCreate method
+     */
+    @Override
+    public void onCreate() {
+        //In debug builds, report any disk access on the main thread, and leaked cursors and databases.
+        if (BuildConfig.DEBUG) {
+            StrictMode.setThreadPolicy(new StrictMode.ThreadPolicy.Builder()
+                    .detectDiskReads()
+                    .detectDiskWrites()
+                    .penaltyLog()
+                    .penaltyFlashScreen()
+                    .build());
+            StrictMode.setVmPolicy(new StrictMode.VmPolicy.Builder()
+                    .detectLeakedSqlLiteObjects()
+                    .detectLeakedClosableObjects()
+                    .penaltyLog()
+                    .build());
+        }
+        super.onCreate();
+
+        //Vacuum and analyze the database once a day, while the device is not in use.
+        DatabaseMaintenance.schedule(this);
+    }
+}
@@ -0,0 +1,156 @@
+package no.larsvidar.gadgetstore;
+
+import android.app.IntentService;
+import android.app.NotificationChannel;
+import android.app.NotificationManager;
+import android.content.Context;
+import android.content.Intent;
+import android.content.SharedPreferences;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Build;
+import android.provider.OpenableColumns;
+import android.support.v4.app.NotificationCompat;
+import android.util.Log;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import no.larsvidar.gadgetstore.data.ProductImporter;
+
+/**
+ * Imports products from a CSV or JSON file in the background, showing progress in a notification.
+ * After every committed chunk the position is saved, so importing the same file again after a failure
+ * continues where it stopped.
+ */
+public class ImportService extends IntentService {
+
+    private static final String LOG_TAG = ImportService.class.getSimpleName();
+
+    //Notification
+    private static final String CHANNEL_ID = "import";
+    private static final int NOTIFICATION_ID = 1;
+
+    //Saved position of an unfinished import.
+    private static final String PREFERENCES_NAME = "import";
+    private static final String KEY_SOURCE = "source";
+    private static final String KEY_RECORDS = "records";
+
+    //Constructor
+    public ImportService() {
+        super(ImportService.class.getSimpleName());
+    }
+
+    /**
+     * Starts importing a file.
+     * @param context any context
+     * @param source URI of the file, readable by the app
+     */
+    public static void start(Context context, Uri source) {
+        Intent intent = new Intent(context, ImportService.class);
+        intent.setData(source);
+        intent.addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION);
+        context.startService(intent);
+    }
+
+    @Override
+    protected void onHandleIntent(Intent intent) {
+        if (intent == null || intent.getData() == null) {
+            return;
+        }
+        final Uri source = intent.getData();
+        final long fileSize = querySize(source);
+
+        //Continue an unfinished import of the same file.
+        final SharedPreferences preferences = getSharedPreferences(PREFERENCES_NAME, MODE_PRIVATE);
+        long skipRecords = source.toString().equals(preferences.getString(KEY_SOURCE, null))
+                ? preferences.getLong(KEY_RECORDS, 0) : 0;
+
+        final NotificationManager notificationManager = (NotificationManager) getSystemService(NOTIFICATION_SERVICE);
+        createNotificationChannel(notificationManager);
+        final NotificationCompat.Builder notification = new NotificationCompat.Builder(this, CHANNEL_ID)
+                .setSmallIcon(android.R.drawable.stat_sys_download)
+                .setContentTitle(getString(R.string.import_notification_title))
+                .setOnlyAlertOnce(true)
+                .setOngoing(true)
+                .setProgress(0, 0, true);
+
+        //Keep running while the user leaves the app.
+        startForeground(NOTIFICATION_ID, notification.build());
+
+        ProductImporter importer = new ProductImporter(this, getContentResolver());
+        String message;
+        try {
+            InputStream input = getContentResolver().openInputStream(source);
+            if (input == null) {
+                throw new IOException("Can not open " + source);
+            }
+            ProductImporter.Result result = importer.importProducts(input, skipRecords,
+                    new ProductImporter.ProgressListener() {
+                        @Override
+                        public void onChunkImported(long recordsRead, long bytesRead, long importedRows, long skippedRows) {
+                            //Save the position as soon as the chunk is committed.
+                            preferences.edit()
+                                    .putString(KEY_SOURCE, source.toString())
+                                    .putLong(KEY_RECORDS, recordsRead)
+                                    .commit();
+
+                            notification.setContentText(getString(R.string.import_notification_progress, importedRows, skippedRows));
+                            if (fileSize > 0) {
+                                notification.setProgress(1000, (int) Math.min(1000, bytesRead * 1000 / fileSize), false);
+                            }
+                            notificationManager.notify(NOTIFICATION_ID, notification.build());
+                        }
+                    });
+
+            //Done, so the next import starts from the beginning.
+            preferences.edit().clear().commit();
+            message = getString(R.string.import_notification_done, result.mImportedRows, result.mSkippedRows);
+        } catch (IOException e) {
+            //Keep the saved position, so the import can be continued.
+            Log.e(LOG_TAG, "Import of " + source + " failed", e);
+            message = getString(R.string.import_notification_failed);
+        } catch (RuntimeException e) {
+            Log.e(LOG_TAG, "Import of " + source + " failed", e);
+            message = getString(R.string.import_notification_failed);
+        }
+
+        //Replace the progress notification with the outcome.
+        stopForeground(true);
+        notification.setOngoing(false)
+                .setProgress(0, 0, false)
+                .setSmallIcon(android.R.drawable.stat_sys_download_done)
+                .setContentText(message);
+        notificationManager.notify(NOTIFICATION_ID, notification.build());
+    }
+
+    /**
+     * @param source URI of the file
+     * @return size of the file in bytes, or -1 if unknown
+     */
+    private long querySize(Uri source) {
+        //Plain files have no size column, and some providers refuse the query.
+        Cursor cursor = null;
+        try {
+            cursor = getContentResolver().query(source, new String[]{OpenableColumns.SIZE}, null, null, null);
+            return cursor != null && cursor.moveToFirst() && !cursor.isNull(0) ? cursor.getLong(0) : -1;
+        } catch (RuntimeException e) {
+            return -1;
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+    }
+
+    /**
+     * Creates the notification channel on Android O and later.
+     * @param notificationManager
+     */
+    private void createNotificationChannel(NotificationManager notificationManager) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            notificationManager.createNotificationChannel(new NotificationChannel(CHANNEL_ID,
+                    getString(R.string.import_notification_channel), NotificationManager.IMPORTANCE_LOW));
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package no.larsvidar.gadgetstore;
+
+import android.annotation.TargetApi;
+import android.app.NotificationChannel;
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.app.job.JobInfo;
+import android.app.job.JobScheduler;
+import android.content.ComponentName;
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.Intent;
+import android.database.Cursor;
+import android.os.AsyncTask;
+import android.os.Build;
+import android.support.v4.app.NotificationCompat;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import no.larsvidar.gadgetstore.data.StoreContract.InventoryEntry;
+import no.larsvidar.gadgetstore.data.StoreContract.LowStockEntry;
+
+/**
+ * Tells the user about products that have dropped below their reorder threshold.
+ * The StoreProvider calls schedule when a product crosses its threshold. Products crossing within a short time
+ * of each other are shown in one notification, by LowStockJobService.
+ */
+public final class LowStockAlerts {
+
+    //Notification
+    private static final String CHANNEL_ID = "low_stock";
+    private static final int NOTIFICATION_ID = 2;
+
+    //Job
+    private static final int JOB_ID = 1;
+
+    //Time to wait for more products to cross their threshold, and the longest the alert may wait.
+    private static final long BATCH_DELAY_MILLIS = 30 * 1000;
+    private static final long MAX_DELAY_MILLIS = 5 * 60 * 1000;
+
+    //Products listed in the notification. The rest are counted in the summary line.
+    private static final int MAX_LINES = 5;
+
+    //Projection of the products to alert about.
+    private static final String[] PROJECTION = {
+            InventoryEntry._ID,
+            InventoryEntry.COLUMN_PRODUCT_NAME,
+            InventoryEntry.COLUMN_PRODUCT_QUANTITY,
+            InventoryEntry.COLUMN_REORDER_THRESHOLD};
+
+    //True while an alert is waiting to run, so sales in the meantime do not push it back.
+    private static final AtomicBoolean sScheduled = new AtomicBoolean();
+
+    //Empty constructor
+    private LowStockAlerts() {
+    }
+
+    /**
+     * Schedules an alert for the products that are low on stock and not alerted yet.
+     * Does nothing if an alert is already waiting.
+     * @param context any context
+     */
+    public static void schedule(Context context) {
+        if (!sScheduled.compareAndSet(false, true)) {
+            return;
+        }
+        final Context appContext = context.getApplicationContext();
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            scheduleJob(appContext);
+        } else {
+            //No JobScheduler before Lollipop, so alert right away in the background.
+            AsyncTask.THREAD_POOL_EXECUTOR.execute(new Runnable() {
+                @Override
+                public void run() {
+                    showAlerts(appContext);
+                }
+            });
+        }
+    }
+
+    @TargetApi(Build.VERSION_CODES.LOLLIPOP)
+    private static void scheduleJob(Context context) {
+        JobInfo job = new JobInfo.Builder(JOB_ID, new ComponentName(context, LowStockJobService.class))
+                .setMinimumLatency(BATCH_DELAY_MILLIS)
+                .setOverrideDeadline(MAX_DELAY_MILLIS)
+                .build();
+        JobScheduler jobScheduler = (JobScheduler) context.getSystemService(Context.JOB_SCHEDULER_SERVICE);
+        jobScheduler.schedule(job);
+    }
+
+    /**
+     * Shows one notification for every product that is low on stock and not alerted yet, and marks them alerted.
+     * Runs on a background thread.
+     * @param context any context
+     */
+    static void showAlerts(Context context) {
+        //Products crossing their threshold from now on need another alert.
+        sScheduled.set(false);
+
+        ContentResolver contentResolver = context.getContentResolver();
+        Cursor cursor = contentResolver.query(LowStockEntry.CONTENT_URI, PROJECTION,
+                LowStockEntry.COLUMN_ALERTED + " = 0", null, null);
+        if (cursor == null) {
+            return;
+        }
+
+        int count = cursor.getCount();
+        NotificationCompat.InboxStyle style = new NotificationCompat.InboxStyle();
+        StringBuilder ids = new StringBuilder();
+        try {
+            if (count == 0) {
+                return;
+            }
+            while (cursor.moveToNext()) {
+                if (ids.length() > 0) {
+                    ids.append(',');
+                }
+                ids.append(cursor.getLong(0));
+                if (cursor.getPosition() < MAX_LINES) {
+                    style.addLine(context.getString(R.string.low_stock_notification_line,
+                            cursor.getString(1), cursor.getInt(2), cursor.getInt(3)));
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+        if (count > MAX_LINES) {
+            style.setSummaryText(context.getString(R.string.low_stock_notification_more, count - MAX_LINES));
+        }
+
+        /***** Notification *****/
+        NotificationManager notificationManager = (NotificationManager) context.getSystemService(Context.NOTIFICATION_SERVICE);
+        createNotificationChannel(context, notificationManager);
+        String title = context.getResources().getQuantityString(R.plurals.low_stock_notification_title, count, count);
+        PendingIntent openStore = PendingIntent.getActivity(context, 0, new Intent(context, StoreActivity.class), 0);
+        NotificationCompat.Builder notification = new NotificationCompat.Builder(context, CHANNEL_ID)
+                .setSmallIcon(android.R.drawable.stat_notify_error)
+                .setContentTitle(title)
+                .setContentText(context.getString(R.string.low_stock_notification_text))
+                .setStyle(style)
+                .setContentIntent(openStore)
+                .setAutoCancel(true);
+        notificationManager.notify(NOTIFICATION_ID, notification.build());
+
+        //Only the products in this notification, so any that crossed meanwhile get the next one.
+        ContentValues values = new ContentValues();
+        values.put(LowStockEntry.COLUMN_ALERTED, 1);
+        contentResolver.update(LowStockEntry.CONTENT_URI, values,
+                LowStockEntry.COLUMN_PRODUCT_ID + " IN (" + ids + ")", null);
+    }
+
+    /**
+     * Creates the notification channel on Android O and later.
+     * @param context any context
+     * @param notificationManager
+     */
+    private static void createNotificationChannel(Context context, NotificationManager notificationManager) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            notificationManager.createNotificationChannel(new NotificationChannel(CHANNEL_ID,
+                    context.getString(R.string.low_stock_notification_channel), NotificationManager.IMPORTANCE_DEFAULT));
+        }
+    }
+}
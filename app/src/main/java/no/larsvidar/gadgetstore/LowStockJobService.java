@@ -0,0 +1,40 @@
+package no.larsvidar.gadgetstore;
+
+import android.annotation.TargetApi;
+import android.app.job.JobParameters;
+import android.app.job.JobService;
+import android.os.AsyncTask;
+import android.os.Build;
+
+/**
+ * Job scheduled by LowStockAlerts, showing the low stock alerts collected since it was scheduled.
+ */
+@TargetApi(Build.VERSION_CODES.LOLLIPOP)
+public class LowStockJobService extends JobService {
+
+    /**
+     * Reads the alerts on a background thread, since the job is started on the main thread.
+     * @param params of the job
+     * @return true, as the job goes on in the background
+     */
+    @Override
+    public boolean onStartJob(final JobParameters params) {
+        AsyncTask.THREAD_POOL_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                LowStockAlerts.showAlerts(getApplicationContext());
+                jobFinished(params, false);
+            }
+        });
+        return true;
+    }
+
+    /**
+     * @param params of the job
+     * @return true, so the alerts are tried again later
+     */
+    @Override
+    public boolean onStopJob(JobParameters params) {
+        return true;
+    }
+}
@@ -0,0 +1,41 @@
+package no.larsvidar.gadgetstore;
+
+import android.annotation.TargetApi;
+import android.app.job.JobParameters;
+import android.app.job.JobService;
+import android.os.AsyncTask;
+import android.os.Build;
+
+/**
+ * Job scheduled by DatabaseMaintenance, running the database maintenance while the device is idle and charging.
+ */
+@TargetApi(Build.VERSION_CODES.LOLLIPOP)
+public class MaintenanceJobService extends JobService {
+
+    /**
+     * Runs the maintenance on a background thread, since the job is started on the main thread.
+     * @param params of the job
+     * @return true, as the job goes on in the background
+     */
+    @Override
+    public boolean onStartJob(final JobParameters params) {
+        AsyncTask.THREAD_POOL_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                DatabaseMaintenance.run(getApplicationContext());
+                jobFinished(params, false);
+            }
+        });
+        return true;
+    }
+
+    /**
+     * A started run can not be stopped, and finishes on its own.
+     * @param params of the job
+     * @return false, as the next period runs the maintenance again anyway
+     */
+    @Override
+    public boolean onStopJob(JobParameters params) {
+        return false;
+    }
+}
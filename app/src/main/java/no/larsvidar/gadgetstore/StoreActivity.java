@@ -10,19 +10,31 @@ import android.content.Intent;
 import android.content.Loader;
 import android.database.Cursor;
 import android.net.Uri;
+import android.os.Handler;
 import android.support.design.widget.FloatingActionButton;
 import android.support.v7.app.AppCompatActivity;
 import android.os.Bundle;
+import android.support.v7.widget.DividerItemDecoration;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
+import android.support.v7.widget.SearchView;
+import android.text.TextUtils;
 import android.util.Log;
 import android.view.Menu;
 import android.view.MenuItem;
 import android.view.View;
-import android.widget.AdapterView;
 import android.widget.Button;
-import android.widget.ListView;
+import android.widget.EditText;
+import android.widget.TextView;
 import android.widget.Toast;
 
+import java.io.File;
+
+import no.larsvidar.gadgetstore.data.InventoryPager;
 import no.larsvidar.gadgetstore.data.StoreContract.InventoryEntry;
+import no.larsvidar.gadgetstore.data.StoreContract.SummaryEntry;
+import no.larsvidar.gadgetstore.data.StoreContract.SupplierEntry;
+import no.larsvidar.gadgetstore.data.StoreWriter;
 
 /**
  * Display list of products from database
@@ -30,8 +42,48 @@ import no.larsvidar.gadgetstore.data.StoreContract.InventoryEntry;
 public class StoreActivity extends AppCompatActivity implements LoaderManager.LoaderCallbacks<Cursor> {
 
     //*** Variables ***
-    public static final int STORE_LOADER = 0;
-    StoreCursorAdapter mCursorAdapter;
+    StoreAdapter mAdapter;
+
+    //Pager loading the product list a page at a time, and the file keeping the first page between launches.
+    private InventoryPager mPager;
+    private static final String SNAPSHOT_FILE_NAME = "first_page.snapshot";
+
+    //View shown when there are no products.
+    private View mEmptyView;
+
+    //Header showing the inventory totals, and the loader keeping it up to date.
+    private TextView mSummaryView;
+    private static final int SUMMARY_LOADER = 0;
+
+    //Loader for the suppliers to filter on, and the suppliers it found.
+    private static final int SUPPLIERS_LOADER = 1;
+    private long[] mSupplierIds = new long[0];
+    private String[] mSupplierNames = new String[0];
+
+    //Sort and filters picked in the menu. The provider sorts and filters, so only the shown page is loaded.
+    private String mSortColumn;
+    private boolean mLowStockOnly;
+    private long mMinPrice = -1;
+    private long mMaxPrice = -1;
+    private long mSupplierId = -1;
+
+    //Request code for choosing a file to import.
+    private static final int REQUEST_IMPORT_FILE = 1;
+
+    //Time to wait after the last keystroke before searching.
+    private static final long SEARCH_DEBOUNCE_MILLIS = 250;
+
+    //Handler and task for debouncing search input.
+    private final Handler mSearchHandler = new Handler();
+    private String mPendingSearchQuery;
+    private String mSearchQuery;
+    private final Runnable mSearchRunnable = new Runnable() {
+        @Override
+        public void run() {
+            mSearchQuery = mPendingSearchQuery;
+            updateList();
+        }
+    };
 
     /**
      * OnCreate method
@@ -40,6 +92,29 @@ public class StoreActivity extends AppCompatActivity implements LoaderManager.Lo
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
+
+        //Create new StoreAdapter, fed by the pager. Item clicks open the product.
+        mAdapter = new StoreAdapter(this, new StoreAdapter.OnProductClickListener() {
+            @Override
+            public void onProductClick(long id) {
+                //Create intent for EditActivity.
+                Intent intent = new Intent(StoreActivity.this, EditActivity.class);
+
+                //Make URI for the specific product that was pressed, and set it on the intent.
+                Uri currentInventoryUri = ContentUris.withAppendedId(InventoryEntry.CONTENT_URI, id);
+                intent.setData(currentInventoryUri);
+
+                //Launch EditActivity
+                startActivity(intent);
+            }
+        });
+        mPager = new InventoryPager(getContentResolver(), mAdapter);
+        mPager.setSnapshotFile(new File(getCacheDir(), SNAPSHOT_FILE_NAME));
+        mAdapter.setPager(mPager);
+
+        //Load the first page, and the snapshot of it, in the background while the layout is inflated.
+        mPager.start();
+
         setContentView(R.layout.activity_store);
 
         //Set opp Add Product button
@@ -52,43 +127,116 @@ public class StoreActivity extends AppCompatActivity implements LoaderManager.Lo
             }
         });
 
-        //Assign List>View to variable
-        ListView inventoryListView = findViewById(R.id.inventory_list);
+        //Assign RecyclerView to variable
+        RecyclerView inventoryListView = findViewById(R.id.inventory_list);
+        inventoryListView.setLayoutManager(new LinearLayoutManager(this));
+        inventoryListView.addItemDecoration(new DividerItemDecoration(this, DividerItemDecoration.VERTICAL));
+        inventoryListView.setAdapter(mAdapter);
 
-        //Setting up Empty View
-        View emptyView = findViewById(R.id.empty_view);
-        inventoryListView.setEmptyView(emptyView);
+        //Setting up Empty View, shown whenever the list is empty.
+        mEmptyView = findViewById(R.id.empty_view);
+        mAdapter.registerAdapterDataObserver(new RecyclerView.AdapterDataObserver() {
+            @Override
+            public void onChanged() {
+                updateEmptyView();
+            }
 
-        //Create new StoreCursorAdapter
-        mCursorAdapter = new StoreCursorAdapter(this, null);
-        inventoryListView.setAdapter(mCursorAdapter);
+            @Override
+            public void onItemRangeInserted(int positionStart, int itemCount) {
+                updateEmptyView();
+            }
 
-        //Item Click Listener
-        inventoryListView.setOnItemClickListener(new AdapterView.OnItemClickListener() {
             @Override
-            public void onItemClick(AdapterView<?> adapterView, View view, int position, long id) {
-                //Create intent for EditActivity.
-                Intent intent = new Intent(StoreActivity.this, EditActivity.class);
+            public void onItemRangeRemoved(int positionStart, int itemCount) {
+                updateEmptyView();
+            }
+        });
+        updateEmptyView();
 
-                //Make URI for the specific product that was pressed, and set it on the intent.
-                Uri currentInventoryUri = ContentUris.withAppendedId(InventoryEntry.CONTENT_URI, id);
-                intent.setData(currentInventoryUri);
+        //Load the inventory totals. They are a single row, however many products there are.
+        mSummaryView = findViewById(R.id.summary_header);
+        getLoaderManager().initLoader(SUMMARY_LOADER, null, this);
 
-                //Launch EditActivity
-                startActivity(intent);
+        //Load the suppliers for the supplier filter.
+        getLoaderManager().initLoader(SUPPLIERS_LOADER, null, this);
+    }
+
+    /**
+     * Creates the loader for the inventory totals or the suppliers.
+     * @param id of the loader
+     * @param args not used
+     * @return the loader
+     */
+    @Override
+    public Loader<Cursor> onCreateLoader(int id, Bundle args) {
+        if (id == SUPPLIERS_LOADER) {
+            String[] projection = {
+                    SupplierEntry._ID,
+                    SupplierEntry.COLUMN_SUPPLIER_NAME};
+            return new CursorLoader(this, SupplierEntry.CONTENT_URI, projection, null, null, null);
+        }
+        String[] projection = {
+                SummaryEntry.COLUMN_TOTAL_VALUE,
+                SummaryEntry.COLUMN_PRODUCT_COUNT,
+                SummaryEntry.COLUMN_OUT_OF_STOCK_COUNT};
+        return new CursorLoader(this, SummaryEntry.CONTENT_URI, projection, null, null, null);
+    }
+
+    /**
+     * Shows the inventory totals in the header, or keeps the suppliers for the supplier filter.
+     * @param loader
+     * @param cursor holding the totals or the suppliers
+     */
+    @Override
+    public void onLoadFinished(Loader<Cursor> loader, Cursor cursor) {
+        if (loader.getId() == SUPPLIERS_LOADER) {
+            int count = cursor == null ? 0 : cursor.getCount();
+            mSupplierIds = new long[count];
+            mSupplierNames = new String[count];
+            for (int i = 0; i < count && cursor.moveToPosition(i); i++) {
+                mSupplierIds[i] = cursor.getLong(0);
+                mSupplierNames[i] = cursor.getString(1);
             }
-        });
+            return;
+        }
+        if (cursor == null || !cursor.moveToFirst()) {
+            mSummaryView.setVisibility(View.GONE);
+            return;
+        }
+        mSummaryView.setText(getString(R.string.store_summary, cursor.getLong(0), cursor.getLong(1), cursor.getLong(2)));
+        mSummaryView.setVisibility(View.VISIBLE);
+    }
 
-        //Start the loader.
-        getLoaderManager().initLoader(STORE_LOADER, null, this);
+    @Override
+    public void onLoaderReset(Loader<Cursor> loader) {
+        if (loader.getId() == SUMMARY_LOADER) {
+            mSummaryView.setText("");
+        }
+    }
+
+    /**
+     * Shows the empty view when there are no products.
+     */
+    private void updateEmptyView() {
+        mEmptyView.setVisibility(mAdapter.getItemCount() == 0 ? View.VISIBLE : View.GONE);
     }
 
     /**
      * Method for deleting all products in database.
      */
     private void deleteAllProducts() {
-        getContentResolver().delete(InventoryEntry.CONTENT_URI, null, null);
-        makeToast(getString(R.string.toast_all_products_deleted));
+        //Delete on the writer thread, and confirm when it is done.
+        StoreWriter.getInstance(this).delete(InventoryEntry.CONTENT_URI, new StoreWriter.Callback<Integer>() {
+            @Override
+            public void onComplete(Integer deletedRows) {
+                makeToast(getString(R.string.toast_all_products_deleted));
+            }
+
+            @Override
+            public void onError(RuntimeException error) {
+                makeToast(error.getMessage());
+            }
+        });
     }
 
     /**
@@ -100,75 +248,246 @@ public class StoreActivity extends AppCompatActivity implements LoaderManager.Lo
     public boolean onCreateOptionsMenu(Menu menu) {
         //Inflate menu from menu_store.xml
         getMenuInflater().inflate(R.menu.menu_store, menu);
+
+        //Set up the search box
+        SearchView searchView = (SearchView) menu.findItem(R.id.menu_store_search).getActionView();
+        searchView.setQueryHint(getString(R.string.store_search_hint));
+        searchView.setOnQueryTextListener(new SearchView.OnQueryTextListener() {
+            @Override
+            public boolean onQueryTextSubmit(String query) {
+                //Search right away when the user submits.
+                search(query, 0);
+                return true;
+            }
+
+            @Override
+            public boolean onQueryTextChange(String newText) {
+                //Wait until the user stops typing before searching.
+                search(newText, SEARCH_DEBOUNCE_MILLIS);
+                return true;
+            }
+        });
         return true;
     }
 
     /**
-     * Method for detecting what option was pressed
-     * @param item
-     * @return
+     * Checks the menu items for the current sort and filters.
+     * @param menu
+     * @return true
      */
     @Override
-    public boolean onOptionsItemSelected(MenuItem item) {
-        //Making switch-statement in case more menu items are added later.
-        switch (item.getItemId()) {
-            case R.id.menu_store_delete:
-                //Option for deleting all products selected.
-                showDeleteConfirmationDialog();
-                return true;
+    public boolean onPrepareOptionsMenu(Menu menu) {
+        int sortItem = R.id.menu_store_sort_added;
+        if (InventoryEntry.SORT_NAME.equals(mSortColumn)) {
+            sortItem = R.id.menu_store_sort_name;
+        } else if (InventoryEntry.SORT_PRICE.equals(mSortColumn)) {
+            sortItem = R.id.menu_store_sort_price;
+        } else if (InventoryEntry.SORT_QUANTITY.equals(mSortColumn)) {
+            sortItem = R.id.menu_store_sort_quantity;
         }
-        return super.onOptionsItemSelected(item);
+        menu.findItem(sortItem).setChecked(true);
+        menu.findItem(R.id.menu_store_filter_low_stock).setChecked(mLowStockOnly);
+        return super.onPrepareOptionsMenu(menu);
     }
 
     /**
-     * Method for making Toast messages
-     * @param text to be displayed.
+     * Pages through the list with the current search, sort and filters.
      */
-    private void makeToast(String text) {
-        Toast.makeText(this, text, Toast.LENGTH_SHORT);
+    private void updateList() {
+        Uri.Builder listUri = (TextUtils.isEmpty(mSearchQuery) ? InventoryEntry.CONTENT_URI
+                : InventoryEntry.buildSearchUri(mSearchQuery)).buildUpon();
+        if (mSortColumn != null) {
+            listUri.appendQueryParameter(InventoryEntry.QUERY_PARAMETER_SORT, mSortColumn);
+        }
+        if (mLowStockOnly) {
+            listUri.appendQueryParameter(InventoryEntry.QUERY_PARAMETER_LOW_STOCK, String.valueOf(true));
+        }
+        if (mMinPrice >= 0) {
+            listUri.appendQueryParameter(InventoryEntry.QUERY_PARAMETER_MIN_PRICE, String.valueOf(mMinPrice));
+        }
+        if (mMaxPrice >= 0) {
+            listUri.appendQueryParameter(InventoryEntry.QUERY_PARAMETER_MAX_PRICE, String.valueOf(mMaxPrice));
+        }
+        if (mSupplierId >= 0) {
+            listUri.appendQueryParameter(InventoryEntry.QUERY_PARAMETER_SUPPLIER_ID, String.valueOf(mSupplierId));
+        }
+        mPager.setListUri(listUri.build());
     }
 
     /**
-     * OnCreateLoader method
-     * @param id
-     * @param args
-     * @return
+     * Sorts the list.
+     * @param sortColumn InventoryEntry.SORT_NAME, SORT_PRICE or SORT_QUANTITY, or null for the order products were added
+     */
+    private void sortBy(String sortColumn) {
+        mSortColumn = sortColumn;
+        updateList();
+    }
+
+    /**
+     * Method for showing a dialog for filtering on price.
+     */
+    private void showPriceRangeDialog() {
+        View dialogView = getLayoutInflater().inflate(R.layout.dialog_price_range, null);
+        final EditText minPriceView = dialogView.findViewById(R.id.price_range_min);
+        final EditText maxPriceView = dialogView.findViewById(R.id.price_range_max);
+        if (mMinPrice >= 0) {
+            minPriceView.setText(String.valueOf(mMinPrice));
+        }
+        if (mMaxPrice >= 0) {
+            maxPriceView.setText(String.valueOf(mMaxPrice));
+        }
+
+        AlertDialog.Builder alertBuilder = new AlertDialog.Builder(this);
+        alertBuilder.setTitle(getString(R.string.dialog_price_range));
+        alertBuilder.setView(dialogView);
+        alertBuilder.setPositiveButton(getString(R.string.dialog_price_range_positive), new DialogInterface.OnClickListener() {
+            @Override
+            public void onClick(DialogInterface dialog, int id) {
+                //Empty fields leave that end of the range open.
+                mMinPrice = parsePrice(minPriceView.getText().toString());
+                mMaxPrice = parsePrice(maxPriceView.getText().toString());
+                updateList();
+            }
+        });
+        alertBuilder.setNegativeButton(getString(R.string.dialog_price_range_negative), null);
+        alertBuilder.create().show();
+    }
+
+    /**
+     * @param text typed by the user
+     * @return the price, or -1 if there is none
+     */
+    private static long parsePrice(String text) {
+        try {
+            return TextUtils.isEmpty(text) ? -1 : Long.parseLong(text.trim());
+        } catch (NumberFormatException nfe) {
+            return -1;
+        }
+    }
+
+    /**
+     * Method for showing a dialog for filtering on supplier.
+     */
+    private void showSupplierDialog() {
+        AlertDialog.Builder alertBuilder = new AlertDialog.Builder(this);
+        alertBuilder.setTitle(getString(R.string.dialog_supplier_filter));
+        alertBuilder.setItems(mSupplierNames, new DialogInterface.OnClickListener() {
+            @Override
+            public void onClick(DialogInterface dialog, int which) {
+                mSupplierId = mSupplierIds[which];
+                updateList();
+            }
+        });
+        alertBuilder.create().show();
+    }
+
+    /**
+     * Schedules a new search, replacing any search that has not started yet.
+     * @param query search text
+     * @param delayMillis time to wait before searching
+     */
+    private void search(String query, long delayMillis) {
+        mPendingSearchQuery = query;
+        mSearchHandler.removeCallbacks(mSearchRunnable);
+        mSearchHandler.postDelayed(mSearchRunnable, delayMillis);
+    }
+
+    /**
+     * Saves the first page, so it shows at once next time.
      */
     @Override
-    public Loader<Cursor> onCreateLoader(int id, Bundle args) {
-        //Create projection
-        String[] projection = {
-                InventoryEntry._ID,
-                InventoryEntry.COLUMN_PRODUCT_NAME,
-                InventoryEntry.COLUMN_PRODUCT_PRICE,
-                InventoryEntry.COLUMN_PRODUCT_QUANTITY,
-                InventoryEntry.COLUMN_SUPPLIER_NAME,
-                InventoryEntry.COLUMN_SUPPLIER_NUMBER
-        };
+    protected void onStop() {
+        mPager.saveSnapshot();
+        super.onStop();
+    }
 
-        //Execute query on the background thread.
-        return new CursorLoader(this, InventoryEntry.CONTENT_URI, projection, null, null, null);
+    /**
+     * Stops pending searches when the activity is destroyed.
+     */
+    @Override
+    protected void onDestroy() {
+        mSearchHandler.removeCallbacks(mSearchRunnable);
+        mPager.close();
+        super.onDestroy();
     }
 
     /**
-     * OnLoadFinish method
-     * @param loader
-     * @param data
+     * Method for detecting what option was pressed
+     * @param item
+     * @return
      */
     @Override
-    public void onLoadFinished(Loader<Cursor> loader, Cursor data) {
-        //Updating cursor
-        mCursorAdapter.swapCursor(data);
+    public boolean onOptionsItemSelected(MenuItem item) {
+        //Making switch-statement in case more menu items are added later.
+        switch (item.getItemId()) {
+            case R.id.menu_store_delete:
+                //Option for deleting all products selected.
+                showDeleteConfirmationDialog();
+                return true;
+            case R.id.menu_store_sort_added:
+                sortBy(null);
+                return true;
+            case R.id.menu_store_sort_name:
+                sortBy(InventoryEntry.SORT_NAME);
+                return true;
+            case R.id.menu_store_sort_price:
+                sortBy(InventoryEntry.SORT_PRICE);
+                return true;
+            case R.id.menu_store_sort_quantity:
+                sortBy(InventoryEntry.SORT_QUANTITY);
+                return true;
+            case R.id.menu_store_filter_low_stock:
+                mLowStockOnly = !mLowStockOnly;
+                updateList();
+                return true;
+            case R.id.menu_store_filter_price:
+                showPriceRangeDialog();
+                return true;
+            case R.id.menu_store_filter_supplier:
+                showSupplierDialog();
+                return true;
+            case R.id.menu_store_filter_clear:
+                mLowStockOnly = false;
+                mMinPrice = -1;
+                mMaxPrice = -1;
+                mSupplierId = -1;
+                updateList();
+                return true;
+            case R.id.menu_store_import:
+                //Let the user pick a file to import.
+                Intent intent = new Intent(Intent.ACTION_GET_CONTENT);
+                intent.setType("*/*");
+                intent.addCategory(Intent.CATEGORY_OPENABLE);
+                startActivityForResult(Intent.createChooser(intent, getString(R.string.store_import_choose_file)),
+                        REQUEST_IMPORT_FILE);
+                return true;
+        }
+        return super.onOptionsItemSelected(item);
     }
 
     /**
-     * OnLoaderReset method
-     * @param loader
+     * Starts importing the file the user picked.
+     * @param requestCode
+     * @param resultCode
+     * @param data holding the URI of the file
      */
     @Override
-    public void onLoaderReset(Loader<Cursor> loader) {
-        //Empty cursor.
-        mCursorAdapter.swapCursor(null);
+    protected void onActivityResult(int requestCode, int resultCode, Intent data) {
+        if (requestCode == REQUEST_IMPORT_FILE) {
+            if (resultCode == RESULT_OK && data != null && data.getData() != null) {
+                ImportService.start(this, data.getData());
+            }
+            return;
+        }
+        super.onActivityResult(requestCode, resultCode, data);
+    }
+
+    /**
+     * Method for making Toast messages
+     * @param text to be displayed.
+     */
+    private void makeToast(String text) {
+        Toast.makeText(this, text, Toast.LENGTH_SHORT).show();
     }
 
     /**
@@ -183,9 +502,8 @@ public class StoreActivity extends AppCompatActivity implements LoaderManager.Lo
         alertBuilder.setPositiveButton(getString(R.string.dialog_delete_all_positive), new DialogInterface.OnClickListener() {
             @Override
             public void onClick(DialogInterface dialog, int id) {
-                //User pressed Delete button.
+                //User pressed Delete button. The result is reported when the delete has finished.
                 deleteAllProducts();
-                makeToast(getString(R.string.dialog_delete_all_confirmation));
             }
         });
 
@@ -0,0 +1,196 @@
+package no.larsvidar.gadgetstore;
+
+import android.content.Context;
+import android.support.v7.widget.RecyclerView;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.Button;
+import android.widget.TextView;
+import android.widget.Toast;
+
+import no.larsvidar.gadgetstore.data.InventoryItem;
+import no.larsvidar.gadgetstore.data.InventoryPager;
+import no.larsvidar.gadgetstore.data.StoreWriter;
+
+/**
+ * RecyclerView adapter showing the paged product list.
+ */
+public class StoreAdapter extends RecyclerView.Adapter<StoreAdapter.ProductViewHolder> implements InventoryPager.Listener {
+
+    /**
+     * Listener for clicks on a product row.
+     */
+    public interface OnProductClickListener {
+        void onProductClick(long id);
+    }
+
+    private final Context mContext;
+    private final OnProductClickListener mProductClickListener;
+    private InventoryPager mPager;
+
+    //Constructor
+    public StoreAdapter(Context context, OnProductClickListener productClickListener) {
+        mContext = context;
+        mProductClickListener = productClickListener;
+    }
+
+    /**
+     * Sets the pager holding the products.
+     * @param pager
+     */
+    public void setPager(InventoryPager pager) {
+        mPager = pager;
+        notifyDataSetChanged();
+    }
+
+    /**
+     * @param position in the list
+     * @return the product, or null while it is loading
+     */
+    public InventoryItem getItem(int position) {
+        //Rows that are being removed have no position.
+        if (position == RecyclerView.NO_POSITION) {
+            return null;
+        }
+        return mPager.getItem(position);
+    }
+
+    @Override
+    public int getItemCount() {
+        return mPager == null ? 0 : mPager.getCount();
+    }
+
+    @Override
+    public ProductViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+        //Inflate each list item using store_item.xml.
+        View view = LayoutInflater.from(mContext).inflate(R.layout.store_item, parent, false);
+        return new ProductViewHolder(view);
+    }
+
+    @Override
+    public void onBindViewHolder(ProductViewHolder holder, int position) {
+        InventoryItem item = getItem(position);
+
+        //Show an empty row while the page is loading.
+        if (item == null) {
+            holder.mProductNameView.setText("");
+            holder.mProductPriceView.setText("");
+            holder.mProductQuantityView.setText("");
+            holder.mSaleButton.setEnabled(false);
+            return;
+        }
+
+        ///Update TextViews with the current attributes
+        holder.mProductNameView.setText(item.getProductName());
+        holder.mProductPriceView.setText(Integer.toString(item.getPrice()));
+        holder.mProductQuantityView.setText(Integer.toString(item.getQuantity()));
+        holder.mSaleButton.setEnabled(true);
+    }
+
+    /***** Pager updates *****/
+
+    @Override
+    public void onPagesChanged() {
+        notifyDataSetChanged();
+    }
+
+    @Override
+    public void onInserted(int position, int count) {
+        notifyItemRangeInserted(position, count);
+    }
+
+    @Override
+    public void onRemoved(int position, int count) {
+        notifyItemRangeRemoved(position, count);
+    }
+
+    @Override
+    public void onMoved(int fromPosition, int toPosition) {
+        notifyItemMoved(fromPosition, toPosition);
+    }
+
+    @Override
+    public void onChanged(int position, int count, Object payload) {
+        notifyItemRangeChanged(position, count, payload);
+    }
+
+    /**
+     * Sells one of the product shown in a row.
+     * @param holder for the row
+     */
+    private void sell(ProductViewHolder holder) {
+        InventoryItem item = getItem(holder.getAdapterPosition());
+        if (item == null) {
+            return;
+        }
+
+        //Sell one item in the database. The row is updated by the pager when the stock changes.
+        StoreWriter.getInstance(mContext).sell(item.getId(), 1, new StoreWriter.Callback<Long>() {
+            @Override
+            public void onComplete(Long newQuantity) {
+                //Check if there was anything left to sell.
+                if (newQuantity >= 0) {
+                    makeToast(mContext, mContext.getString(R.string.sale_button_success));
+                //If the product is out of stock, show Out of stock toast.
+                } else {
+                    makeToast(mContext, mContext.getString(R.string.sale_button_out_of_stock));
+                }
+            }
+
+            @Override
+            public void onError(RuntimeException error) {
+                makeToast(mContext, mContext.getString(R.string.sale_button_fail));
+            }
+        });
+    }
+
+    /**
+     * Method for making toast messages
+     * @param context
+     * @param text to be displayed
+     */
+    public void makeToast(Context context, String text) {
+        Toast.makeText(context, text, Toast.LENGTH_SHORT).show();
+    }
+
+    /**
+     * Holds the views of one row, so they are only looked up when the row is created.
+     */
+    class ProductViewHolder extends RecyclerView.ViewHolder implements View.OnClickListener {
+
+        final TextView mProductNameView;
+        final TextView mProductPriceView;
+        final TextView mProductQuantityView;
+        final Button mSaleButton;
+
+        //Constructor
+        ProductViewHolder(View itemView) {
+            super(itemView);
+
+            //Assign relevant views to variables
+            mProductNameView = itemView.findViewById(R.id.product_name);
+            mProductPriceView = itemView.findViewById(R.id.product_price);
+            mProductQuantityView = itemView.findViewById(R.id.product_quantity);
+            mSaleButton = itemView.findViewById(R.id.store_sale_button);
+
+            //One listener per row, reading the product from the current position.
+            itemView.setOnClickListener(this);
+            mSaleButton.setOnClickListener(this);
+        }
+
+        @Override
+        public void onClick(View view) {
+            if (view == mSaleButton) {
+                sell(this);
+                return;
+            }
+
+            //Open the product, unless the row is still loading.
+            InventoryItem item = getItem(getAdapterPosition());
+            if (item != null) {
+                mProductClickListener.onProductClick(item.getId());
+            }
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package no.larsvidar.gadgetstore.data;
+
+import android.util.LongSparseArray;
+
+/**
+ * Bounded least-recently-used cache of products, keyed by _ID.
+ * Keys stay primitive longs, and evicted entries are reused, so lookups and updates do not allocate.
+ * All methods are thread safe.
+ */
+class InventoryCache {
+
+    /**
+     * One cache entry, linked into the recently used list.
+     */
+    private static final class Entry {
+        long mKey;
+        InventoryItem mItem;
+        Entry mPrevious;
+        Entry mNext;
+    }
+
+    //*** Variables ***
+
+    private final int mMaxSize;
+    private final LongSparseArray<Entry> mEntries;
+
+    //Most and least recently used entries.
+    private Entry mHead;
+    private Entry mTail;
+
+    //Increased by every change, so a value read from the database before a change is not cached after it.
+    private long mVersion;
+
+    //Counters
+    private long mHitCount;
+    private long mMissCount;
+    private long mEvictionCount;
+
+    //Constructor
+    InventoryCache(int maxSize) {
+        mMaxSize = maxSize;
+        mEntries = new LongSparseArray<>(maxSize);
+    }
+
+    /**
+     * @param id of the product
+     * @return the cached product, or null
+     */
+    synchronized InventoryItem get(long id) {
+        Entry entry = mEntries.get(id);
+        if (entry == null) {
+            mMissCount++;
+            return null;
+        }
+        mHitCount++;
+        moveToHead(entry);
+        return entry.mItem;
+    }
+
+    /**
+     * @return current version, to pass to putIfUnchanged after reading from the database
+     */
+    synchronized long getVersion() {
+        return mVersion;
+    }
+
+    /**
+     * Caches a product read from the database, unless the cache has changed since the read started.
+     * @param item read from the database
+     * @param version from getVersion, taken before the read
+     */
+    synchronized void putIfUnchanged(InventoryItem item, long version) {
+        if (version == mVersion) {
+            putInternal(item);
+        }
+    }
+
+    /**
+     * Caches a product that was just written.
+     * @param item as stored in the database
+     */
+    synchronized void put(InventoryItem item) {
+        mVersion++;
+        putInternal(item);
+    }
+
+    /**
+     * Removes a product from the cache.
+     * @param id of the product
+     */
+    synchronized void remove(long id) {
+        mVersion++;
+        Entry entry = mEntries.get(id);
+        if (entry != null) {
+            mEntries.remove(id);
+            unlink(entry);
+        }
+    }
+
+    /**
+     * Removes all products from the cache.
+     */
+    synchronized void clear() {
+        mVersion++;
+        mEntries.clear();
+        mHead = null;
+        mTail = null;
+    }
+
+    synchronized long getHitCount() {
+        return mHitCount;
+    }
+
+    synchronized long getMissCount() {
+        return mMissCount;
+    }
+
+    synchronized long getEvictionCount() {
+        return mEvictionCount;
+    }
+
+    synchronized int size() {
+        return mEntries.size();
+    }
+
+    private void putInternal(InventoryItem item) {
+        Entry entry = mEntries.get(item.getId());
+        if (entry == null) {
+            if (mEntries.size() >= mMaxSize) {
+                //Reuse the least recently used entry.
+                entry = mTail;
+                mEntries.remove(entry.mKey);
+                unlink(entry);
+                mEvictionCount++;
+            } else {
+                entry = new Entry();
+            }
+            entry.mKey = item.getId();
+            mEntries.put(entry.mKey, entry);
+        } else {
+            unlink(entry);
+        }
+        entry.mItem = item;
+        linkAtHead(entry);
+    }
+
+    private void moveToHead(Entry entry) {
+        if (entry != mHead) {
+            unlink(entry);
+            linkAtHead(entry);
+        }
+    }
+
+    private void linkAtHead(Entry entry) {
+        entry.mPrevious = null;
+        entry.mNext = mHead;
+        if (mHead != null) {
+            mHead.mPrevious = entry;
+        }
+        mHead = entry;
+        if (mTail == null) {
+            mTail = entry;
+        }
+    }
+
+    private void unlink(Entry entry) {
+        if (entry.mPrevious != null) {
+            entry.mPrevious.mNext = entry.mNext;
+        } else {
+            mHead = entry.mNext;
+        }
+        if (entry.mNext != null) {
+            entry.mNext.mPrevious = entry.mPrevious;
+        } else {
+            mTail = entry.mPrevious;
+        }
+        entry.mPrevious = null;
+        entry.mNext = null;
+    }
+}
@@ -0,0 +1,194 @@
+package no.larsvidar.gadgetstore.data;
+
+import android.content.ContentProvider;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.net.Uri;
+import android.os.Bundle;
+import android.os.ParcelFileDescriptor;
+import android.util.Log;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+
+import no.larsvidar.gadgetstore.data.StoreContract.InventoryEntry;
+
+/**
+ * Writes the whole inventory into a pipe, for StoreProvider.openFile.
+ * Products are read a page at a time, keyed on _ID, so only one page of rows is in memory however big the table is.
+ * Products changed while the export runs may or may not be included.
+ */
+class InventoryExporter implements ContentProvider.PipeDataWriter<String> {
+
+    private static final String LOG_TAG = InventoryExporter.class.getSimpleName();
+
+    //Rows read per query. Small enough for one CursorWindow.
+    private static final int PAGE_SIZE = 1000;
+
+    //Size of the output buffer.
+    private static final int BUFFER_SIZE = 8192;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    //Exported columns, in the order they are written.
+    private static final String[] COLUMNS = {
+            InventoryEntry._ID,
+            InventoryEntry.COLUMN_PRODUCT_NAME,
+            InventoryEntry.COLUMN_PRODUCT_PRICE,
+            InventoryEntry.COLUMN_PRODUCT_QUANTITY,
+            InventoryEntry.COLUMN_SUPPLIER_NAME,
+            InventoryEntry.COLUMN_SUPPLIER_NUMBER,
+            InventoryEntry.COLUMN_REORDER_THRESHOLD
+    };
+
+    private static final String SELECTION_AFTER_ID = InventoryEntry._ID + " > ?";
+    private static final String ORDER_BY_ID = InventoryEntry._ID + " ASC";
+
+    private final SQLiteOpenHelper mDatabaseHelper;
+
+    //Constructor
+    InventoryExporter(SQLiteOpenHelper databaseHelper) {
+        mDatabaseHelper = databaseHelper;
+    }
+
+    /**
+     * Writes the inventory to the pipe. Runs on a background thread started by openPipeHelper.
+     * @param output write end of the pipe, closed by the caller
+     * @param uri export URI
+     * @param mimeType of the export
+     * @param opts not used
+     * @param format InventoryEntry.FORMAT_CSV or InventoryEntry.FORMAT_BINARY
+     */
+    @Override
+    public void writeDataToPipe(ParcelFileDescriptor output, Uri uri, String mimeType, Bundle opts, String format) {
+        OutputStream stream = new BufferedOutputStream(new FileOutputStream(output.getFileDescriptor()), BUFFER_SIZE);
+        try {
+            if (InventoryEntry.FORMAT_BINARY.equals(format)) {
+                writeBinary(new DataOutputStream(stream));
+            } else {
+                writeCsv(new OutputStreamWriter(stream, UTF_8));
+            }
+        } catch (IOException e) {
+            //The reader closed the pipe early.
+            Log.w(LOG_TAG, "Export of " + uri + " stopped", e);
+        }
+    }
+
+    /**
+     * Writes products as CSV, with the same header ProductImporter reads.
+     */
+    private void writeCsv(Writer writer) throws IOException {
+        writer.write(COLUMNS[0]);
+        for (int i = 1; i < COLUMNS.length; i++) {
+            writer.write(',');
+            writer.write(COLUMNS[i]);
+        }
+        writer.write('\n');
+
+        long lastId = 0;
+        Cursor cursor;
+        while ((cursor = queryPage(lastId)) != null) {
+            try {
+                while (cursor.moveToNext()) {
+                    lastId = cursor.getLong(0);
+                    writer.write(Long.toString(lastId));
+                    writer.write(',');
+                    writeCsvField(writer, cursor.getString(1));
+                    writer.write(',');
+                    writer.write(Integer.toString(cursor.getInt(2)));
+                    writer.write(',');
+                    writer.write(Integer.toString(cursor.getInt(3)));
+                    writer.write(',');
+                    writeCsvField(writer, cursor.getString(4));
+                    writer.write(',');
+                    writeCsvField(writer, cursor.getString(5));
+                    writer.write(',');
+                    writer.write(Integer.toString(cursor.getInt(6)));
+                    writer.write('\n');
+                }
+            } finally {
+                cursor.close();
+            }
+        }
+        writer.flush();
+    }
+
+    /**
+     * Writes a text field, quoted if it holds commas, quotes or line breaks.
+     */
+    private static void writeCsvField(Writer writer, String value) throws IOException {
+        if (value == null) {
+            return;
+        }
+        boolean quote = false;
+        for (int i = 0; i < value.length() && !quote; i++) {
+            char c = value.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quote) {
+            writer.write(value);
+            return;
+        }
+        writer.write('"');
+        writer.write(value.replace("\"", "\"\""));
+        writer.write('"');
+    }
+
+    /**
+     * Writes products in the binary format described at InventoryEntry.FORMAT_BINARY.
+     */
+    private void writeBinary(DataOutputStream output) throws IOException {
+        output.writeInt(InventoryEntry.BINARY_EXPORT_MAGIC);
+        output.writeInt(InventoryEntry.BINARY_EXPORT_VERSION);
+
+        long lastId = 0;
+        Cursor cursor;
+        while ((cursor = queryPage(lastId)) != null) {
+            try {
+                while (cursor.moveToNext()) {
+                    lastId = cursor.getLong(0);
+                    output.writeByte(1);
+                    output.writeLong(lastId);
+                    output.writeUTF(nonNull(cursor.getString(1)));
+                    output.writeInt(cursor.getInt(2));
+                    output.writeInt(cursor.getInt(3));
+                    output.writeUTF(nonNull(cursor.getString(4)));
+                    output.writeUTF(nonNull(cursor.getString(5)));
+                    output.writeInt(cursor.getInt(6));
+                }
+            } finally {
+                cursor.close();
+            }
+        }
+        //End of products
+        output.writeByte(0);
+        output.flush();
+    }
+
+    /**
+     * Reads the next page of products.
+     * @param lastId _ID of the last product written
+     * @return cursor on the page, or null when there are no more products
+     */
+    private Cursor queryPage(long lastId) {
+        SQLiteDatabase database = mDatabaseHelper.getReadableDatabase();
+        Cursor cursor = database.query(InventoryEntry.TABLE_NAME, COLUMNS, SELECTION_AFTER_ID,
+                new String[]{Long.toString(lastId)}, null, null, ORDER_BY_ID, Integer.toString(PAGE_SIZE));
+        if (cursor.getCount() == 0) {
+            cursor.close();
+            return null;
+        }
+        return cursor;
+    }
+
+    private static String nonNull(String value) {
+        return value == null ? "" : value;
+    }
+}
@@ -0,0 +1,182 @@
+package no.larsvidar.gadgetstore.data;
+
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.text.TextUtils;
+
+import no.larsvidar.gadgetstore.data.StoreContract.InventoryEntry;
+
+/**
+ * One product row, as read from the inventory table.
+ */
+public final class InventoryItem {
+
+    //Columns needed to build an item, in the order used by fromCursor.
+    public static final String[] PROJECTION = {
+            InventoryEntry._ID,
+            InventoryEntry.COLUMN_PRODUCT_NAME,
+            InventoryEntry.COLUMN_PRODUCT_PRICE,
+            InventoryEntry.COLUMN_PRODUCT_QUANTITY,
+            InventoryEntry.COLUMN_SUPPLIER_NAME,
+            InventoryEntry.COLUMN_SUPPLIER_NUMBER,
+            InventoryEntry.COLUMN_REORDER_THRESHOLD
+    };
+
+    //Product attributes
+    private final long mId;
+    private final String mProductName;
+    private final int mPrice;
+    private final int mQuantity;
+    private final String mSupplierName;
+    private final String mSupplierNumber;
+    private final int mReorderThreshold;
+
+    //Constructor
+    public InventoryItem(long id, String productName, int price, int quantity, String supplierName, String supplierNumber,
+                         int reorderThreshold) {
+        mId = id;
+        mProductName = productName;
+        mPrice = price;
+        mQuantity = quantity;
+        mSupplierName = supplierName;
+        mSupplierNumber = supplierNumber;
+        mReorderThreshold = reorderThreshold;
+    }
+
+    /**
+     * Reads the item at the current position of a cursor queried with PROJECTION.
+     * @param cursor positioned on a row
+     * @return the item
+     */
+    public static InventoryItem fromCursor(Cursor cursor) {
+        return new InventoryItem(
+                cursor.getLong(0),
+                cursor.getString(1),
+                cursor.getInt(2),
+                cursor.getInt(3),
+                cursor.getString(4),
+                cursor.getString(5),
+                cursor.getInt(6));
+    }
+
+    /**
+     * Checks if a projection only asks for columns an item holds.
+     * @param projection to check. Null asks for every column of the inventory view, which an item does not hold.
+     * @return true if toCursor can answer it
+     */
+    public static boolean hasColumns(String[] projection) {
+        if (projection == null) {
+            return false;
+        }
+        for (String column : projection) {
+            if (columnIndex(column) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Makes a one-row cursor holding this item.
+     * @param projection columns to include, or null for all columns
+     * @return the cursor
+     */
+    public MatrixCursor toCursor(String[] projection) {
+        String[] columns = projection != null ? projection : PROJECTION;
+        Object[] row = new Object[columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            switch (columnIndex(columns[i])) {
+                case 0:
+                    row[i] = mId;
+                    break;
+                case 1:
+                    row[i] = mProductName;
+                    break;
+                case 2:
+                    row[i] = mPrice;
+                    break;
+                case 3:
+                    row[i] = mQuantity;
+                    break;
+                case 4:
+                    row[i] = mSupplierName;
+                    break;
+                case 5:
+                    row[i] = mSupplierNumber;
+                    break;
+                case 6:
+                    row[i] = mReorderThreshold;
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown column " + columns[i]);
+            }
+        }
+        MatrixCursor cursor = new MatrixCursor(columns, 1);
+        cursor.addRow(row);
+        return cursor;
+    }
+
+    /**
+     * @param column name
+     * @return index of the column in PROJECTION, or -1
+     */
+    private static int columnIndex(String column) {
+        for (int i = 0; i < PROJECTION.length; i++) {
+            if (PROJECTION[i].equals(column)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    public long getId() {
+        return mId;
+    }
+
+    public String getProductName() {
+        return mProductName;
+    }
+
+    public int getPrice() {
+        return mPrice;
+    }
+
+    public int getQuantity() {
+        return mQuantity;
+    }
+
+    public String getSupplierName() {
+        return mSupplierName;
+    }
+
+    public String getSupplierNumber() {
+        return mSupplierNumber;
+    }
+
+    public int getReorderThreshold() {
+        return mReorderThreshold;
+    }
+
+    @Override
+    public boolean equals(Object object) {
+        if (this == object) {
+            return true;
+        }
+        if (!(object instanceof InventoryItem)) {
+            return false;
+        }
+        InventoryItem other = (InventoryItem) object;
+        return mId == other.mId
+                && mPrice == other.mPrice
+                && mQuantity == other.mQuantity
+                && mReorderThreshold == other.mReorderThreshold
+                && TextUtils.equals(mProductName, other.mProductName)
+                && TextUtils.equals(mSupplierName, other.mSupplierName)
+                && TextUtils.equals(mSupplierNumber, other.mSupplierNumber);
+    }
+
+    @Override
+    public int hashCode() {
+        return (int) (mId ^ (mId >>> 32));
+    }
+}
@@ -0,0 +1,671 @@
+package no.larsvidar.gadgetstore.data;
+
+import android.content.ContentResolver;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.AsyncTask;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.v7.util.DiffUtil;
+import android.support.v7.util.ListUpdateCallback;
+import android.text.TextUtils;
+import android.util.AtomicFile;
+import android.util.LruCache;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import no.larsvidar.gadgetstore.data.StoreContract.InventoryEntry;
+
+/**
+ * Loads the product list one page at a time as the user scrolls.
+ * Only a few pages are kept in memory, so memory use does not grow with the size of the inventory.
+ * With a snapshot file, the first page seen last time is shown until the first page is loaded.
+ * All methods must be called on the main thread.
+ */
+public class InventoryPager {
+
+    /**
+     * Listener for changes in the paged list. The ListUpdateCallback methods report changes to single rows.
+     */
+    public interface Listener extends ListUpdateCallback {
+        /**
+         * Called on the main thread when any part of the list may have changed.
+         */
+        void onPagesChanged();
+    }
+
+    //*** Variables ***
+
+    //Number of products in each page.
+    public static final int PAGE_SIZE = 50;
+
+    //Maximum number of pages held in memory.
+    public static final int MAX_PAGES_IN_MEMORY = 6;
+
+    //How close to the end of the known list the next page is fetched.
+    private static final int PREFETCH_DISTANCE = PAGE_SIZE / 2;
+
+    private final ContentResolver mContentResolver;
+    private final Listener mListener;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    //Pages are loaded one at a time, in the order they are asked for.
+    private final ExecutorService mExecutor = Executors.newSingleThreadExecutor();
+
+    //List being paged, CONTENT_URI or a search URI, with any sort and filter parameters.
+    private Uri mListUri = InventoryEntry.CONTENT_URI;
+
+    //Sort parameter of the list, or null when it is in _ID order.
+    private String mSortColumn;
+
+    //Increased on every reset and page split, so pages loaded for an old list or old page index are thrown away.
+    private int mGeneration;
+
+    //Every page found so far. Page i holds the products after the one with _ID mPageAfterIds[i],
+    //and sort value mPageAfterKeys[i] in a sorted list.
+    private long[] mPageAfterIds = new long[16];
+    private String[] mPageAfterKeys = new String[16];
+    private int[] mPageSizes = new int[16];
+    private int[] mPageOffsets = new int[16];
+    private int mPageCount;
+
+    //Number of products in all pages found so far.
+    private int mItemCount;
+
+    //Pages currently in memory. The least recently used page is dropped first.
+    private final LruCache<Integer, InventoryItem[]> mPages = new LruCache<>(MAX_PAGES_IN_MEMORY);
+
+    //Pages being loaded right now.
+    private final Set<Integer> mLoadingPages = new HashSet<>();
+
+    //File holding the first page seen last time, or null to not keep one.
+    private AtomicFile mSnapshotFile;
+
+    //First page seen last time, shown in place of the list until the first page is loaded. Null when not shown.
+    private InventoryItem[] mSnapshot;
+
+    //Time to collect single product changes before reloading their pages.
+    private static final long CHANGE_DELAY_MILLIS = 100;
+
+    //Pages with changed products, waiting to be reloaded.
+    private final Set<Integer> mChangedPages = new HashSet<>();
+
+    //Reloads the pages with changed products.
+    private final Runnable mReloadChangedPages = new Runnable() {
+        @Override
+        public void run() {
+            for (Integer page : mChangedPages) {
+                if (page < mPageCount) {
+                    loadPage(page, true);
+                }
+            }
+            mChangedPages.clear();
+        }
+    };
+
+    //Reloads only what is needed when products change.
+    private final ContentObserver mObserver = new ContentObserver(mMainHandler) {
+        @Override
+        public void onChange(boolean selfChange) {
+            onChange(selfChange, null);
+        }
+
+        @Override
+        public void onChange(boolean selfChange, Uri uri) {
+            onProductsChanged(uri);
+        }
+    };
+
+    //Constructor
+    public InventoryPager(ContentResolver contentResolver, Listener listener) {
+        mContentResolver = contentResolver;
+        mListener = listener;
+    }
+
+    /**
+     * Keeps a snapshot of the first page in a file, to show at once the next time the pager starts.
+     * Call before start.
+     * @param file to keep the snapshot in
+     */
+    public void setSnapshotFile(File file) {
+        mSnapshotFile = new AtomicFile(file);
+    }
+
+    /**
+     * Starts listening for changes and loads the first page. Reads the snapshot, if any, at the same time.
+     */
+    public void start() {
+        mContentResolver.registerContentObserver(InventoryEntry.CONTENT_URI, true, mObserver);
+        reset();
+        if (mSnapshotFile != null) {
+            loadSnapshot();
+        }
+    }
+
+    /**
+     * Saves the first page of the list in _ID order, without search or filters, as the snapshot.
+     * Does nothing for other lists, or if the first page is not in memory.
+     */
+    public void saveSnapshot() {
+        final InventoryItem[] items = mPages.get(0);
+        if (mSnapshotFile == null || items == null || !InventoryEntry.CONTENT_URI.equals(mListUri)) {
+            return;
+        }
+        //Not on the page thread, which close stops before it gets to the write.
+        final AtomicFile file = mSnapshotFile;
+        AsyncTask.SERIAL_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                PageSnapshot.write(file, items);
+            }
+        });
+    }
+
+    /**
+     * Stops listening for changes and stops loading pages. The pager can not be used after this.
+     */
+    public void close() {
+        //Pages still on their way to the main thread are ignored.
+        mGeneration++;
+        mMainHandler.removeCallbacks(mReloadChangedPages);
+        mContentResolver.unregisterContentObserver(mObserver);
+        mExecutor.shutdownNow();
+    }
+
+    /**
+     * Switches to another list, and starts over from the first page.
+     * @param listUri CONTENT_URI or a search URI, with any sort and filter parameters
+     */
+    public void setListUri(Uri listUri) {
+        mListUri = listUri;
+        mSortColumn = listUri.getQueryParameter(InventoryEntry.QUERY_PARAMETER_SORT);
+        reset();
+    }
+
+    /**
+     * @return number of products found so far. Grows as the user scrolls towards the end.
+     */
+    public int getCount() {
+        return mSnapshot != null ? mSnapshot.length : mItemCount;
+    }
+
+    /**
+     * Returns the product at a position, and starts loading it if it is not in memory.
+     * @param position in the list
+     * @return the product, or null while its page is loading
+     */
+    public InventoryItem getItem(int position) {
+        //The first page is already loading.
+        if (mSnapshot != null) {
+            return position < mSnapshot.length ? mSnapshot[position] : null;
+        }
+
+        //Fetch the next page before the user reaches the end.
+        if (position >= mItemCount - PREFETCH_DISTANCE) {
+            loadPage(mPageCount - 1, false);
+        }
+
+        int page = pageForPosition(position);
+        InventoryItem[] items = mPages.get(page);
+        if (items == null) {
+            loadPage(page, false);
+            return null;
+        }
+
+        //The page may have shrunk since its size was last used for positions.
+        int index = position - mPageOffsets[page];
+        return index < items.length ? items[index] : null;
+    }
+
+    /**
+     * Throws away all pages and loads the first page again.
+     */
+    private void reset() {
+        mGeneration++;
+        mPages.evictAll();
+        mLoadingPages.clear();
+        mMainHandler.removeCallbacks(mReloadChangedPages);
+        mChangedPages.clear();
+        mSnapshot = null;
+
+        mPageCount = 1;
+        mPageAfterIds[0] = 0;
+        mPageAfterKeys[0] = null;
+        mPageSizes[0] = 0;
+        mPageOffsets[0] = 0;
+        mItemCount = 0;
+
+        loadPage(0, false);
+        mListener.onPagesChanged();
+    }
+
+    /**
+     * Reads the snapshot in the background, alongside the query for the first page.
+     */
+    private void loadSnapshot() {
+        final int generation = mGeneration;
+        final AtomicFile file = mSnapshotFile;
+        AsyncTask.THREAD_POOL_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                final InventoryItem[] items = PageSnapshot.read(file);
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        //Too late if the list has been reset, or the first page is already in.
+                        if (generation != mGeneration || mPages.get(0) != null || items.length == 0) {
+                            return;
+                        }
+                        mSnapshot = items;
+                        mListener.onPagesChanged();
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Handles a change notification from the provider.
+     * A change to one product only reloads the page it is on, and at most every CHANGE_DELAY_MILLIS,
+     * so a burst of sales turns into a few small page queries.
+     * @param uri that was notified, or null if unknown
+     */
+    private void onProductsChanged(Uri uri) {
+        List<String> segments = uri == null ? null : uri.getPathSegments();
+
+        //Anything may have changed.
+        if (segments == null || segments.size() < 2) {
+            refresh();
+            return;
+        }
+
+        //Ignore notifications that are not about a single product.
+        if (segments.size() != 2 || !TextUtils.isDigitsOnly(segments.get(1))) {
+            return;
+        }
+
+        //In a sorted list a changed product may move to another page, so reload every page in memory.
+        if (mSortColumn != null) {
+            if (mChangedPages.isEmpty()) {
+                mMainHandler.postDelayed(mReloadChangedPages, CHANGE_DELAY_MILLIS);
+            }
+            mChangedPages.addAll(mPages.snapshot().keySet());
+            mChangedPages.add(mPageCount - 1);
+            return;
+        }
+
+        long id = Long.parseLong(segments.get(1));
+        int page = pageForId(id);
+
+        //An updated product that is not in memory will be up to date when its page is loaded.
+        //Added and removed products change positions, so their page is always reloaded.
+        String change = uri.getQueryParameter(InventoryEntry.QUERY_PARAMETER_CHANGE);
+        if (InventoryEntry.CHANGE_UPDATE.equals(change) && mPages.get(page) == null) {
+            return;
+        }
+
+        //Collect changes for a short while, and then reload each changed page once.
+        if (mChangedPages.isEmpty()) {
+            mMainHandler.postDelayed(mReloadChangedPages, CHANGE_DELAY_MILLIS);
+        }
+        mChangedPages.add(page);
+    }
+
+    /**
+     * Finds the page a product belongs on.
+     * @param id of the product
+     * @return page index
+     */
+    private int pageForId(long id) {
+        //Last page starting after an _ID below the product.
+        int low = 0;
+        int high = mPageCount - 1;
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+            if (mPageAfterIds[middle] < id) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Reloads the pages in memory, and the last page in case products were added.
+     */
+    private void refresh() {
+        for (Integer page : mPages.snapshot().keySet()) {
+            loadPage(page, true);
+        }
+        loadPage(mPageCount - 1, true);
+    }
+
+    /**
+     * Finds the page holding a position.
+     * @param position in the list
+     * @return page index
+     */
+    private int pageForPosition(int position) {
+        //Last page starting at or before the position. Empty pages share offset with the page after them.
+        int low = 0;
+        int high = mPageCount - 1;
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+            if (mPageOffsets[middle] <= position) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Loads a page in the background.
+     * @param page to load
+     * @param force true to load it even if it is already in memory or loading
+     */
+    private void loadPage(final int page, boolean force) {
+        if (!force && (mLoadingPages.contains(page) || mPages.get(page) != null)) {
+            return;
+        }
+        mLoadingPages.add(page);
+
+        final int generation = mGeneration;
+        //A page with a page after it reads everything up to where the next page starts, with no limit.
+        //Products that moved in make it longer, instead of pushing its last products out of every page.
+        final Uri pageUri = page + 1 < mPageCount
+                ? InventoryEntry.buildRangeUri(mListUri, mPageAfterKeys[page], mPageAfterIds[page],
+                        mPageAfterKeys[page + 1], mPageAfterIds[page + 1])
+                : InventoryEntry.buildPageUri(mListUri, mPageAfterKeys[page], mPageAfterIds[page], PAGE_SIZE);
+        //Page as it is now, to find out which rows change.
+        final InventoryItem[] oldItems = mPages.get(page);
+
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final InventoryItem[] items = queryPage(pageUri);
+
+                //Work out the changed rows here, off the main thread.
+                final DiffUtil.DiffResult diff = oldItems == null ? null
+                        : DiffUtil.calculateDiff(new PageDiffCallback(oldItems, items), false);
+
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        onPageLoaded(generation, page, oldItems, items, diff);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Queries one page. Runs on the background thread.
+     * @param pageUri URI for the page
+     * @return products in the page
+     */
+    private InventoryItem[] queryPage(Uri pageUri) {
+        Cursor cursor = mContentResolver.query(pageUri, InventoryItem.PROJECTION, null, null, null);
+        if (cursor == null) {
+            return new InventoryItem[0];
+        }
+        try {
+            InventoryItem[] items = new InventoryItem[cursor.getCount()];
+            for (int i = 0; cursor.moveToNext(); i++) {
+                items[i] = InventoryItem.fromCursor(cursor);
+            }
+            return items;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Stores a loaded page, updates positions and tells the listener which rows changed.
+     * @param generation the page was loaded for
+     * @param page index
+     * @param oldItems the page held when loading started, or null
+     * @param items in the page
+     * @param diff from oldItems to items, or null
+     */
+    private void onPageLoaded(int generation, int page, InventoryItem[] oldItems, InventoryItem[] items,
+                              DiffUtil.DiffResult diff) {
+        //Throw away pages loaded for a list that has been reset, or before pages were split.
+        if (generation != mGeneration) {
+            return;
+        }
+        mLoadingPages.remove(page);
+        InventoryItem[] currentItems = mPages.get(page);
+        mPages.put(page, items);
+
+        //The real first page takes over from the snapshot.
+        boolean replacesSnapshot = page == 0 && mSnapshot != null;
+        mSnapshot = null;
+
+        //Update positions if the page changed size. A page that grew too long is split, which moves no rows.
+        int oldSize = mPageSizes[page];
+        if (items.length > PAGE_SIZE) {
+            splitPage(page, items);
+        } else if (items.length != oldSize) {
+            mPageSizes[page] = items.length;
+            updateOffsets(page);
+        }
+
+        //A full last page means there may be more products after it.
+        if (page == mPageCount - 1 && items.length == PAGE_SIZE) {
+            addPage(items[items.length - 1]);
+        }
+
+        if (replacesSnapshot) {
+            mListener.onPagesChanged();
+        } else if (diff != null && currentItems == oldItems && oldItems.length == oldSize) {
+            //Only the rows that changed are updated.
+            diff.dispatchUpdatesTo(new OffsetListUpdateCallback(mPageOffsets[page], mListener));
+        } else if (items.length == oldSize) {
+            //Rows that were loading are now ready.
+            mListener.onChanged(mPageOffsets[page], items.length, null);
+        } else {
+            mListener.onPagesChanged();
+        }
+    }
+
+    /**
+     * Adds an empty, not yet loaded page at the end of the list.
+     * @param lastItem last product in the page before it
+     */
+    private void addPage(InventoryItem lastItem) {
+        if (mPageCount == mPageAfterIds.length) {
+            int capacity = mPageCount * 2;
+            mPageAfterIds = Arrays.copyOf(mPageAfterIds, capacity);
+            mPageAfterKeys = Arrays.copyOf(mPageAfterKeys, capacity);
+            mPageSizes = Arrays.copyOf(mPageSizes, capacity);
+            mPageOffsets = Arrays.copyOf(mPageOffsets, capacity);
+        }
+        mPageAfterIds[mPageCount] = lastItem.getId();
+        mPageAfterKeys[mPageCount] = sortKeyOf(lastItem, mSortColumn);
+        mPageSizes[mPageCount] = 0;
+        mPageOffsets[mPageCount] = mItemCount;
+        mPageCount++;
+    }
+
+    /**
+     * Splits a page that has grown past PAGE_SIZE into pages of PAGE_SIZE, so no page keeps growing.
+     * Every product keeps its position in the list.
+     * @param page index
+     * @param items in the page
+     */
+    private void splitPage(int page, InventoryItem[] items) {
+        int newPages = (items.length - 1) / PAGE_SIZE;
+        insertPages(page + 1, newPages);
+        for (int i = 0; i <= newPages; i++) {
+            int from = i * PAGE_SIZE;
+            int to = Math.min(from + PAGE_SIZE, items.length);
+            if (i > 0) {
+                mPageAfterIds[page + i] = items[from - 1].getId();
+                mPageAfterKeys[page + i] = sortKeyOf(items[from - 1], mSortColumn);
+            }
+            mPages.put(page + i, Arrays.copyOfRange(items, from, to));
+            mPageSizes[page + i] = to - from;
+        }
+        updateOffsets(page);
+    }
+
+    /**
+     * Makes room for new pages, moving the pages from an index on. Pages being loaded are loaded again,
+     * since the loads already running are for their old index.
+     * @param at index of the first new page
+     * @param count number of new pages
+     */
+    private void insertPages(int at, int count) {
+        int capacity = mPageAfterIds.length;
+        while (capacity < mPageCount + count) {
+            capacity *= 2;
+        }
+        if (capacity != mPageAfterIds.length) {
+            mPageAfterIds = Arrays.copyOf(mPageAfterIds, capacity);
+            mPageAfterKeys = Arrays.copyOf(mPageAfterKeys, capacity);
+            mPageSizes = Arrays.copyOf(mPageSizes, capacity);
+            mPageOffsets = Arrays.copyOf(mPageOffsets, capacity);
+        }
+        int moved = mPageCount - at;
+        System.arraycopy(mPageAfterIds, at, mPageAfterIds, at + count, moved);
+        System.arraycopy(mPageAfterKeys, at, mPageAfterKeys, at + count, moved);
+        System.arraycopy(mPageSizes, at, mPageSizes, at + count, moved);
+        System.arraycopy(mPageOffsets, at, mPageOffsets, at + count, moved);
+        mPageCount += count;
+
+        //Least recently used first, so the cache keeps its order.
+        Map<Integer, InventoryItem[]> pages = mPages.snapshot();
+        mPages.evictAll();
+        for (Map.Entry<Integer, InventoryItem[]> entry : pages.entrySet()) {
+            mPages.put(movedPage(entry.getKey(), at, count), entry.getValue());
+        }
+        Set<Integer> changedPages = new HashSet<>(mChangedPages);
+        mChangedPages.clear();
+        for (Integer changedPage : changedPages) {
+            mChangedPages.add(movedPage(changedPage, at, count));
+        }
+
+        //Loads that finish from now on are for the old pages, and are thrown away.
+        mGeneration++;
+        Set<Integer> loadingPages = new HashSet<>(mLoadingPages);
+        mLoadingPages.clear();
+        for (Integer loadingPage : loadingPages) {
+            loadPage(movedPage(loadingPage, at, count), true);
+        }
+    }
+
+    private static int movedPage(int page, int at, int count) {
+        return page < at ? page : page + count;
+    }
+
+    /**
+     * Recalculates the position of every page after a page changed size.
+     * @param fromPage first page whose size changed
+     */
+    private void updateOffsets(int fromPage) {
+        for (int i = fromPage + 1; i < mPageCount; i++) {
+            mPageOffsets[i] = mPageOffsets[i - 1] + mPageSizes[i - 1];
+        }
+        mItemCount = mPageOffsets[mPageCount - 1] + mPageSizes[mPageCount - 1];
+    }
+
+    /**
+     * @param item product
+     * @param sortColumn sort parameter of the list, or null
+     * @return the value the list is sorted on, as sent in the after_key parameter, or null in _ID order
+     */
+    private static String sortKeyOf(InventoryItem item, String sortColumn) {
+        if (sortColumn == null) {
+            return null;
+        }
+        switch (sortColumn) {
+            case InventoryEntry.SORT_NAME:
+                return item.getProductName();
+            case InventoryEntry.SORT_PRICE:
+                return String.valueOf(item.getPrice());
+            default:
+                return String.valueOf(item.getQuantity());
+        }
+    }
+
+    /**
+     * Compares two versions of the same page.
+     */
+    private static class PageDiffCallback extends DiffUtil.Callback {
+
+        private final InventoryItem[] mOldItems;
+        private final InventoryItem[] mNewItems;
+
+        //Constructor
+        PageDiffCallback(InventoryItem[] oldItems, InventoryItem[] newItems) {
+            mOldItems = oldItems;
+            mNewItems = newItems;
+        }
+
+        @Override
+        public int getOldListSize() {
+            return mOldItems.length;
+        }
+
+        @Override
+        public int getNewListSize() {
+            return mNewItems.length;
+        }
+
+        @Override
+        public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
+            return mOldItems[oldItemPosition].getId() == mNewItems[newItemPosition].getId();
+        }
+
+        @Override
+        public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
+            return mOldItems[oldItemPosition].equals(mNewItems[newItemPosition]);
+        }
+    }
+
+    /**
+     * Passes changes within a page on to the listener, moved to the position of the page.
+     */
+    private static class OffsetListUpdateCallback implements ListUpdateCallback {
+
+        private final int mOffset;
+        private final ListUpdateCallback mCallback;
+
+        //Constructor
+        OffsetListUpdateCallback(int offset, ListUpdateCallback callback) {
+            mOffset = offset;
+            mCallback = callback;
+        }
+
+        @Override
+        public void onInserted(int position, int count) {
+            mCallback.onInserted(mOffset + position, count);
+        }
+
+        @Override
+        public void onRemoved(int position, int count) {
+            mCallback.onRemoved(mOffset + position, count);
+        }
+
+        @Override
+        public void onMoved(int fromPosition, int toPosition) {
+            mCallback.onMoved(mOffset + fromPosition, mOffset + toPosition);
+        }
+
+        @Override
+        public void onChanged(int position, int count, Object payload) {
+            mCallback.onChanged(mOffset + position, count, payload);
+        }
+    }
+}
@@ -0,0 +1,186 @@
+package no.larsvidar.gadgetstore.data;
+
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
+import android.util.Log;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import no.larsvidar.gadgetstore.data.StoreContract.InventoryEntry;
+import no.larsvidar.gadgetstore.data.StoreContract.LowStockEntry;
+import no.larsvidar.gadgetstore.data.StoreContract.PurgeEntry;
+import no.larsvidar.gadgetstore.data.StoreContract.SummaryEntry;
+
+/**
+ * Deletes every product at once, and removes the deleted rows in the background.
+ * Deleting moves the deleted through mark past the last product and empties the totals, which takes the same time
+ * however many products there are. The inventory view and the triggers skip products up to the mark.
+ * The rows are then purged in small chunks, each in its own transaction, so writers are never held up for long.
+ */
+class InventoryPurger {
+
+    private static final String LOG_TAG = InventoryPurger.class.getSimpleName();
+
+    /**
+     * Told on the purge thread after every chunk.
+     */
+    interface Listener {
+        void onPurgeProgress();
+    }
+
+    //Products removed per transaction.
+    private static final int CHUNK_SIZE = 500;
+
+    //Time to wait for a run that has started, when shutting down.
+    private static final long SHUTDOWN_TIMEOUT_SECONDS = 10;
+
+    //SQL marking every product deleted. The rows still to be purged from an earlier delete are kept in the total.
+    private static final String SQL_DELETE_ALL = "UPDATE " + PurgeEntry.TABLE_NAME + " SET "
+            + PurgeEntry.COLUMN_ROWS_TOTAL + " = " + PurgeEntry.COLUMN_ROWS_TOTAL + " - " + PurgeEntry.COLUMN_ROWS_PURGED + " + ?, "
+            + PurgeEntry.COLUMN_ROWS_PURGED + " = 0, "
+            + StoreDbHelper.COLUMN_DELETED_THROUGH + " = (SELECT IFNULL(MAX(" + InventoryEntry._ID + "), "
+            + StoreDbHelper.COLUMN_DELETED_THROUGH + ") FROM " + InventoryEntry.PRODUCTS_TABLE_NAME + ")";
+
+    //SQL for the number of products not deleted, kept by the totals.
+    private static final String SQL_PRODUCT_COUNT = "SELECT " + SummaryEntry.COLUMN_PRODUCT_COUNT
+            + " FROM " + SummaryEntry.TABLE_NAME;
+
+    //SQL emptying the totals and low stock list. Their size follows the suppliers and low products, not the catalog.
+    private static final String SQL_CLEAR_TOTALS = "UPDATE " + SummaryEntry.TABLE_NAME + " SET "
+            + SummaryEntry.COLUMN_PRODUCT_COUNT + " = 0, "
+            + SummaryEntry.COLUMN_TOTAL_QUANTITY + " = 0, "
+            + SummaryEntry.COLUMN_TOTAL_VALUE + " = 0, "
+            + SummaryEntry.COLUMN_OUT_OF_STOCK_COUNT + " = 0";
+    private static final String SQL_CLEAR_SUPPLIER_TOTALS = "DELETE FROM " + StoreDbHelper.SUPPLIER_TOTALS_TABLE_NAME;
+    private static final String SQL_CLEAR_LOW_STOCK = "DELETE FROM " + LowStockEntry.TABLE_NAME;
+
+    //SQL removing one chunk of deleted products, lowest _ID first.
+    private static final String SQL_PURGE_CHUNK = "DELETE FROM " + InventoryEntry.PRODUCTS_TABLE_NAME
+            + " WHERE " + InventoryEntry._ID + " IN (SELECT " + InventoryEntry._ID + " FROM " + InventoryEntry.PRODUCTS_TABLE_NAME
+            + " WHERE " + InventoryEntry._ID + " <= (SELECT " + StoreDbHelper.COLUMN_DELETED_THROUGH + " FROM "
+            + PurgeEntry.TABLE_NAME + ") ORDER BY " + InventoryEntry._ID
+            + " LIMIT " + CHUNK_SIZE + ")";
+
+    //SQL counting a purged chunk.
+    private static final String SQL_ADD_PURGED = "UPDATE " + PurgeEntry.TABLE_NAME + " SET "
+            + PurgeEntry.COLUMN_ROWS_PURGED + " = MIN(" + PurgeEntry.COLUMN_ROWS_TOTAL + ", "
+            + PurgeEntry.COLUMN_ROWS_PURGED + " + ?)";
+
+    private final SQLiteOpenHelper mDatabaseHelper;
+    private final Listener mListener;
+    private final ExecutorService mExecutor = Executors.newSingleThreadExecutor();
+
+    //True while a purge is waiting to start, so more deletes in the meantime are purged by that run.
+    private final AtomicBoolean mScheduled = new AtomicBoolean();
+
+    //Constructor
+    InventoryPurger(SQLiteOpenHelper databaseHelper, Listener listener) {
+        mDatabaseHelper = databaseHelper;
+        mListener = listener;
+    }
+
+    /**
+     * Marks every product deleted, and empties the totals and low stock list. Call inside a transaction,
+     * and call schedule once it is committed.
+     * @param database to delete from
+     * @return number of products deleted
+     */
+    int deleteAll(SQLiteDatabase database) {
+        int deleted = (int) DatabaseUtils.longForQuery(database, SQL_PRODUCT_COUNT, null);
+        database.execSQL(SQL_DELETE_ALL, new Object[]{deleted});
+        database.execSQL(SQL_CLEAR_TOTALS);
+        database.execSQL(SQL_CLEAR_SUPPLIER_TOTALS);
+        database.execSQL(SQL_CLEAR_LOW_STOCK);
+        return deleted;
+    }
+
+    /**
+     * Purges the deleted products in the background, unless a purge is already waiting to start.
+     */
+    void schedule() {
+        if (!mScheduled.compareAndSet(false, true)) {
+            return;
+        }
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                //Deletes from now on need another run.
+                mScheduled.set(false);
+                try {
+                    purge(mDatabaseHelper.getWritableDatabase());
+                } catch (RuntimeException e) {
+                    //The rest is purged after the next delete, or when the provider starts again.
+                    Log.e(LOG_TAG, "Purging deleted products failed", e);
+                }
+            }
+        });
+    }
+
+    /**
+     * Stops the background purges, for StoreProvider.shutdown. Waiting runs are dropped, and a run that has
+     * started is waited for, so the database can be closed after this.
+     */
+    void shutdown() {
+        mExecutor.shutdownNow();
+        try {
+            if (!mExecutor.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                Log.w(LOG_TAG, "Background run did not stop in time");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Removes every deleted product, a chunk per transaction, and hands the freed pages back to the file system.
+     * @param database to purge
+     * @return number of products removed
+     */
+    int purge(SQLiteDatabase database) {
+        SQLiteStatement purgeChunk = database.compileStatement(SQL_PURGE_CHUNK);
+        int purged = 0;
+        try {
+            while (true) {
+                int chunk;
+                database.beginTransaction();
+                try {
+                    chunk = purgeChunk.executeUpdateDelete();
+                    if (chunk != 0) {
+                        database.execSQL(SQL_ADD_PURGED, new Object[]{chunk});
+                    }
+                    database.setTransactionSuccessful();
+                } finally {
+                    database.endTransaction();
+                }
+                if (chunk == 0) {
+                    return purged;
+                }
+                purged += chunk;
+                incrementalVacuum(database);
+                mListener.onPurgeProgress();
+            }
+        } finally {
+            purgeChunk.close();
+        }
+    }
+
+    /**
+     * Hands every free page back to the file system. Does nothing unless auto_vacuum is INCREMENTAL.
+     * @param database to shrink
+     */
+    static void incrementalVacuum(SQLiteDatabase database) {
+        //Each row stepped through frees one page, so the cursor must be read to the end.
+        Cursor cursor = database.rawQuery("PRAGMA incremental_vacuum", null);
+        try {
+            cursor.getCount();
+        } finally {
+            cursor.close();
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package no.larsvidar.gadgetstore.data;
+
+import android.database.sqlite.SQLiteDatabase;
+
+/**
+ * One step in the schema history of the GadgetStore database.
+ */
+abstract class Migration {
+
+    //Database version after this step has run.
+    final int toVersion;
+
+    //Constructor
+    Migration(int toVersion) {
+        this.toVersion = toVersion;
+    }
+
+    /**
+     * Brings the database from version toVersion - 1 to toVersion.
+     * Runs inside the upgrade transaction.
+     * @param database to migrate
+     */
+    abstract void migrate(SQLiteDatabase database);
+}
@@ -0,0 +1,103 @@
+package no.larsvidar.gadgetstore.data;
+
+import android.util.AtomicFile;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * Reads and writes a copy of the first page of the product list, so the list can be shown before the database is open.
+ * Writes replace the whole file at once, so a snapshot is never read half written.
+ */
+final class PageSnapshot {
+
+    private static final String LOG_TAG = PageSnapshot.class.getSimpleName();
+
+    //Version of the file format. Snapshots in any other version are ignored.
+    private static final int VERSION = 2;
+
+    //Empty constructor
+    private PageSnapshot() {
+    }
+
+    /**
+     * Reads a snapshot. Runs on a background thread.
+     * @param file holding the snapshot
+     * @return the products in it, or none if there is no snapshot or it can not be read
+     */
+    static InventoryItem[] read(AtomicFile file) {
+        DataInputStream input = null;
+        try {
+            input = new DataInputStream(new BufferedInputStream(file.openRead()));
+            if (input.readInt() != VERSION) {
+                return new InventoryItem[0];
+            }
+            int count = input.readInt();
+            if (count < 0 || count > InventoryPager.PAGE_SIZE) {
+                return new InventoryItem[0];
+            }
+            InventoryItem[] items = new InventoryItem[count];
+            for (int i = 0; i < count; i++) {
+                items[i] = new InventoryItem(input.readLong(), input.readUTF(), input.readInt(), input.readInt(),
+                        input.readUTF(), input.readUTF(), input.readInt());
+            }
+            return items;
+        } catch (FileNotFoundException e) {
+            //No snapshot saved yet.
+            return new InventoryItem[0];
+        } catch (IOException e) {
+            Log.w(LOG_TAG, "Reading the first page snapshot failed", e);
+            return new InventoryItem[0];
+        } finally {
+            if (input != null) {
+                try {
+                    input.close();
+                } catch (IOException e) {
+                    //Nothing was written, so nothing is lost.
+                }
+            }
+        }
+    }
+
+    /**
+     * Replaces a snapshot. Runs on a background thread.
+     * @param file to hold the snapshot
+     * @param items in the first page
+     */
+    static void write(AtomicFile file, InventoryItem[] items) {
+        FileOutputStream stream = null;
+        try {
+            stream = file.startWrite();
+            DataOutputStream output = new DataOutputStream(new BufferedOutputStream(stream));
+            output.writeInt(VERSION);
+            output.writeInt(items.length);
+            for (InventoryItem item : items) {
+                output.writeLong(item.getId());
+                output.writeUTF(nonNull(item.getProductName()));
+                output.writeInt(item.getPrice());
+                output.writeInt(item.getQuantity());
+                output.writeUTF(nonNull(item.getSupplierName()));
+                output.writeUTF(nonNull(item.getSupplierNumber()));
+                output.writeInt(item.getReorderThreshold());
+            }
+            output.flush();
+            file.finishWrite(stream);
+        } catch (IOException e) {
+            //The old snapshot is kept.
+            if (stream != null) {
+                file.failWrite(stream);
+            }
+            Log.w(LOG_TAG, "Writing the first page snapshot failed", e);
+        }
+    }
+
+    private static String nonNull(String value) {
+        return value == null ? "" : value;
+    }
+}
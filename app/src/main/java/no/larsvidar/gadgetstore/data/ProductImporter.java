@@ -0,0 +1,372 @@
+package no.larsvidar.gadgetstore.data;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.content.Context;
+import android.util.JsonReader;
+import android.util.JsonToken;
+import android.util.Log;
+
+import java.io.BufferedReader;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+import no.larsvidar.gadgetstore.data.StoreContract.InventoryEntry;
+
+/**
+ * Imports products from a CSV or JSON file, one record at a time.
+ * Only one chunk of products is held in memory, so files of any size can be imported.
+ *
+ * CSV files start with a header row naming the columns, using the InventoryEntry column names.
+ * JSON files hold one array of objects, keyed by the same column names.
+ * Other columns are ignored.
+ */
+public class ProductImporter {
+
+    /**
+     * Receives progress after every committed chunk.
+     */
+    public interface ProgressListener {
+        /**
+         * Called on the importing thread after a chunk is committed.
+         * Every record up to recordsRead is now either imported or skipped,
+         * so an import can be resumed by passing recordsRead as skipRecords.
+         * @param recordsRead number of records read from the start of the file
+         * @param bytesRead number of bytes read from the file in this run
+         * @param importedRows number of products imported in this run
+         * @param skippedRows number of invalid records skipped in this run
+         */
+        void onChunkImported(long recordsRead, long bytesRead, long importedRows, long skippedRows);
+    }
+
+    /**
+     * Outcome of an import.
+     */
+    public static final class Result {
+        public final long mRecordsRead;
+        public final long mImportedRows;
+        public final long mSkippedRows;
+
+        //Constructor
+        Result(long recordsRead, long importedRows, long skippedRows) {
+            mRecordsRead = recordsRead;
+            mImportedRows = importedRows;
+            mSkippedRows = skippedRows;
+        }
+    }
+
+    private static final String LOG_TAG = ProductImporter.class.getSimpleName();
+
+    //Number of products written in each transaction.
+    public static final int CHUNK_SIZE = 500;
+
+    //Size of the read buffer. This is all of the file that is in memory at once.
+    private static final int BUFFER_SIZE = 8192;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final String[] COLUMNS = {
+            InventoryEntry.COLUMN_PRODUCT_NAME,
+            InventoryEntry.COLUMN_PRODUCT_PRICE,
+            InventoryEntry.COLUMN_PRODUCT_QUANTITY,
+            InventoryEntry.COLUMN_SUPPLIER_NAME,
+            InventoryEntry.COLUMN_SUPPLIER_NUMBER,
+            InventoryEntry.COLUMN_REORDER_THRESHOLD
+    };
+
+    private final ContentResolver mContentResolver;
+    private final ProductValidator mValidator;
+
+    //Products waiting to be written, reused for every chunk.
+    private final ContentValues[] mChunk = new ContentValues[CHUNK_SIZE];
+    private int mChunkSize;
+
+    //Progress of the current import.
+    private CountingInputStream mInput;
+    private ProgressListener mListener;
+    private long mRecordsRead;
+    private long mImportedRows;
+    private long mSkippedRows;
+
+    //Constructor
+    public ProductImporter(Context context, ContentResolver contentResolver) {
+        mContentResolver = contentResolver;
+        mValidator = new ProductValidator(context);
+    }
+
+    /**
+     * Imports all products in a file. The stream is closed when done.
+     * @param input CSV or JSON file
+     * @param skipRecords number of records already imported by an earlier run
+     * @param listener for progress, or null
+     * @return the outcome
+     * @throws IOException if the file can not be read or is not valid CSV or JSON
+     */
+    public Result importProducts(InputStream input, long skipRecords, ProgressListener listener) throws IOException {
+        mInput = new CountingInputStream(input);
+        mListener = listener;
+        mRecordsRead = 0;
+        mImportedRows = 0;
+        mSkippedRows = 0;
+        mChunkSize = 0;
+
+        BufferedReader reader = new BufferedReader(new InputStreamReader(mInput, UTF_8), BUFFER_SIZE);
+        try {
+            //JSON files start with an array, anything else is read as CSV.
+            reader.mark(1);
+            int first = reader.read();
+            while (first != -1 && Character.isWhitespace(first)) {
+                reader.mark(1);
+                first = reader.read();
+            }
+            reader.reset();
+
+            if (first == '[') {
+                importJson(reader, skipRecords);
+            } else if (first != -1) {
+                importCsv(reader, skipRecords);
+            }
+            flushChunk();
+        } finally {
+            reader.close();
+        }
+        return new Result(mRecordsRead, mImportedRows, mSkippedRows);
+    }
+
+    /**
+     * Reads products from a CSV file.
+     */
+    private void importCsv(BufferedReader reader, long skipRecords) throws IOException {
+        //Map each CSV column to a product column.
+        List<String> fields = new ArrayList<>();
+        if (!readCsvRecord(reader, fields)) {
+            return;
+        }
+        int[] columnOfField = new int[fields.size()];
+        for (int i = 0; i < columnOfField.length; i++) {
+            columnOfField[i] = columnIndex(fields.get(i).trim());
+        }
+
+        while (readCsvRecord(reader, fields)) {
+            //Skip blank lines
+            if (fields.size() == 1 && fields.get(0).isEmpty()) {
+                continue;
+            }
+            if (mRecordsRead++ < skipRecords) {
+                continue;
+            }
+
+            ContentValues values = new ContentValues();
+            for (int i = 0; i < fields.size() && i < columnOfField.length; i++) {
+                if (columnOfField[i] >= 0) {
+                    values.put(COLUMNS[columnOfField[i]], fields.get(i));
+                }
+            }
+            addProduct(values);
+        }
+    }
+
+    /**
+     * Reads the next record of a CSV file. Quoted fields may hold commas, line breaks and doubled quotes.
+     * @param reader positioned at the start of a record
+     * @param fields cleared and filled with the fields of the record
+     * @return false at the end of the file
+     */
+    private static boolean readCsvRecord(Reader reader, List<String> fields) throws IOException {
+        fields.clear();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        boolean fieldStarted = false;
+
+        int c = reader.read();
+        if (c == -1) {
+            return false;
+        }
+        while (c != -1) {
+            if (quoted) {
+                if (c == '"') {
+                    reader.mark(1);
+                    int next = reader.read();
+                    if (next == '"') {
+                        field.append('"');
+                    } else {
+                        quoted = false;
+                        reader.reset();
+                    }
+                } else {
+                    field.append((char) c);
+                }
+            } else if (c == '"' && !fieldStarted) {
+                quoted = true;
+                fieldStarted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+                fieldStarted = false;
+            } else if (c == '\n' || c == '\r') {
+                //Treat \r\n as one line break.
+                if (c == '\r') {
+                    reader.mark(1);
+                    if (reader.read() != '\n') {
+                        reader.reset();
+                    }
+                }
+                break;
+            } else {
+                field.append((char) c);
+                fieldStarted = true;
+            }
+            c = reader.read();
+        }
+        if (quoted) {
+            throw new IOException("Unterminated quoted field in record " + fields);
+        }
+        fields.add(field.toString());
+        return true;
+    }
+
+    /**
+     * Reads products from a JSON array of objects.
+     */
+    private void importJson(Reader input, long skipRecords) throws IOException {
+        JsonReader reader = new JsonReader(input);
+        reader.beginArray();
+        while (reader.hasNext()) {
+            if (mRecordsRead++ < skipRecords) {
+                reader.skipValue();
+                continue;
+            }
+
+            ContentValues values = new ContentValues();
+            reader.beginObject();
+            while (reader.hasNext()) {
+                int column = columnIndex(reader.nextName());
+                JsonToken token = reader.peek();
+                if (column < 0 || token == JsonToken.NULL) {
+                    reader.skipValue();
+                } else if (token == JsonToken.NUMBER) {
+                    //Keep whole numbers as numbers, so they are not parsed again.
+                    String number = reader.nextString();
+                    try {
+                        values.put(COLUMNS[column], Long.parseLong(number));
+                    } catch (NumberFormatException nfe) {
+                        values.put(COLUMNS[column], number);
+                    }
+                } else if (token == JsonToken.STRING || token == JsonToken.BOOLEAN) {
+                    values.put(COLUMNS[column], token == JsonToken.STRING ? reader.nextString()
+                            : String.valueOf(reader.nextBoolean()));
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+            addProduct(values);
+        }
+        reader.endArray();
+    }
+
+    /**
+     * Validates a product and adds it to the chunk. Invalid products are skipped.
+     * @param values read from the file
+     */
+    private void addProduct(ContentValues values) {
+        InventoryItem product;
+        try {
+            product = mValidator.validateProduct(values);
+        } catch (IllegalArgumentException e) {
+            mSkippedRows++;
+            Log.w(LOG_TAG, "Skipping record " + mRecordsRead + ": " + e.getMessage());
+            return;
+        }
+
+        //Store numbers as numbers, so the provider does not parse them again.
+        ContentValues typedValues = mChunk[mChunkSize];
+        if (typedValues == null) {
+            typedValues = new ContentValues(COLUMNS.length);
+            mChunk[mChunkSize] = typedValues;
+        }
+        typedValues.put(InventoryEntry.COLUMN_PRODUCT_NAME, product.getProductName());
+        typedValues.put(InventoryEntry.COLUMN_PRODUCT_PRICE, product.getPrice());
+        typedValues.put(InventoryEntry.COLUMN_PRODUCT_QUANTITY, product.getQuantity());
+        typedValues.put(InventoryEntry.COLUMN_SUPPLIER_NAME, product.getSupplierName());
+        typedValues.put(InventoryEntry.COLUMN_SUPPLIER_NUMBER, product.getSupplierNumber());
+        mChunkSize++;
+
+        if (mChunkSize == CHUNK_SIZE) {
+            flushChunk();
+        }
+    }
+
+    /**
+     * Writes the chunk in one transaction, and reports progress.
+     */
+    private void flushChunk() {
+        if (mChunkSize > 0) {
+            ContentValues[] values = mChunk;
+            if (mChunkSize < CHUNK_SIZE) {
+                values = new ContentValues[mChunkSize];
+                System.arraycopy(mChunk, 0, values, 0, mChunkSize);
+            }
+            mImportedRows += mContentResolver.bulkInsert(InventoryEntry.CONTENT_URI, values);
+            mChunkSize = 0;
+        }
+        if (mListener != null) {
+            mListener.onChunkImported(mRecordsRead, mInput.mCount, mImportedRows, mSkippedRows);
+        }
+    }
+
+    /**
+     * @param name of a column in the file
+     * @return index in COLUMNS, or -1 if it is not a product column
+     */
+    private static int columnIndex(String name) {
+        for (int i = 0; i < COLUMNS.length; i++) {
+            if (COLUMNS[i].equals(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Counts the bytes read, for progress reporting.
+     */
+    private static final class CountingInputStream extends FilterInputStream {
+        long mCount;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                mCount++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int count = super.read(buffer, offset, length);
+            if (count > 0) {
+                mCount += count;
+            }
+            return count;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            mCount += skipped;
+            return skipped;
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package no.larsvidar.gadgetstore.data;
+
+import android.content.ContentValues;
+import android.content.Context;
+
+import no.larsvidar.gadgetstore.R;
+import no.larsvidar.gadgetstore.data.StoreContract.InventoryEntry;
+
+/**
+ * Validates product values before they are written by the StoreProvider.
+ * Numbers are read straight from the ContentValues, and error messages are only looked up when a value is not valid.
+ */
+final class ProductValidator {
+
+    private final Context mContext;
+
+    //Constructor
+    ProductValidator(Context context) {
+        mContext = context;
+    }
+
+    /**
+     * Validates a complete product.
+     * @param values for the product
+     * @return the product with typed fields, and _ID 0
+     */
+    InventoryItem validateProduct(ContentValues values) {
+        return new InventoryItem(0,
+                requireText(values, InventoryEntry.COLUMN_PRODUCT_NAME, R.string.validate_error_product_name_null),
+                requirePrice(values),
+                requireQuantity(values),
+                requireText(values, InventoryEntry.COLUMN_SUPPLIER_NAME, R.string.validate_error_supplier_name_null),
+                requireText(values, InventoryEntry.COLUMN_SUPPLIER_NUMBER, R.string.validate_error_supplier_number_null),
+                reorderThreshold(values));
+    }
+
+    /**
+     * Validates a complete supplier.
+     * @param values with the supplier name and number
+     */
+    void validateSupplier(ContentValues values) {
+        requireText(values, InventoryEntry.COLUMN_SUPPLIER_NAME, R.string.validate_error_supplier_name_null);
+        requireText(values, InventoryEntry.COLUMN_SUPPLIER_NUMBER, R.string.validate_error_supplier_number_null);
+    }
+
+    /**
+     * Validates the values present in an update.
+     * @param values to change
+     */
+    void validateUpdate(ContentValues values) {
+        if (values.containsKey(InventoryEntry.COLUMN_PRODUCT_NAME)) {
+            requireText(values, InventoryEntry.COLUMN_PRODUCT_NAME, R.string.validate_error_product_name_null);
+        }
+        if (values.containsKey(InventoryEntry.COLUMN_PRODUCT_PRICE)) {
+            requirePrice(values);
+        }
+        if (values.containsKey(InventoryEntry.COLUMN_PRODUCT_QUANTITY)) {
+            requireQuantity(values);
+        }
+        if (values.containsKey(InventoryEntry.COLUMN_REORDER_THRESHOLD)) {
+            reorderThreshold(values);
+        }
+        if (values.containsKey(InventoryEntry.COLUMN_SUPPLIER_NAME)) {
+            requireText(values, InventoryEntry.COLUMN_SUPPLIER_NAME, R.string.validate_error_supplier_name_null);
+        }
+        if (values.containsKey(InventoryEntry.COLUMN_SUPPLIER_NUMBER)) {
+            requireText(values, InventoryEntry.COLUMN_SUPPLIER_NUMBER, R.string.validate_error_supplier_number_null);
+        }
+    }
+
+    /**
+     * @param values holding a price
+     * @return the price, checked to be a number that is not negative
+     */
+    int requirePrice(ContentValues values) {
+        return requireCount(values, InventoryEntry.COLUMN_PRODUCT_PRICE,
+                R.string.validate_error_product_price_null,
+                R.string.validate_error_product_price_number,
+                R.string.validate_error_product_price_negative);
+    }
+
+    /**
+     * @param values holding a quantity
+     * @return the quantity, checked to be a number that is not negative
+     */
+    int requireQuantity(ContentValues values) {
+        return requireCount(values, InventoryEntry.COLUMN_PRODUCT_QUANTITY,
+                R.string.validate_error_product_quantity_null,
+                R.string.validate_error_product_quantity_number,
+                R.string.validate_error_product_quantity_negative);
+    }
+
+    /**
+     * @param values that may hold a reorder threshold
+     * @return the threshold, checked to be a number that is not negative, or 0 if there is none
+     */
+    private int reorderThreshold(ContentValues values) {
+        if (values.get(InventoryEntry.COLUMN_REORDER_THRESHOLD) == null) {
+            return 0;
+        }
+        return requireCount(values, InventoryEntry.COLUMN_REORDER_THRESHOLD,
+                R.string.validate_error_reorder_threshold_number,
+                R.string.validate_error_reorder_threshold_number,
+                R.string.validate_error_reorder_threshold_negative);
+    }
+
+    /**
+     * Checks that a text value is present and not empty.
+     * @param values to read from
+     * @param key of the value
+     * @param emptyError message if the value is missing
+     * @return the text
+     */
+    private String requireText(ContentValues values, String key, int emptyError) {
+        Object value = values.get(key);
+        String text = value == null ? null : value.toString();
+        if (text == null || text.isEmpty()) {
+            throw error(emptyError);
+        }
+        return text;
+    }
+
+    /**
+     * Checks that a value is a whole number that is not negative.
+     * Numbers are used as they are. Only values given as text are parsed.
+     * @param values to read from
+     * @param key of the value
+     * @param emptyError message if the value is missing
+     * @param numberError message if the value is not a whole number
+     * @param negativeError message if the value is negative
+     * @return the number
+     */
+    private int requireCount(ContentValues values, String key, int emptyError, int numberError, int negativeError) {
+        Object value = values.get(key);
+        long number;
+        if (value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte) {
+            number = ((Number) value).longValue();
+        } else if (value instanceof String) {
+            String text = (String) value;
+            if (text.isEmpty()) {
+                throw error(emptyError);
+            }
+            try {
+                number = Long.parseLong(text);
+            } catch (NumberFormatException nfe) {
+                throw error(numberError);
+            }
+        } else if (value == null) {
+            throw error(emptyError);
+        } else {
+            throw error(numberError);
+        }
+
+        //Checking that the number is not negative, and fits the column
+        if (number < 0) {
+            throw error(negativeError);
+        }
+        if (number > Integer.MAX_VALUE) {
+            throw error(numberError);
+        }
+        return (int) number;
+    }
+
+    /**
+     * @param messageId of the error message
+     * @return exception with the message
+     */
+    private IllegalArgumentException error(int messageId) {
+        return new IllegalArgumentException(mContext.getString(messageId));
+    }
+}
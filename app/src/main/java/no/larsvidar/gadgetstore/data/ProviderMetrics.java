@@ -0,0 +1,264 @@
+package no.larsvidar.gadgetstore.data;
+
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.net.Uri;
+import android.os.SystemClock;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import no.larsvidar.gadgetstore.data.StoreContract.StatsEntry;
+
+/**
+ * Latency and row counts for each StoreProvider entry point, and a log of the slowest recent calls.
+ * Recording a call only updates counters in preallocated arrays, so it never allocates.
+ * All methods are thread safe.
+ */
+class ProviderMetrics {
+
+    //Operations that are recorded.
+    static final int QUERY = 0;
+    static final int INSERT = 1;
+    static final int BULK_INSERT = 2;
+    static final int UPDATE = 3;
+    static final int DELETE = 4;
+    static final int GET_TYPE = 5;
+    static final int CALL = 6;
+    private static final String[] OPERATION_NAMES = {"query", "insert", "bulkInsert", "update", "delete", "getType", "call"};
+    private static final int OPERATION_COUNT = OPERATION_NAMES.length;
+
+    //Calls taking longer than this are written to the slow call log.
+    static final long SLOW_CALL_THRESHOLD_MICROS = 16000;
+    private static final int SLOW_CALL_LOG_SIZE = 32;
+
+    //Histogram buckets: one per microsecond below 2^SUB_BUCKET_BITS, then 2^SUB_BUCKET_BITS per power of two.
+    //Every bucket is at most 1/8 wider than its lower bound. Durations above 2^40 microseconds share the last one.
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int LINEAR_BUCKETS = 2 << SUB_BUCKET_BITS;
+    private static final int MAX_EXPONENT = 39;
+    private static final int BUCKET_COUNT = LINEAR_BUCKETS + (MAX_EXPONENT - SUB_BUCKET_BITS) * (1 << SUB_BUCKET_BITS);
+
+    private final int mFirstMatchCode;
+    private final int mMatchSlots;
+
+    //Latency buckets for each operation.
+    private final AtomicLongArray mBuckets = new AtomicLongArray(OPERATION_COUNT * BUCKET_COUNT);
+    private final AtomicLongArray mMaxMicros = new AtomicLongArray(OPERATION_COUNT);
+
+    //Calls, rows and total time for each operation and URI match code.
+    private final AtomicLongArray mCounts;
+    private final AtomicLongArray mRows;
+    private final AtomicLongArray mTotalMicros;
+
+    //Slow call log, written round robin into preallocated entries.
+    private final SlowCall[] mSlowCalls = new SlowCall[SLOW_CALL_LOG_SIZE];
+    private long mSlowCallCount;
+
+    /**
+     * One entry in the slow call log.
+     */
+    private static final class SlowCall {
+        long mTime;
+        int mOperation;
+        int mMatch;
+        Uri mUri;
+        String mSelection;
+        long mDurationMicros;
+    }
+
+    /**
+     * Constructor
+     * @param firstMatchCode lowest URI match code of the provider
+     * @param matchSlots number of match codes to keep apart, counting from firstMatchCode.
+     *                   Codes outside the range, like UriMatcher.NO_MATCH, share one extra slot.
+     */
+    ProviderMetrics(int firstMatchCode, int matchSlots) {
+        mFirstMatchCode = firstMatchCode;
+        mMatchSlots = matchSlots + 1;
+        mCounts = new AtomicLongArray(OPERATION_COUNT * mMatchSlots);
+        mRows = new AtomicLongArray(OPERATION_COUNT * mMatchSlots);
+        mTotalMicros = new AtomicLongArray(OPERATION_COUNT * mMatchSlots);
+        for (int i = 0; i < SLOW_CALL_LOG_SIZE; i++) {
+            mSlowCalls[i] = new SlowCall();
+        }
+    }
+
+    /**
+     * @return start time to pass to record
+     */
+    static long start() {
+        return SystemClock.elapsedRealtimeNanos();
+    }
+
+    /**
+     * Records a finished call.
+     * @param operation QUERY, INSERT, BULK_INSERT, UPDATE, DELETE, GET_TYPE or CALL
+     * @param match URI match code
+     * @param rows number of rows written, or 0
+     * @param startNanos from start
+     * @param uri of the call, kept if the call was slow
+     * @param selection of the call, kept if the call was slow
+     */
+    void record(int operation, int match, long rows, long startNanos, Uri uri, String selection) {
+        long micros = (SystemClock.elapsedRealtimeNanos() - startNanos) / 1000;
+
+        mBuckets.incrementAndGet(operation * BUCKET_COUNT + bucketOf(micros));
+        long max;
+        do {
+            max = mMaxMicros.get(operation);
+        } while (micros > max && !mMaxMicros.compareAndSet(operation, max, micros));
+
+        int slot = operation * mMatchSlots + matchSlot(match);
+        mCounts.incrementAndGet(slot);
+        mRows.addAndGet(slot, rows);
+        mTotalMicros.addAndGet(slot, micros);
+
+        if (micros >= SLOW_CALL_THRESHOLD_MICROS) {
+            logSlowCall(operation, match, uri, selection, micros);
+        }
+    }
+
+    /**
+     * @return one row for each operation and match code that has been called, with latency percentiles per operation
+     */
+    Cursor getStats() {
+        MatrixCursor cursor = new MatrixCursor(new String[]{
+                StatsEntry.COLUMN_OPERATION,
+                StatsEntry.COLUMN_MATCH_CODE,
+                StatsEntry.COLUMN_COUNT,
+                StatsEntry.COLUMN_ROWS,
+                StatsEntry.COLUMN_TOTAL_MICROS,
+                StatsEntry.COLUMN_P50_MICROS,
+                StatsEntry.COLUMN_P90_MICROS,
+                StatsEntry.COLUMN_P99_MICROS,
+                StatsEntry.COLUMN_MAX_MICROS});
+
+        long[] buckets = new long[BUCKET_COUNT];
+        for (int operation = 0; operation < OPERATION_COUNT; operation++) {
+            //Copy the buckets, so all percentiles come from the same numbers.
+            long total = 0;
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                buckets[i] = mBuckets.get(operation * BUCKET_COUNT + i);
+                total += buckets[i];
+            }
+            if (total == 0) {
+                continue;
+            }
+            long p50 = percentile(buckets, total, 50);
+            long p90 = percentile(buckets, total, 90);
+            long p99 = percentile(buckets, total, 99);
+            long max = mMaxMicros.get(operation);
+
+            for (int slot = 0; slot < mMatchSlots; slot++) {
+                int index = operation * mMatchSlots + slot;
+                long count = mCounts.get(index);
+                if (count == 0) {
+                    continue;
+                }
+                cursor.addRow(new Object[]{OPERATION_NAMES[operation], matchCode(slot), count,
+                        mRows.get(index), mTotalMicros.get(index), p50, p90, p99, max});
+            }
+        }
+        return cursor;
+    }
+
+    /**
+     * @return the slow call log, newest first
+     */
+    synchronized Cursor getSlowCalls() {
+        MatrixCursor cursor = new MatrixCursor(new String[]{
+                StatsEntry.COLUMN_TIME,
+                StatsEntry.COLUMN_OPERATION,
+                StatsEntry.COLUMN_MATCH_CODE,
+                StatsEntry.COLUMN_URI,
+                StatsEntry.COLUMN_SELECTION,
+                StatsEntry.COLUMN_DURATION_MICROS});
+
+        int count = (int) Math.min(mSlowCallCount, SLOW_CALL_LOG_SIZE);
+        for (int i = 1; i <= count; i++) {
+            SlowCall call = mSlowCalls[(int) ((mSlowCallCount - i) % SLOW_CALL_LOG_SIZE)];
+            cursor.addRow(new Object[]{call.mTime, OPERATION_NAMES[call.mOperation], call.mMatch,
+                    String.valueOf(call.mUri), call.mSelection, call.mDurationMicros});
+        }
+        return cursor;
+    }
+
+    /**
+     * Writes a call to the slow call log, over the oldest entry.
+     */
+    private synchronized void logSlowCall(int operation, int match, Uri uri, String selection, long micros) {
+        SlowCall call = mSlowCalls[(int) (mSlowCallCount % SLOW_CALL_LOG_SIZE)];
+        call.mTime = System.currentTimeMillis();
+        call.mOperation = operation;
+        call.mMatch = match;
+        call.mUri = uri;
+        call.mSelection = selection;
+        call.mDurationMicros = micros;
+        mSlowCallCount++;
+    }
+
+    /**
+     * @param match URI match code
+     * @return slot for the code
+     */
+    private int matchSlot(int match) {
+        int slot = match - mFirstMatchCode;
+        return slot >= 0 && slot < mMatchSlots - 1 ? slot : mMatchSlots - 1;
+    }
+
+    /**
+     * @param slot from matchSlot
+     * @return match code, or -1 for the shared slot
+     */
+    private int matchCode(int slot) {
+        return slot < mMatchSlots - 1 ? mFirstMatchCode + slot : -1;
+    }
+
+    /**
+     * @param micros duration
+     * @return histogram bucket for the duration
+     */
+    private static int bucketOf(long micros) {
+        if (micros < LINEAR_BUCKETS) {
+            return (int) micros;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(micros);
+        if (exponent > MAX_EXPONENT) {
+            return BUCKET_COUNT - 1;
+        }
+        int subBucket = (int) (micros >>> (exponent - SUB_BUCKET_BITS)) & ((1 << SUB_BUCKET_BITS) - 1);
+        return LINEAR_BUCKETS + (exponent - SUB_BUCKET_BITS - 1) * (1 << SUB_BUCKET_BITS) + subBucket;
+    }
+
+    /**
+     * @param bucket from bucketOf
+     * @return highest duration in the bucket
+     */
+    private static long bucketUpperBound(int bucket) {
+        if (bucket < LINEAR_BUCKETS) {
+            return bucket;
+        }
+        int exponent = (bucket - LINEAR_BUCKETS) / (1 << SUB_BUCKET_BITS) + SUB_BUCKET_BITS + 1;
+        int subBucket = (bucket - LINEAR_BUCKETS) % (1 << SUB_BUCKET_BITS);
+        long width = 1L << (exponent - SUB_BUCKET_BITS);
+        return (1L << exponent) + (subBucket + 1) * width - 1;
+    }
+
+    /**
+     * @param buckets copied histogram
+     * @param total number of calls in the histogram
+     * @param percent wanted
+     * @return upper bound of the bucket holding the percentile
+     */
+    private static long percentile(long[] buckets, long total, int percent) {
+        long wanted = (total * percent + 99) / 100;
+        long seen = 0;
+        for (int i = 0; i < buckets.length; i++) {
+            seen += buckets[i];
+            if (seen >= wanted) {
+                return bucketUpperBound(i);
+            }
+        }
+        return bucketUpperBound(buckets.length - 1);
+    }
+}
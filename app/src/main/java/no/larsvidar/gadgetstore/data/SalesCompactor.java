@@ -0,0 +1,285 @@
+package no.larsvidar.gadgetstore.data;
+
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
+import android.util.Log;
+
+import java.util.Calendar;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import no.larsvidar.gadgetstore.data.StoreContract.InventoryEntry;
+import no.larsvidar.gadgetstore.data.StoreContract.SalesEntry;
+
+/**
+ * Folds the sales ledger into the product quantities on a background thread.
+ * A sale only appends a row to the ledger, so it does not touch the product row, its indexes or its triggers.
+ * The inventory view takes the sales that are not folded in yet off the quantity, so readers never see the lag.
+ * The totals and low stock list follow the products table, and catch up when the sales are folded in.
+ * The same runs add new sales to the hourly and daily rollup tables, so a series never reads the ledger.
+ */
+class SalesCompactor {
+
+    private static final String LOG_TAG = SalesCompactor.class.getSimpleName();
+
+    /**
+     * Told on the compactor thread when sales have been folded in or rolled up.
+     */
+    interface Listener {
+        void onSalesCompacted();
+    }
+
+    //Time to wait for more sales before folding them in, so a burst of sales is folded in one go.
+    private static final long DELAY_MILLIS = 1000;
+
+    //Sales folded per transaction, so writers get in between.
+    private static final int BATCH_SIZE = 500;
+
+    //Time to wait for a run that has started, when shutting down.
+    private static final long SHUTDOWN_TIMEOUT_SECONDS = 10;
+
+    //SQL for the _ID of the last sale folded in.
+    private static final String SQL_LAST_SALE_ID = "SELECT " + StoreDbHelper.COLUMN_LAST_SALE_ID
+            + " FROM " + StoreDbHelper.SALES_COMPACTION_TABLE_NAME;
+
+    //SQL for the _ID ending the next batch, or 0 if there are no sales after the last folded one.
+    private static final String SQL_BATCH_END = "SELECT IFNULL(MAX(" + SalesEntry._ID + "), 0) FROM (SELECT "
+            + SalesEntry._ID + " FROM " + SalesEntry.TABLE_NAME + " WHERE " + SalesEntry._ID + " > ? ORDER BY "
+            + SalesEntry._ID + " LIMIT " + BATCH_SIZE + ")";
+
+    //SQL taking the sales in a batch off each product they were made for.
+    private static final String SQL_FOLD_SALES = "UPDATE " + InventoryEntry.PRODUCTS_TABLE_NAME + " SET "
+            + InventoryEntry.COLUMN_PRODUCT_QUANTITY + " = " + InventoryEntry.COLUMN_PRODUCT_QUANTITY
+            + " - (SELECT SUM(" + SalesEntry.COLUMN_QUANTITY + ") FROM " + SalesEntry.TABLE_NAME
+            + " WHERE " + SalesEntry.COLUMN_PRODUCT_ID + " = " + InventoryEntry.PRODUCTS_TABLE_NAME + "." + InventoryEntry._ID
+            + " AND " + SalesEntry._ID + " > ?1 AND " + SalesEntry._ID + " <= ?2)"
+            + " WHERE " + InventoryEntry._ID + " IN (SELECT " + SalesEntry.COLUMN_PRODUCT_ID + " FROM " + SalesEntry.TABLE_NAME
+            + " WHERE " + SalesEntry._ID + " > ?1 AND " + SalesEntry._ID + " <= ?2)";
+
+    //SQL moving the mark past a folded batch.
+    private static final String SQL_SET_LAST_SALE_ID = "UPDATE " + StoreDbHelper.SALES_COMPACTION_TABLE_NAME
+            + " SET " + StoreDbHelper.COLUMN_LAST_SALE_ID + " = ?";
+
+    //SQL for the _ID of the last sale added to the rollups, and for moving it past a batch.
+    private static final String SQL_LAST_ROLLUP_ID = "SELECT " + StoreDbHelper.COLUMN_LAST_ROLLUP_ID
+            + " FROM " + StoreDbHelper.SALES_COMPACTION_TABLE_NAME;
+    private static final String SQL_SET_LAST_ROLLUP_ID = "UPDATE " + StoreDbHelper.SALES_COMPACTION_TABLE_NAME
+            + " SET " + StoreDbHelper.COLUMN_LAST_ROLLUP_ID + " = ?";
+
+    private static final long HOUR_MILLIS = 60 * 60 * 1000;
+
+    //SQL totalling a batch of sales per product and hour.
+    private static final String SQL_HOURLY_SALES = "SELECT " + SalesEntry.COLUMN_PRODUCT_ID + ", "
+            + SalesEntry.COLUMN_SOLD_AT + " / " + HOUR_MILLIS + " * " + HOUR_MILLIS + ", "
+            + "SUM(" + SalesEntry.COLUMN_QUANTITY + "), COUNT(*) FROM " + SalesEntry.TABLE_NAME
+            + " WHERE " + SalesEntry._ID + " > ? AND " + SalesEntry._ID + " <= ? GROUP BY 1, 2";
+
+    //SQL making sure a bucket row exists, and adding sales to it. SQLite on older devices has no upsert.
+    private static final String SQL_INSERT_HOUR = "INSERT OR IGNORE INTO " + SalesEntry.HOURLY_TABLE_NAME + " ("
+            + SalesEntry.COLUMN_PRODUCT_ID + ", " + SalesEntry.COLUMN_BUCKET_START + ") VALUES (?, ?)";
+    private static final String SQL_INSERT_DAY = "INSERT OR IGNORE INTO " + SalesEntry.DAILY_TABLE_NAME + " ("
+            + SalesEntry.COLUMN_PRODUCT_ID + ", " + SalesEntry.COLUMN_BUCKET_START + ", "
+            + StoreDbHelper.COLUMN_WEEK_START + ") VALUES (?, ?, ?)";
+    private static final String SQL_ADD_TO_HOUR = bucketUpdate(SalesEntry.HOURLY_TABLE_NAME);
+    private static final String SQL_ADD_TO_DAY = bucketUpdate(SalesEntry.DAILY_TABLE_NAME);
+
+    //SQL checking for sales that are not folded in yet.
+    private static final String SQL_HAS_PENDING_SALES = "SELECT (SELECT IFNULL(MAX(" + SalesEntry._ID + "), 0) FROM "
+            + SalesEntry.TABLE_NAME + ") > " + StoreDbHelper.COLUMN_LAST_SALE_ID
+            + " FROM " + StoreDbHelper.SALES_COMPACTION_TABLE_NAME;
+
+    private final SQLiteOpenHelper mDatabaseHelper;
+    private final Listener mListener;
+    private final ScheduledExecutorService mExecutor = Executors.newSingleThreadScheduledExecutor();
+
+    //True while a run is waiting, so more sales in the meantime are folded in by that run.
+    private final AtomicBoolean mScheduled = new AtomicBoolean();
+
+    //Constructor
+    SalesCompactor(SQLiteOpenHelper databaseHelper, Listener listener) {
+        mDatabaseHelper = databaseHelper;
+        mListener = listener;
+    }
+
+    /**
+     * Folds the sales in shortly, unless a run is already waiting.
+     */
+    void schedule() {
+        if (!mScheduled.compareAndSet(false, true)) {
+            return;
+        }
+        mExecutor.schedule(new Runnable() {
+            @Override
+            public void run() {
+                //Sales from now on need another run.
+                mScheduled.set(false);
+                try {
+                    SQLiteDatabase database = mDatabaseHelper.getWritableDatabase();
+                    int compacted = compact(database);
+                    if (rollUp(database) != 0 || compacted != 0) {
+                        mListener.onSalesCompacted();
+                    }
+                } catch (RuntimeException e) {
+                    //The ledger is left as it is, and folded in after the next sale.
+                    Log.e(LOG_TAG, "Folding in sales failed", e);
+                }
+            }
+        }, DELAY_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops the background runs, for StoreProvider.shutdown. Waiting runs are dropped, and a run that has
+     * started is waited for, so the database can be closed after this.
+     */
+    void shutdown() {
+        mExecutor.shutdownNow();
+        try {
+            if (!mExecutor.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                Log.w(LOG_TAG, "Background run did not stop in time");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Folds every sale in the ledger into the products table, a batch per transaction.
+     * The quantities read through the inventory view are the same before and after.
+     * Can be called inside a transaction, which then holds all the batches.
+     * @param database to compact
+     * @return number of sales folded in
+     */
+    int compact(SQLiteDatabase database) {
+        int compacted = 0;
+        while (true) {
+            long lastSaleId;
+            long batchEnd;
+            //The mark is read in the write transaction, so two runs never fold the same sales.
+            database.beginTransaction();
+            try {
+                lastSaleId = DatabaseUtils.longForQuery(database, SQL_LAST_SALE_ID, null);
+                batchEnd = DatabaseUtils.longForQuery(database, SQL_BATCH_END, new String[]{String.valueOf(lastSaleId)});
+                if (batchEnd > lastSaleId) {
+                    database.execSQL(SQL_FOLD_SALES, new Object[]{lastSaleId, batchEnd});
+                    database.execSQL(SQL_SET_LAST_SALE_ID, new Object[]{batchEnd});
+                }
+                database.setTransactionSuccessful();
+            } finally {
+                database.endTransaction();
+            }
+
+            if (batchEnd <= lastSaleId) {
+                return compacted;
+            }
+            //Sale _IDs are never reused or skipped, so the range is the number of sales.
+            compacted += batchEnd - lastSaleId;
+        }
+    }
+
+    /**
+     * Adds every sale not rolled up yet to the hourly and daily rollup tables, a batch per transaction.
+     * Days and weeks follow the local calendar at the time of the roll up.
+     * @param database to roll up
+     * @return number of sales rolled up
+     */
+    int rollUp(SQLiteDatabase database) {
+        SQLiteStatement insertHour = database.compileStatement(SQL_INSERT_HOUR);
+        SQLiteStatement insertDay = database.compileStatement(SQL_INSERT_DAY);
+        SQLiteStatement addToHour = database.compileStatement(SQL_ADD_TO_HOUR);
+        SQLiteStatement addToDay = database.compileStatement(SQL_ADD_TO_DAY);
+        Calendar calendar = Calendar.getInstance();
+        int rolledUp = 0;
+        try {
+            while (true) {
+                long lastRollupId;
+                long batchEnd;
+                database.beginTransaction();
+                try {
+                    lastRollupId = DatabaseUtils.longForQuery(database, SQL_LAST_ROLLUP_ID, null);
+                    batchEnd = DatabaseUtils.longForQuery(database, SQL_BATCH_END, new String[]{String.valueOf(lastRollupId)});
+                    if (batchEnd > lastRollupId) {
+                        Cursor hours = database.rawQuery(SQL_HOURLY_SALES,
+                                new String[]{String.valueOf(lastRollupId), String.valueOf(batchEnd)});
+                        try {
+                            while (hours.moveToNext()) {
+                                long productId = hours.getLong(0);
+                                long hourStart = hours.getLong(1);
+                                long quantity = hours.getLong(2);
+                                long saleCount = hours.getLong(3);
+
+                                insertHour.bindLong(1, productId);
+                                insertHour.bindLong(2, hourStart);
+                                insertHour.executeInsert();
+                                addToBucket(addToHour, productId, hourStart, quantity, saleCount);
+
+                                //Start of the local day of the hour, and of its week.
+                                calendar.setTimeInMillis(hourStart);
+                                calendar.set(Calendar.HOUR_OF_DAY, 0);
+                                calendar.set(Calendar.MINUTE, 0);
+                                calendar.set(Calendar.SECOND, 0);
+                                calendar.set(Calendar.MILLISECOND, 0);
+                                long dayStart = calendar.getTimeInMillis();
+                                calendar.add(Calendar.DAY_OF_MONTH,
+                                        -((calendar.get(Calendar.DAY_OF_WEEK) - calendar.getFirstDayOfWeek() + 7) % 7));
+
+                                insertDay.bindLong(1, productId);
+                                insertDay.bindLong(2, dayStart);
+                                insertDay.bindLong(3, calendar.getTimeInMillis());
+                                insertDay.executeInsert();
+                                addToBucket(addToDay, productId, dayStart, quantity, saleCount);
+                            }
+                        } finally {
+                            hours.close();
+                        }
+                        database.execSQL(SQL_SET_LAST_ROLLUP_ID, new Object[]{batchEnd});
+                    }
+                    database.setTransactionSuccessful();
+                } finally {
+                    database.endTransaction();
+                }
+
+                if (batchEnd <= lastRollupId) {
+                    return rolledUp;
+                }
+                rolledUp += batchEnd - lastRollupId;
+            }
+        } finally {
+            insertHour.close();
+            insertDay.close();
+            addToHour.close();
+            addToDay.close();
+        }
+    }
+
+    private static void addToBucket(SQLiteStatement statement, long productId, long bucketStart, long quantity, long saleCount) {
+        statement.bindLong(1, quantity);
+        statement.bindLong(2, saleCount);
+        statement.bindLong(3, productId);
+        statement.bindLong(4, bucketStart);
+        statement.executeUpdateDelete();
+    }
+
+    /**
+     * @param table rollup table
+     * @return UPDATE adding quantity and sale count to one bucket of one product
+     */
+    private static String bucketUpdate(String table) {
+        return "UPDATE " + table + " SET "
+                + SalesEntry.COLUMN_QUANTITY + " = " + SalesEntry.COLUMN_QUANTITY + " + ?, "
+                + SalesEntry.COLUMN_SALE_COUNT + " = " + SalesEntry.COLUMN_SALE_COUNT + " + ?"
+                + " WHERE " + SalesEntry.COLUMN_PRODUCT_ID + " = ? AND " + SalesEntry.COLUMN_BUCKET_START + " = ?";
+    }
+
+    /**
+     * @param database to check
+     * @return true if the ledger has sales that are not folded in yet
+     */
+    static boolean hasPendingSales(SQLiteDatabase database) {
+        return DatabaseUtils.longForQuery(database, SQL_HAS_PENDING_SALES, null) != 0;
+    }
+}
@@ -1,6 +1,7 @@
 package no.larsvidar.gadgetstore.data;
 
 import android.content.ContentResolver;
+import android.content.ContentUris;
 import android.net.Uri;
 import android.provider.BaseColumns;
 
@@ -17,6 +18,33 @@ public final class StoreContract {
     public static final String CONTENT_AUTHORITY = "no.larsvidar.gadgetstore";
     public static final Uri BASE_CONTENT_URI = Uri.parse("content://" + CONTENT_AUTHORITY);
     public static final String PATH_INVENTORY = "inventory";
+    public static final String PATH_SEARCH = "search";
+    public static final String PATH_SELL = "sell";
+    public static final String PATH_EXPORT = "export";
+    public static final String PATH_SUMMARY = "summary";
+    public static final String PATH_SUPPLIERS = "suppliers";
+    public static final String PATH_LOW_STOCK = "low_stock";
+    public static final String PATH_SALES = "sales";
+    public static final String PATH_SERIES = "series";
+    public static final String PATH_PURGE = "purge";
+    public static final String PATH_STATS = "_stats";
+    public static final String PATH_SLOW_CALLS = "slow";
+    public static final String PATH_MAINTENANCE = "maintenance";
+
+    //Provider methods for ContentResolver.call, and the keys they use.
+    public static final String METHOD_SELL = "sell";
+    public static final String EXTRA_QUANTITY = "quantity";
+    public static final String METHOD_CACHE_STATS = "cache_stats";
+    public static final String EXTRA_CACHE_HITS = "cache_hits";
+    public static final String EXTRA_CACHE_MISSES = "cache_misses";
+    public static final String EXTRA_CACHE_EVICTIONS = "cache_evictions";
+    public static final String EXTRA_CACHE_SIZE = "cache_size";
+    public static final String METHOD_COMPACT_SALES = "compact_sales";
+    public static final String EXTRA_COMPACTED_SALES = "compacted_sales";
+    public static final String METHOD_PURGE_PRODUCTS = "purge_products";
+    public static final String EXTRA_PURGED_PRODUCTS = "purged_products";
+    public static final String METHOD_RUN_MAINTENANCE = "run_maintenance";
+    public static final String EXTRA_RECLAIMED_BYTES = "reclaimed_bytes";
 
     /**
      * Class for inventory database table constant values.
@@ -26,6 +54,46 @@ public final class StoreContract {
         //Content URI
         public static final Uri CONTENT_URI = Uri.withAppendedPath(BASE_CONTENT_URI, PATH_INVENTORY);
 
+        //Search URI, and the query parameter holding the search text.
+        public static final Uri SEARCH_URI = Uri.withAppendedPath(CONTENT_URI, PATH_SEARCH);
+        public static final String QUERY_PARAMETER_SEARCH = "q";
+
+        //Query parameter on change notifications for a single product, telling what happened to it.
+        //Notifications on CONTENT_URI itself mean that any product may have changed.
+        public static final String QUERY_PARAMETER_CHANGE = "change";
+        public static final String CHANGE_INSERT = "insert";
+        public static final String CHANGE_UPDATE = "update";
+        public static final String CHANGE_DELETE = "delete";
+
+        //Query parameters for fetching the list one page at a time, keyed on _ID.
+        public static final String QUERY_PARAMETER_LIMIT = "limit";
+        public static final String QUERY_PARAMETER_AFTER_ID = "after_id";
+
+        //Query parameter for the order of the list: SORT_NAME, SORT_PRICE or SORT_QUANTITY, then _ID.
+        //Without it the list is in _ID order. Pages of a sorted list continue after the sort value in
+        //QUERY_PARAMETER_AFTER_KEY and the _ID in QUERY_PARAMETER_AFTER_ID of the last row before them.
+        public static final String QUERY_PARAMETER_SORT = "sort";
+        public static final String QUERY_PARAMETER_AFTER_KEY = "after_key";
+
+        //Query parameters ending a list at the sort value and _ID of a row, that row included.
+        //Used to read everything up to the start of the next page, however many products that is.
+        public static final String QUERY_PARAMETER_LAST_KEY = "last_key";
+        public static final String QUERY_PARAMETER_LAST_ID = "last_id";
+        public static final String SORT_NAME = "product_name";
+        public static final String SORT_PRICE = "product_price";
+        public static final String SORT_QUANTITY = "product_quantity";
+
+        //Query parameters limiting the list to products with at most a quantity, with a price in a range,
+        //or from one supplier. Each takes a whole number.
+        public static final String QUERY_PARAMETER_MAX_QUANTITY = "max_quantity";
+        public static final String QUERY_PARAMETER_MIN_PRICE = "min_price";
+        public static final String QUERY_PARAMETER_MAX_PRICE = "max_price";
+        public static final String QUERY_PARAMETER_SUPPLIER_ID = "supplier_id";
+
+        //Query parameter limiting the list to the products in LowStockEntry, those below their own reorder
+        //threshold, when set to true. These are the products the low stock alerts are about.
+        public static final String QUERY_PARAMETER_LOW_STOCK = "low_stock";
+
         //MIME type constants
         public static final String CONTENT_LIST_TYPE = ContentResolver.CURSOR_DIR_BASE_TYPE
                 + "/" + CONTENT_AUTHORITY
@@ -35,15 +103,384 @@ public final class StoreContract {
                 + "/" + CONTENT_AUTHORITY
                 + "/" + PATH_INVENTORY;
 
-        //Name of the inventory table.
+        //Export URI, read with ContentResolver.openInputStream. The format parameter picks FORMAT_CSV (default) or FORMAT_BINARY.
+        public static final Uri EXPORT_URI = Uri.withAppendedPath(CONTENT_URI, PATH_EXPORT);
+        public static final String QUERY_PARAMETER_FORMAT = "format";
+
+        //CSV with a header row naming the columns: _ID, product name, price, quantity, supplier name, supplier number
+        //and reorder threshold.
+        public static final String FORMAT_CSV = "csv";
+        public static final String CSV_TYPE = "text/csv";
+
+        //Big-endian binary: int BINARY_EXPORT_MAGIC, int BINARY_EXPORT_VERSION, then for each product the byte 1,
+        //long _ID, UTF product name, int price, int quantity, UTF supplier name, UTF supplier number and, from version 2,
+        //int reorder threshold.
+        //Ends with the byte 0. Strings are written as by DataOutputStream.writeUTF.
+        public static final String FORMAT_BINARY = "binary";
+        public static final String BINARY_TYPE = "application/octet-stream";
+        public static final int BINARY_EXPORT_MAGIC = 0x47534558;
+        public static final int BINARY_EXPORT_VERSION = 2;
+
+        //Name of the inventory view, which joins each product with its supplier. Read from this one.
         public static final String TABLE_NAME = "inventory";
 
+        //Name of the products table behind the view. Products point to their supplier by COLUMN_SUPPLIER_ID.
+        public static final String PRODUCTS_TABLE_NAME = "products";
+
+        //ContentValues key for the number of items to sell through a sell URI. Defaults to 1.
+        public static final String SELL_QUANTITY = "sell_quantity";
+
+        //Name of the full-text search table that shadows the inventory table.
+        public static final String FTS_TABLE_NAME = "inventory_fts";
+
         //Constants for each column i database table.
         public static final String _ID = BaseColumns._ID;
         public static final String COLUMN_PRODUCT_NAME = "product_name";
         public static final String COLUMN_PRODUCT_PRICE = "product_price";
         public static final String COLUMN_PRODUCT_QUANTITY = "product_quantity";
+        public static final String COLUMN_SUPPLIER_ID = "supplier_id";
         public static final String COLUMN_SUPPLIER_NAME = "supplier_name";
         public static final String COLUMN_SUPPLIER_NUMBER = "supplier_number";
+
+        //Reorder point. A product is low on stock while its quantity is below it, so 0 turns alerts off.
+        public static final String COLUMN_REORDER_THRESHOLD = "reorder_threshold";
+
+        //Quantity before the sales that are not yet folded into the products table. COLUMN_PRODUCT_QUANTITY
+        //has those sales taken off, and is what callers should read.
+        public static final String COLUMN_COMPACTED_QUANTITY = "compacted_quantity";
+
+        /**
+         * Builds a URI for searching products by name and supplier name.
+         * @param query text typed by the user
+         * @return search URI
+         */
+        public static Uri buildSearchUri(String query) {
+            return SEARCH_URI.buildUpon().appendQueryParameter(QUERY_PARAMETER_SEARCH, query).build();
+        }
+
+        /**
+         * Builds a URI for one page of a product list.
+         * @param listUri CONTENT_URI or a search URI
+         * @param afterId _ID of the last product on the previous page, or 0 for the first page
+         * @param limit maximum number of products on the page
+         * @return page URI
+         */
+        public static Uri buildPageUri(Uri listUri, long afterId, int limit) {
+            return listUri.buildUpon()
+                    .appendQueryParameter(QUERY_PARAMETER_AFTER_ID, Long.toString(afterId))
+                    .appendQueryParameter(QUERY_PARAMETER_LIMIT, Integer.toString(limit))
+                    .build();
+        }
+
+        /**
+         * Builds a URI for one page of a sorted product list.
+         * @param listUri CONTENT_URI or a search URI, with a sort parameter
+         * @param afterKey sort value of the last product on the previous page, or null for the first page
+         * @param afterId _ID of the last product on the previous page, or 0 for the first page
+         * @param limit maximum number of products on the page
+         * @return page URI
+         */
+        public static Uri buildPageUri(Uri listUri, String afterKey, long afterId, int limit) {
+            if (afterKey == null) {
+                return buildPageUri(listUri, afterId, limit);
+            }
+            return buildPageUri(listUri.buildUpon().appendQueryParameter(QUERY_PARAMETER_AFTER_KEY, afterKey).build(),
+                    afterId, limit);
+        }
+
+        /**
+         * Builds a URI for the products between two positions of a product list, with no limit on their number.
+         * @param listUri CONTENT_URI or a search URI, with any sort and filter parameters
+         * @param afterKey sort value of the last product before the range, or null in _ID order or at the start
+         * @param afterId _ID of the last product before the range, or 0 at the start
+         * @param lastKey sort value of the last product in the range, or null in _ID order
+         * @param lastId _ID of the last product in the range
+         * @return range URI
+         */
+        public static Uri buildRangeUri(Uri listUri, String afterKey, long afterId, String lastKey, long lastId) {
+            Uri.Builder builder = listUri.buildUpon();
+            if (afterKey != null) {
+                builder.appendQueryParameter(QUERY_PARAMETER_AFTER_KEY, afterKey);
+            }
+            if (lastKey != null) {
+                builder.appendQueryParameter(QUERY_PARAMETER_LAST_KEY, lastKey);
+            }
+            return builder.appendQueryParameter(QUERY_PARAMETER_AFTER_ID, Long.toString(afterId))
+                    .appendQueryParameter(QUERY_PARAMETER_LAST_ID, Long.toString(lastId))
+                    .build();
+        }
+
+        /**
+         * Builds the URI notified when a single product changes.
+         * @param id of the product
+         * @param change CHANGE_INSERT, CHANGE_UPDATE or CHANGE_DELETE
+         * @return change URI
+         */
+        public static Uri buildChangeUri(long id, String change) {
+            return ContentUris.withAppendedId(CONTENT_URI, id).buildUpon()
+                    .appendQueryParameter(QUERY_PARAMETER_CHANGE, change)
+                    .build();
+        }
+
+        /**
+         * Builds the URI for exporting all products.
+         * @param format FORMAT_CSV or FORMAT_BINARY
+         * @return export URI
+         */
+        public static Uri buildExportUri(String format) {
+            return EXPORT_URI.buildUpon().appendQueryParameter(QUERY_PARAMETER_FORMAT, format).build();
+        }
+
+        /**
+         * Builds the URI for selling a product. An update on it takes the quantity sold from SELL_QUANTITY.
+         * @param id of the product
+         * @return sell URI
+         */
+        public static Uri buildSellUri(long id) {
+            return ContentUris.withAppendedId(CONTENT_URI, id).buildUpon().appendPath(PATH_SELL).build();
+        }
+    }
+
+    /**
+     * Class for supplier database table constant values.
+     * Each supplier is stored once, and products point to it. Writing a product with a supplier name and number
+     * that are not in the table adds the supplier.
+     */
+    public static final class SupplierEntry implements BaseColumns {
+
+        //Content URI
+        public static final Uri CONTENT_URI = Uri.withAppendedPath(BASE_CONTENT_URI, PATH_SUPPLIERS);
+
+        //MIME type constants
+        public static final String CONTENT_LIST_TYPE = ContentResolver.CURSOR_DIR_BASE_TYPE
+                + "/" + CONTENT_AUTHORITY
+                + "/" + PATH_SUPPLIERS;
+
+        public static final String CONTENT_ITEM_TYPE = ContentResolver.CURSOR_ITEM_BASE_TYPE
+                + "/" + CONTENT_AUTHORITY
+                + "/" + PATH_SUPPLIERS;
+
+        //Name of the suppliers table.
+        public static final String TABLE_NAME = "suppliers";
+
+        //Constants for each column i database table. Names and numbers are unique together.
+        public static final String _ID = BaseColumns._ID;
+        public static final String COLUMN_SUPPLIER_NAME = InventoryEntry.COLUMN_SUPPLIER_NAME;
+        public static final String COLUMN_SUPPLIER_NUMBER = InventoryEntry.COLUMN_SUPPLIER_NUMBER;
+
+        /**
+         * Builds the URI listing the products of one supplier. It takes the same paging parameters as the product list.
+         * @param id of the supplier
+         * @return products URI
+         */
+        public static Uri buildProductsUri(long id) {
+            return ContentUris.withAppendedId(CONTENT_URI, id).buildUpon().appendPath(PATH_INVENTORY).build();
+        }
+    }
+
+    /**
+     * Constants for the inventory totals, kept up to date by triggers on every product change.
+     * CONTENT_URI has a single row for the whole inventory. SUPPLIERS_URI has one row per supplier.
+     * Sales are counted once they are folded into the products, shortly after they are made. See METHOD_COMPACT_SALES.
+     */
+    public static final class SummaryEntry {
+
+        //Content URIs
+        public static final Uri CONTENT_URI = Uri.withAppendedPath(InventoryEntry.CONTENT_URI, PATH_SUMMARY);
+        public static final Uri SUPPLIERS_URI = Uri.withAppendedPath(CONTENT_URI, PATH_SUPPLIERS);
+
+        //MIME type constants
+        public static final String CONTENT_ITEM_TYPE = ContentResolver.CURSOR_ITEM_BASE_TYPE
+                + "/" + CONTENT_AUTHORITY
+                + "/" + PATH_SUMMARY;
+
+        public static final String CONTENT_LIST_TYPE = ContentResolver.CURSOR_DIR_BASE_TYPE
+                + "/" + CONTENT_AUTHORITY
+                + "/" + PATH_SUMMARY;
+
+        //Names of the summary tables.
+        public static final String TABLE_NAME = "inventory_summary";
+        public static final String SUPPLIER_TABLE_NAME = "supplier_summary";
+
+        //Columns of both tables. The supplier table also has InventoryEntry.COLUMN_SUPPLIER_ID,
+        //COLUMN_SUPPLIER_NAME and COLUMN_SUPPLIER_NUMBER.
+        public static final String _ID = BaseColumns._ID;
+        public static final String COLUMN_PRODUCT_COUNT = "product_count";
+        public static final String COLUMN_TOTAL_QUANTITY = "total_quantity";
+        public static final String COLUMN_TOTAL_VALUE = "total_value";
+        public static final String COLUMN_OUT_OF_STOCK_COUNT = "out_of_stock_count";
+    }
+
+    /**
+     * Constants for the products that are low on stock, kept up to date by triggers on every product change.
+     * A product gets a row when its quantity drops below its reorder threshold, and loses it when it is restocked.
+     * CONTENT_URI lists the rows with the product columns of the inventory view. Updating COLUMN_ALERTED is the
+     * only write it takes. Like the totals, it follows sales once they are folded in.
+     */
+    public static final class LowStockEntry {
+
+        //Content URI
+        public static final Uri CONTENT_URI = Uri.withAppendedPath(InventoryEntry.CONTENT_URI, PATH_LOW_STOCK);
+
+        //MIME type
+        public static final String CONTENT_LIST_TYPE = ContentResolver.CURSOR_DIR_BASE_TYPE
+                + "/" + CONTENT_AUTHORITY
+                + "/" + PATH_LOW_STOCK;
+
+        //Name of the low stock table.
+        public static final String TABLE_NAME = "low_stock";
+
+        //Columns of the table. COLUMN_ALERTED is 0 until the user has been told about the product.
+        public static final String COLUMN_PRODUCT_ID = "product_id";
+        public static final String COLUMN_ALERTED = "alerted";
+    }
+
+    /**
+     * Constants for the purge of deleted products.
+     * Deleting every product only marks the products deleted. They are gone from every URI at once, and are removed
+     * from the database in small chunks in the background. CONTENT_URI has a single row with the progress, and
+     * changes after every chunk.
+     */
+    public static final class PurgeEntry {
+
+        //Content URI
+        public static final Uri CONTENT_URI = Uri.withAppendedPath(InventoryEntry.CONTENT_URI, PATH_PURGE);
+
+        //MIME type
+        public static final String CONTENT_ITEM_TYPE = ContentResolver.CURSOR_ITEM_BASE_TYPE
+                + "/" + CONTENT_AUTHORITY
+                + "/" + PATH_PURGE;
+
+        //Name of the purge table.
+        public static final String TABLE_NAME = "inventory_purge";
+
+        //Products deleted since the last purge finished, and how many of them have been removed so far.
+        public static final String COLUMN_ROWS_TOTAL = "rows_total";
+        public static final String COLUMN_ROWS_PURGED = "rows_purged";
+    }
+
+    /**
+     * Constants for the sales ledger. Every sale adds a row, and rows are never changed.
+     * Sales are folded into the product quantities in the background, but the inventory URIs always show
+     * quantities with every sale taken off. CONTENT_URI lists the sales, newest first, and is read only.
+     * Folded sales are also added to the rollup tables, which the series URIs read. A supplier series only
+     * counts the products the supplier has now.
+     */
+    public static final class SalesEntry implements BaseColumns {
+
+        //Content URI
+        public static final Uri CONTENT_URI = Uri.withAppendedPath(BASE_CONTENT_URI, PATH_SALES);
+
+        //MIME type
+        public static final String CONTENT_LIST_TYPE = ContentResolver.CURSOR_DIR_BASE_TYPE
+                + "/" + CONTENT_AUTHORITY
+                + "/" + PATH_SALES;
+
+        //Name of the sales table.
+        public static final String TABLE_NAME = "sales";
+
+        //Constants for each column i database table. COLUMN_SOLD_AT is in milliseconds since the epoch.
+        public static final String _ID = BaseColumns._ID;
+        public static final String COLUMN_PRODUCT_ID = "product_id";
+        public static final String COLUMN_QUANTITY = "quantity";
+        public static final String COLUMN_SOLD_AT = "sold_at";
+
+        //MIME type of a sales series.
+        public static final String SERIES_LIST_TYPE = ContentResolver.CURSOR_DIR_BASE_TYPE
+                + "/" + CONTENT_AUTHORITY
+                + "/" + PATH_SALES + "_" + PATH_SERIES;
+
+        //Rollup tables, with the sales of each product per hour and per local day.
+        public static final String HOURLY_TABLE_NAME = "sales_hourly";
+        public static final String DAILY_TABLE_NAME = "sales_daily";
+
+        //Columns of the rollup tables and of a series. COLUMN_BUCKET_START is the start of the hour, day or week,
+        //in milliseconds since the epoch. COLUMN_QUANTITY is the number of items sold in it.
+        public static final String COLUMN_BUCKET_START = "bucket_start";
+        public static final String COLUMN_SALE_COUNT = "sale_count";
+
+        //Query parameters for a series: the size of the buckets, and the time span in milliseconds since the epoch.
+        //The span includes QUERY_PARAMETER_FROM and ends before QUERY_PARAMETER_TO.
+        public static final String QUERY_PARAMETER_BUCKET = "bucket";
+        public static final String QUERY_PARAMETER_FROM = "from";
+        public static final String QUERY_PARAMETER_TO = "to";
+        public static final String BUCKET_HOUR = "hour";
+        public static final String BUCKET_DAY = "day";
+        public static final String BUCKET_WEEK = "week";
+
+        /**
+         * Builds the URI for the sales series of one product.
+         * @param id of the product
+         * @param bucket BUCKET_HOUR, BUCKET_DAY or BUCKET_WEEK
+         * @return the URI
+         */
+        public static Uri buildProductSeriesUri(long id, String bucket) {
+            return buildSeriesUri(PATH_INVENTORY, id, bucket);
+        }
+
+        /**
+         * Builds the URI for the sales series of all products of one supplier.
+         * @param id of the supplier
+         * @param bucket BUCKET_HOUR, BUCKET_DAY or BUCKET_WEEK
+         * @return the URI
+         */
+        public static Uri buildSupplierSeriesUri(long id, String bucket) {
+            return buildSeriesUri(PATH_SUPPLIERS, id, bucket);
+        }
+
+        private static Uri buildSeriesUri(String path, long id, String bucket) {
+            return ContentUris.withAppendedId(CONTENT_URI.buildUpon().appendPath(PATH_SERIES).appendPath(path).build(), id)
+                    .buildUpon()
+                    .appendQueryParameter(QUERY_PARAMETER_BUCKET, bucket)
+                    .build();
+        }
+    }
+
+    /**
+     * Constants for the provider metrics, only available in debug builds.
+     * CONTENT_URI has one row per operation and URI match code. Latency percentiles are per operation.
+     * SLOW_CALLS_URI lists the slowest recent calls, newest first.
+     * MAINTENANCE_URI lists the database maintenance runs, and is available in every build.
+     */
+    public static final class StatsEntry implements BaseColumns {
+
+        //Content URIs
+        public static final Uri CONTENT_URI = Uri.withAppendedPath(InventoryEntry.CONTENT_URI, PATH_STATS);
+        public static final Uri SLOW_CALLS_URI = Uri.withAppendedPath(CONTENT_URI, PATH_SLOW_CALLS);
+        public static final Uri MAINTENANCE_URI = Uri.withAppendedPath(CONTENT_URI, PATH_MAINTENANCE);
+
+        //MIME type
+        public static final String CONTENT_LIST_TYPE = ContentResolver.CURSOR_DIR_BASE_TYPE
+                + "/" + CONTENT_AUTHORITY
+                + "/" + PATH_STATS;
+
+        //Columns of CONTENT_URI
+        public static final String COLUMN_OPERATION = "operation";
+        public static final String COLUMN_MATCH_CODE = "match_code";
+        public static final String COLUMN_COUNT = "count";
+        public static final String COLUMN_ROWS = "rows";
+        public static final String COLUMN_TOTAL_MICROS = "total_us";
+        public static final String COLUMN_P50_MICROS = "p50_us";
+        public static final String COLUMN_P90_MICROS = "p90_us";
+        public static final String COLUMN_P99_MICROS = "p99_us";
+        public static final String COLUMN_MAX_MICROS = "max_us";
+
+        //Columns of SLOW_CALLS_URI, along with COLUMN_OPERATION and COLUMN_MATCH_CODE
+        public static final String COLUMN_TIME = "time";
+        public static final String COLUMN_URI = "uri";
+        public static final String COLUMN_SELECTION = "selection";
+        public static final String COLUMN_DURATION_MICROS = "duration_us";
+
+        //Table logging the database maintenance runs, read through MAINTENANCE_URI, newest first.
+        public static final String MAINTENANCE_TABLE_NAME = "maintenance_runs";
+
+        //Columns of MAINTENANCE_URI, along with _ID, COLUMN_TIME and COLUMN_DURATION_MICROS.
+        //Sizes are in bytes, with the write-ahead log. A full vacuum rebuilt the file, which the first run does
+        //on a database made before incremental auto vacuum.
+        public static final String COLUMN_FILE_SIZE_BEFORE = "file_size_before";
+        public static final String COLUMN_FILE_SIZE_AFTER = "file_size_after";
+        public static final String COLUMN_FREE_PAGES_BEFORE = "free_pages_before";
+        public static final String COLUMN_FREE_PAGES_AFTER = "free_pages_after";
+        public static final String COLUMN_FULL_VACUUM = "full_vacuum";
     }
 }
@@ -5,6 +5,12 @@ import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
 
 import no.larsvidar.gadgetstore.data.StoreContract.InventoryEntry;
+import no.larsvidar.gadgetstore.data.StoreContract.LowStockEntry;
+import no.larsvidar.gadgetstore.data.StoreContract.PurgeEntry;
+import no.larsvidar.gadgetstore.data.StoreContract.SalesEntry;
+import no.larsvidar.gadgetstore.data.StoreContract.StatsEntry;
+import no.larsvidar.gadgetstore.data.StoreContract.SummaryEntry;
+import no.larsvidar.gadgetstore.data.StoreContract.SupplierEntry;
 
 /**
  * Database helper for GadgetStore app
@@ -12,12 +18,521 @@ import no.larsvidar.gadgetstore.data.StoreContract.InventoryEntry;
 public class StoreDbHelper extends SQLiteOpenHelper {
 
     //Variables for database
-    private static final String DATABASE_NAME = "gadgetstore.db";
-    private static final int DATABASE_VERSION = 1;
+    static final String DATABASE_NAME = "gadgetstore.db";
+    static final int DATABASE_VERSION = 11;
+
+    //Creating the SQL statement for creating inventory table, as in version 1.
+    //Saving phone number as text to accommodate different ways of writing phone numbers.
+    static final String SQL_CREATE_VERSION_1 = "CREATE TABLE "
+            + InventoryEntry.TABLE_NAME + " ("
+            + InventoryEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+            + InventoryEntry.COLUMN_PRODUCT_NAME + " TEXT NOT NULL, "
+            + InventoryEntry.COLUMN_PRODUCT_PRICE + " INTEGER NOT NULL, "
+            + InventoryEntry.COLUMN_PRODUCT_QUANTITY + " INTEGER NOT NULL DEFAULT 0, "
+            + InventoryEntry.COLUMN_SUPPLIER_NAME + " TEXT NOT NULL, "
+            + InventoryEntry.COLUMN_SUPPLIER_NUMBER + " TEXT NOT NULL);";
+
+    //Trigger bodies keeping the full-text search table in sync with the inventory table.
+    private static final String SQL_FTS_DELETE_OLD = "DELETE FROM " + InventoryEntry.FTS_TABLE_NAME
+            + " WHERE docid = old." + InventoryEntry._ID + ";";
+    private static final String SQL_FTS_INSERT_NEW = "INSERT INTO " + InventoryEntry.FTS_TABLE_NAME + "(docid, "
+            + InventoryEntry.COLUMN_PRODUCT_NAME + ", " + InventoryEntry.COLUMN_SUPPLIER_NAME + ") VALUES (new."
+            + InventoryEntry._ID + ", new." + InventoryEntry.COLUMN_PRODUCT_NAME + ", new."
+            + InventoryEntry.COLUMN_SUPPLIER_NAME + ");";
+
+    //Total columns of the summary tables.
+    private static final String SUMMARY_COLUMNS = SummaryEntry.COLUMN_PRODUCT_COUNT + " INTEGER NOT NULL DEFAULT 0, "
+            + SummaryEntry.COLUMN_TOTAL_QUANTITY + " INTEGER NOT NULL DEFAULT 0, "
+            + SummaryEntry.COLUMN_TOTAL_VALUE + " INTEGER NOT NULL DEFAULT 0, "
+            + SummaryEntry.COLUMN_OUT_OF_STOCK_COUNT + " INTEGER NOT NULL DEFAULT 0";
+
+    //Totals of a group of products, in the order of SUMMARY_COLUMNS.
+    private static final String SUMMARY_AGGREGATES = "COUNT(*), "
+            + "IFNULL(SUM(" + InventoryEntry.COLUMN_PRODUCT_QUANTITY + "), 0), "
+            + "IFNULL(SUM(" + InventoryEntry.COLUMN_PRODUCT_PRICE + " * " + InventoryEntry.COLUMN_PRODUCT_QUANTITY + "), 0), "
+            + "IFNULL(SUM(" + InventoryEntry.COLUMN_PRODUCT_QUANTITY + " = 0), 0)";
+
+    //Trigger bodies keeping the summary tables in sync with the inventory table.
+    private static final String SQL_SUMMARY_ADD_NEW = summaryChange("new", "+", SummaryEntry.TABLE_NAME, null)
+            + "INSERT OR IGNORE INTO " + SummaryEntry.SUPPLIER_TABLE_NAME + " (" + InventoryEntry.COLUMN_SUPPLIER_NAME
+            + ") VALUES (new." + InventoryEntry.COLUMN_SUPPLIER_NAME + ");"
+            + summaryChange("new", "+", SummaryEntry.SUPPLIER_TABLE_NAME, InventoryEntry.COLUMN_SUPPLIER_NAME);
+    private static final String SQL_SUMMARY_REMOVE_OLD = summaryChange("old", "-", SummaryEntry.TABLE_NAME, null)
+            + summaryChange("old", "-", SummaryEntry.SUPPLIER_TABLE_NAME, InventoryEntry.COLUMN_SUPPLIER_NAME)
+            + "DELETE FROM " + SummaryEntry.SUPPLIER_TABLE_NAME + " WHERE " + InventoryEntry.COLUMN_SUPPLIER_NAME
+            + " = old." + InventoryEntry.COLUMN_SUPPLIER_NAME + " AND " + SummaryEntry.COLUMN_PRODUCT_COUNT + " = 0;";
+
+    //Per supplier totals from version 5, keyed on the supplier _ID. Read through the SummaryEntry.SUPPLIER_TABLE_NAME view.
+    static final String SUPPLIER_TOTALS_TABLE_NAME = "supplier_totals";
+
+    //Name of the supplier of the new product row, for the search table.
+    private static final String SQL_NEW_SUPPLIER_NAME = "(SELECT " + SupplierEntry.COLUMN_SUPPLIER_NAME + " FROM "
+            + SupplierEntry.TABLE_NAME + " WHERE " + SupplierEntry._ID + " = new." + InventoryEntry.COLUMN_SUPPLIER_ID + ")";
+
+    //Trigger bodies keeping the summary tables in sync with the products table, from version 5.
+    private static final String SQL_TOTALS_ADD_NEW = summaryChange("new", "+", SummaryEntry.TABLE_NAME, null)
+            + "INSERT OR IGNORE INTO " + SUPPLIER_TOTALS_TABLE_NAME + " (" + InventoryEntry.COLUMN_SUPPLIER_ID
+            + ") VALUES (new." + InventoryEntry.COLUMN_SUPPLIER_ID + ");"
+            + summaryChange("new", "+", SUPPLIER_TOTALS_TABLE_NAME, InventoryEntry.COLUMN_SUPPLIER_ID);
+    private static final String SQL_TOTALS_REMOVE_OLD = summaryChange("old", "-", SummaryEntry.TABLE_NAME, null)
+            + summaryChange("old", "-", SUPPLIER_TOTALS_TABLE_NAME, InventoryEntry.COLUMN_SUPPLIER_ID)
+            + "DELETE FROM " + SUPPLIER_TOTALS_TABLE_NAME + " WHERE " + InventoryEntry.COLUMN_SUPPLIER_ID
+            + " = old." + InventoryEntry.COLUMN_SUPPLIER_ID + " AND " + SummaryEntry.COLUMN_PRODUCT_COUNT + " = 0;";
+
+    //Single row table from version 8, holding the _ID of the last sale folded into the products table.
+    static final String SALES_COMPACTION_TABLE_NAME = "sales_compaction";
+    static final String COLUMN_LAST_SALE_ID = "last_sale_id";
+
+    //From version 9, the _ID of the last sale added to the rollup tables.
+    static final String COLUMN_LAST_ROLLUP_ID = "last_rollup_id";
+
+    //Start of the local week of a day in the daily rollup table, so weeks are summed from days.
+    static final String COLUMN_WEEK_START = "week_start";
+
+    //From version 10, the highest product _ID deleted by deleting every product. Product _IDs only grow,
+    //so every product up to it is deleted and every product after it is not.
+    static final String COLUMN_DELETED_THROUGH = "deleted_through";
+
+    //Schema migrations, in version order. Version 1 is the table made in onCreate.
+    static final Migration[] MIGRATIONS = {
+            //Version 2: Indexes for sorting and filtering on name, supplier and stock.
+            new Migration(2) {
+                @Override
+                void migrate(SQLiteDatabase database) {
+                    database.execSQL("CREATE INDEX inventory_product_name_index ON "
+                            + InventoryEntry.TABLE_NAME + " (" + InventoryEntry.COLUMN_PRODUCT_NAME + ");");
+                    database.execSQL("CREATE INDEX inventory_supplier_name_index ON "
+                            + InventoryEntry.TABLE_NAME + " (" + InventoryEntry.COLUMN_SUPPLIER_NAME + ");");
+                    database.execSQL("CREATE INDEX inventory_product_quantity_index ON "
+                            + InventoryEntry.TABLE_NAME + " (" + InventoryEntry.COLUMN_PRODUCT_QUANTITY + ");");
+                }
+            },
+            //Version 3: Full-text search table for name and supplier name, kept in sync by triggers.
+            new Migration(3) {
+                @Override
+                void migrate(SQLiteDatabase database) {
+                    //External content table, so the text is not stored twice. Prefix indexes for typing-as-you-search.
+                    database.execSQL("CREATE VIRTUAL TABLE " + InventoryEntry.FTS_TABLE_NAME + " USING fts4("
+                            + "content=\"" + InventoryEntry.TABLE_NAME + "\", "
+                            + InventoryEntry.COLUMN_PRODUCT_NAME + ", "
+                            + InventoryEntry.COLUMN_SUPPLIER_NAME + ", "
+                            + "prefix=\"2,3\");");
+
+                    //Old text must leave the index before the row changes, new text is added after.
+                    //Only name changes touch the index, so sales do not pay for it.
+                    database.execSQL("CREATE TRIGGER inventory_fts_before_update BEFORE UPDATE OF "
+                            + InventoryEntry.COLUMN_PRODUCT_NAME + ", " + InventoryEntry.COLUMN_SUPPLIER_NAME
+                            + " ON " + InventoryEntry.TABLE_NAME + " BEGIN "
+                            + SQL_FTS_DELETE_OLD + " END;");
+                    database.execSQL("CREATE TRIGGER inventory_fts_before_delete BEFORE DELETE ON "
+                            + InventoryEntry.TABLE_NAME + " BEGIN "
+                            + SQL_FTS_DELETE_OLD + " END;");
+                    database.execSQL("CREATE TRIGGER inventory_fts_after_update AFTER UPDATE OF "
+                            + InventoryEntry.COLUMN_PRODUCT_NAME + ", " + InventoryEntry.COLUMN_SUPPLIER_NAME
+                            + " ON " + InventoryEntry.TABLE_NAME + " BEGIN "
+                            + SQL_FTS_INSERT_NEW + " END;");
+                    database.execSQL("CREATE TRIGGER inventory_fts_after_insert AFTER INSERT ON "
+                            + InventoryEntry.TABLE_NAME + " BEGIN "
+                            + SQL_FTS_INSERT_NEW + " END;");
+
+                    //Index the products that already exist.
+                    database.execSQL("INSERT INTO " + InventoryEntry.FTS_TABLE_NAME + "("
+                            + InventoryEntry.FTS_TABLE_NAME + ") VALUES('rebuild');");
+                }
+            },
+            //Version 4: Totals for the whole inventory and per supplier, kept in sync by triggers.
+            new Migration(4) {
+                @Override
+                void migrate(SQLiteDatabase database) {
+                    database.execSQL("CREATE TABLE " + SummaryEntry.TABLE_NAME + " ("
+                            + SummaryEntry._ID + " INTEGER PRIMARY KEY, "
+                            + SUMMARY_COLUMNS + ");");
+                    database.execSQL("CREATE TABLE " + SummaryEntry.SUPPLIER_TABLE_NAME + " ("
+                            + InventoryEntry.COLUMN_SUPPLIER_NAME + " TEXT PRIMARY KEY, "
+                            + SUMMARY_COLUMNS + ");");
+
+                    //A change to a product takes its old values out of the totals and adds the new ones.
+                    //Name changes do not touch the totals.
+                    database.execSQL("CREATE TRIGGER inventory_summary_after_insert AFTER INSERT ON "
+                            + InventoryEntry.TABLE_NAME + " BEGIN "
+                            + SQL_SUMMARY_ADD_NEW + " END;");
+                    database.execSQL("CREATE TRIGGER inventory_summary_after_delete AFTER DELETE ON "
+                            + InventoryEntry.TABLE_NAME + " BEGIN "
+                            + SQL_SUMMARY_REMOVE_OLD + " END;");
+                    database.execSQL("CREATE TRIGGER inventory_summary_after_update AFTER UPDATE OF "
+                            + InventoryEntry.COLUMN_PRODUCT_PRICE + ", " + InventoryEntry.COLUMN_PRODUCT_QUANTITY + ", "
+                            + InventoryEntry.COLUMN_SUPPLIER_NAME + " ON " + InventoryEntry.TABLE_NAME + " BEGIN "
+                            + SQL_SUMMARY_REMOVE_OLD + SQL_SUMMARY_ADD_NEW + " END;");
+
+                    //Sum up the products that already exist.
+                    database.execSQL("INSERT INTO " + SummaryEntry.TABLE_NAME + " SELECT 1, "
+                            + SUMMARY_AGGREGATES + " FROM " + InventoryEntry.TABLE_NAME + ";");
+                    database.execSQL("INSERT INTO " + SummaryEntry.SUPPLIER_TABLE_NAME + " SELECT "
+                            + InventoryEntry.COLUMN_SUPPLIER_NAME + ", " + SUMMARY_AGGREGATES
+                            + " FROM " + InventoryEntry.TABLE_NAME + " GROUP BY " + InventoryEntry.COLUMN_SUPPLIER_NAME + ";");
+                }
+            },
+            //Version 5: Suppliers in their own table. Products point to them, and the inventory table becomes a view.
+            new Migration(5) {
+                @Override
+                void migrate(SQLiteDatabase database) {
+                    /***** Suppliers *****/
+                    //One row for each name and number pair, in the order they first appear.
+                    database.execSQL("CREATE TABLE " + SupplierEntry.TABLE_NAME + " ("
+                            + SupplierEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+                            + SupplierEntry.COLUMN_SUPPLIER_NAME + " TEXT NOT NULL, "
+                            + SupplierEntry.COLUMN_SUPPLIER_NUMBER + " TEXT NOT NULL, "
+                            + "UNIQUE (" + SupplierEntry.COLUMN_SUPPLIER_NAME + ", " + SupplierEntry.COLUMN_SUPPLIER_NUMBER + "));");
+                    database.execSQL("INSERT INTO " + SupplierEntry.TABLE_NAME + " (" + SupplierEntry.COLUMN_SUPPLIER_NAME + ", "
+                            + SupplierEntry.COLUMN_SUPPLIER_NUMBER + ") SELECT " + InventoryEntry.COLUMN_SUPPLIER_NAME + ", "
+                            + InventoryEntry.COLUMN_SUPPLIER_NUMBER + " FROM " + InventoryEntry.TABLE_NAME + " GROUP BY "
+                            + InventoryEntry.COLUMN_SUPPLIER_NAME + ", " + InventoryEntry.COLUMN_SUPPLIER_NUMBER
+                            + " ORDER BY MIN(" + InventoryEntry._ID + ");");
+
+                    /***** Products *****/
+                    //Products keep their _ID.
+                    database.execSQL("CREATE TABLE " + InventoryEntry.PRODUCTS_TABLE_NAME + " ("
+                            + InventoryEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+                            + InventoryEntry.COLUMN_PRODUCT_NAME + " TEXT NOT NULL, "
+                            + InventoryEntry.COLUMN_PRODUCT_PRICE + " INTEGER NOT NULL, "
+                            + InventoryEntry.COLUMN_PRODUCT_QUANTITY + " INTEGER NOT NULL DEFAULT 0, "
+                            + InventoryEntry.COLUMN_SUPPLIER_ID + " INTEGER NOT NULL REFERENCES "
+                            + SupplierEntry.TABLE_NAME + " (" + SupplierEntry._ID + "));");
+                    database.execSQL("INSERT INTO " + InventoryEntry.PRODUCTS_TABLE_NAME + " SELECT "
+                            + InventoryEntry.TABLE_NAME + "." + InventoryEntry._ID + ", "
+                            + InventoryEntry.COLUMN_PRODUCT_NAME + ", "
+                            + InventoryEntry.COLUMN_PRODUCT_PRICE + ", "
+                            + InventoryEntry.COLUMN_PRODUCT_QUANTITY + ", "
+                            + SupplierEntry.TABLE_NAME + "." + SupplierEntry._ID + " FROM " + InventoryEntry.TABLE_NAME
+                            + " JOIN " + SupplierEntry.TABLE_NAME + " USING (" + InventoryEntry.COLUMN_SUPPLIER_NAME + ", "
+                            + InventoryEntry.COLUMN_SUPPLIER_NUMBER + ");");
+
+                    //Carry on counting from the old table, so ids of deleted products are not given out again.
+                    database.execSQL("DELETE FROM sqlite_sequence WHERE name = '" + InventoryEntry.PRODUCTS_TABLE_NAME + "';");
+                    database.execSQL("UPDATE sqlite_sequence SET name = '" + InventoryEntry.PRODUCTS_TABLE_NAME
+                            + "' WHERE name = '" + InventoryEntry.TABLE_NAME + "';");
+
+                    //Dropping the old table also drops its indexes and triggers.
+                    database.execSQL("DROP TABLE " + InventoryEntry.FTS_TABLE_NAME + ";");
+                    database.execSQL("DROP TABLE " + SummaryEntry.SUPPLIER_TABLE_NAME + ";");
+                    database.execSQL("DROP TABLE " + InventoryEntry.TABLE_NAME + ";");
+
+                    //Readers keep seeing products with their supplier name and number.
+                    database.execSQL("CREATE VIEW " + InventoryEntry.TABLE_NAME + " AS SELECT "
+                            + InventoryEntry.PRODUCTS_TABLE_NAME + "." + InventoryEntry._ID + " AS " + InventoryEntry._ID + ", "
+                            + InventoryEntry.COLUMN_PRODUCT_NAME + ", "
+                            + InventoryEntry.COLUMN_PRODUCT_PRICE + ", "
+                            + InventoryEntry.COLUMN_PRODUCT_QUANTITY + ", "
+                            + InventoryEntry.COLUMN_SUPPLIER_ID + ", "
+                            + InventoryEntry.COLUMN_SUPPLIER_NAME + ", "
+                            + InventoryEntry.COLUMN_SUPPLIER_NUMBER + " FROM " + InventoryEntry.PRODUCTS_TABLE_NAME
+                            + " JOIN " + SupplierEntry.TABLE_NAME + " ON " + SupplierEntry.TABLE_NAME + "." + SupplierEntry._ID
+                            + " = " + InventoryEntry.PRODUCTS_TABLE_NAME + "." + InventoryEntry.COLUMN_SUPPLIER_ID + ";");
+
+                    //The supplier index also serves the foreign key check when a supplier is deleted.
+                    database.execSQL("CREATE INDEX products_product_name_index ON "
+                            + InventoryEntry.PRODUCTS_TABLE_NAME + " (" + InventoryEntry.COLUMN_PRODUCT_NAME + ");");
+                    database.execSQL("CREATE INDEX products_product_quantity_index ON "
+                            + InventoryEntry.PRODUCTS_TABLE_NAME + " (" + InventoryEntry.COLUMN_PRODUCT_QUANTITY + ");");
+                    database.execSQL("CREATE INDEX products_supplier_id_index ON "
+                            + InventoryEntry.PRODUCTS_TABLE_NAME + " (" + InventoryEntry.COLUMN_SUPPLIER_ID + ");");
+
+                    /***** Search *****/
+                    //The supplier name now lives in another table, so the search table keeps its own copy of the text.
+                    database.execSQL("CREATE VIRTUAL TABLE " + InventoryEntry.FTS_TABLE_NAME + " USING fts4("
+                            + InventoryEntry.COLUMN_PRODUCT_NAME + ", "
+                            + InventoryEntry.COLUMN_SUPPLIER_NAME + ", "
+                            + "prefix=\"2,3\");");
+                    database.execSQL("CREATE TRIGGER products_fts_after_insert AFTER INSERT ON "
+                            + InventoryEntry.PRODUCTS_TABLE_NAME + " BEGIN INSERT INTO " + InventoryEntry.FTS_TABLE_NAME
+                            + " (docid, " + InventoryEntry.COLUMN_PRODUCT_NAME + ", " + InventoryEntry.COLUMN_SUPPLIER_NAME
+                            + ") VALUES (new." + InventoryEntry._ID + ", new." + InventoryEntry.COLUMN_PRODUCT_NAME + ", "
+                            + SQL_NEW_SUPPLIER_NAME + "); END;");
+                    database.execSQL("CREATE TRIGGER products_fts_after_update AFTER UPDATE OF "
+                            + InventoryEntry.COLUMN_PRODUCT_NAME + ", " + InventoryEntry.COLUMN_SUPPLIER_ID
+                            + " ON " + InventoryEntry.PRODUCTS_TABLE_NAME + " BEGIN UPDATE " + InventoryEntry.FTS_TABLE_NAME
+                            + " SET " + InventoryEntry.COLUMN_PRODUCT_NAME + " = new." + InventoryEntry.COLUMN_PRODUCT_NAME + ", "
+                            + InventoryEntry.COLUMN_SUPPLIER_NAME + " = " + SQL_NEW_SUPPLIER_NAME
+                            + " WHERE docid = new." + InventoryEntry._ID + "; END;");
+                    database.execSQL("CREATE TRIGGER products_fts_after_delete AFTER DELETE ON "
+                            + InventoryEntry.PRODUCTS_TABLE_NAME + " BEGIN "
+                            + SQL_FTS_DELETE_OLD + " END;");
+
+                    //Renaming a supplier renames it in the search text of its products.
+                    database.execSQL("CREATE TRIGGER suppliers_fts_after_update AFTER UPDATE OF "
+                            + SupplierEntry.COLUMN_SUPPLIER_NAME + " ON " + SupplierEntry.TABLE_NAME
+                            + " BEGIN UPDATE " + InventoryEntry.FTS_TABLE_NAME + " SET " + InventoryEntry.COLUMN_SUPPLIER_NAME
+                            + " = new." + SupplierEntry.COLUMN_SUPPLIER_NAME + " WHERE docid IN (SELECT " + InventoryEntry._ID
+                            + " FROM " + InventoryEntry.PRODUCTS_TABLE_NAME + " WHERE " + InventoryEntry.COLUMN_SUPPLIER_ID
+                            + " = new." + SupplierEntry._ID + "); END;");
+
+                    database.execSQL("INSERT INTO " + InventoryEntry.FTS_TABLE_NAME + " (docid, "
+                            + InventoryEntry.COLUMN_PRODUCT_NAME + ", " + InventoryEntry.COLUMN_SUPPLIER_NAME + ") SELECT "
+                            + InventoryEntry._ID + ", " + InventoryEntry.COLUMN_PRODUCT_NAME + ", "
+                            + InventoryEntry.COLUMN_SUPPLIER_NAME + " FROM " + InventoryEntry.TABLE_NAME + ";");
+
+                    /***** Totals *****/
+                    //The inventory totals are unchanged. Supplier totals are now kept per supplier row.
+                    database.execSQL("CREATE TABLE " + SUPPLIER_TOTALS_TABLE_NAME + " ("
+                            + InventoryEntry.COLUMN_SUPPLIER_ID + " INTEGER PRIMARY KEY, "
+                            + SUMMARY_COLUMNS + ");");
+                    database.execSQL("CREATE VIEW " + SummaryEntry.SUPPLIER_TABLE_NAME + " AS SELECT "
+                            + InventoryEntry.COLUMN_SUPPLIER_ID + ", "
+                            + SupplierEntry.COLUMN_SUPPLIER_NAME + ", "
+                            + SupplierEntry.COLUMN_SUPPLIER_NUMBER + ", "
+                            + SummaryEntry.COLUMN_PRODUCT_COUNT + ", "
+                            + SummaryEntry.COLUMN_TOTAL_QUANTITY + ", "
+                            + SummaryEntry.COLUMN_TOTAL_VALUE + ", "
+                            + SummaryEntry.COLUMN_OUT_OF_STOCK_COUNT + " FROM " + SUPPLIER_TOTALS_TABLE_NAME
+                            + " JOIN " + SupplierEntry.TABLE_NAME + " ON " + SupplierEntry.TABLE_NAME + "." + SupplierEntry._ID
+                            + " = " + SUPPLIER_TOTALS_TABLE_NAME + "." + InventoryEntry.COLUMN_SUPPLIER_ID + ";");
+                    database.execSQL("CREATE TRIGGER products_summary_after_insert AFTER INSERT ON "
+                            + InventoryEntry.PRODUCTS_TABLE_NAME + " BEGIN "
+                            + SQL_TOTALS_ADD_NEW + " END;");
+                    database.execSQL("CREATE TRIGGER products_summary_after_delete AFTER DELETE ON "
+                            + InventoryEntry.PRODUCTS_TABLE_NAME + " BEGIN "
+                            + SQL_TOTALS_REMOVE_OLD + " END;");
+                    database.execSQL("CREATE TRIGGER products_summary_after_update AFTER UPDATE OF "
+                            + InventoryEntry.COLUMN_PRODUCT_PRICE + ", " + InventoryEntry.COLUMN_PRODUCT_QUANTITY + ", "
+                            + InventoryEntry.COLUMN_SUPPLIER_ID + " ON " + InventoryEntry.PRODUCTS_TABLE_NAME + " BEGIN "
+                            + SQL_TOTALS_REMOVE_OLD + SQL_TOTALS_ADD_NEW + " END;");
+                    database.execSQL("INSERT INTO " + SUPPLIER_TOTALS_TABLE_NAME + " SELECT "
+                            + InventoryEntry.COLUMN_SUPPLIER_ID + ", " + SUMMARY_AGGREGATES
+                            + " FROM " + InventoryEntry.PRODUCTS_TABLE_NAME + " GROUP BY " + InventoryEntry.COLUMN_SUPPLIER_ID + ";");
+                }
+            },
+            //Version 6: Indexes for the sorted and filtered list. Names sort without regard to case.
+            new Migration(6) {
+                @Override
+                void migrate(SQLiteDatabase database) {
+                    database.execSQL("DROP INDEX products_product_name_index;");
+                    database.execSQL("CREATE INDEX products_product_name_nocase_index ON "
+                            + InventoryEntry.PRODUCTS_TABLE_NAME + " (" + InventoryEntry.COLUMN_PRODUCT_NAME + " COLLATE NOCASE);");
+                    database.execSQL("CREATE INDEX products_product_price_index ON "
+                            + InventoryEntry.PRODUCTS_TABLE_NAME + " (" + InventoryEntry.COLUMN_PRODUCT_PRICE + ");");
+                }
+            },
+            //Version 7: Reorder thresholds, and the products below them, kept in sync by triggers.
+            new Migration(7) {
+                @Override
+                void migrate(SQLiteDatabase database) {
+                    database.execSQL("ALTER TABLE " + InventoryEntry.PRODUCTS_TABLE_NAME + " ADD COLUMN "
+                            + InventoryEntry.COLUMN_REORDER_THRESHOLD + " INTEGER NOT NULL DEFAULT 0;");
+
+                    //The view lists its columns, so it is made again with the new one.
+                    database.execSQL("DROP VIEW " + InventoryEntry.TABLE_NAME + ";");
+                    database.execSQL("CREATE VIEW " + InventoryEntry.TABLE_NAME + " AS SELECT "
+                            + InventoryEntry.PRODUCTS_TABLE_NAME + "." + InventoryEntry._ID + " AS " + InventoryEntry._ID + ", "
+                            + InventoryEntry.COLUMN_PRODUCT_NAME + ", "
+                            + InventoryEntry.COLUMN_PRODUCT_PRICE + ", "
+                            + InventoryEntry.COLUMN_PRODUCT_QUANTITY + ", "
+                            + InventoryEntry.COLUMN_REORDER_THRESHOLD + ", "
+                            + InventoryEntry.COLUMN_SUPPLIER_ID + ", "
+                            + InventoryEntry.COLUMN_SUPPLIER_NAME + ", "
+                            + InventoryEntry.COLUMN_SUPPLIER_NUMBER + " FROM " + InventoryEntry.PRODUCTS_TABLE_NAME
+                            + " JOIN " + SupplierEntry.TABLE_NAME + " ON " + SupplierEntry.TABLE_NAME + "." + SupplierEntry._ID
+                            + " = " + InventoryEntry.PRODUCTS_TABLE_NAME + "." + InventoryEntry.COLUMN_SUPPLIER_ID + ";");
+
+                    //Keyed on the product, so the sale path only ever looks up a single row.
+                    database.execSQL("CREATE TABLE " + LowStockEntry.TABLE_NAME + " ("
+                            + LowStockEntry.COLUMN_PRODUCT_ID + " INTEGER PRIMARY KEY, "
+                            + LowStockEntry.COLUMN_ALERTED + " INTEGER NOT NULL DEFAULT 0);");
+
+                    //The triggers only do work when a product crosses its threshold, not on every sale.
+                    database.execSQL("CREATE TRIGGER products_low_stock_after_insert AFTER INSERT ON "
+                            + InventoryEntry.PRODUCTS_TABLE_NAME + " WHEN " + lowStock("new") + " BEGIN INSERT INTO "
+                            + LowStockEntry.TABLE_NAME + " (" + LowStockEntry.COLUMN_PRODUCT_ID + ") VALUES (new."
+                            + InventoryEntry._ID + "); END;");
+                    database.execSQL("CREATE TRIGGER products_low_stock_after_update AFTER UPDATE OF "
+                            + InventoryEntry.COLUMN_PRODUCT_QUANTITY + ", " + InventoryEntry.COLUMN_REORDER_THRESHOLD
+                            + " ON " + InventoryEntry.PRODUCTS_TABLE_NAME + " WHEN (" + lowStock("new") + ") <> ("
+                            + lowStock("old") + ") BEGIN DELETE FROM " + LowStockEntry.TABLE_NAME + " WHERE "
+                            + LowStockEntry.COLUMN_PRODUCT_ID + " = old." + InventoryEntry._ID + "; INSERT INTO "
+                            + LowStockEntry.TABLE_NAME + " (" + LowStockEntry.COLUMN_PRODUCT_ID + ") SELECT new."
+                            + InventoryEntry._ID + " WHERE " + lowStock("new") + "; END;");
+                    database.execSQL("CREATE TRIGGER products_low_stock_after_delete AFTER DELETE ON "
+                            + InventoryEntry.PRODUCTS_TABLE_NAME + " WHEN " + lowStock("old") + " BEGIN DELETE FROM "
+                            + LowStockEntry.TABLE_NAME + " WHERE " + LowStockEntry.COLUMN_PRODUCT_ID + " = old."
+                            + InventoryEntry._ID + "; END;");
+                }
+            },
+            //Version 8: Sales ledger. Sales are appended, and folded into the product quantities in the background.
+            new Migration(8) {
+                @Override
+                void migrate(SQLiteDatabase database) {
+                    //No foreign key, so the sales history is kept when a product is deleted.
+                    database.execSQL("CREATE TABLE " + SalesEntry.TABLE_NAME + " ("
+                            + SalesEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+                            + SalesEntry.COLUMN_PRODUCT_ID + " INTEGER NOT NULL, "
+                            + SalesEntry.COLUMN_QUANTITY + " INTEGER NOT NULL, "
+                            + SalesEntry.COLUMN_SOLD_AT + " INTEGER NOT NULL);");
+                    database.execSQL("CREATE INDEX sales_product_id_index ON " + SalesEntry.TABLE_NAME
+                            + " (" + SalesEntry.COLUMN_PRODUCT_ID + ", " + SalesEntry._ID + ");");
+                    database.execSQL("CREATE TABLE " + SALES_COMPACTION_TABLE_NAME + " ("
+                            + SalesEntry._ID + " INTEGER PRIMARY KEY, "
+                            + COLUMN_LAST_SALE_ID + " INTEGER NOT NULL);");
+                    database.execSQL("INSERT INTO " + SALES_COMPACTION_TABLE_NAME + " VALUES (1, 0);");
+
+                    //The view takes the sales not folded in yet off the quantity, so readers never see them lag.
+                    database.execSQL("DROP VIEW " + InventoryEntry.TABLE_NAME + ";");
+                    database.execSQL("CREATE VIEW " + InventoryEntry.TABLE_NAME + " AS SELECT "
+                            + InventoryEntry.PRODUCTS_TABLE_NAME + "." + InventoryEntry._ID + " AS " + InventoryEntry._ID + ", "
+                            + InventoryEntry.COLUMN_PRODUCT_NAME + ", "
+                            + InventoryEntry.COLUMN_PRODUCT_PRICE + ", "
+                            + InventoryEntry.PRODUCTS_TABLE_NAME + "." + InventoryEntry.COLUMN_PRODUCT_QUANTITY + " - "
+                            + pendingSales(InventoryEntry.PRODUCTS_TABLE_NAME + "." + InventoryEntry._ID)
+                            + " AS " + InventoryEntry.COLUMN_PRODUCT_QUANTITY + ", "
+                            + InventoryEntry.COLUMN_REORDER_THRESHOLD + ", "
+                            + InventoryEntry.COLUMN_SUPPLIER_ID + ", "
+                            + InventoryEntry.COLUMN_SUPPLIER_NAME + ", "
+                            + InventoryEntry.COLUMN_SUPPLIER_NUMBER + ", "
+                            + InventoryEntry.PRODUCTS_TABLE_NAME + "." + InventoryEntry.COLUMN_PRODUCT_QUANTITY
+                            + " AS " + InventoryEntry.COLUMN_COMPACTED_QUANTITY + " FROM " + InventoryEntry.PRODUCTS_TABLE_NAME
+                            + " JOIN " + SupplierEntry.TABLE_NAME + " ON " + SupplierEntry.TABLE_NAME + "." + SupplierEntry._ID
+                            + " = " + InventoryEntry.PRODUCTS_TABLE_NAME + "." + InventoryEntry.COLUMN_SUPPLIER_ID + ";");
+                }
+            },
+            //Version 9: Hourly and daily sales per product, rolled up from the ledger in the background.
+            new Migration(9) {
+                @Override
+                void migrate(SQLiteDatabase database) {
+                    //Starts at 0, so the sales already in the ledger are rolled up on the next run.
+                    database.execSQL("ALTER TABLE " + SALES_COMPACTION_TABLE_NAME + " ADD COLUMN "
+                            + COLUMN_LAST_ROLLUP_ID + " INTEGER NOT NULL DEFAULT 0;");
+
+                    //Keyed on product and time, so a series is one range in the primary key index.
+                    database.execSQL("CREATE TABLE " + SalesEntry.HOURLY_TABLE_NAME + " ("
+                            + SalesEntry.COLUMN_PRODUCT_ID + " INTEGER NOT NULL, "
+                            + SalesEntry.COLUMN_BUCKET_START + " INTEGER NOT NULL, "
+                            + SalesEntry.COLUMN_QUANTITY + " INTEGER NOT NULL DEFAULT 0, "
+                            + SalesEntry.COLUMN_SALE_COUNT + " INTEGER NOT NULL DEFAULT 0, "
+                            + "PRIMARY KEY (" + SalesEntry.COLUMN_PRODUCT_ID + ", " + SalesEntry.COLUMN_BUCKET_START + "));");
+                    database.execSQL("CREATE TABLE " + SalesEntry.DAILY_TABLE_NAME + " ("
+                            + SalesEntry.COLUMN_PRODUCT_ID + " INTEGER NOT NULL, "
+                            + SalesEntry.COLUMN_BUCKET_START + " INTEGER NOT NULL, "
+                            + COLUMN_WEEK_START + " INTEGER NOT NULL, "
+                            + SalesEntry.COLUMN_QUANTITY + " INTEGER NOT NULL DEFAULT 0, "
+                            + SalesEntry.COLUMN_SALE_COUNT + " INTEGER NOT NULL DEFAULT 0, "
+                            + "PRIMARY KEY (" + SalesEntry.COLUMN_PRODUCT_ID + ", " + SalesEntry.COLUMN_BUCKET_START + "));");
+                }
+            },
+            //Version 10: Deleting every product moves a mark instead of deleting rows. The rows are purged in the background.
+            new Migration(10) {
+                @Override
+                void migrate(SQLiteDatabase database) {
+                    database.execSQL("CREATE TABLE " + PurgeEntry.TABLE_NAME + " ("
+                            + InventoryEntry._ID + " INTEGER PRIMARY KEY, "
+                            + COLUMN_DELETED_THROUGH + " INTEGER NOT NULL, "
+                            + PurgeEntry.COLUMN_ROWS_TOTAL + " INTEGER NOT NULL, "
+                            + PurgeEntry.COLUMN_ROWS_PURGED + " INTEGER NOT NULL);");
+                    database.execSQL("INSERT INTO " + PurgeEntry.TABLE_NAME + " VALUES (1, 0, 0, 0);");
+
+                    //Deleted products are left out of the view, so every reader skips them.
+                    database.execSQL("DROP VIEW " + InventoryEntry.TABLE_NAME + ";");
+                    database.execSQL("CREATE VIEW " + InventoryEntry.TABLE_NAME + " AS SELECT "
+                            + InventoryEntry.PRODUCTS_TABLE_NAME + "." + InventoryEntry._ID + " AS " + InventoryEntry._ID + ", "
+                            + InventoryEntry.COLUMN_PRODUCT_NAME + ", "
+                            + InventoryEntry.COLUMN_PRODUCT_PRICE + ", "
+                            + InventoryEntry.PRODUCTS_TABLE_NAME + "." + InventoryEntry.COLUMN_PRODUCT_QUANTITY + " - "
+                            + pendingSales(InventoryEntry.PRODUCTS_TABLE_NAME + "." + InventoryEntry._ID)
+                            + " AS " + InventoryEntry.COLUMN_PRODUCT_QUANTITY + ", "
+                            + InventoryEntry.COLUMN_REORDER_THRESHOLD + ", "
+                            + InventoryEntry.COLUMN_SUPPLIER_ID + ", "
+                            + InventoryEntry.COLUMN_SUPPLIER_NAME + ", "
+                            + InventoryEntry.COLUMN_SUPPLIER_NUMBER + ", "
+                            + InventoryEntry.PRODUCTS_TABLE_NAME + "." + InventoryEntry.COLUMN_PRODUCT_QUANTITY
+                            + " AS " + InventoryEntry.COLUMN_COMPACTED_QUANTITY + " FROM " + InventoryEntry.PRODUCTS_TABLE_NAME
+                            + " JOIN " + SupplierEntry.TABLE_NAME + " ON " + SupplierEntry.TABLE_NAME + "." + SupplierEntry._ID
+                            + " = " + InventoryEntry.PRODUCTS_TABLE_NAME + "." + InventoryEntry.COLUMN_SUPPLIER_ID
+                            + " WHERE " + notDeleted(InventoryEntry.PRODUCTS_TABLE_NAME + "." + InventoryEntry._ID) + ";");
+
+                    //The totals and low stock list are emptied when every product is deleted,
+                    //so changing or purging deleted products must leave them alone.
+                    database.execSQL("DROP TRIGGER products_summary_after_delete;");
+                    database.execSQL("DROP TRIGGER products_summary_after_update;");
+                    database.execSQL("DROP TRIGGER products_low_stock_after_update;");
+                    database.execSQL("DROP TRIGGER products_low_stock_after_delete;");
+                    database.execSQL("CREATE TRIGGER products_summary_after_delete AFTER DELETE ON "
+                            + InventoryEntry.PRODUCTS_TABLE_NAME + " WHEN " + notDeleted("old." + InventoryEntry._ID)
+                            + " BEGIN " + SQL_TOTALS_REMOVE_OLD + " END;");
+                    database.execSQL("CREATE TRIGGER products_summary_after_update AFTER UPDATE OF "
+                            + InventoryEntry.COLUMN_PRODUCT_PRICE + ", " + InventoryEntry.COLUMN_PRODUCT_QUANTITY + ", "
+                            + InventoryEntry.COLUMN_SUPPLIER_ID + " ON " + InventoryEntry.PRODUCTS_TABLE_NAME
+                            + " WHEN " + notDeleted("old." + InventoryEntry._ID) + " BEGIN "
+                            + SQL_TOTALS_REMOVE_OLD + SQL_TOTALS_ADD_NEW + " END;");
+                    database.execSQL("CREATE TRIGGER products_low_stock_after_update AFTER UPDATE OF "
+                            + InventoryEntry.COLUMN_PRODUCT_QUANTITY + ", " + InventoryEntry.COLUMN_REORDER_THRESHOLD
+                            + " ON " + InventoryEntry.PRODUCTS_TABLE_NAME + " WHEN (" + lowStock("new") + ") <> ("
+                            + lowStock("old") + ") AND " + notDeleted("old." + InventoryEntry._ID) + " BEGIN DELETE FROM "
+                            + LowStockEntry.TABLE_NAME + " WHERE " + LowStockEntry.COLUMN_PRODUCT_ID + " = old."
+                            + InventoryEntry._ID + "; INSERT INTO " + LowStockEntry.TABLE_NAME + " ("
+                            + LowStockEntry.COLUMN_PRODUCT_ID + ") SELECT new." + InventoryEntry._ID + " WHERE "
+                            + lowStock("new") + "; END;");
+                    database.execSQL("CREATE TRIGGER products_low_stock_after_delete AFTER DELETE ON "
+                            + InventoryEntry.PRODUCTS_TABLE_NAME + " WHEN " + lowStock("old") + " AND "
+                            + notDeleted("old." + InventoryEntry._ID) + " BEGIN DELETE FROM " + LowStockEntry.TABLE_NAME
+                            + " WHERE " + LowStockEntry.COLUMN_PRODUCT_ID + " = old." + InventoryEntry._ID + "; END;");
+                }
+            },
+            //Version 11: Log of the maintenance runs. The first run turns on incremental auto vacuum, as that takes
+            //a VACUUM, which can not run inside the upgrade transaction.
+            new Migration(11) {
+                @Override
+                void migrate(SQLiteDatabase database) {
+                    database.execSQL("CREATE TABLE " + StatsEntry.MAINTENANCE_TABLE_NAME + " ("
+                            + StatsEntry._ID + " INTEGER PRIMARY KEY, "
+                            + StatsEntry.COLUMN_TIME + " INTEGER NOT NULL, "
+                            + StatsEntry.COLUMN_DURATION_MICROS + " INTEGER NOT NULL, "
+                            + StatsEntry.COLUMN_FILE_SIZE_BEFORE + " INTEGER NOT NULL, "
+                            + StatsEntry.COLUMN_FILE_SIZE_AFTER + " INTEGER NOT NULL, "
+                            + StatsEntry.COLUMN_FREE_PAGES_BEFORE + " INTEGER NOT NULL, "
+                            + StatsEntry.COLUMN_FREE_PAGES_AFTER + " INTEGER NOT NULL, "
+                            + StatsEntry.COLUMN_FULL_VACUUM + " INTEGER NOT NULL);");
+                }
+            }
+    };
+
+
+    //Page size for new databases, and page cache size in KiB (negative values are KiB in SQLite).
+    private static final int PAGE_SIZE = 4096;
+    private static final int CACHE_SIZE_KIB = 8192;
 
     //Constructor
     public StoreDbHelper(Context context) {
         super(context, DATABASE_NAME, null, DATABASE_VERSION);
+
+        //Write-ahead logging lets readers keep going while a write is in progress.
+        setWriteAheadLoggingEnabled(true);
+    }
+
+    /**
+     * Configures the connection before the database is created or upgraded.
+     * @param database being opened
+     */
+    @Override
+    public void onConfigure(SQLiteDatabase database) {
+        super.onConfigure(database);
+
+        //Only has an effect on a new, empty database. An existing database keeps the page size it was made with,
+        //as not even VACUUM can change it in write-ahead logging mode.
+        database.execSQL("PRAGMA page_size = " + PAGE_SIZE);
+
+        //Lets free pages be handed back a few at a time. Also only has an effect on a new, empty database.
+        //An existing one is switched over by the full VACUUM StoreMaintenance runs when it finds auto vacuum off.
+        database.execSQL("PRAGMA auto_vacuum = INCREMENTAL");
+
+        //The two settings below belong to a connection, and these statements only run on the primary connection.
+        //That is the one every write and transaction runs on. Queries outside a transaction run on pooled read connections,
+        //which Android gives no hook for, so they keep the SQLite default page cache. They never write, so never sync.
+
+        //With write-ahead logging, NORMAL only syncs at checkpoints and can not corrupt the database.
+        database.execSQL("PRAGMA synchronous = NORMAL");
+
+        //Bigger page cache for writes, so the index pages triggers and the sales compactor touch stay in memory.
+        database.execSQL("PRAGMA cache_size = -" + CACHE_SIZE_KIB);
+
+        //Products must point to an existing supplier.
+        database.setForeignKeyConstraintsEnabled(true);
     }
 
     /**
@@ -26,18 +541,11 @@ public class StoreDbHelper extends SQLiteOpenHelper {
      */
     @Override
     public void onCreate(SQLiteDatabase database) {
-        //Creating the SQL statement for creating inventory table.
-        String SQL_CREATE_INVENTORY_TABLE = "CREATE TABLE "
-                + InventoryEntry.TABLE_NAME + " ("
-                + InventoryEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
-                + InventoryEntry.COLUMN_PRODUCT_NAME + " TEXT NOT NULL, "
-                + InventoryEntry.COLUMN_PRODUCT_PRICE + " INTEGER NOT NULL, "
-                + InventoryEntry.COLUMN_PRODUCT_QUANTITY + " INTEGER NOT NULL DEFAULT 0, "
-                + InventoryEntry.COLUMN_SUPPLIER_NAME + " TEXT NOT NULL, "
-                + InventoryEntry.COLUMN_SUPPLIER_NUMBER + " TEXT NOT NULL);"; //Saving phone number as text to accommodate different ways of writing phone numbers.
-
         //Execute the SQL statement
-        database.execSQL(SQL_CREATE_INVENTORY_TABLE);
+        database.execSQL(SQL_CREATE_VERSION_1);
+
+        //Bring the new version 1 table up to the current schema.
+        migrate(database, 1, DATABASE_VERSION);
     }
 
     /**
@@ -45,6 +553,81 @@ public class StoreDbHelper extends SQLiteOpenHelper {
      */
     @Override
     public void onUpgrade(SQLiteDatabase database, int oldVersion, int newVersion) {
-        // Nothing needs to be done here.
+        migrate(database, oldVersion, newVersion);
+    }
+
+    /**
+     * Runs every migration step between two versions, in order.
+     * @param database to migrate
+     * @param fromVersion current version of the database
+     * @param toVersion version to end up at
+     */
+    static void migrate(SQLiteDatabase database, int fromVersion, int toVersion) {
+        int version = fromVersion;
+        for (Migration migration : MIGRATIONS) {
+            if (migration.toVersion <= fromVersion || migration.toVersion > toVersion) {
+                continue;
+            }
+
+            //Steps must follow each other without gaps.
+            if (migration.toVersion != version + 1) {
+                throw new IllegalStateException("Missing migration to version " + (version + 1));
+            }
+            migration.migrate(database);
+            version = migration.toVersion;
+        }
+
+        //Check that we actually reached the wanted version.
+        if (version != toVersion) {
+            throw new IllegalStateException("No migration path from version " + fromVersion + " to " + toVersion);
+        }
+    }
+
+    /**
+     * Builds the total of the sales of a product that are not folded into the products table yet.
+     * Only reads the sales after the last folded one, through sales_product_id_index.
+     * @param productId expression for the _ID of the product
+     * @return the expression, 0 if there are no such sales
+     */
+    static String pendingSales(String productId) {
+        return "IFNULL((SELECT SUM(" + SalesEntry.TABLE_NAME + "." + SalesEntry.COLUMN_QUANTITY + ") FROM " + SalesEntry.TABLE_NAME
+                + " WHERE " + SalesEntry.TABLE_NAME + "." + SalesEntry.COLUMN_PRODUCT_ID + " = " + productId
+                + " AND " + SalesEntry.TABLE_NAME + "." + SalesEntry._ID + " > (SELECT " + COLUMN_LAST_SALE_ID
+                + " FROM " + SALES_COMPACTION_TABLE_NAME + ")), 0)";
+    }
+
+    /**
+     * @param productId expression for the _ID of a product
+     * @return condition that is true unless the product was deleted by deleting every product
+     */
+    static String notDeleted(String productId) {
+        return productId + " > (SELECT " + COLUMN_DELETED_THROUGH + " FROM " + PurgeEntry.TABLE_NAME + ")";
+    }
+
+    /**
+     * @param row "new" or "old"
+     * @return condition that is true when the product row is low on stock
+     */
+    private static String lowStock(String row) {
+        return row + "." + InventoryEntry.COLUMN_PRODUCT_QUANTITY + " < " + row + "." + InventoryEntry.COLUMN_REORDER_THRESHOLD;
+    }
+
+    /**
+     * Builds an update adding a product to, or taking it out of, a summary table.
+     * @param row "new" or "old"
+     * @param sign "+" or "-"
+     * @param table summary table
+     * @param keyColumn column matching the product to its row, or null for the single row table
+     * @return the UPDATE statement
+     */
+    private static String summaryChange(String row, String sign, String table, String keyColumn) {
+        String quantity = row + "." + InventoryEntry.COLUMN_PRODUCT_QUANTITY;
+        return "UPDATE " + table + " SET "
+                + SummaryEntry.COLUMN_PRODUCT_COUNT + " = " + SummaryEntry.COLUMN_PRODUCT_COUNT + " " + sign + " 1, "
+                + SummaryEntry.COLUMN_TOTAL_QUANTITY + " = " + SummaryEntry.COLUMN_TOTAL_QUANTITY + " " + sign + " " + quantity + ", "
+                + SummaryEntry.COLUMN_TOTAL_VALUE + " = " + SummaryEntry.COLUMN_TOTAL_VALUE + " " + sign + " "
+                + row + "." + InventoryEntry.COLUMN_PRODUCT_PRICE + " * " + quantity + ", "
+                + SummaryEntry.COLUMN_OUT_OF_STOCK_COUNT + " = " + SummaryEntry.COLUMN_OUT_OF_STOCK_COUNT + " " + sign + " (" + quantity + " = 0)"
+                + (keyColumn == null ? "" : " WHERE " + keyColumn + " = " + row + "." + keyColumn) + ";";
     }
 }
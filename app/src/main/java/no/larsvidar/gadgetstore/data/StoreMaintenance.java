@@ -0,0 +1,88 @@
+package no.larsvidar.gadgetstore.data;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+
+import java.io.File;
+
+import no.larsvidar.gadgetstore.data.StoreContract.StatsEntry;
+
+/**
+ * Keeps the database file small and the statistics of the query planner fresh.
+ * Runs through METHOD_RUN_MAINTENANCE, which the maintenance job calls while the device is idle and charging.
+ * Every run is logged with the file size and free pages before and after it.
+ */
+final class StoreMaintenance {
+
+    //Value of PRAGMA auto_vacuum once incremental auto vacuum is on.
+    private static final int AUTO_VACUUM_INCREMENTAL = 2;
+
+    //Runs kept in the log.
+    private static final int LOGGED_RUNS = 100;
+
+    //SQL dropping all but the newest runs from the log.
+    private static final String SQL_TRIM_LOG = "DELETE FROM " + StatsEntry.MAINTENANCE_TABLE_NAME
+            + " WHERE " + StatsEntry._ID + " <= (SELECT MAX(" + StatsEntry._ID + ") FROM "
+            + StatsEntry.MAINTENANCE_TABLE_NAME + ") - " + LOGGED_RUNS;
+
+    //Empty constructor
+    private StoreMaintenance() {
+    }
+
+    /**
+     * Hands free pages back to the file system and refreshes the planner statistics. Call outside a transaction.
+     * @param database to maintain
+     * @return number of bytes the file shrank by
+     */
+    static long run(SQLiteDatabase database) {
+        long start = ProviderMetrics.start();
+        long sizeBefore = fileSize(database);
+        long freePagesBefore = DatabaseUtils.longForQuery(database, "PRAGMA freelist_count", null);
+
+        //Auto vacuum can only be turned on for an existing database by rebuilding it.
+        boolean fullVacuum = DatabaseUtils.longForQuery(database, "PRAGMA auto_vacuum", null) != AUTO_VACUUM_INCREMENTAL;
+        if (fullVacuum) {
+            database.execSQL("PRAGMA auto_vacuum = INCREMENTAL");
+            database.execSQL("VACUUM");
+        } else {
+            InventoryPurger.incrementalVacuum(database);
+        }
+
+        //Imports and deletes change the tables by far more than the planner statistics show.
+        //PRAGMA optimize then does anything else SQLite thinks worth doing, and is ignored where SQLite is too old.
+        database.execSQL("ANALYZE");
+        database.execSQL("PRAGMA optimize");
+
+        //Copy the log into the database and empty it, so the sizes after show what was actually freed.
+        Cursor checkpoint = database.rawQuery("PRAGMA wal_checkpoint(TRUNCATE)", null);
+        try {
+            checkpoint.getCount();
+        } finally {
+            checkpoint.close();
+        }
+
+        long sizeAfter = fileSize(database);
+        ContentValues values = new ContentValues();
+        values.put(StatsEntry.COLUMN_TIME, System.currentTimeMillis());
+        values.put(StatsEntry.COLUMN_FILE_SIZE_BEFORE, sizeBefore);
+        values.put(StatsEntry.COLUMN_FILE_SIZE_AFTER, sizeAfter);
+        values.put(StatsEntry.COLUMN_FREE_PAGES_BEFORE, freePagesBefore);
+        values.put(StatsEntry.COLUMN_FREE_PAGES_AFTER, DatabaseUtils.longForQuery(database, "PRAGMA freelist_count", null));
+        values.put(StatsEntry.COLUMN_FULL_VACUUM, fullVacuum ? 1 : 0);
+        values.put(StatsEntry.COLUMN_DURATION_MICROS, (ProviderMetrics.start() - start) / 1000);
+        database.insert(StatsEntry.MAINTENANCE_TABLE_NAME, null, values);
+        database.execSQL(SQL_TRIM_LOG);
+        return sizeBefore - sizeAfter;
+    }
+
+    /**
+     * @param database to measure
+     * @return size in bytes of the database file and its write-ahead log
+     */
+    private static long fileSize(SQLiteDatabase database) {
+        File file = new File(database.getPath());
+        return file.length() + new File(file.getPath() + "-wal").length();
+    }
+}
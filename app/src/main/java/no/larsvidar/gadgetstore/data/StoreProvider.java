@@ -1,18 +1,43 @@
 package no.larsvidar.gadgetstore.data;
 
 import android.content.ContentProvider;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
 import android.content.ContentUris;
 import android.content.ContentValues;
+import android.content.OperationApplicationException;
 import android.content.UriMatcher;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.MatrixCursor;
+import android.database.sqlite.SQLiteConstraintException;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
 import android.net.Uri;
+import android.os.Bundle;
+import android.os.ParcelFileDescriptor;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.util.Log;
 
+import java.io.FileNotFoundException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import no.larsvidar.gadgetstore.BuildConfig;
+import no.larsvidar.gadgetstore.LowStockAlerts;
 import no.larsvidar.gadgetstore.R;
 import no.larsvidar.gadgetstore.data.StoreContract.InventoryEntry;
+import no.larsvidar.gadgetstore.data.StoreContract.LowStockEntry;
+import no.larsvidar.gadgetstore.data.StoreContract.PurgeEntry;
+import no.larsvidar.gadgetstore.data.StoreContract.SalesEntry;
+import no.larsvidar.gadgetstore.data.StoreContract.StatsEntry;
+import no.larsvidar.gadgetstore.data.StoreContract.SummaryEntry;
+import no.larsvidar.gadgetstore.data.StoreContract.SupplierEntry;
 
 /**
  *  ContentProvider for GadgetStore app
@@ -21,9 +46,28 @@ public class StoreProvider extends ContentProvider {
 
     //*** Variables ***
 
-    // URI matcher codes
-    private static final int INVENTORY = 100;
+    // URI matcher codes. The product list code is also used to find list queries in the metrics.
+    static final int INVENTORY = 100;
     private static final int INVENTORY_ID = 101;
+    private static final int INVENTORY_SEARCH = 102;
+    private static final int INVENTORY_SELL = 103;
+    private static final int INVENTORY_STATS = 104;
+    private static final int INVENTORY_SLOW_CALLS = 105;
+    private static final int INVENTORY_EXPORT = 106;
+    private static final int INVENTORY_SUMMARY = 107;
+    private static final int INVENTORY_SUMMARY_SUPPLIERS = 108;
+    private static final int SUPPLIERS = 109;
+    private static final int SUPPLIERS_ID = 110;
+    private static final int SUPPLIERS_INVENTORY = 111;
+    private static final int INVENTORY_LOW_STOCK = 112;
+    private static final int SALES = 113;
+    private static final int SALES_PRODUCT_SERIES = 114;
+    private static final int SALES_SUPPLIER_SERIES = 115;
+    private static final int INVENTORY_PURGE = 116;
+    private static final int INVENTORY_MAINTENANCE = 117;
+
+    //Number of match codes kept apart in the metrics.
+    private static final int MATCH_CODE_COUNT = 18;
 
     // Uri matcher object
     private static final UriMatcher sUriMatcher = new UriMatcher(UriMatcher.NO_MATCH);
@@ -33,22 +77,155 @@ public class StoreProvider extends ContentProvider {
         //Adding URI codes to URI Matcher.
         sUriMatcher.addURI(StoreContract.CONTENT_AUTHORITY, StoreContract.PATH_INVENTORY, INVENTORY);
         sUriMatcher.addURI(StoreContract.CONTENT_AUTHORITY, StoreContract.PATH_INVENTORY + "/#", INVENTORY_ID);
+        sUriMatcher.addURI(StoreContract.CONTENT_AUTHORITY, StoreContract.PATH_INVENTORY + "/" + StoreContract.PATH_SEARCH, INVENTORY_SEARCH);
+        sUriMatcher.addURI(StoreContract.CONTENT_AUTHORITY, StoreContract.PATH_INVENTORY + "/#/" + StoreContract.PATH_SELL, INVENTORY_SELL);
+        sUriMatcher.addURI(StoreContract.CONTENT_AUTHORITY, StoreContract.PATH_INVENTORY + "/" + StoreContract.PATH_EXPORT, INVENTORY_EXPORT);
+        sUriMatcher.addURI(StoreContract.CONTENT_AUTHORITY, StoreContract.PATH_INVENTORY + "/" + StoreContract.PATH_SUMMARY, INVENTORY_SUMMARY);
+        sUriMatcher.addURI(StoreContract.CONTENT_AUTHORITY, StoreContract.PATH_INVENTORY + "/" + StoreContract.PATH_SUMMARY
+                + "/" + StoreContract.PATH_SUPPLIERS, INVENTORY_SUMMARY_SUPPLIERS);
+        sUriMatcher.addURI(StoreContract.CONTENT_AUTHORITY, StoreContract.PATH_INVENTORY + "/" + StoreContract.PATH_LOW_STOCK, INVENTORY_LOW_STOCK);
+        sUriMatcher.addURI(StoreContract.CONTENT_AUTHORITY, StoreContract.PATH_INVENTORY + "/" + StoreContract.PATH_PURGE, INVENTORY_PURGE);
+        sUriMatcher.addURI(StoreContract.CONTENT_AUTHORITY, StoreContract.PATH_SUPPLIERS, SUPPLIERS);
+        sUriMatcher.addURI(StoreContract.CONTENT_AUTHORITY, StoreContract.PATH_SUPPLIERS + "/#", SUPPLIERS_ID);
+        sUriMatcher.addURI(StoreContract.CONTENT_AUTHORITY, StoreContract.PATH_SUPPLIERS + "/#/" + StoreContract.PATH_INVENTORY, SUPPLIERS_INVENTORY);
+        sUriMatcher.addURI(StoreContract.CONTENT_AUTHORITY, StoreContract.PATH_SALES, SALES);
+        sUriMatcher.addURI(StoreContract.CONTENT_AUTHORITY, StoreContract.PATH_SALES + "/" + StoreContract.PATH_SERIES
+                + "/" + StoreContract.PATH_INVENTORY + "/#", SALES_PRODUCT_SERIES);
+        sUriMatcher.addURI(StoreContract.CONTENT_AUTHORITY, StoreContract.PATH_SALES + "/" + StoreContract.PATH_SERIES
+                + "/" + StoreContract.PATH_SUPPLIERS + "/#", SALES_SUPPLIER_SERIES);
+        sUriMatcher.addURI(StoreContract.CONTENT_AUTHORITY, StoreContract.PATH_INVENTORY + "/" + StoreContract.PATH_STATS
+                + "/" + StoreContract.PATH_MAINTENANCE, INVENTORY_MAINTENANCE);
+
+        //Metrics are only served by debug builds.
+        if (BuildConfig.DEBUG) {
+            sUriMatcher.addURI(StoreContract.CONTENT_AUTHORITY, StoreContract.PATH_INVENTORY + "/" + StoreContract.PATH_STATS, INVENTORY_STATS);
+            sUriMatcher.addURI(StoreContract.CONTENT_AUTHORITY, StoreContract.PATH_INVENTORY + "/" + StoreContract.PATH_STATS
+                    + "/" + StoreContract.PATH_SLOW_CALLS, INVENTORY_SLOW_CALLS);
+        }
     }
 
+    //Filter parameters for product lists, and the column and comparison each one adds.
+    //Every condition can use an index, the quantity one as long as no sales are waiting to be folded in.
+    private static final String[] FILTER_PARAMETERS = {
+            InventoryEntry.QUERY_PARAMETER_MAX_QUANTITY,
+            InventoryEntry.QUERY_PARAMETER_MIN_PRICE,
+            InventoryEntry.QUERY_PARAMETER_MAX_PRICE,
+            InventoryEntry.QUERY_PARAMETER_SUPPLIER_ID};
+    private static final String[] FILTER_COLUMNS = {
+            InventoryEntry.COLUMN_PRODUCT_QUANTITY,
+            InventoryEntry.COLUMN_PRODUCT_PRICE,
+            InventoryEntry.COLUMN_PRODUCT_PRICE,
+            InventoryEntry.COLUMN_SUPPLIER_ID};
+    private static final String[] FILTER_OPERATORS = {" <= ?", " >= ?", " <= ?", " = ?"};
+
     //Database helper object.
     private StoreDbHelper mDatabaseHelper;
 
+    //Products answered from memory for single product queries.
+    private static final int CACHE_SIZE = 512;
+    private final InventoryCache mCache = new InventoryCache(CACHE_SIZE);
+    private volatile boolean mCacheEnabled = true;
+
+    //Number of operations in a batch between each chance for readers to get in.
+    private static final int BATCH_YIELD_INTERVAL = 500;
+
+    //URIs waiting to be notified when the batch on this thread is done. Null outside a batch.
+    private final ThreadLocal<Set<Uri>> mBatchNotifications = new ThreadLocal<>();
+
+    //Compiled write statements. Each thread gets its own, since a statement holds its bound arguments.
+    private final ThreadLocal<StoreStatements> mStatements = new ThreadLocal<>();
+
+    //Every set of statements handed out, so shutdown can close them. Guarded by itself.
+    private final List<StoreStatements> mAllStatements = new ArrayList<>();
+
+    //Validator for product values.
+    private ProductValidator mValidator;
+
+    //Folds the sales ledger into the product quantities in the background.
+    private SalesCompactor mCompactor;
+
+    //Removes deleted products in the background.
+    private InventoryPurger mPurger;
+
+    //Set once the work left from the last time the app ran has been scheduled.
+    private final AtomicBoolean mBackgroundWorkResumed = new AtomicBoolean();
+
+    //Latency and row counts for every entry point.
+    private final ProviderMetrics mMetrics = new ProviderMetrics(INVENTORY, MATCH_CODE_COUNT);
+
     /**
-     * OnCreate method
+     * OnCreate method. Runs on the main thread while the app starts, so it never touches the disk.
+     * The database is opened by the first call that needs it, on the thread making that call.
      * @return true
      */
     @Override
     public boolean onCreate() {
-        //Initialing the database helper object.
+        //Initialing the database helper object. It opens the database when it is first asked for it.
         mDatabaseHelper = new StoreDbHelper(getContext());
+        mValidator = new ProductValidator(getContext());
+        mCompactor = new SalesCompactor(mDatabaseHelper, new SalesCompactor.Listener() {
+            @Override
+            public void onSalesCompacted() {
+                //Product rows changed, so the totals and low stock list did too. The quantities read the same,
+                //but lists filtered on low stock change. Notifying the whole inventory reaches all of them.
+                sendNotification(InventoryEntry.CONTENT_URI);
+                sendNotification(SalesEntry.CONTENT_URI);
+                if (DatabaseUtils.queryNumEntries(mDatabaseHelper.getReadableDatabase(), LowStockEntry.TABLE_NAME,
+                        LowStockEntry.COLUMN_ALERTED + " = 0") != 0) {
+                    LowStockAlerts.schedule(getContext());
+                }
+            }
+        });
+
+        mPurger = new InventoryPurger(mDatabaseHelper, new InventoryPurger.Listener() {
+            @Override
+            public void onPurgeProgress() {
+                //Deleted products are already gone from every other URI.
+                sendNotification(PurgeEntry.CONTENT_URI);
+            }
+        });
+
         return true;
     }
 
+    /**
+     * Stops the background work, and closes the compiled statements and the database.
+     * Only for tests, which start many providers in one process. The provider can not be used after this.
+     */
+    @Override
+    public void shutdown() {
+        mCompactor.shutdown();
+        mPurger.shutdown();
+        synchronized (mAllStatements) {
+            for (StoreStatements statements : mAllStatements) {
+                statements.close();
+            }
+            mAllStatements.clear();
+        }
+        mDatabaseHelper.close();
+    }
+
+    /**
+     * Turns the single product cache on or off. Only for benchmarks, which compare lookups with and without it.
+     * @param enabled false to answer every single product query from the database
+     */
+    void setCacheEnabled(boolean enabled) {
+        mCacheEnabled = enabled;
+        mCache.clear();
+    }
+
+    /**
+     * Schedules the sales and deleted products left from the last time the app ran, the first time it is called.
+     * Called once a query has been answered, so opening and migrating the database, and the work itself,
+     * do not hold up the first page of the list.
+     */
+    private void resumeBackgroundWork() {
+        if (mBackgroundWorkResumed.compareAndSet(false, true)) {
+            mCompactor.schedule();
+            mPurger.schedule();
+        }
+    }
+
     /**
      * Method for querying the database.
      * @param uri
@@ -61,60 +238,485 @@ public class StoreProvider extends ContentProvider {
     @Nullable
     @Override
     public Cursor query(@NonNull Uri uri, @Nullable String[] projection, @Nullable String selection, @Nullable String[] selectionArgs, @Nullable String sortOrder) {
+        long start = ProviderMetrics.start();
+        int match = sUriMatcher.match(uri);
+        try {
+            return queryMatch(match, uri, projection, selection, selectionArgs, sortOrder);
+        } finally {
+            //Queried rows are counted by the caller, so the cursor is not filled here.
+            mMetrics.record(ProviderMetrics.QUERY, match, 0, start, uri, selection);
+            resumeBackgroundWork();
+        }
+    }
 
+    private Cursor queryMatch(int match, Uri uri, String[] projection, String selection, String[] selectionArgs, String sortOrder) {
         //Get readable database
         SQLiteDatabase database = mDatabaseHelper.getReadableDatabase();
 
         //Cursor to hold the result
         Cursor cursor;
 
+        //URI the cursor listens to for changes
+        Uri notificationUri = uri;
+
         //Checking URI matcher
-        int match = sUriMatcher.match(uri);
         switch (match) {
             case INVENTORY:
                 //Queries the inventory table directly.
-                cursor = database.query(InventoryEntry.TABLE_NAME, projection, selection, selectionArgs, null, null, sortOrder);
+                cursor = queryInventory(database, uri, projection, selection, selectionArgs, sortOrder);
                 break;
             case INVENTORY_ID:
-                //Setting up to query a specific ID
-                selection = InventoryEntry._ID + "=?";
+                long queryId = ContentUris.parseId(uri);
+
+                //Columns the cache can not answer go straight to the database.
+                if (!mCacheEnabled || !InventoryItem.hasColumns(projection)) {
+                    //Setting up to query a specific ID
+                    selection = InventoryEntry._ID + "=?";
+                    selectionArgs = new String[]{String.valueOf(queryId)};
+                    //Queries a specific ID
+                    cursor = database.query(InventoryEntry.TABLE_NAME, projection, selection, selectionArgs, null, null, sortOrder);
+                    break;
+                }
+
+                //Answer from the cache, or read the product and cache it.
+                InventoryItem item = mCache.get(queryId);
+                if (item == null) {
+                    long cacheVersion = mCache.getVersion();
+                    item = queryItem(database, queryId);
+                    if (item != null) {
+                        mCache.putIfUnchanged(item, cacheVersion);
+                    }
+                }
+                cursor = item == null ? new MatrixCursor(projection, 0) : item.toCursor(projection);
+                break;
+            case INVENTORY_SEARCH:
+                //Limit the selection to products matching the search text.
+                String matchExpression = buildMatchExpression(uri.getQueryParameter(InventoryEntry.QUERY_PARAMETER_SEARCH));
+                if (matchExpression != null) {
+                    selection = DatabaseUtils.concatenateWhere(selection, InventoryEntry._ID + " IN (SELECT docid FROM "
+                            + InventoryEntry.FTS_TABLE_NAME + " WHERE " + InventoryEntry.FTS_TABLE_NAME + " MATCH ?)");
+                    selectionArgs = DatabaseUtils.appendSelectionArgs(selectionArgs, new String[]{matchExpression});
+                }
+                cursor = queryInventory(database, uri, projection, selection, selectionArgs, sortOrder);
+                //Search results change whenever any product changes.
+                notificationUri = InventoryEntry.CONTENT_URI;
+                break;
+            case INVENTORY_SUMMARY:
+                //Totals are kept up to date by triggers, so this reads a single row.
+                cursor = database.query(SummaryEntry.TABLE_NAME, projection, selection, selectionArgs, null, null, sortOrder);
+                notificationUri = SummaryEntry.CONTENT_URI;
+                break;
+            case INVENTORY_SUMMARY_SUPPLIERS:
+                cursor = database.query(SummaryEntry.SUPPLIER_TABLE_NAME, projection, selection, selectionArgs, null, null,
+                        sortOrder != null ? sortOrder : InventoryEntry.COLUMN_SUPPLIER_NAME);
+                notificationUri = SummaryEntry.CONTENT_URI;
+                break;
+            case INVENTORY_LOW_STOCK:
+                //Only the products below their threshold are read, each found by its _ID.
+                cursor = database.query(LowStockEntry.TABLE_NAME + " JOIN " + InventoryEntry.TABLE_NAME + " ON "
+                                + InventoryEntry._ID + " = " + LowStockEntry.COLUMN_PRODUCT_ID, projection, selection,
+                        selectionArgs, null, null, sortOrder != null ? sortOrder : InventoryEntry.COLUMN_PRODUCT_NAME);
+                notificationUri = LowStockEntry.CONTENT_URI;
+                break;
+            case INVENTORY_PURGE:
+                cursor = database.query(PurgeEntry.TABLE_NAME, projection, selection, selectionArgs, null, null, sortOrder);
+                notificationUri = PurgeEntry.CONTENT_URI;
+                break;
+            case SUPPLIERS:
+                cursor = database.query(SupplierEntry.TABLE_NAME, projection, selection, selectionArgs, null, null,
+                        sortOrder != null ? sortOrder : SupplierEntry.COLUMN_SUPPLIER_NAME);
+                notificationUri = SupplierEntry.CONTENT_URI;
+                break;
+            case SUPPLIERS_ID:
+                selection = SupplierEntry._ID + "=?";
                 selectionArgs = new String[]{String.valueOf(ContentUris.parseId(uri))};
-                //Queries a specific ID
-                cursor = database.query(InventoryEntry.TABLE_NAME, projection, selection, selectionArgs, null, null, sortOrder);
+                cursor = database.query(SupplierEntry.TABLE_NAME, projection, selection, selectionArgs, null, null, sortOrder);
+                notificationUri = SupplierEntry.CONTENT_URI;
+                break;
+            case SUPPLIERS_INVENTORY:
+                //Products of one supplier, found through the supplier index.
+                selection = DatabaseUtils.concatenateWhere(selection, InventoryEntry.COLUMN_SUPPLIER_ID + " = ?");
+                selectionArgs = DatabaseUtils.appendSelectionArgs(selectionArgs, new String[]{uri.getPathSegments().get(1)});
+                cursor = queryInventory(database, uri, projection, selection, selectionArgs, sortOrder);
+                notificationUri = InventoryEntry.CONTENT_URI;
+                break;
+            case SALES:
+                cursor = database.query(SalesEntry.TABLE_NAME, projection, selection, selectionArgs, null, null,
+                        sortOrder != null ? sortOrder : SalesEntry._ID + " DESC");
+                notificationUri = SalesEntry.CONTENT_URI;
+                break;
+            case SALES_PRODUCT_SERIES:
+            case SALES_SUPPLIER_SERIES:
+                cursor = querySalesSeries(database, uri, match == SALES_SUPPLIER_SERIES, projection, selection,
+                        selectionArgs, sortOrder);
+                notificationUri = SalesEntry.CONTENT_URI;
+                break;
+            case INVENTORY_STATS:
+                cursor = mMetrics.getStats();
+                break;
+            case INVENTORY_SLOW_CALLS:
+                cursor = mMetrics.getSlowCalls();
+                break;
+            case INVENTORY_MAINTENANCE:
+                cursor = database.query(StatsEntry.MAINTENANCE_TABLE_NAME, projection, selection, selectionArgs, null, null,
+                        sortOrder != null ? sortOrder : StatsEntry._ID + " DESC");
                 break;
             default:
                 throw new IllegalArgumentException(getContext().getString(R.string.query_error) + " " + uri);
         }
 
         //Set notification URI on the cursor
-        cursor.setNotificationUri(getContext().getContentResolver(), uri);
+        cursor.setNotificationUri(getContext().getContentResolver(), notificationUri);
 
         //Return cursor
         return cursor;
     }
 
+    /**
+     * Reads one product from the database.
+     * @param database to read from
+     * @param id of the product
+     * @return the product, or null if it does not exist
+     */
+    private static InventoryItem queryItem(SQLiteDatabase database, long id) {
+        Cursor cursor = database.query(InventoryEntry.TABLE_NAME, InventoryItem.PROJECTION, InventoryEntry._ID + "=?",
+                new String[]{String.valueOf(id)}, null, null, null);
+        try {
+            return cursor.moveToFirst() ? InventoryItem.fromCursor(cursor) : null;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Queries the inventory table, one page at a time if the URI has paging parameters.
+     * Pages are keyed on the sort column and _ID, so fetching a page never has to skip over the rows before it.
+     * Filter parameters on the URI become selection arguments, so filtering happens in the database.
+     * @param database to query
+     * @param uri with optional sort, filter, low_stock, limit, after_key, after_id, last_key and last_id parameters
+     * @param projection
+     * @param selection
+     * @param selectionArgs
+     * @param sortOrder used when the URI does not ask for a page or a sort
+     * @return cursor with the matching rows
+     */
+    private Cursor queryInventory(SQLiteDatabase database, Uri uri, String[] projection, String selection,
+                                  String[] selectionArgs, String sortOrder) {
+        String sortColumn = uri.getQueryParameter(InventoryEntry.QUERY_PARAMETER_SORT);
+
+        //With no sales waiting to be folded in, the stored quantity is the real one, and it has an index.
+        //Otherwise the view's quantity is used, so a read never waits for the write lock to fold sales in.
+        //A sale made while the cursor is read may be missed, as with any change after a query.
+        String quantityColumn = InventoryEntry.COLUMN_PRODUCT_QUANTITY;
+        if ((InventoryEntry.SORT_QUANTITY.equals(sortColumn)
+                || uri.getQueryParameter(InventoryEntry.QUERY_PARAMETER_MAX_QUANTITY) != null)
+                && !SalesCompactor.hasPendingSales(database)) {
+            quantityColumn = InventoryEntry.COLUMN_COMPACTED_QUANTITY;
+        }
+
+        /***** Filters *****/
+        for (int i = 0; i < FILTER_PARAMETERS.length; i++) {
+            String value = uri.getQueryParameter(FILTER_PARAMETERS[i]);
+            if (value != null) {
+                String column = InventoryEntry.COLUMN_PRODUCT_QUANTITY.equals(FILTER_COLUMNS[i]) ? quantityColumn : FILTER_COLUMNS[i];
+                selection = DatabaseUtils.concatenateWhere(selection, column + FILTER_OPERATORS[i]);
+                selectionArgs = DatabaseUtils.appendSelectionArgs(selectionArgs,
+                        new String[]{String.valueOf(parseNumberParameter(value, R.string.query_error_filter))});
+            }
+        }
+
+        //Looked up by product ID in the table the low stock alerts are made from. Like the alerts, it follows
+        //sales once they are folded in, and lists are told when that happens.
+        if (uri.getBooleanQueryParameter(InventoryEntry.QUERY_PARAMETER_LOW_STOCK, false)) {
+            selection = DatabaseUtils.concatenateWhere(selection, InventoryEntry._ID + " IN (SELECT "
+                    + LowStockEntry.COLUMN_PRODUCT_ID + " FROM " + LowStockEntry.TABLE_NAME + ")");
+        }
+
+        /***** Order *****/
+        String sortKey = sortKey(sortColumn, quantityColumn);
+        if (sortKey != null) {
+            sortOrder = sortKey + " ASC, " + InventoryEntry._ID + " ASC";
+        }
+
+        /***** Paging *****/
+        String limit = uri.getQueryParameter(InventoryEntry.QUERY_PARAMETER_LIMIT);
+        String afterId = uri.getQueryParameter(InventoryEntry.QUERY_PARAMETER_AFTER_ID);
+        String afterKey = uri.getQueryParameter(InventoryEntry.QUERY_PARAMETER_AFTER_KEY);
+        String lastId = uri.getQueryParameter(InventoryEntry.QUERY_PARAMETER_LAST_ID);
+        String lastKey = uri.getQueryParameter(InventoryEntry.QUERY_PARAMETER_LAST_KEY);
+
+        if (limit != null || afterId != null || afterKey != null || lastId != null || lastKey != null) {
+            if (sortKey == null) {
+                //Continue after the last row of the previous page.
+                if (afterId != null) {
+                    selection = DatabaseUtils.concatenateWhere(selection, InventoryEntry._ID + " > ?");
+                    selectionArgs = DatabaseUtils.appendSelectionArgs(selectionArgs,
+                            new String[]{String.valueOf(parseNumberParameter(afterId, R.string.query_error_paging))});
+                }
+                //Stop at the last row of the range.
+                if (lastId != null) {
+                    selection = DatabaseUtils.concatenateWhere(selection, InventoryEntry._ID + " <= ?");
+                    selectionArgs = DatabaseUtils.appendSelectionArgs(selectionArgs,
+                            new String[]{String.valueOf(parseNumberParameter(lastId, R.string.query_error_paging))});
+                }
+                //Pages only line up when they are ordered by the key.
+                sortOrder = InventoryEntry._ID + " ASC";
+            } else {
+                if (afterKey != null) {
+                    //Continue after the sort value and _ID of the last row. The first term lets the index seek to the page.
+                    if (!InventoryEntry.SORT_NAME.equals(sortColumn)) {
+                        afterKey = String.valueOf(parseNumberParameter(afterKey, R.string.query_error_paging));
+                    }
+                    String id = afterId == null ? "0" : String.valueOf(parseNumberParameter(afterId, R.string.query_error_paging));
+                    selection = DatabaseUtils.concatenateWhere(selection, sortKey + " >= ? AND (" + sortKey + " > ? OR "
+                            + InventoryEntry._ID + " > ?)");
+                    selectionArgs = DatabaseUtils.appendSelectionArgs(selectionArgs, new String[]{afterKey, afterKey, id});
+                }
+                if (lastKey != null) {
+                    //Stop at the sort value and _ID of the last row in the range. The first term lets the index stop there.
+                    if (!InventoryEntry.SORT_NAME.equals(sortColumn)) {
+                        lastKey = String.valueOf(parseNumberParameter(lastKey, R.string.query_error_paging));
+                    }
+                    String id = lastId == null ? String.valueOf(Long.MAX_VALUE)
+                            : String.valueOf(parseNumberParameter(lastId, R.string.query_error_paging));
+                    selection = DatabaseUtils.concatenateWhere(selection, sortKey + " <= ? AND (" + sortKey + " < ? OR "
+                            + InventoryEntry._ID + " <= ?)");
+                    selectionArgs = DatabaseUtils.appendSelectionArgs(selectionArgs, new String[]{lastKey, lastKey, id});
+                }
+            }
+            if (limit != null) {
+                limit = String.valueOf(parseNumberParameter(limit, R.string.query_error_paging));
+            }
+        }
+
+        return database.query(InventoryEntry.TABLE_NAME, projection, selection, selectionArgs, null, null, sortOrder, limit);
+    }
+
+    /**
+     * Reads a sales series from the rollup tables, one row per bucket with sales in it.
+     * Weeks are summed from days, so no series reads more than one row per product and day.
+     * @param database to query
+     * @param uri with the product or supplier _ID, and optional bucket, from and to parameters
+     * @param supplier true for the series of all products of a supplier
+     * @param projection
+     * @param selection
+     * @param selectionArgs
+     * @param sortOrder defaults to the bucket start
+     * @return cursor with the series
+     */
+    private Cursor querySalesSeries(SQLiteDatabase database, Uri uri, boolean supplier, String[] projection,
+                                    String selection, String[] selectionArgs, String sortOrder) {
+        /***** Buckets *****/
+        String bucket = uri.getQueryParameter(SalesEntry.QUERY_PARAMETER_BUCKET);
+        String table = SalesEntry.DAILY_TABLE_NAME;
+        String bucketColumn = SalesEntry.COLUMN_BUCKET_START;
+        if (SalesEntry.BUCKET_HOUR.equals(bucket)) {
+            table = SalesEntry.HOURLY_TABLE_NAME;
+        } else if (SalesEntry.BUCKET_WEEK.equals(bucket)) {
+            bucketColumn = StoreDbHelper.COLUMN_WEEK_START;
+        } else if (bucket != null && !SalesEntry.BUCKET_DAY.equals(bucket)) {
+            throw new IllegalArgumentException(getContext().getString(R.string.query_error_bucket) + " " + bucket);
+        }
+
+        /***** Time span *****/
+        String from = uri.getQueryParameter(SalesEntry.QUERY_PARAMETER_FROM);
+        String to = uri.getQueryParameter(SalesEntry.QUERY_PARAMETER_TO);
+        from = from == null ? "0" : String.valueOf(parseNumberParameter(from, R.string.query_error_span));
+        to = to == null ? String.valueOf(Long.MAX_VALUE) : String.valueOf(parseNumberParameter(to, R.string.query_error_span));
+
+        //A product is one range in the primary key. A supplier is one range for each of its products.
+        String products = supplier
+                ? SalesEntry.COLUMN_PRODUCT_ID + " IN (SELECT " + InventoryEntry._ID + " FROM "
+                        + InventoryEntry.PRODUCTS_TABLE_NAME + " WHERE " + InventoryEntry.COLUMN_SUPPLIER_ID + " = ? AND "
+                        + StoreDbHelper.notDeleted(InventoryEntry._ID) + ")"
+                : SalesEntry.COLUMN_PRODUCT_ID + " = ?";
+        String series = "(SELECT " + bucketColumn + " AS " + SalesEntry.COLUMN_BUCKET_START + ", "
+                + "SUM(" + SalesEntry.COLUMN_QUANTITY + ") AS " + SalesEntry.COLUMN_QUANTITY + ", "
+                + "SUM(" + SalesEntry.COLUMN_SALE_COUNT + ") AS " + SalesEntry.COLUMN_SALE_COUNT
+                + " FROM " + table + " WHERE " + products + " AND " + SalesEntry.COLUMN_BUCKET_START + " >= ? AND "
+                + SalesEntry.COLUMN_BUCKET_START + " < ? GROUP BY " + bucketColumn + ")";
+
+        //The arguments of the series come first, as it comes first in the SQL.
+        String[] seriesArgs = {String.valueOf(ContentUris.parseId(uri)), from, to};
+        return database.query(series, projection, selection, DatabaseUtils.appendSelectionArgs(seriesArgs, selectionArgs),
+                null, null, sortOrder != null ? sortOrder : SalesEntry.COLUMN_BUCKET_START);
+    }
+
+    /**
+     * @param sortColumn from the sort parameter, or null
+     * @param quantityColumn column to read the quantity from
+     * @return expression to order by, matching an index, or null to keep the _ID order
+     */
+    private String sortKey(String sortColumn, String quantityColumn) {
+        if (sortColumn == null) {
+            return null;
+        }
+        switch (sortColumn) {
+            case InventoryEntry.SORT_NAME:
+                //Same collation as the name index.
+                return InventoryEntry.COLUMN_PRODUCT_NAME + " COLLATE NOCASE";
+            case InventoryEntry.SORT_PRICE:
+                return sortColumn;
+            case InventoryEntry.SORT_QUANTITY:
+                return quantityColumn;
+            default:
+                throw new IllegalArgumentException(getContext().getString(R.string.query_error_sort) + " " + sortColumn);
+        }
+    }
+
+    /**
+     * Reads a number parameter from a URI or a call argument.
+     * @param value of the parameter, or null if it is missing
+     * @param errorId of the message if the value is not a number that is 0 or more
+     * @return the value as a number
+     */
+    private long parseNumberParameter(String value, int errorId) {
+        long number;
+        try {
+            number = Long.parseLong(value);
+        } catch (NumberFormatException nfe) {
+            throw new IllegalArgumentException(getContext().getString(errorId) + " " + value);
+        }
+
+        //Checking that the parameter is not negative
+        if (number < 0) {
+            throw new IllegalArgumentException(getContext().getString(errorId) + " " + value);
+        }
+        return number;
+    }
+
+    /**
+     * Turns search text into a full-text MATCH expression where every word is a prefix.
+     * @param query text typed by the user
+     * @return MATCH expression, or null if there is nothing to search for
+     */
+    private static String buildMatchExpression(String query) {
+        if (query == null) {
+            return null;
+        }
+
+        //Keep letters and digits only, so user input can never be read as FTS syntax.
+        StringBuilder expression = new StringBuilder();
+        StringBuilder word = new StringBuilder();
+        for (int i = 0; i <= query.length(); i++) {
+            char c = i < query.length() ? query.charAt(i) : ' ';
+            if (Character.isLetterOrDigit(c)) {
+                word.append(c);
+            } else if (word.length() > 0) {
+                if (expression.length() > 0) {
+                    expression.append(' ');
+                }
+                expression.append(word).append('*');
+                word.setLength(0);
+            }
+        }
+        return expression.length() > 0 ? expression.toString() : null;
+    }
+
     @Nullable
     @Override
     public String getType(@NonNull Uri uri) {
+        long start = ProviderMetrics.start();
         final int match = sUriMatcher.match(uri);
+        try {
+            return getTypeMatch(match, uri);
+        } finally {
+            mMetrics.record(ProviderMetrics.GET_TYPE, match, 0, start, uri, null);
+        }
+    }
+
+    private String getTypeMatch(int match, Uri uri) {
         switch (match) {
             case INVENTORY:
                 return InventoryEntry.CONTENT_LIST_TYPE;
             case INVENTORY_ID:
                 return InventoryEntry.CONTENT_ITEM_TYPE;
+            case INVENTORY_SEARCH:
+                return InventoryEntry.CONTENT_LIST_TYPE;
+            case INVENTORY_SELL:
+                return InventoryEntry.CONTENT_ITEM_TYPE;
+            case INVENTORY_STATS:
+            case INVENTORY_SLOW_CALLS:
+            case INVENTORY_MAINTENANCE:
+                return StatsEntry.CONTENT_LIST_TYPE;
+            case INVENTORY_SUMMARY:
+                return SummaryEntry.CONTENT_ITEM_TYPE;
+            case INVENTORY_SUMMARY_SUPPLIERS:
+                return SummaryEntry.CONTENT_LIST_TYPE;
+            case INVENTORY_LOW_STOCK:
+                return LowStockEntry.CONTENT_LIST_TYPE;
+            case INVENTORY_PURGE:
+                return PurgeEntry.CONTENT_ITEM_TYPE;
+            case SUPPLIERS:
+                return SupplierEntry.CONTENT_LIST_TYPE;
+            case SUPPLIERS_ID:
+                return SupplierEntry.CONTENT_ITEM_TYPE;
+            case SUPPLIERS_INVENTORY:
+                return InventoryEntry.CONTENT_LIST_TYPE;
+            case SALES:
+                return SalesEntry.CONTENT_LIST_TYPE;
+            case SALES_PRODUCT_SERIES:
+            case SALES_SUPPLIER_SERIES:
+                return SalesEntry.SERIES_LIST_TYPE;
+            case INVENTORY_EXPORT:
+                return InventoryEntry.FORMAT_BINARY.equals(exportFormat(uri)) ? InventoryEntry.BINARY_TYPE : InventoryEntry.CSV_TYPE;
             default:
                 throw new IllegalStateException(getContext().getString(R.string.get_type_error_1)
                         + " " + uri + " " + getContext().getString(R.string.get_type_error_2) + " " + match);
         }
     }
 
+    /**
+     * Opens the export URI as a stream of all products, written by a background thread.
+     * @param uri export URI
+     * @param mode must be "r"
+     * @return read end of a pipe
+     * @throws FileNotFoundException if the URI can not be opened
+     */
+    @Nullable
+    @Override
+    public ParcelFileDescriptor openFile(@NonNull Uri uri, @NonNull String mode) throws FileNotFoundException {
+        if (sUriMatcher.match(uri) != INVENTORY_EXPORT || !"r".equals(mode)) {
+            throw new FileNotFoundException(getContext().getString(R.string.open_file_error) + " " + uri);
+        }
+        return openPipeHelper(uri, getType(uri), null, exportFormat(uri), new InventoryExporter(mDatabaseHelper));
+    }
+
+    /**
+     * @param uri export URI
+     * @return FORMAT_CSV or FORMAT_BINARY
+     */
+    private String exportFormat(Uri uri) {
+        String format = uri.getQueryParameter(InventoryEntry.QUERY_PARAMETER_FORMAT);
+        if (format == null || InventoryEntry.FORMAT_CSV.equals(format)) {
+            return InventoryEntry.FORMAT_CSV;
+        }
+        if (InventoryEntry.FORMAT_BINARY.equals(format)) {
+            return InventoryEntry.FORMAT_BINARY;
+        }
+        throw new IllegalArgumentException(getContext().getString(R.string.export_error_format) + " " + format);
+    }
+
     @Nullable
     @Override
     public Uri insert(@NonNull Uri uri, @Nullable ContentValues values) {
+        long start = ProviderMetrics.start();
         final int match = sUriMatcher.match(uri);
+        Uri newUri = null;
+        try {
+            newUri = insertMatch(match, uri, values);
+            return newUri;
+        } finally {
+            mMetrics.record(ProviderMetrics.INSERT, match, newUri == null ? 0 : 1, start, uri, null);
+        }
+    }
+
+    private Uri insertMatch(int match, Uri uri, ContentValues values) {
         switch (match) {
             case INVENTORY:
                 return insertProduct(uri, values);
+            case SUPPLIERS:
+                return insertSupplier(values);
             default:
                 throw new IllegalArgumentException(getContext().getString(R.string.insert_error) + " " + uri);
         }
@@ -122,105 +724,184 @@ public class StoreProvider extends ContentProvider {
 
     private Uri insertProduct(Uri uri, ContentValues values) {
         /***** Validating inputs *****/
+        InventoryItem product = mValidator.validateProduct(values);
 
-        //Validate ProductName input
-        //Checking that ProductName is not  null
-        String productName = values.getAsString(InventoryEntry.COLUMN_PRODUCT_NAME);
-        if (productName == null || productName.isEmpty()) {
-            throw new IllegalArgumentException(getContext().getString(R.string.validate_error_product_name_null));
+        /***** Insert to database *****/
+        //Insert new product, and its supplier if that is new too.
+        SQLiteDatabase database = mDatabaseHelper.getWritableDatabase();
+        StoreStatements statements = getStatements();
+        long id;
+        boolean newAlert;
+        database.beginTransaction();
+        try {
+            id = statements.insertProduct(product);
+            newAlert = id != -1 && product.getReorderThreshold() > 0 && statements.hasNewAlert(id);
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
         }
-
-        //Validate ProductPrice input
-        //Checking that ProductPrice is not  null
-        String productPrice = values.getAsString(InventoryEntry.COLUMN_PRODUCT_PRICE);
-        if (productPrice == null || productPrice.isEmpty()) {
-            throw new IllegalArgumentException(getContext().getString(R.string.validate_error_product_price_null));
+        //If database insertion failed, return null
+        if (id == -1) {
+            return null;
         }
-
-        //Checking that ProductPrice is a number
-        int price;
-        try {
-            price = Integer.parseInt(productPrice);
-        } catch (NumberFormatException nfe) {
-            throw new NumberFormatException();
+        if (newAlert) {
+            LowStockAlerts.schedule(getContext());
         }
 
-        //Checking that ProductPrice is not negative
-        if (price < 0) {
-            throw new IllegalArgumentException(getContext().getString(R.string.validate_error_product_price_negative));
-        }
+        //Write the new product through to the cache.
+        mCache.put(new InventoryItem(id, product.getProductName(), product.getPrice(), product.getQuantity(),
+                product.getSupplierName(), product.getSupplierNumber(), product.getReorderThreshold()));
 
-        //Validate Product Quantity input
-        //Checking that ProductQuantity is not  null
-        String productQuantity = values.getAsString(InventoryEntry.COLUMN_PRODUCT_QUANTITY);
-        if (productQuantity == null || productQuantity.isEmpty()) {
-            throw new IllegalArgumentException(getContext().getString(R.string.validate_error_product_quantity_null));
-        }
+        //Notify that a product has been added
+        notifyChange(InventoryEntry.buildChangeUri(id, InventoryEntry.CHANGE_INSERT));
 
-        //Checking that ProductQuantity is a number
-        int quantity;
-        try {
-            quantity = Integer.parseInt(productQuantity);
-        } catch (NumberFormatException nfe) {
-            throw new NumberFormatException();
-        }
+        //Return new URI with id.
+        return ContentUris.withAppendedId(uri, id);
+    }
+
+    /**
+     * Adds a supplier. If one with the same name and number exists, that one is returned.
+     * @param values with the supplier name and number
+     * @return URI of the supplier
+     */
+    private Uri insertSupplier(ContentValues values) {
+        mValidator.validateSupplier(values);
+        long id = getStatements().supplierId(values.getAsString(SupplierEntry.COLUMN_SUPPLIER_NAME),
+                values.getAsString(SupplierEntry.COLUMN_SUPPLIER_NUMBER));
 
-        //Checking that ProductPrice is not negative
-        if (quantity < 0) {
-            throw new IllegalArgumentException(getContext().getString(R.string.validate_error_product_quantity_negative));
+        notifyChange(SupplierEntry.CONTENT_URI);
+        return ContentUris.withAppendedId(SupplierEntry.CONTENT_URI, id);
+    }
+
+    /**
+     * Inserts many products in one go.
+     * @param uri
+     * @param values array with one ContentValues per product
+     * @return number of inserted rows
+     */
+    @Override
+    public int bulkInsert(@NonNull Uri uri, @NonNull ContentValues[] values) {
+        long start = ProviderMetrics.start();
+        final int match = sUriMatcher.match(uri);
+        int insertedRows = 0;
+        try {
+            insertedRows = bulkInsertMatch(match, uri, values);
+            return insertedRows;
+        } finally {
+            mMetrics.record(ProviderMetrics.BULK_INSERT, match, insertedRows, start, uri, null);
         }
+    }
 
-        //Validate SupplierName
-        //Checking that SupplierName is not  null
-        String supplierName = values.getAsString(InventoryEntry.COLUMN_SUPPLIER_NAME);
-        if (supplierName == null || supplierName.isEmpty()) {
-            throw new IllegalArgumentException(getContext().getString(R.string.validate_error_supplier_name_null));
+    private int bulkInsertMatch(int match, Uri uri, ContentValues[] values) {
+        switch (match) {
+            case INVENTORY:
+                return bulkInsertProducts(uri, values);
+            default:
+                throw new IllegalArgumentException(getContext().getString(R.string.insert_error) + " " + uri);
         }
+    }
 
-        //Validate SupplierNumber
-        //Checking that SupplierNumber is not  null
-        String supplierNumber = values.getAsString(InventoryEntry.COLUMN_SUPPLIER_NUMBER);
-        if (supplierNumber == null || supplierNumber.isEmpty()) {
-            throw new IllegalArgumentException(getContext().getString(R.string.validate_error_supplier_number_null));
+    private int bulkInsertProducts(Uri uri, ContentValues[] values) {
+        /***** Validating inputs *****/
+        //Validate every row first, so one bad row leaves the database untouched.
+        InventoryItem[] products = new InventoryItem[values.length];
+        for (int i = 0; i < values.length; i++) {
+            products[i] = mValidator.validateProduct(values[i]);
         }
 
         /***** Insert to database *****/
         //Get writable database
         SQLiteDatabase database = mDatabaseHelper.getWritableDatabase();
+        StoreStatements statements = getStatements();
+        int insertedRows = 0;
+        boolean newAlert = false;
 
-        //Insert new product
-        long id = database.insert(InventoryEntry.TABLE_NAME, null, values);
-        //If database insertion failed, return null
-        if (id == -1) {
-            return null;
+        //Write all rows in a single transaction.
+        database.beginTransaction();
+        try {
+            for (int i = 0; i < products.length; i++) {
+                long id = statements.insertProduct(products[i]);
+                if (id != -1) {
+                    insertedRows++;
+                    //Products without a threshold are never low on stock, so they skip the lookup.
+                    newAlert |= products[i].getReorderThreshold() > 0 && statements.hasNewAlert(id);
+                }
+            }
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+        }
+        if (newAlert) {
+            LowStockAlerts.schedule(getContext());
         }
 
-        //Notify that the data has changed
-        getContext().getContentResolver().notifyChange(uri, null);
+        //Notify once for the whole batch
+        if (insertedRows != 0) {
+            notifyChange(uri);
+        }
 
-        //Return new URI with id.
-        return ContentUris.withAppendedId(uri, id);
+        //Return number of inserted rows.
+        return insertedRows;
     }
 
     @Override
     public int delete(@NonNull Uri uri, @Nullable String selection, @Nullable String[] selectionArgs) {
+        long start = ProviderMetrics.start();
+        final int match = sUriMatcher.match(uri);
+        int deletedRows = 0;
+        try {
+            deletedRows = deleteMatch(match, uri, selection, selectionArgs);
+            return deletedRows;
+        } finally {
+            mMetrics.record(ProviderMetrics.DELETE, match, deletedRows, start, uri, selection);
+        }
+    }
+
+    private int deleteMatch(int match, Uri uri, String selection, String[] selectionArgs) {
         //Get writable database
         SQLiteDatabase database = mDatabaseHelper.getWritableDatabase();
 
         //Variable for deleted rows
         int deletedRows;
 
-        final int match = sUriMatcher.match(uri);
+        //URI to notify if anything was deleted
+        Uri changeUri = InventoryEntry.CONTENT_URI;
+
         switch (match) {
             case INVENTORY:
-                //Delete all selected rows.
-                deletedRows = database.delete(InventoryEntry.TABLE_NAME, selection, selectionArgs);
+                if (selection == null) {
+                    //Deleting everything only moves the deleted through mark, and the rows are purged later.
+                    database.beginTransaction();
+                    try {
+                        deletedRows = mPurger.deleteAll(database);
+                        database.setTransactionSuccessful();
+                    } finally {
+                        database.endTransaction();
+                    }
+                    mPurger.schedule();
+                    sendNotification(PurgeEntry.CONTENT_URI);
+                } else {
+                    //Delete all selected rows.
+                    deletedRows = database.delete(InventoryEntry.PRODUCTS_TABLE_NAME, productSelection(selection), selectionArgs);
+                }
+                mCache.clear();
                 break;
             case INVENTORY_ID:
                 //Delete specific id row.
-                selection = InventoryEntry._ID + "=?";
-                selectionArgs = new String[]{String.valueOf(ContentUris.parseId(uri))};
-                deletedRows = database.delete(InventoryEntry.TABLE_NAME, selection, selectionArgs);
+                long id = ContentUris.parseId(uri);
+                deletedRows = getStatements().deleteProduct(id);
+                mCache.remove(id);
+                changeUri = InventoryEntry.buildChangeUri(id, InventoryEntry.CHANGE_DELETE);
+                break;
+            case SUPPLIERS_ID:
+                //Suppliers can only go once they have no products.
+                try {
+                    deletedRows = database.delete(SupplierEntry.TABLE_NAME, SupplierEntry._ID + "=?",
+                            new String[]{String.valueOf(ContentUris.parseId(uri))});
+                } catch (SQLiteConstraintException e) {
+                    throw new IllegalArgumentException(getContext().getString(R.string.supplier_error_in_use) + " " + uri);
+                }
+                changeUri = SupplierEntry.CONTENT_URI;
                 break;
             default:
                 throw new IllegalArgumentException(getContext().getString(R.string.delete_error) + " " + uri);
@@ -228,7 +909,7 @@ public class StoreProvider extends ContentProvider {
 
         //If rows were deleted, notify that data has changed.
         if (deletedRows != 0) {
-            getContext().getContentResolver().notifyChange(uri, null);
+            notifyChange(changeUri);
         }
 
         //Return number of deleted rows.
@@ -237,115 +918,478 @@ public class StoreProvider extends ContentProvider {
 
     @Override
     public int update(@NonNull Uri uri, @Nullable ContentValues values, @Nullable String selection, @Nullable String[] selectionArgs) {
+        long start = ProviderMetrics.start();
         final int match = sUriMatcher.match(uri);
+        int updatedRows = 0;
+        try {
+            updatedRows = updateMatch(match, uri, values, selection, selectionArgs);
+            return updatedRows;
+        } finally {
+            mMetrics.record(ProviderMetrics.UPDATE, match, updatedRows, start, uri, selection);
+        }
+    }
+
+    private int updateMatch(int match, Uri uri, ContentValues values, String selection, String[] selectionArgs) {
         switch (match) {
             case INVENTORY:
-                return updateProduct(uri, values, selection, selectionArgs);
+                int updatedRows = updateProduct(InventoryEntry.CONTENT_URI, values, selection, selectionArgs);
+                //Any cached product may have changed.
+                mCache.clear();
+                if (updatedRows != 0 && changesStockLevel(values) && DatabaseUtils.queryNumEntries(
+                        mDatabaseHelper.getReadableDatabase(), LowStockEntry.TABLE_NAME, LowStockEntry.COLUMN_ALERTED + " = 0") != 0) {
+                    LowStockAlerts.schedule(getContext());
+                }
+                return updatedRows;
             case INVENTORY_ID:
+                long id = ContentUris.parseId(uri);
+                //Stock changes only set the quantity, so they skip building the update SQL.
+                if (values != null && values.size() == 1 && values.containsKey(InventoryEntry.COLUMN_PRODUCT_QUANTITY)) {
+                    return updateQuantity(id, mValidator.requireQuantity(values));
+                }
                 selection = InventoryEntry._ID + "=?";
-                selectionArgs = new String[]{String.valueOf(ContentUris.parseId(uri))};
-                return updateProduct(uri, values, selection, selectionArgs);
+                selectionArgs = new String[]{String.valueOf(id)};
+                int updatedRow = updateProduct(InventoryEntry.buildChangeUri(id, InventoryEntry.CHANGE_UPDATE),
+                        values, selection, selectionArgs);
+                //Drop the cached copy, now that the database has the new values.
+                mCache.remove(id);
+                if (updatedRow != 0 && changesStockLevel(values) && getStatements().hasNewAlert(id)) {
+                    LowStockAlerts.schedule(getContext());
+                }
+                return updatedRow;
+            case INVENTORY_SELL:
+                //Sell from stock. Counts as one updated row if there was enough to sell.
+                Integer sellQuantity = values == null ? null : values.getAsInteger(InventoryEntry.SELL_QUANTITY);
+                long newQuantity = sellProduct(Long.parseLong(uri.getPathSegments().get(1)),
+                        sellQuantity == null ? 1 : sellQuantity);
+                return newQuantity < 0 ? 0 : 1;
+            case SUPPLIERS_ID:
+                return updateSupplier(ContentUris.parseId(uri), values);
+            case INVENTORY_LOW_STOCK:
+                return updateLowStock(uri, values, selection, selectionArgs);
             default:
                 throw new IllegalArgumentException(getContext().getString(R.string.update_error) + " " + uri);
         }
     }
 
-    private int updateProduct(Uri uri, ContentValues values, String selection, String[] selectionArgs) {
-        /***** Validating inputs *****/
-        //Validate ProductName input if key is present
-        if (values.containsKey(InventoryEntry.COLUMN_PRODUCT_NAME)) {
+    /**
+     * Provider methods that do not fit query, insert, update or delete.
+     * METHOD_SELL sells EXTRA_QUANTITY (default 1) of the product with id arg,
+     * and returns the new quantity in EXTRA_QUANTITY, or -1 if there was not enough in stock.
+     * METHOD_CACHE_STATS returns the product cache counters.
+     * METHOD_COMPACT_SALES folds the sales ledger in and rolls it up right away, and returns the number of sales folded
+     * in EXTRA_COMPACTED_SALES.
+     * METHOD_PURGE_PRODUCTS removes the deleted products right away, and returns the number removed
+     * in EXTRA_PURGED_PRODUCTS.
+     * METHOD_RUN_MAINTENANCE vacuums and analyzes the database, and returns the number of bytes the file shrank by
+     * in EXTRA_RECLAIMED_BYTES.
+     * @param method to call
+     * @param arg for the method
+     * @param extras for the method
+     * @return result of the method
+     */
+    @Nullable
+    @Override
+    public Bundle call(@NonNull String method, @Nullable String arg, @Nullable Bundle extras) {
+        long start = ProviderMetrics.start();
+        try {
+            return callMethod(method, arg, extras);
+        } finally {
+            //Calls have no URI, so the method is logged in place of the selection.
+            mMetrics.record(ProviderMetrics.CALL, UriMatcher.NO_MATCH, 0, start, null, method);
+        }
+    }
 
-            //Checking that ProductName is not  null
-            String productName = values.getAsString(InventoryEntry.COLUMN_PRODUCT_NAME);
-            if (productName == null || productName.isEmpty()) {
-                throw new IllegalArgumentException(getContext().getString(R.string.validate_error_product_name_null));
-            }
+    private Bundle callMethod(String method, String arg, Bundle extras) {
+        switch (method) {
+            case StoreContract.METHOD_SELL:
+                int sellQuantity = extras == null ? 1 : extras.getInt(StoreContract.EXTRA_QUANTITY, 1);
+                Bundle result = new Bundle();
+                result.putLong(StoreContract.EXTRA_QUANTITY, sellProduct(parseNumberParameter(arg, R.string.call_error_product_id),
+                        sellQuantity));
+                return result;
+            case StoreContract.METHOD_CACHE_STATS:
+                Bundle stats = new Bundle();
+                stats.putLong(StoreContract.EXTRA_CACHE_HITS, mCache.getHitCount());
+                stats.putLong(StoreContract.EXTRA_CACHE_MISSES, mCache.getMissCount());
+                stats.putLong(StoreContract.EXTRA_CACHE_EVICTIONS, mCache.getEvictionCount());
+                stats.putInt(StoreContract.EXTRA_CACHE_SIZE, mCache.size());
+                return stats;
+            case StoreContract.METHOD_COMPACT_SALES:
+                SQLiteDatabase compactDatabase = mDatabaseHelper.getWritableDatabase();
+                int compacted = mCompactor.compact(compactDatabase);
+                if (compacted != 0) {
+                    //Reaches the totals and low stock list too, and lists filtered on low stock.
+                    sendNotification(InventoryEntry.CONTENT_URI);
+                }
+                if (mCompactor.rollUp(compactDatabase) != 0) {
+                    sendNotification(SalesEntry.CONTENT_URI);
+                }
+                Bundle compaction = new Bundle();
+                compaction.putInt(StoreContract.EXTRA_COMPACTED_SALES, compacted);
+                return compaction;
+            case StoreContract.METHOD_PURGE_PRODUCTS:
+                Bundle purge = new Bundle();
+                purge.putInt(StoreContract.EXTRA_PURGED_PRODUCTS, mPurger.purge(mDatabaseHelper.getWritableDatabase()));
+                return purge;
+            case StoreContract.METHOD_RUN_MAINTENANCE:
+                Bundle maintenance = new Bundle();
+                maintenance.putLong(StoreContract.EXTRA_RECLAIMED_BYTES, StoreMaintenance.run(mDatabaseHelper.getWritableDatabase()));
+                sendNotification(StatsEntry.MAINTENANCE_URI);
+                return maintenance;
+            default:
+                return super.call(method, arg, extras);
         }
+    }
 
-        //Validate ProductPrice input if key is present
-        if (values.containsKey(InventoryEntry.COLUMN_PRODUCT_PRICE)) {
+    /**
+     * Sells from stock with a single conditional insert into the sales ledger, so concurrent sales never lose
+     * updates or take the quantity below 0. SQLite has one writer at a time, so the product row is never contended,
+     * but appending leaves its indexes and triggers alone. The sale is folded into the product later.
+     * @param id of the product
+     * @param sellQuantity number of items sold
+     * @return quantity left, or -1 if the product does not exist or there was not enough in stock
+     */
+    private long sellProduct(long id, int sellQuantity) {
+        //Checking that at least one item is sold
+        if (sellQuantity <= 0) {
+            throw new IllegalArgumentException(getContext().getString(R.string.validate_error_sell_quantity));
+        }
 
-            //Checking that ProductPrice is not  null
-            String productPrice = values.getAsString(InventoryEntry.COLUMN_PRODUCT_PRICE);
-            if (productPrice == null || productPrice.isEmpty()) {
-                throw new IllegalArgumentException(getContext().getString(R.string.validate_error_product_price_null));
-            }
+        //Get writable database
+        SQLiteDatabase database = mDatabaseHelper.getWritableDatabase();
+        StoreStatements statements = getStatements();
+        long newQuantity = -1;
 
-            //Checking that ProductPrice is a number
-            int price;
-            try {
-                price = Integer.parseInt(productPrice);
-            } catch (NumberFormatException nfe) {
-                throw new NumberFormatException();
+        //Sell and read back the new quantity in the same transaction.
+        database.beginTransaction();
+        try {
+            if (statements.sellProduct(id, sellQuantity, System.currentTimeMillis()) == 1) {
+                newQuantity = statements.queryQuantity(id);
             }
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+        }
 
-            //Checking that ProductPrice is not negative
-            if (price < 0) {
-                throw new IllegalArgumentException(getContext().getString(R.string.validate_error_product_price_negative));
-            }
+        //Notify that the product has changed. Low stock alerts wait until the sale is folded in.
+        if (newQuantity >= 0) {
+            //Dropped rather than updated, so a write racing this one can not leave its quantity cached.
+            mCache.remove(id);
+            notifyChange(InventoryEntry.buildChangeUri(id, InventoryEntry.CHANGE_UPDATE));
+            sendNotification(SalesEntry.CONTENT_URI);
+            mCompactor.schedule();
         }
 
-        //Validate Product Quantity input if key is present
-        if (values.containsKey(InventoryEntry.COLUMN_PRODUCT_QUANTITY)) {
+        //Return quantity left
+        return newQuantity;
+    }
 
-            //Checking that ProductQuantity is not  null
-            String productQuantity = values.getAsString(InventoryEntry.COLUMN_PRODUCT_QUANTITY);
-            if (productQuantity == null || productQuantity.isEmpty()) {
-                throw new IllegalArgumentException(getContext().getString(R.string.validate_error_product_quantity_null));
-            }
+    /**
+     * Validates and updates products.
+     * @param changeUri to notify if any rows were updated
+     * @param values to change
+     * @param selection
+     * @param selectionArgs
+     * @return number of updated rows
+     */
+    private int updateProduct(Uri changeUri, ContentValues values, String selection, String[] selectionArgs) {
+        /***** Validating inputs *****/
+        mValidator.validateUpdate(values);
 
-            //Checking that ProductQuantity is a number
-            int quantity;
-            try {
-                quantity = Integer.parseInt(productQuantity);
-            } catch (NumberFormatException nfe) {
-                throw new NumberFormatException();
-            }
+        /***** Updating database *****/
+        //Check if there are any values to update
+        if (values.size() == 0) {
+            return 0;
+        }
 
-            //Checking that ProductPrice is not negative
-            if (quantity < 0) {
-                throw new IllegalArgumentException(getContext().getString(R.string.validate_error_product_quantity_negative));
+        //Get writable database
+        SQLiteDatabase database = mDatabaseHelper.getWritableDatabase();
+
+        //Update database and get number of affected rows
+        int updatedRows;
+        database.beginTransaction();
+        try {
+            //Quantities are set as they are, so earlier sales must be folded in first and not taken off them later.
+            if (values.containsKey(InventoryEntry.COLUMN_PRODUCT_QUANTITY)) {
+                mCompactor.compact(database);
+            }
+            if (!values.containsKey(InventoryEntry.COLUMN_SUPPLIER_NAME) && !values.containsKey(InventoryEntry.COLUMN_SUPPLIER_NUMBER)) {
+                updatedRows = database.update(InventoryEntry.PRODUCTS_TABLE_NAME, values, productSelection(selection), selectionArgs);
+            } else {
+                updatedRows = updateProductSuppliers(database, values, selection, selectionArgs);
             }
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
         }
 
-        //Validate SupplierName if key is present
-        if (values.containsKey(InventoryEntry.COLUMN_SUPPLIER_NAME)) {
+        //Notify listener if any rows were updated
+        if (updatedRows != 0) {
+            notifyChange(changeUri);
+        }
+
+        //Return number of updated rows.
+        return updatedRows;
+    }
+
+    /**
+     * Updates products where the values change the supplier name or number.
+     * Each selected product moves to the supplier with its new name and number, which is added if needed.
+     * The supplier the product had is left as it is, for the other products pointing to it.
+     * Call inside a transaction.
+     * @param database to update
+     * @param values to change
+     * @param selection on the inventory view
+     * @param selectionArgs
+     * @return number of updated rows
+     */
+    private int updateProductSuppliers(SQLiteDatabase database, ContentValues values, String selection, String[] selectionArgs) {
+        String supplierName = values.getAsString(InventoryEntry.COLUMN_SUPPLIER_NAME);
+        String supplierNumber = values.getAsString(InventoryEntry.COLUMN_SUPPLIER_NUMBER);
+        StoreStatements statements = getStatements();
+
+        //Product columns are set as they are.
+        StringBuilder sql = new StringBuilder("UPDATE " + InventoryEntry.PRODUCTS_TABLE_NAME + " SET ");
+        ArrayList<Object> bindArgs = new ArrayList<>();
+        for (String column : values.keySet()) {
+            if (!InventoryEntry.COLUMN_SUPPLIER_NAME.equals(column) && !InventoryEntry.COLUMN_SUPPLIER_NUMBER.equals(column)) {
+                sql.append(column).append(" = ?, ");
+                bindArgs.add(values.get(column));
+            }
+        }
 
-            //Checking that SupplierName is not  null
-            String supplierName = values.getAsString(InventoryEntry.COLUMN_SUPPLIER_NAME);
-            if (supplierName == null || supplierName.isEmpty()) {
-                throw new IllegalArgumentException(getContext().getString(R.string.validate_error_supplier_name_null));
+        //Map each current supplier of the selected products to its replacement, so all rows change in one statement.
+        sql.append(InventoryEntry.COLUMN_SUPPLIER_ID).append(" = CASE ").append(InventoryEntry.COLUMN_SUPPLIER_ID);
+        Cursor suppliers = database.query(true, InventoryEntry.TABLE_NAME, new String[]{InventoryEntry.COLUMN_SUPPLIER_ID,
+                        InventoryEntry.COLUMN_SUPPLIER_NAME, InventoryEntry.COLUMN_SUPPLIER_NUMBER},
+                selection, selectionArgs, null, null, null, null);
+        try {
+            if (suppliers.getCount() == 0) {
+                return 0;
+            }
+            while (suppliers.moveToNext()) {
+                sql.append(" WHEN ? THEN ?");
+                bindArgs.add(suppliers.getLong(0));
+                bindArgs.add(statements.supplierId(supplierName != null ? supplierName : suppliers.getString(1),
+                        supplierNumber != null ? supplierNumber : suppliers.getString(2)));
             }
+        } finally {
+            suppliers.close();
         }
+        sql.append(" ELSE ").append(InventoryEntry.COLUMN_SUPPLIER_ID).append(" END");
 
-        //Validate SupplierNumber if key is present
-        if (values.containsKey(InventoryEntry.COLUMN_SUPPLIER_NUMBER)) {
+        sql.append(" WHERE ").append(productSelection(selection));
+        if (selectionArgs != null) {
+            bindArgs.addAll(Arrays.asList((Object[]) selectionArgs));
+        }
 
-            //Checking that SupplierNumber is not  null
-            String supplierNumber = values.getAsString(InventoryEntry.COLUMN_SUPPLIER_NUMBER);
-            if (supplierNumber == null || supplierNumber.isEmpty()) {
-                throw new IllegalArgumentException(getContext().getString(R.string.validate_error_supplier_number_null));
+        SQLiteStatement statement = database.compileStatement(sql.toString());
+        try {
+            for (int i = 0; i < bindArgs.size(); i++) {
+                DatabaseUtils.bindObjectToProgram(statement, i + 1, bindArgs.get(i));
             }
+            return statement.executeUpdateDelete();
+        } finally {
+            statement.close();
+        }
+    }
+
+    /**
+     * Turns a selection on the inventory view into one on the products table.
+     * Deleted products waiting to be purged are never selected.
+     * @param selection on the inventory view, which may use supplier columns
+     * @return selection on the products table, taking the same arguments
+     */
+    private static String productSelection(String selection) {
+        if (selection == null) {
+            return StoreDbHelper.notDeleted(InventoryEntry._ID);
         }
+        return InventoryEntry._ID + " IN (SELECT " + InventoryEntry._ID + " FROM " + InventoryEntry.TABLE_NAME
+                + " WHERE " + selection + ")";
+    }
 
-        /***** Updating database *****/
-        //Check if there are any values to update
+    /**
+     * Renames a supplier, or changes its number, for all its products at once.
+     * @param id of the supplier
+     * @param values with the new name or number
+     * @return number of updated rows
+     */
+    private int updateSupplier(long id, ContentValues values) {
+        mValidator.validateUpdate(values);
         if (values.size() == 0) {
             return 0;
         }
 
-        //Get writable database
         SQLiteDatabase database = mDatabaseHelper.getWritableDatabase();
+        int updatedRows;
+        try {
+            updatedRows = database.update(SupplierEntry.TABLE_NAME, values, SupplierEntry._ID + "=?",
+                    new String[]{String.valueOf(id)});
+        } catch (SQLiteConstraintException e) {
+            throw new IllegalArgumentException(getContext().getString(R.string.supplier_error_exists));
+        }
 
-        //Update database and get number of affected rows
-        int updatedRows = database.update(InventoryEntry.TABLE_NAME, values, selection, selectionArgs);
+        //Every product of the supplier now reads differently.
+        if (updatedRows != 0) {
+            mCache.clear();
+            notifyChange(InventoryEntry.CONTENT_URI);
+        }
+        return updatedRows;
+    }
 
-        //Notify listener if any rows were updated
+    /**
+     * Sets the quantity of one product with a compiled statement. Sales not folded in yet are allowed for,
+     * so the ledger does not have to be folded in first.
+     * @param id of the product
+     * @param quantity validated new quantity
+     * @return number of updated rows
+     */
+    private int updateQuantity(long id, int quantity) {
+        StoreStatements statements = getStatements();
+        int updatedRows = statements.updateQuantity(id, quantity);
+
+        //Notify that the product has changed
         if (updatedRows != 0) {
-            getContext().getContentResolver().notifyChange(uri, null);
+            mCache.remove(id);
+            notifyChange(InventoryEntry.buildChangeUri(id, InventoryEntry.CHANGE_UPDATE));
+            if (statements.hasNewAlert(id)) {
+                LowStockAlerts.schedule(getContext());
+            }
         }
+        return updatedRows;
+    }
 
-        //Return number of updated rows.
+    /**
+     * @param values of a product update
+     * @return true if the update may move products across their reorder threshold
+     */
+    private static boolean changesStockLevel(ContentValues values) {
+        return values.containsKey(InventoryEntry.COLUMN_PRODUCT_QUANTITY)
+                || values.containsKey(InventoryEntry.COLUMN_REORDER_THRESHOLD);
+    }
+
+    /**
+     * Marks low stock products as alerted, so they are not alerted again until they are restocked.
+     * @param uri LowStockEntry.CONTENT_URI
+     * @param values holding only LowStockEntry.COLUMN_ALERTED
+     * @param selection
+     * @param selectionArgs
+     * @return number of updated rows
+     */
+    private int updateLowStock(Uri uri, ContentValues values, String selection, String[] selectionArgs) {
+        //Rows come and go with the products, so only the alerted flag can be written.
+        if (values == null || values.size() != 1 || !values.containsKey(LowStockEntry.COLUMN_ALERTED)) {
+            throw new IllegalArgumentException(getContext().getString(R.string.update_error) + " " + uri);
+        }
+
+        SQLiteDatabase database = mDatabaseHelper.getWritableDatabase();
+        int updatedRows = database.update(LowStockEntry.TABLE_NAME, values, selection, selectionArgs);
+        if (updatedRows != 0) {
+            sendNotification(LowStockEntry.CONTENT_URI);
+        }
         return updatedRows;
     }
+
+    /**
+     * @return compiled write statements for the calling thread
+     */
+    private StoreStatements getStatements() {
+        StoreStatements statements = mStatements.get();
+        if (statements == null) {
+            statements = new StoreStatements(mDatabaseHelper.getWritableDatabase());
+            mStatements.set(statements);
+            synchronized (mAllStatements) {
+                mAllStatements.add(statements);
+            }
+        }
+        return statements;
+    }
+
+    /**
+     * Applies a batch of operations in one database transaction.
+     * Long batches, and operations marked with withYieldAllowed, let waiting readers in, which commits the work done so far.
+     * @param operations to apply, in order
+     * @return one result for each operation
+     * @throws OperationApplicationException if an operation fails. Work since the last yield is rolled back,
+     * and work committed by an earlier yield is kept and notified.
+     */
+    @NonNull
+    @Override
+    public ContentProviderResult[] applyBatch(@NonNull ArrayList<ContentProviderOperation> operations)
+            throws OperationApplicationException {
+        //Get writable database
+        SQLiteDatabase database = mDatabaseHelper.getWritableDatabase();
+
+        //Collect notifications instead of sending them for every operation.
+        Set<Uri> pendingNotifications = new HashSet<>();
+        Set<Uri> committedNotifications = new HashSet<>();
+        mBatchNotifications.set(pendingNotifications);
+
+        final int numOperations = operations.size();
+        ContentProviderResult[] results = new ContentProviderResult[numOperations];
+
+        database.beginTransaction();
+        try {
+            for (int i = 0; i < numOperations; i++) {
+                ContentProviderOperation operation = operations.get(i);
+
+                //Let waiting readers in where the caller allows it, and regularly in long batches.
+                //A yield commits the work so far, so its changes are notified even if a later operation fails.
+                if (i > 0 && (operation.isYieldAllowed() || i % BATCH_YIELD_INTERVAL == 0)
+                        && database.yieldIfContendedSafely()) {
+                    committedNotifications.addAll(pendingNotifications);
+                    pendingNotifications.clear();
+                }
+
+                results[i] = operation.apply(this, results, i);
+            }
+            database.setTransactionSuccessful();
+            committedNotifications.addAll(pendingNotifications);
+        } finally {
+            database.endTransaction();
+            mBatchNotifications.remove();
+            //Cache changes made inside the batch may not match what was committed.
+            mCache.clear();
+
+            //Notify each committed URI once.
+            for (Uri uri : committedNotifications) {
+                sendNotification(uri);
+            }
+        }
+
+        //Return results for each operation.
+        return results;
+    }
+
+    /**
+     * Notifies listeners that data behind the URI has changed.
+     * Inside a batch the notification is held back until the batch is committed.
+     * @param uri that has changed
+     */
+    private void notifyChange(Uri uri) {
+        sendNotification(uri);
+
+        //Product changes also change the totals and the low stock list, and may have added a supplier.
+        if (StoreContract.PATH_INVENTORY.equals(uri.getPathSegments().get(0)) && !SummaryEntry.CONTENT_URI.equals(uri)) {
+            //Notifications for CONTENT_URI reach the summary and low stock list, but those for a single product do not.
+            if (!InventoryEntry.CONTENT_URI.equals(uri)) {
+                sendNotification(SummaryEntry.CONTENT_URI);
+                sendNotification(LowStockEntry.CONTENT_URI);
+            }
+            sendNotification(SupplierEntry.CONTENT_URI);
+        }
+    }
+
+    /**
+     * Sends one notification, or holds it back until the batch on this thread is committed.
+     * @param uri that has changed
+     */
+    private void sendNotification(Uri uri) {
+        Set<Uri> pendingNotifications = mBatchNotifications.get();
+        if (pendingNotifications != null) {
+            pendingNotifications.add(uri);
+            return;
+        }
+        getContext().getContentResolver().notifyChange(uri, null);
+    }
 }
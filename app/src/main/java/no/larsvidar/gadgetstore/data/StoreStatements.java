@@ -0,0 +1,180 @@
+package no.larsvidar.gadgetstore.data;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import no.larsvidar.gadgetstore.data.StoreContract.InventoryEntry;
+import no.larsvidar.gadgetstore.data.StoreContract.LowStockEntry;
+import no.larsvidar.gadgetstore.data.StoreContract.SalesEntry;
+import no.larsvidar.gadgetstore.data.StoreContract.SupplierEntry;
+
+/**
+ * Compiled statements for the most common provider writes.
+ * A statement holds its bound arguments, so every thread has its own set. See StoreProvider.getStatements.
+ */
+final class StoreStatements {
+
+    //SQL for inserting a complete product.
+    private static final String SQL_INSERT_PRODUCT = "INSERT INTO " + InventoryEntry.PRODUCTS_TABLE_NAME + " ("
+            + InventoryEntry.COLUMN_PRODUCT_NAME + ", "
+            + InventoryEntry.COLUMN_PRODUCT_PRICE + ", "
+            + InventoryEntry.COLUMN_PRODUCT_QUANTITY + ", "
+            + InventoryEntry.COLUMN_REORDER_THRESHOLD + ", "
+            + InventoryEntry.COLUMN_SUPPLIER_ID + ") VALUES (?, ?, ?, ?, ?)";
+
+    //SQL for adding a supplier, unless it is already there.
+    private static final String SQL_INSERT_SUPPLIER = "INSERT OR IGNORE INTO " + SupplierEntry.TABLE_NAME + " ("
+            + SupplierEntry.COLUMN_SUPPLIER_NAME + ", "
+            + SupplierEntry.COLUMN_SUPPLIER_NUMBER + ") VALUES (?, ?)";
+
+    //SQL for finding a supplier by name and number.
+    private static final String SQL_QUERY_SUPPLIER = "SELECT " + SupplierEntry._ID + " FROM " + SupplierEntry.TABLE_NAME
+            + " WHERE " + SupplierEntry.COLUMN_SUPPLIER_NAME + " = ? AND " + SupplierEntry.COLUMN_SUPPLIER_NUMBER + " = ?";
+
+    //SQL for setting the quantity of one product. The sales not folded in yet are added back, as folding
+    //them in later takes them off again. Deleted products waiting to be purged are left alone.
+    private static final String SQL_UPDATE_QUANTITY = "UPDATE " + InventoryEntry.PRODUCTS_TABLE_NAME
+            + " SET " + InventoryEntry.COLUMN_PRODUCT_QUANTITY + " = ?1 + " + StoreDbHelper.pendingSales("?2")
+            + " WHERE " + InventoryEntry._ID + " = ?2 AND " + StoreDbHelper.notDeleted(InventoryEntry._ID);
+
+    //SQL for selling from stock in one statement. Appends to the sales ledger, only if there is enough left.
+    private static final String SQL_SELL_PRODUCT = "INSERT INTO " + SalesEntry.TABLE_NAME + " ("
+            + SalesEntry.COLUMN_PRODUCT_ID + ", "
+            + SalesEntry.COLUMN_QUANTITY + ", "
+            + SalesEntry.COLUMN_SOLD_AT + ") SELECT ?1, ?2, ?3 WHERE (SELECT " + InventoryEntry.COLUMN_PRODUCT_QUANTITY
+            + " FROM " + InventoryEntry.TABLE_NAME + " WHERE " + InventoryEntry._ID + " = ?1) >= ?2";
+
+    //SQL for reading the quantity of one product, with every sale taken off.
+    private static final String SQL_QUERY_QUANTITY = "SELECT " + InventoryEntry.COLUMN_PRODUCT_QUANTITY
+            + " FROM " + InventoryEntry.TABLE_NAME + " WHERE " + InventoryEntry._ID + " = ?";
+
+    //SQL for checking if a product is low on stock and the user has not been told yet. A primary key lookup.
+    private static final String SQL_QUERY_NEW_ALERT = "SELECT COUNT(*) FROM " + LowStockEntry.TABLE_NAME
+            + " WHERE " + LowStockEntry.COLUMN_PRODUCT_ID + " = ? AND " + LowStockEntry.COLUMN_ALERTED + " = 0";
+
+    //SQL for deleting one product, unless it is already deleted and waiting to be purged.
+    private static final String SQL_DELETE_PRODUCT = "DELETE FROM " + InventoryEntry.PRODUCTS_TABLE_NAME
+            + " WHERE " + InventoryEntry._ID + " = ? AND " + StoreDbHelper.notDeleted(InventoryEntry._ID);
+
+    final SQLiteStatement mInsertProduct;
+    final SQLiteStatement mInsertSupplier;
+    final SQLiteStatement mQuerySupplier;
+    final SQLiteStatement mUpdateQuantity;
+    final SQLiteStatement mSellProduct;
+    final SQLiteStatement mQueryQuantity;
+    final SQLiteStatement mQueryNewAlert;
+    final SQLiteStatement mDeleteProduct;
+
+    //Constructor
+    StoreStatements(SQLiteDatabase database) {
+        mInsertProduct = database.compileStatement(SQL_INSERT_PRODUCT);
+        mInsertSupplier = database.compileStatement(SQL_INSERT_SUPPLIER);
+        mQuerySupplier = database.compileStatement(SQL_QUERY_SUPPLIER);
+        mUpdateQuantity = database.compileStatement(SQL_UPDATE_QUANTITY);
+        mSellProduct = database.compileStatement(SQL_SELL_PRODUCT);
+        mQueryQuantity = database.compileStatement(SQL_QUERY_QUANTITY);
+        mQueryNewAlert = database.compileStatement(SQL_QUERY_NEW_ALERT);
+        mDeleteProduct = database.compileStatement(SQL_DELETE_PRODUCT);
+    }
+
+    /**
+     * Releases the statements. They can not be used after this.
+     */
+    void close() {
+        mInsertProduct.close();
+        mInsertSupplier.close();
+        mQuerySupplier.close();
+        mUpdateQuantity.close();
+        mSellProduct.close();
+        mQueryQuantity.close();
+        mQueryNewAlert.close();
+        mDeleteProduct.close();
+    }
+
+    /**
+     * Inserts a validated product, and its supplier if it is new. Call inside a transaction.
+     * @param product to insert
+     * @return _ID of the new row, or -1
+     */
+    long insertProduct(InventoryItem product) {
+        long supplierId = supplierId(product.getSupplierName(), product.getSupplierNumber());
+        mInsertProduct.bindString(1, product.getProductName());
+        mInsertProduct.bindLong(2, product.getPrice());
+        mInsertProduct.bindLong(3, product.getQuantity());
+        mInsertProduct.bindLong(4, product.getReorderThreshold());
+        mInsertProduct.bindLong(5, supplierId);
+        return mInsertProduct.executeInsert();
+    }
+
+    /**
+     * Finds a supplier, adding it if it is not there yet.
+     * @param name of the supplier
+     * @param number of the supplier
+     * @return _ID of the supplier
+     */
+    long supplierId(String name, String number) {
+        mInsertSupplier.bindString(1, name);
+        mInsertSupplier.bindString(2, number);
+        long id = mInsertSupplier.executeInsert();
+        if (id != -1) {
+            return id;
+        }
+
+        //Ignored, so the supplier already exists.
+        mQuerySupplier.bindString(1, name);
+        mQuerySupplier.bindString(2, number);
+        return mQuerySupplier.simpleQueryForLong();
+    }
+
+    /**
+     * @param id of the product
+     * @param quantity to set
+     * @return number of updated rows
+     */
+    int updateQuantity(long id, int quantity) {
+        mUpdateQuantity.bindLong(1, quantity);
+        mUpdateQuantity.bindLong(2, id);
+        return mUpdateQuantity.executeUpdateDelete();
+    }
+
+    /**
+     * Records a sale in the ledger. The products table is left alone until the sale is folded in.
+     * @param id of the product
+     * @param sellQuantity number of items sold
+     * @param soldAt time of the sale, in milliseconds since the epoch
+     * @return 1 if sold, 0 if the product does not exist or there was not enough in stock
+     */
+    int sellProduct(long id, int sellQuantity, long soldAt) {
+        mSellProduct.bindLong(1, id);
+        mSellProduct.bindLong(2, sellQuantity);
+        mSellProduct.bindLong(3, soldAt);
+        return mSellProduct.executeInsert() == -1 ? 0 : 1;
+    }
+
+    /**
+     * @param id of an existing product
+     * @return its quantity
+     */
+    long queryQuantity(long id) {
+        mQueryQuantity.bindLong(1, id);
+        return mQueryQuantity.simpleQueryForLong();
+    }
+
+    /**
+     * @param id of the product
+     * @return true if the product is low on stock and no alert has been shown for it
+     */
+    boolean hasNewAlert(long id) {
+        mQueryNewAlert.bindLong(1, id);
+        return mQueryNewAlert.simpleQueryForLong() != 0;
+    }
+
+    /**
+     * @param id of the product
+     * @return number of deleted rows
+     */
+    int deleteProduct(long id) {
+        mDeleteProduct.bindLong(1, id);
+        return mDeleteProduct.executeUpdateDelete();
+    }
+}
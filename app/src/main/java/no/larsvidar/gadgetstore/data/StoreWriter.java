@@ -0,0 +1,167 @@
+package no.larsvidar.gadgetstore.data;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.content.Context;
+import android.net.Uri;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import no.larsvidar.gadgetstore.data.StoreContract.InventoryEntry;
+
+/**
+ * Runs all writes to the StoreProvider on one background thread, and reports back on the main thread.
+ * Writes are done in the order they are made.
+ */
+public class StoreWriter {
+
+    /**
+     * Receives the result of a write on the main thread.
+     * @param <T> result type
+     */
+    public interface Callback<T> {
+        /**
+         * Called when the write is done.
+         * @param result of the write
+         */
+        void onComplete(T result);
+
+        /**
+         * Called when the provider refused the write, for example because a value was not valid.
+         * @param error thrown by the provider
+         */
+        void onError(RuntimeException error);
+    }
+
+    //*** Variables ***
+
+    //One writer for the whole app.
+    private static StoreWriter sInstance;
+
+    private final ContentResolver mContentResolver;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private final ExecutorService mExecutor = Executors.newSingleThreadExecutor();
+
+    //Constructor
+    private StoreWriter(Context context) {
+        mContentResolver = context.getApplicationContext().getContentResolver();
+    }
+
+    /**
+     * @param context any context
+     * @return the writer for the app
+     */
+    public static synchronized StoreWriter getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new StoreWriter(context);
+        }
+        return sInstance;
+    }
+
+    /**
+     * Inserts a product.
+     * @param uri to insert into
+     * @param values for the product
+     * @param callback receiving the URI of the new product, or null if it was not saved
+     */
+    public void insert(final Uri uri, final ContentValues values, Callback<Uri> callback) {
+        submit(new Callable<Uri>() {
+            @Override
+            public Uri call() {
+                return mContentResolver.insert(uri, values);
+            }
+        }, callback);
+    }
+
+    /**
+     * Updates products.
+     * @param uri of the products
+     * @param values to change
+     * @param callback receiving the number of updated rows
+     */
+    public void update(final Uri uri, final ContentValues values, Callback<Integer> callback) {
+        submit(new Callable<Integer>() {
+            @Override
+            public Integer call() {
+                return mContentResolver.update(uri, values, null, null);
+            }
+        }, callback);
+    }
+
+    /**
+     * Deletes products.
+     * @param uri of the products
+     * @param callback receiving the number of deleted rows
+     */
+    public void delete(final Uri uri, Callback<Integer> callback) {
+        submit(new Callable<Integer>() {
+            @Override
+            public Integer call() {
+                return mContentResolver.delete(uri, null, null);
+            }
+        }, callback);
+    }
+
+    /**
+     * Sells items of a product.
+     * @param id of the product
+     * @param quantity number of items sold
+     * @param callback receiving the quantity left, or -1 if there was not enough in stock
+     */
+    public void sell(final long id, final int quantity, Callback<Long> callback) {
+        submit(new Callable<Long>() {
+            @Override
+            public Long call() {
+                Bundle extras = new Bundle();
+                extras.putInt(StoreContract.EXTRA_QUANTITY, quantity);
+                Bundle result = mContentResolver.call(InventoryEntry.CONTENT_URI,
+                        StoreContract.METHOD_SELL, Long.toString(id), extras);
+                return result == null ? -1 : result.getLong(StoreContract.EXTRA_QUANTITY, -1);
+            }
+        }, callback);
+    }
+
+    /**
+     * Runs a write on the writer thread, and posts the outcome to the callback.
+     * @param write to run
+     * @param callback for the outcome, or null
+     * @param <T> result type
+     */
+    private <T> void submit(final Callable<T> write, final Callback<T> callback) {
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                T result = null;
+                RuntimeException error = null;
+                try {
+                    result = write.call();
+                } catch (RuntimeException e) {
+                    error = e;
+                } catch (Exception e) {
+                    error = new RuntimeException(e);
+                }
+
+                //Report back on the main thread
+                if (callback != null) {
+                    final T finalResult = result;
+                    final RuntimeException finalError = error;
+                    mMainHandler.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            if (finalError != null) {
+                                callback.onError(finalError);
+                            } else {
+                                callback.onComplete(finalResult);
+                            }
+                        }
+                    });
+                }
+            }
+        });
+    }
+}